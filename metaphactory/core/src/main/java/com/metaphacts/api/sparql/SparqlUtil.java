@@ -18,6 +18,8 @@
 
 package com.metaphacts.api.sparql;
 
+import java.io.IOException;
+import java.io.StringReader;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
@@ -26,18 +28,33 @@
 
 import com.google.common.collect.Sets;
 
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.Value;
 import org.eclipse.rdf4j.query.BooleanQuery;
 import org.eclipse.rdf4j.query.GraphQuery;
 import org.eclipse.rdf4j.query.MalformedQueryException;
 import org.eclipse.rdf4j.query.Operation;
+import org.eclipse.rdf4j.query.QueryLanguage;
 import org.eclipse.rdf4j.query.TupleQuery;
 import org.eclipse.rdf4j.query.Update;
+import org.eclipse.rdf4j.query.algebra.DeleteData;
+import org.eclipse.rdf4j.query.algebra.InsertData;
+import org.eclipse.rdf4j.query.algebra.StatementPattern;
+import org.eclipse.rdf4j.query.algebra.UpdateExpr;
+import org.eclipse.rdf4j.query.algebra.Var;
+import org.eclipse.rdf4j.query.algebra.helpers.AbstractQueryModelVisitor;
+import org.eclipse.rdf4j.query.parser.ParsedUpdate;
 import org.eclipse.rdf4j.query.parser.QueryParserUtil;
+import org.eclipse.rdf4j.query.parser.sparql.SPARQLUpdateDataBlockParser;
 import org.eclipse.rdf4j.query.resultio.BooleanQueryResultWriterRegistry;
 import org.eclipse.rdf4j.query.resultio.QueryResultFormat;
 import org.eclipse.rdf4j.query.resultio.TupleQueryResultWriterRegistry;
 import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.RDFHandlerException;
+import org.eclipse.rdf4j.rio.RDFParseException;
 import org.eclipse.rdf4j.rio.RDFWriterRegistry;
+import org.eclipse.rdf4j.rio.helpers.AbstractRDFHandler;
 
 /**
  * @author Johannes Trame <jt@metaphacts.com>
@@ -131,6 +148,64 @@ public static String prependPrefixes(String operationString, Map<String,String>
         return sb.toString()+operationString;
     }
 
+    /**
+     * Extracts the IRIs which occur as subject or object in a SPARQL update
+     * operation string, i.e. in the data of INSERT DATA / DELETE DATA
+     * operations as well as in the templates and patterns of all other
+     * operations. Resources which are only matched by variables are not
+     * included.
+     *
+     * @param updateString
+     *            - any SPARQL update operation string
+     * @return
+     * @throws MalformedQueryException
+     *             if the update operation can not be parsed
+     */
+    public static Set<IRI> extractResources(String updateString) throws MalformedQueryException {
+        Set<IRI> resources = Sets.newHashSet();
+        ParsedUpdate update = QueryParserUtil.parseUpdate(QueryLanguage.SPARQL, updateString, null);
+        for (UpdateExpr expr : update.getUpdateExprs()) {
+            String dataBlock = expr instanceof InsertData ? ((InsertData) expr).getDataBlock()
+                    : expr instanceof DeleteData ? ((DeleteData) expr).getDataBlock() : null;
+            if (dataBlock != null) {
+                SPARQLUpdateDataBlockParser parser = new SPARQLUpdateDataBlockParser();
+                parser.setRDFHandler(new AbstractRDFHandler() {
+                    @Override
+                    public void handleStatement(Statement st) {
+                        addResource(resources, st.getSubject());
+                        addResource(resources, st.getObject());
+                    }
+                });
+                try {
+                    parser.parse(new StringReader(dataBlock), "");
+                } catch (RDFParseException | RDFHandlerException | IOException e) {
+                    throw new MalformedQueryException(e);
+                }
+            } else {
+                expr.visit(new AbstractQueryModelVisitor<RuntimeException>() {
+                    @Override
+                    public void meet(StatementPattern node) {
+                        addResource(resources, node.getSubjectVar());
+                        addResource(resources, node.getObjectVar());
+                    }
+                });
+            }
+        }
+        return resources;
+    }
+
+    private static void addResource(Set<IRI> resources, Var var) {
+        if (var.hasValue()) {
+            addResource(resources, var.getValue());
+        }
+    }
+
+    private static void addResource(Set<IRI> resources, Value value) {
+        if (value instanceof IRI) {
+            resources.add((IRI) value);
+        }
+    }
+
     /**
      * Returns a set of all mime types for all registered parsers including
      * text/html.
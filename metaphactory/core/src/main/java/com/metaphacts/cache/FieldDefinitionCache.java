@@ -0,0 +1,336 @@
+/*
+ * Copyright (C) 2015-2017, metaphacts GmbH
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, you can receive a copy
+ * of the GNU Lesser General Public License from http://www.gnu.org/
+ */
+
+package com.metaphacts.cache;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.QueryLanguage;
+import org.eclipse.rdf4j.query.TupleQuery;
+import org.eclipse.rdf4j.query.TupleQueryResult;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.repository.RepositoryException;
+import org.eclipse.rdf4j.rio.ntriples.NTriplesUtil;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.metaphacts.data.rdf.container.FieldDefinitionContainer;
+import com.metaphacts.repository.RepositoryManager;
+import com.metaphacts.templates.helper.JsonObjectArrayFromSelectSource;
+
+/**
+ * Cache of the field definitions stored in the {@link FieldDefinitionContainer}
+ * of the asset repository, keyed by field IRI. Definitions which are not yet
+ * cached are loaded in bulk with a single query; IRIs which do not denote a
+ * (complete) field definition are cached as {@link Optional#empty()} for
+ * {@link #NEGATIVE_ENTRY_EXPIRY_SECONDS} only.
+ *
+ * <p>
+ * Besides the raw values of a definition, every {@link FieldDefinition} can
+ * hold values derived from it (e.g. serialized JSON or pre-parsed queries),
+ * which are computed once and live as long as the definition is cached.
+ * </p>
+ *
+ * <p>
+ * Entries are invalidated through the {@link CacheManager}, i.e. whenever
+ * field definitions are added, updated or deleted through the LDP API.
+ * Changes written directly to the asset repository require an explicit
+ * invalidation of all caches, except for fields which have been looked up
+ * before they were defined, which are picked up after the negative entry
+ * expired.
+ * </p>
+ */
+@Singleton
+public class FieldDefinitionCache implements PlatformCache {
+
+    private static final Logger logger = LogManager.getLogger(FieldDefinitionCache.class);
+
+    public static final String CACHE_ID = "FieldDefinitionCache";
+
+    /**
+     * Number of fields to load with a single query.
+     */
+    static final int LOAD_BATCH_SIZE = 500;
+
+    /**
+     * Time (in seconds) after which IRIs not denoting a field definition are
+     * looked up again.
+     */
+    static final long NEGATIVE_ENTRY_EXPIRY_SECONDS = 60;
+
+    private static final String PREFIXES = String.join("\n",
+        "PREFIX field: <http://www.metaphacts.com/ontology/fields#>",
+        "PREFIX rdfs: <http://www.w3.org/2000/01/rdf-schema#>",
+        "PREFIX sp: <http://spinrdf.org/sp#>",
+        "PREFIX ldp: <http://www.w3.org/ns/ldp#>"
+    );
+
+    private static final String ALL_FIELDS_QUERY = String.join("\n",
+        PREFIXES,
+        "SELECT DISTINCT ?field WHERE {",
+        "<" + FieldDefinitionContainer.IRI_STRING + "> ldp:contains ?field.",
+        "?field a field:Field.",
+        "}"
+    );
+
+    private final Cache<IRI, Optional<FieldDefinition>> cache = CacheBuilder.newBuilder()
+        .maximumSize(10000)
+        .build();
+
+    /**
+     * IRIs which do not denote a (complete) field definition.
+     */
+    private final Cache<IRI, Boolean> negativeCache;
+
+    private final RepositoryManager repositoryManager;
+
+    @Inject
+    public FieldDefinitionCache(RepositoryManager repositoryManager, CacheManager cacheManager) {
+        this(repositoryManager, cacheManager, NEGATIVE_ENTRY_EXPIRY_SECONDS);
+    }
+
+    FieldDefinitionCache(RepositoryManager repositoryManager, CacheManager cacheManager,
+            long negativeEntryExpirySeconds) {
+        this.repositoryManager = repositoryManager;
+        this.negativeCache = CacheBuilder.newBuilder()
+            .maximumSize(10000)
+            .expireAfterWrite(negativeEntryExpirySeconds, TimeUnit.SECONDS)
+            .build();
+        cacheManager.register(this);
+    }
+
+    /**
+     * Field definition as stored in the asset repository.
+     */
+    public static class FieldDefinition {
+        private final IRI iri;
+        private final Map<String, Value> values;
+        private final ConcurrentMap<String, Object> derived = Maps.newConcurrentMap();
+
+        FieldDefinition(IRI iri, Map<String, Value> values) {
+            this.iri = iri;
+            this.values = ImmutableMap.copyOf(values);
+        }
+
+        public IRI getIri() {
+            return iri;
+        }
+
+        /**
+         * @return all bound values of the definition keyed by their name, e.g.
+         *         <code>label</code> or <code>insertPattern</code>
+         */
+        public Map<String, Value> getValues() {
+            return values;
+        }
+
+        public Optional<String> getValue(String name) {
+            return Optional.ofNullable(values.get(name)).map(Value::stringValue);
+        }
+
+        /**
+         * Returns the value derived from this definition under the specified
+         * key, computing it on first access.
+         */
+        @SuppressWarnings("unchecked")
+        public <T> T getDerived(String key, Function<FieldDefinition, T> computer) {
+            return (T) derived.computeIfAbsent(key, k -> computer.apply(this));
+        }
+    }
+
+    /**
+     * Returns the definitions of the specified fields, loading all fields
+     * which are not cached yet with a single query.
+     *
+     * @return map from field IRI to its definition, containing an entry for
+     *         every requested IRI
+     */
+    public Map<IRI, Optional<FieldDefinition>> getFieldDefinitions(Collection<IRI> fields) {
+        Map<IRI, Optional<FieldDefinition>> result = Maps.newLinkedHashMap();
+        Set<IRI> missing = Sets.newLinkedHashSet();
+        for (IRI field : fields) {
+            Optional<FieldDefinition> cached = cache.getIfPresent(field);
+            if (cached != null) {
+                result.put(field, cached);
+            } else if (negativeCache.getIfPresent(field) != null) {
+                result.put(field, Optional.empty());
+            } else {
+                missing.add(field);
+            }
+        }
+        if (!missing.isEmpty()) {
+            for (List<IRI> batch : Lists.partition(Lists.newArrayList(missing), LOAD_BATCH_SIZE)) {
+                Map<IRI, Optional<FieldDefinition>> loaded = load(batch);
+                for (Map.Entry<IRI, Optional<FieldDefinition>> entry : loaded.entrySet()) {
+                    if (entry.getValue().isPresent()) {
+                        cache.put(entry.getKey(), entry.getValue());
+                    } else {
+                        negativeCache.put(entry.getKey(), Boolean.TRUE);
+                    }
+                }
+                result.putAll(loaded);
+            }
+        }
+        return result;
+    }
+
+    public Optional<FieldDefinition> getFieldDefinition(IRI field) {
+        return getFieldDefinitions(Collections.singletonList(field)).get(field);
+    }
+
+    /**
+     * @return the IRIs of all fields in the {@link FieldDefinitionContainer}
+     */
+    public List<IRI> getAllFieldIris() {
+        List<IRI> fields = Lists.newArrayList();
+        try (RepositoryConnection con = repositoryManager.getAssetRepository().getConnection()) {
+            TupleQuery tq = con.prepareTupleQuery(QueryLanguage.SPARQL, ALL_FIELDS_QUERY);
+            try (TupleQueryResult tqr = tq.evaluate()) {
+                while (tqr.hasNext()) {
+                    Value field = tqr.next().getValue("field");
+                    if (field instanceof IRI) {
+                        fields.add((IRI) field);
+                    }
+                }
+            }
+        } catch (RepositoryException e) {
+            throw Throwables.propagate(e);
+        }
+        return fields;
+    }
+
+    private Map<IRI, Optional<FieldDefinition>> load(List<IRI> fields) {
+        logger.trace("Loading {} field definition(s) into cache.", fields.size());
+        Map<IRI, Optional<FieldDefinition>> loaded = Maps.newLinkedHashMap();
+        for (IRI field : fields) {
+            loaded.put(field, Optional.empty());
+        }
+        try (RepositoryConnection con = repositoryManager.getAssetRepository().getConnection()) {
+            TupleQuery tq = con.prepareTupleQuery(QueryLanguage.SPARQL, makeFieldDefinitionQuery(fields));
+            try (TupleQueryResult tqr = tq.evaluate()) {
+                while (tqr.hasNext()) {
+                    BindingSet bs = tqr.next();
+                    if (!(bs.getValue("field") instanceof IRI)) {
+                        continue;
+                    }
+                    IRI field = (IRI) bs.getValue("field");
+                    Map<String, Value> values = Maps.newHashMap();
+                    for (String name : tqr.getBindingNames()) {
+                        Value value = bs.getValue(name);
+                        if (value != null && !"field".equals(name)) {
+                            values.put(name, value);
+                        }
+                    }
+                    loaded.put(field, Optional.of(new FieldDefinition(field, values)));
+                }
+            }
+        } catch (RepositoryException e) {
+            throw Throwables.propagate(e);
+        }
+        return loaded;
+    }
+
+    static String makeFieldDefinitionQuery(Collection<IRI> fields) {
+        String values = fields.stream().map(NTriplesUtil::toNTriplesString).collect(Collectors.joining(" "));
+        return String.join("\n",
+            PREFIXES,
+            "SELECT ?field",
+            "(SAMPLE(?label) AS ?label)",
+            "(SAMPLE(?description) AS ?description)",
+            "(SAMPLE(?minOccurs) AS ?minOccurs)",
+            "(SAMPLE(?maxOccurs) AS ?maxOccurs)",
+            "(STRDT(",
+            "  IF(COUNT(?defaultValue) > 0,",
+            "    CONCAT(\"[\\\"\",",
+            "      GROUP_CONCAT(?defaultValue; separator=\"\\\", \\\"\"),",
+            "      \"\\\"]\"",
+            "    ),",
+            "    \"[]\"",
+            "  ),",
+            "  <" + JsonObjectArrayFromSelectSource.SYNTHETIC_JSON_DATATYPE + ">",
+            ") AS ?defaultValues)",
+            "(SAMPLE(?domain) AS ?domain)",
+            "(SAMPLE(?xsdDatatype) AS ?xsdDatatype)",
+            "(SAMPLE(?range) AS ?range)",
+            "(SAMPLE(?insertPattern) AS ?insertPattern)",
+            "(SAMPLE(?selectPattern) AS ?selectPattern)",
+            "(SAMPLE(?askPattern) AS ?askPattern)",
+            "(SAMPLE(?autosuggestionPattern) AS ?autosuggestionPattern)",
+            "(SAMPLE(?valueSetPattern) AS ?valueSetPattern)",
+            "(SAMPLE(?treePatterns) AS ?treePatterns)",
+            "WHERE {",
+            "VALUES ?field { " + values + " }",
+            "<" + FieldDefinitionContainer.IRI_STRING + "> ldp:contains ?field.",
+            "?field a field:Field.",
+            "?field field:insertPattern [ sp:text ?insertPattern].",
+            "OPTIONAL{?field field:selectPattern [ sp:text ?selectPattern]}.",
+            "OPTIONAL{?field field:valueSetPattern [ sp:text ?valueSetPattern]}.",
+            "OPTIONAL{?field field:autosuggestionPattern [ sp:text ?autosuggestionPattern]}.",
+            "OPTIONAL{?field field:minOccurs ?minOccurs.}.",
+            "OPTIONAL{?field field:domain ?domain.}.",
+            "OPTIONAL{?field field:xsdDatatype ?xsdDatatype.}.",
+            "OPTIONAL{?field field:range ?range.}.",
+            "OPTIONAL{?field field:maxOccurs ?maxOccurs.}.",
+            "OPTIONAL { ?field field:defaultValue ?defaultValue . } .",
+            "OPTIONAL{?field rdfs:comment ?description.}.",
+            "OPTIONAL{?field field:askPattern [ sp:text ?askPattern]}.",
+            "OPTIONAL { ?field field:treePatterns ?treePatterns }",
+            "?field rdfs:label ?label.",
+            "}",
+            "GROUP BY ?field"
+        );
+    }
+
+    @Override
+    public void invalidate() {
+        cache.invalidateAll();
+        negativeCache.invalidateAll();
+    }
+
+    @Override
+    public void invalidate(List<IRI> iris) {
+        cache.invalidateAll(iris);
+        negativeCache.invalidateAll(iris);
+    }
+
+    @Override
+    public String getId() {
+        return CACHE_ID;
+    }
+}
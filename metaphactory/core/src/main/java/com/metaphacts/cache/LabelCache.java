@@ -157,40 +157,22 @@ private Map<IRI, Optional<Literal>> chooseLabelsWithPreferredLanguage(
 
         final Map<IRI,Optional<Literal>> labelMap = new HashMap<>(labelCandidatesMap.size());
 
+        // rank the preferred languages once for all labels of the bulk request
+        final Map<String, Integer> languageToRank = rankPreferredLanguages();
+
         for (final IRI key : labelCandidatesMap.keySet()) {
 
-            labelMap.put(key, chooseLabelWithPreferredLanguage(labelCandidatesMap.get(key)));
+            labelMap.put(key, chooseLabelWithPreferredLanguage(labelCandidatesMap.get(key), languageToRank));
         }
 
         return labelMap;
     }
 
-
     /**
-     * Chooses, from the incoming list of literals the label with the preferred
-     * language as per {@link UIConfiguration#getPreferredLanguages()}. The
-     * choice is defined by the following algorithm:
-     *
-     * 1.) We iterate over the preferred languages in order. The first literal
-     * in the list matching the current language literal is returned.
-     *
-     * 2.) If no hash map entry exists for any of the preferred languages, as
-     * a fall back solution we return a non-language tag literal, if present
-     * (as we assume this to be most specific).
-     *
-     * 3.) If if no such label exists, we return the first one (thus making a
-     * non-deterministic) random choice.
-     *
-     * 4.) If no label exists at all, null is returned.
-     *
-     * @return the most appropriate literal in the list according to the
-     *          preferred language configuration
+     * Maps the languages of {@link UIConfiguration#getPreferredLanguages()} to
+     * their rank (lower rank means better, best rank is zero).
      */
-    private Optional<Literal> chooseLabelWithPreferredLanguage(List<Literal> labels) {
-
-        if (labels.isEmpty()) { // fast path: no labels detected
-            return Optional.empty();
-        }
+    private Map<String, Integer> rankPreferredLanguages() {
 
         final Iterator<String> languageIt = config.getUiConfig().getPreferredLanguages().iterator();
 
@@ -217,6 +199,37 @@ private Optional<Literal> chooseLabelWithPreferredLanguage(List<Literal> labels)
 
         }
 
+        return languageToRank;
+    }
+
+
+    /**
+     * Chooses, from the incoming list of literals the label with the preferred
+     * language as per {@link UIConfiguration#getPreferredLanguages()}. The
+     * choice is defined by the following algorithm:
+     *
+     * 1.) We iterate over the preferred languages in order. The first literal
+     * in the list matching the current language literal is returned.
+     *
+     * 2.) If no hash map entry exists for any of the preferred languages, as
+     * a fall back solution we return a non-language tag literal, if present
+     * (as we assume this to be most specific).
+     *
+     * 3.) If if no such label exists, we return the first one (thus making a
+     * non-deterministic) random choice.
+     *
+     * 4.) If no label exists at all, null is returned.
+     *
+     * @return the most appropriate literal in the list according to the
+     *          preferred language configuration
+     */
+    private Optional<Literal> chooseLabelWithPreferredLanguage(
+        List<Literal> labels, Map<String, Integer> languageToRank) {
+
+        if (labels.isEmpty()) { // fast path: no labels detected
+            return Optional.empty();
+        }
+
         Literal bestObserved = null;                // init: none
         int bestObservedRank = Integer.MAX_VALUE;   // init: none
         for (int i=0; i<labels.size(); i++) {
@@ -0,0 +1,364 @@
+/*
+ * Copyright (C) 2015-2017, metaphacts GmbH
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, you can receive a copy
+ * of the GNU Lesser General Public License from http://www.gnu.org/
+ */
+package com.metaphacts.cache;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.rdf4j.model.IRI;
+
+import com.google.common.base.Charsets;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import com.google.common.hash.Hashing;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.metaphacts.config.Configuration;
+import com.metaphacts.templates.RenderDependencies;
+
+/**
+ * Caches the output of server-side template rendering (see
+ * {@link com.metaphacts.rest.endpoint.TemplateEndpoint}), such that repeated
+ * requests for the same page do neither compile templates nor evaluate any
+ * helper query.
+ *
+ * <p>
+ * Every entry keeps the dependencies recorded while rendering it (see
+ * {@link RenderDependencies}). Entries are invalidated if one of the templates
+ * the entry depends on is saved ({@link #invalidateTemplate(IRI)}) or if one
+ * of the resources it depends on is invalidated through the
+ * {@link CacheManager}. Since the result of a helper query may change with
+ * resources it has not returned before (e.g. a new resource matching a list
+ * or count query), entries which evaluated any helper query are invalidated
+ * with every invalidation of resources, i.e. on every update through the LDP
+ * API, the SPARQL endpoint and the graph store protocol. Since updates which
+ * bypass the platform (e.g. directly on a remote triple store) are not
+ * propagated, entries expire in addition after a configurable time
+ * (<code>renderedPageCacheExpirySecs</code>, by default
+ * {@link #DEFAULT_EXPIRE_AFTER_WRITE_SECONDS}).
+ * </p>
+ */
+@Singleton
+public class RenderedTemplateCache implements PlatformCache {
+
+    private static final Logger logger = LogManager.getLogger(RenderedTemplateCache.class);
+
+    public static final long DEFAULT_EXPIRE_AFTER_WRITE_SECONDS = 60;
+
+    public static final long MAXIMUM_SIZE = 1000;
+
+    /**
+     * Renderings exceeding this number of characters are not cached, but
+     * streamed to the client, such that large renderings do not need to be
+     * held in memory.
+     */
+    public static final int MAXIMUM_ENTRY_LENGTH = 1 << 20;
+
+    /**
+     * Identifies a rendering by everything that may change its output without
+     * being recorded as a dependency: the requested page and template
+     * context, the repository, the user (since helpers may check permissions
+     * or refer to the user IRI) and the URL parameters.
+     */
+    public static class Key {
+        private final String variant;
+        private final String repositoryId;
+        private final IRI page;
+        private final IRI context;
+        private final IRI user;
+        private final String params;
+
+        public Key(String variant, String repositoryId, IRI page, IRI context, IRI user, String params) {
+            this.variant = variant;
+            this.repositoryId = repositoryId;
+            this.page = page;
+            this.context = context;
+            this.user = user;
+            this.params = params;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return variant.equals(other.variant) && repositoryId.equals(other.repositoryId)
+                    && page.equals(other.page) && context.equals(other.context)
+                    && Objects.equals(user, other.user) && Objects.equals(params, other.params);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(variant, repositoryId, page, context, user, params);
+        }
+
+        @Override
+        public String toString() {
+            return variant + ":" + repositoryId + ":" + page + "@" + context + " (" + user + ", " + params + ")";
+        }
+    }
+
+    /**
+     * Cached output of a rendering together with its entity tag.
+     */
+    public static class Rendering {
+        private final String html;
+        private final String entityTag;
+
+        Rendering(String html, String entityTag) {
+            this.html = html;
+            this.entityTag = entityTag;
+        }
+
+        public String getHtml() {
+            return html;
+        }
+
+        /**
+         * @return strong entity tag (without quotes) of the rendering
+         */
+        public String getEntityTag() {
+            return entityTag;
+        }
+    }
+
+    private static class Entry {
+        final Rendering rendering;
+        final Set<IRI> templates;
+        final Set<IRI> resources;
+        final boolean queries;
+
+        Entry(Rendering rendering, Set<IRI> templates, Set<IRI> resources, boolean queries) {
+            this.rendering = rendering;
+            this.templates = templates;
+            this.resources = resources;
+            this.queries = queries;
+        }
+    }
+
+    /**
+     * Buffers the output of a rendering up to
+     * {@link RenderedTemplateCache#MAXIMUM_ENTRY_LENGTH}, such that errors can
+     * be reported with a proper status and the output can be cached. Once the
+     * output exceeds the limit, the buffered output is written to the writer
+     * opened by the {@link Spill} and all further output is passed through.
+     */
+    public static class Buffer extends Writer {
+
+        /**
+         * Opens the writer which receives the output once it exceeds the
+         * buffer.
+         */
+        @FunctionalInterface
+        public interface Spill {
+            Writer open() throws IOException;
+        }
+
+        private final Spill spill;
+        private final StringBuilder buffer = new StringBuilder();
+        private Writer target;
+
+        public Buffer(Spill spill) {
+            this.spill = spill;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            if (ensureCapacity(len)) {
+                buffer.append(cbuf, off, len);
+            } else {
+                target.write(cbuf, off, len);
+            }
+        }
+
+        @Override
+        public void write(String str, int off, int len) throws IOException {
+            if (ensureCapacity(len)) {
+                buffer.append(str, off, off + len);
+            } else {
+                target.write(str, off, len);
+            }
+        }
+
+        /**
+         * @return whether the output still fits into the buffer, otherwise the
+         *         buffer has been written to the spill target
+         */
+        private boolean ensureCapacity(int len) throws IOException {
+            if (target == null && buffer.length() + len > MAXIMUM_ENTRY_LENGTH) {
+                target = spill.open();
+                target.write(buffer.toString());
+                buffer.setLength(0);
+                buffer.trimToSize();
+            }
+            return target == null;
+        }
+
+        /**
+         * @return whether the output exceeded the maximum length, i.e. the
+         *         output has been passed to the spill target
+         */
+        public boolean isOverflown() {
+            return target != null;
+        }
+
+        @Override
+        public String toString() {
+            return buffer.toString();
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (target != null) {
+                target.flush();
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private final Cache<Key, Entry> cache;
+
+    /**
+     * Incremented on every invalidation, to prevent that renderings which have
+     * been started before an invalidation are added to the cache afterwards.
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    private final long expireAfterWriteMillis;
+
+    @Inject
+    public RenderedTemplateCache(CacheManager cacheManager, Configuration config) {
+        this(cacheManager, config.getEnvironmentConfig().getRenderedPageCacheExpirySecs());
+    }
+
+    public RenderedTemplateCache(CacheManager cacheManager, long expireAfterWriteSeconds) {
+        this.expireAfterWriteMillis = TimeUnit.SECONDS.toMillis(expireAfterWriteSeconds);
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(MAXIMUM_SIZE)
+                .expireAfterWrite(expireAfterWriteSeconds, TimeUnit.SECONDS)
+                .build();
+        cacheManager.register(this);
+    }
+
+    public Optional<String> get(Key key) {
+        return getRendering(key).map(Rendering::getHtml);
+    }
+
+    public Optional<Rendering> getRendering(Key key) {
+        Entry entry = cache.getIfPresent(key);
+        if (entry != null) {
+            logger.trace("Returning cached rendering of {}.", key);
+        }
+        return Optional.ofNullable(entry).map(e -> e.rendering);
+    }
+
+    /**
+     * Creates an entity tag for a rendering which is too large to be cached
+     * and streamed to the client, i.e. whose response headers are sent before
+     * the output is known. The tag is derived from the key, the current
+     * generation and the current expiry period, i.e. it changes whenever a
+     * cached rendering of the same key would have been invalidated or
+     * expired.
+     */
+    public String newEntityTag(Key key) {
+        long period = System.currentTimeMillis() / Math.max(1, expireAfterWriteMillis);
+        return Hashing.sha256().hashString(key + "#" + generation.get() + "#" + period, Charsets.UTF_8).toString();
+    }
+
+    /**
+     * Returns the current generation of the cache, which needs to be obtained
+     * <i>before</i> rendering and passed to
+     * {@link #put(Key, String, RenderDependencies, long)}.
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Adds the rendering to the cache with a hash of its output as entity
+     * tag, unless the cache has been invalidated since the rendering has been
+     * started.
+     *
+     * @return the rendering with its entity tag, also if it has not been cached
+     */
+    public Rendering put(Key key, String html, RenderDependencies dependencies, long renderGeneration) {
+        Rendering rendering = new Rendering(html, Hashing.sha256().hashString(html, Charsets.UTF_8).toString());
+        Set<IRI> resources = Sets.newHashSet(dependencies.getResources());
+        resources.add(key.page);
+        resources.add(key.context);
+        Entry entry = new Entry(rendering,
+                ImmutableSet.copyOf(dependencies.getTemplates()), ImmutableSet.copyOf(resources),
+                dependencies.hasQueries());
+        if (generation.get() != renderGeneration) {
+            logger.trace("Not caching rendering of {}, cache has been invalidated while rendering.", key);
+            return rendering;
+        }
+        cache.put(key, entry);
+        return rendering;
+    }
+
+    /**
+     * Removes all renderings which depend on the specified template, i.e.
+     * which have included it or have tried to resolve it.
+     */
+    public void invalidateTemplate(IRI template) {
+        generation.incrementAndGet();
+        cache.asMap().values().removeIf(entry -> entry.templates.contains(template));
+    }
+
+    @Override
+    public void invalidate() {
+        generation.incrementAndGet();
+        cache.invalidateAll();
+    }
+
+    /**
+     * Removes all renderings which depend on any of the specified resources
+     * or which evaluated helper queries.
+     */
+    @Override
+    public void invalidate(List<IRI> iris) {
+        generation.incrementAndGet();
+        Set<IRI> invalidated = Sets.newHashSet(iris);
+        cache.asMap().values().removeIf(
+                entry -> entry.queries || !Sets.intersection(entry.resources, invalidated).isEmpty());
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    @Override
+    public String getId() {
+        return "RenderedTemplateCache";
+    }
+}
@@ -135,6 +135,55 @@ public Integer getSparqlHttpConnectionTimeout() {
         return getInteger("sparqlHttpConnectionTimeout");
     }
 
+    /**************************** TEMPLATE STORAGE ***************************/
+    /**
+     * Storage backend for templates, either <code>simple</code> (one file per
+     * template) or <code>revisioned</code> (content-addressed revisions with
+     * an append-only revision log).
+     * 
+     * @return
+     */
+    @ConfigurationParameter
+    public String getTemplateStorage() {
+        return getString("templateStorage", "simple");
+    }
+
+    /**
+     * Whether to compile all stored templates in the background on startup and
+     * templates after saving them, see
+     * {@link com.metaphacts.templates.TemplateWarmup}.
+     * 
+     * @return
+     */
+    @ConfigurationParameter
+    public Boolean getWarmupTemplates() {
+        return getBoolean("warmupTemplates", false);
+    }
+
+    /**
+     * Whether to profile template renderings, see
+     * {@link com.metaphacts.templates.RenderProfiler}.
+     * 
+     * @return
+     */
+    @ConfigurationParameter
+    public Boolean getProfileTemplateRendering() {
+        return getBoolean("profileTemplateRendering", false);
+    }
+
+    /**
+     * Time (in seconds) after which rendered pages are evicted from
+     * {@link com.metaphacts.cache.RenderedTemplateCache}. Bounds how long
+     * pages may be stale after repository updates which are not propagated to
+     * the {@link com.metaphacts.cache.CacheManager}.
+     * 
+     * @return
+     */
+    @ConfigurationParameter
+    public Integer getRenderedPageCacheExpirySecs() {
+        return getInteger("renderedPageCacheExpirySecs", 60);
+    }
+
     /**************************** HELPER METHOD *******************************/
     public List<File> getApplicationFolders(){
         File appDir = new File(getAppsDirectory());
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2015-2017, metaphacts GmbH
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, you can receive a copy
+ * of the GNU Lesser General Public License from http://www.gnu.org/
+ */
+
+package com.metaphacts.data.json;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writer that escapes everything written to it as content of a JSON string,
+ * i.e. the enclosing quotes need to be written to the underlying writer by the
+ * caller. Allows to embed large strings (e.g. rendered templates) into JSON
+ * responses without materializing them.
+ */
+public class JsonStringWriter extends Writer {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final Writer out;
+
+    public JsonStringWriter(Writer out) {
+        this.out = out;
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        int start = off;
+        int end = off + len;
+        for (int i = off; i < end; i++) {
+            String escaped = escape(cbuf[i]);
+            if (escaped != null) {
+                out.write(cbuf, start, i - start);
+                out.write(escaped);
+                start = i + 1;
+            }
+        }
+        out.write(cbuf, start, end - start);
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        int start = off;
+        int end = off + len;
+        for (int i = off; i < end; i++) {
+            String escaped = escape(str.charAt(i));
+            if (escaped != null) {
+                out.write(str, start, i - start);
+                out.write(escaped);
+                start = i + 1;
+            }
+        }
+        out.write(str, start, end - start);
+    }
+
+    /**
+     * @return the escape sequence for the character or <code>null</code> if
+     *         it does not need to be escaped
+     */
+    private static String escape(char c) {
+        switch (c) {
+        case '"':
+            return "\\\"";
+        case '\\':
+            return "\\\\";
+        case '\n':
+            return "\\n";
+        case '\r':
+            return "\\r";
+        case '\t':
+            return "\\t";
+        case '\b':
+            return "\\b";
+        case '\f':
+            return "\\f";
+        default:
+            if (c < 0x20) {
+                return new String(new char[] { '\\', 'u', '0', '0', HEX[c >> 4], HEX[c & 0xF] });
+            }
+            return null;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
@@ -18,21 +18,31 @@
 
 package com.metaphacts.data.rdf;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Sets;
 
+import org.eclipse.rdf4j.common.iteration.Iterations;
 import org.eclipse.rdf4j.model.IRI;
 import org.eclipse.rdf4j.model.Model;
 import org.eclipse.rdf4j.model.Resource;
 import org.eclipse.rdf4j.model.Statement;
 import org.eclipse.rdf4j.model.Value;
 import org.eclipse.rdf4j.model.vocabulary.RDF;
+import org.eclipse.rdf4j.query.QueryLanguage;
 import org.eclipse.rdf4j.query.QueryResults;
+import org.eclipse.rdf4j.query.TupleQuery;
+import org.eclipse.rdf4j.query.TupleQueryResult;
 import org.eclipse.rdf4j.repository.Repository;
 import org.eclipse.rdf4j.repository.RepositoryConnection;
 import org.eclipse.rdf4j.repository.RepositoryException;
 import org.eclipse.rdf4j.repository.RepositoryResult;
+import org.eclipse.rdf4j.rio.ntriples.NTriplesUtil;
 
 import com.google.common.base.Throwables;
 import static com.google.common.base.Preconditions.checkNotNull;
@@ -42,12 +52,21 @@
  * Collection of repository read-only utilities to be performed on the supplied
  * {@link Repository}. Mostly delegating to native {@link RepositoryConnection}
  * methods, however, taking care for properly closing all connections.
+ * Connections are obtained through {@link UnitOfWork#getConnection(Repository)},
+ * i.e. all methods share a single connection while a {@link UnitOfWork} is
+ * active on the current thread.
  * 
  * @author Johannes Trame <jt@metaphacts.com>
  *
  */
 public class ReadConnection {
     
+    /**
+     * Maximum number of IRIs to be checked with a single query in
+     * {@link #getExistingResources(Collection)}.
+     */
+    public static final int EXISTENCE_CHECK_BATCH_SIZE = 500;
+    
     private Repository repository;
     
     private boolean inference;
@@ -89,7 +108,7 @@ public Repository getRepository(){
     public Set<Resource> getTypes(IRI subject){
         checkNotNull(subject, "subject must not be null.");
         Set<Resource> types =  Sets.newLinkedHashSet();
-        try(RepositoryConnection con = repository.getConnection()){
+        try(RepositoryConnection con = UnitOfWork.getConnection(this.repository)){
             RepositoryResult<Statement> stmts = con.getStatements(subject, RDF.TYPE, null, this.inference);
             while(stmts.hasNext()){
                 Statement s = stmts.next();
@@ -113,7 +132,7 @@ public Set<Resource> getTypes(IRI subject){
      * @return
      */
     public boolean hasStatement(Resource resource, IRI uri, Value value, Resource... contexts){
-        try(RepositoryConnection con = this.repository.getConnection()){
+        try(RepositoryConnection con = UnitOfWork.getConnection(this.repository)){
             return con.hasStatement(resource, uri, value, this.inference, contexts);
         }
     }
@@ -126,7 +145,7 @@ public boolean hasStatement(Resource resource, IRI uri, Value value, Resource...
      */
     public boolean hasOutgoingStatements(IRI subject){
         checkNotNull(subject, "subject must not be null.");
-        try(RepositoryConnection con = this.repository.getConnection()){
+        try(RepositoryConnection con = UnitOfWork.getConnection(this.repository)){
             return con.hasStatement(subject, null, null,this.inference);
         }
     }
@@ -140,11 +159,49 @@ public boolean hasOutgoingStatements(IRI subject){
      */
     public boolean hasIncomingStatements(IRI subject){
         checkNotNull(subject, "subject must not be null.");
-        try(RepositoryConnection con = this.repository.getConnection()){
+        try(RepositoryConnection con = UnitOfWork.getConnection(this.repository)){
             return con.hasStatement(null, null, subject,this.inference);
         }
     }
     
+    /**
+     * Returns the subset of the supplied IRIs which have any in-coming or
+     * out-going edges in any named graph, i.e. the batched equivalent of
+     * {@link #hasOutgoingStatements(IRI)} || {@link #hasIncomingStatements(IRI)}.
+     * All IRIs are checked on a single connection using <code>VALUES</code>
+     * based queries of at most {@link #EXISTENCE_CHECK_BATCH_SIZE} IRIs each.
+     * 
+     * @param iris
+     * @return
+     */
+    public Set<IRI> getExistingResources(Collection<IRI> iris){
+        checkNotNull(iris, "iris must not be null.");
+        Set<IRI> existing = Sets.newHashSet();
+        if(iris.isEmpty()){
+            return existing;
+        }
+        try(RepositoryConnection con = UnitOfWork.getConnection(this.repository)){
+            for(List<IRI> batch : Iterables.partition(Sets.newLinkedHashSet(iris), EXISTENCE_CHECK_BATCH_SIZE)){
+                String values = batch.stream().map(NTriplesUtil::toNTriplesString).collect(Collectors.joining(" "));
+                String query = "SELECT DISTINCT ?resource WHERE { VALUES ?resource { " + values + " } "
+                        + "{ ?resource ?p ?o } UNION { ?s ?p ?resource } }";
+                TupleQuery tq = con.prepareTupleQuery(QueryLanguage.SPARQL, query);
+                tq.setIncludeInferred(this.inference);
+                try(TupleQueryResult result = tq.evaluate()){
+                    while(result.hasNext()){
+                        Value v = result.next().getValue("resource");
+                        if(v instanceof IRI){
+                            existing.add((IRI)v);
+                        }
+                    }
+                }
+            }
+        } catch (RepositoryException e) {
+            throw Throwables.propagate(e);
+        }
+        return existing;
+    }
+    
     /**
      * Returns all out-going statements for the specified subject.
      * Subject must not be not.
@@ -153,7 +210,7 @@ public boolean hasIncomingStatements(IRI subject){
      */
     public Model getOutgoingStatements(IRI subject){
         checkNotNull(subject, "subject must not be null.");
-        try(RepositoryConnection con = this.repository.getConnection()){
+        try(RepositoryConnection con = UnitOfWork.getConnection(this.repository)){
             return QueryResults.asModel(con.getStatements(subject, null,null));
         }
     }
@@ -166,7 +223,7 @@ public Model getOutgoingStatements(IRI subject){
      */
     public Model getContext(IRI context){
         checkNotNull(context, "context must not be null.");
-        try(RepositoryConnection con = this.repository.getConnection()){
+        try(RepositoryConnection con = UnitOfWork.getConnection(this.repository)){
             return QueryResults.asModel(con.getStatements(null, null, null, context));
         }
     }
@@ -182,13 +239,60 @@ public Model getContext(IRI context){
      * @throws RepositoryException
      */
     public Model getStatements(Resource subject, IRI predicate, Value object) throws RepositoryException{
-        try(RepositoryConnection con = this.repository.getConnection()){
+        try(RepositoryConnection con = UnitOfWork.getConnection(this.repository)){
             return QueryResults.asModel(con.getStatements(subject, predicate, object, this.inference));
         }
     }
     
 
     
+    /**
+     * Streaming variant of {@link #getStatements(Resource, IRI, Value)}, i.e.
+     * statements are not materialized into a {@link Model} but read lazily
+     * from the repository. The underlying connection stays open until the
+     * stream is closed, as such clients <b>MUST</b> close the stream:
+     * <code>
+     * try(Stream&lt;Statement&gt; stmts = read.streamStatements(...)){
+     * ...
+     * }
+     * </code>
+     * 
+     * @param subject
+     * @param predicate
+     * @param object
+     * @param contexts
+     * @return
+     * @throws RepositoryException
+     */
+    public Stream<Statement> streamStatements(Resource subject, IRI predicate, Value object, Resource... contexts) throws RepositoryException{
+        RepositoryConnection con = UnitOfWork.getConnection(this.repository);
+        try{
+            RepositoryResult<Statement> result = con.getStatements(subject, predicate, object, this.inference, contexts);
+            return Iterations.stream(result).onClose(() -> {
+                try{
+                    result.close();
+                }finally{
+                    con.close();
+                }
+            });
+        }catch(RepositoryException e){
+            con.close();
+            throw e;
+        }
+    }
+    
+    /**
+     * Streaming variant of {@link #getContext(IRI)}, see
+     * {@link #streamStatements(Resource, IRI, Value, Resource...)}.
+     * 
+     * @param context
+     * @return
+     */
+    public Stream<Statement> streamContext(IRI context){
+        checkNotNull(context, "context must not be null.");
+        return streamStatements(null, null, null, context);
+    }
+    
     /**
      * Whether the specified subject has the given rdf:type.
      * @param subject
@@ -198,7 +302,7 @@ public Model getStatements(Resource subject, IRI predicate, Value object) throws
     public boolean hasType(IRI subject, IRI type){
         checkNotNull(subject, "subject must not be null.");
         checkNotNull(type, "type must not be null.");
-        try(RepositoryConnection con = this.repository.getConnection()){
+        try(RepositoryConnection con = UnitOfWork.getConnection(this.repository)){
             return con.hasStatement(subject, RDF.TYPE, type, this.inference);
         }
     }
@@ -212,7 +316,7 @@ public boolean hasType(IRI subject, IRI type){
      * @return
      */
     public long size(Resource... contexts){
-        try(RepositoryConnection con = this.repository.getConnection()){
+        try(RepositoryConnection con = UnitOfWork.getConnection(this.repository)){
             return con.size(contexts);
         }
     }
@@ -0,0 +1,312 @@
+/*
+ * Copyright (C) 2015-2017, metaphacts GmbH
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, you can receive a copy
+ * of the GNU Lesser General Public License from http://www.gnu.org/
+ */
+
+package com.metaphacts.data.rdf;
+
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.rdf4j.IsolationLevel;
+import org.eclipse.rdf4j.IsolationLevels;
+import org.eclipse.rdf4j.repository.Repository;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.repository.RepositoryException;
+import org.eclipse.rdf4j.repository.base.RepositoryConnectionWrapper;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Binds a single {@link RepositoryConnection} (and optionally a transaction,
+ * e.g. a read snapshot) to the current thread for the duration of an
+ * operation. While a unit of work is open, all connections obtained through
+ * {@link #getConnection(Repository)} for the same repository, in particular by
+ * {@link ReadConnection} and the LDP implementations, share this connection
+ * instead of opening (and closing) a connection per repository access.
+ *
+ * <p>
+ * Units of work are meant to be used with try-with-resources:
+ * <code>
+ * try(UnitOfWork uow = UnitOfWork.begin(repository)){
+ * ...
+ * uow.commit(); // only if started with beginTransaction
+ * }
+ * </code>
+ * Opening a unit of work for a repository which is already bound to the
+ * current thread joins the existing one, i.e. only the outermost unit of work
+ * closes the connection.
+ * </p>
+ *
+ * <p>
+ * Connections returned while a unit of work is active ignore
+ * {@link RepositoryConnection#close()}. If the unit of work holds a
+ * transaction, nested calls to begin/commit join the outer transaction.
+ * </p>
+ *
+ * <p>
+ * In addition the class counts the connections actually opened by the current
+ * thread, which allows to instrument how many connections a single request
+ * requires (see {@link #resetOpenedConnections()} and
+ * {@link #getOpenedConnections()}).
+ * </p>
+ */
+public class UnitOfWork implements AutoCloseable {
+
+    private static final Logger logger = LogManager.getLogger(UnitOfWork.class);
+
+    private static final ThreadLocal<Map<Repository, UnitOfWork>> bound = new ThreadLocal<Map<Repository, UnitOfWork>>() {
+        @Override
+        protected Map<Repository, UnitOfWork> initialValue() {
+            return Maps.newHashMap();
+        }
+    };
+
+    private static final ThreadLocal<int[]> openedConnections = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[1];
+        }
+    };
+
+    private final Repository repository;
+    private final RepositoryConnection connection;
+    private final boolean transactional;
+    private final boolean readOnly;
+    private int nesting = 0;
+    private boolean rollbackOnly = false;
+
+    private UnitOfWork(Repository repository, RepositoryConnection connection, boolean transactional, boolean readOnly) {
+        this.repository = repository;
+        this.connection = connection;
+        this.transactional = transactional;
+        this.readOnly = readOnly;
+    }
+
+    /**
+     * Opens a unit of work on the specified repository (or joins the one
+     * already bound to the current thread) without a transaction.
+     */
+    public static UnitOfWork begin(Repository repository) throws RepositoryException {
+        return begin(repository, false, null);
+    }
+
+    /**
+     * Opens a unit of work on the specified repository (or joins the one
+     * already bound to the current thread) reading from a consistent snapshot
+     * of the repository. Snapshots are read-only, i.e. do not need to be
+     * committed and nested operations must not start transactions.
+     */
+    public static UnitOfWork beginSnapshot(Repository repository) throws RepositoryException {
+        return begin(repository, true, IsolationLevels.SNAPSHOT);
+    }
+
+    /**
+     * Opens a unit of work on the specified repository (or joins the one
+     * already bound to the current thread) holding a transaction, which needs
+     * to be committed explicitly with {@link #commit()}. Otherwise it will be
+     * rolled back when closing the unit of work.
+     */
+    public static UnitOfWork beginTransaction(Repository repository) throws RepositoryException {
+        return begin(repository, true, null);
+    }
+
+    private static UnitOfWork begin(Repository repository, boolean transactional, IsolationLevel isolationLevel) throws RepositoryException {
+        UnitOfWork current = bound.get().get(repository);
+        if (current != null) {
+            if (transactional && !current.transactional) {
+                throw new IllegalStateException(
+                        "Can not start a transactional unit of work within a non-transactional one.");
+            }
+            current.nesting++;
+            return current;
+        }
+        RepositoryConnection con = openConnection(repository);
+        try {
+            if (isolationLevel != null) {
+                con.begin(isolationLevel);
+            } else if (transactional) {
+                con.begin();
+            }
+        } catch (RepositoryException e) {
+            con.close();
+            throw e;
+        }
+        UnitOfWork uow = new UnitOfWork(repository, con, transactional, IsolationLevels.SNAPSHOT.equals(isolationLevel));
+        bound.get().put(repository, uow);
+        return uow;
+    }
+
+    /**
+     * Returns a connection to the specified repository. If a unit of work is
+     * bound to the current thread for this repository, its connection is
+     * returned (wrapped such that closing it has no effect), otherwise a new
+     * connection is opened. In both cases clients <b>MUST</b> close the
+     * connection after use.
+     */
+    public static RepositoryConnection getConnection(Repository repository) throws RepositoryException {
+        UnitOfWork current = bound.get().get(repository);
+        if (current != null) {
+            return current.new BoundConnection();
+        }
+        return openConnection(repository);
+    }
+
+    /**
+     * Whether a unit of work is bound to the current thread for the specified
+     * repository.
+     */
+    public static boolean isBound(Repository repository) {
+        return bound.get().containsKey(repository);
+    }
+
+    private static RepositoryConnection openConnection(Repository repository) throws RepositoryException {
+        openedConnections.get()[0]++;
+        return repository.getConnection();
+    }
+
+    /**
+     * Number of connections opened by the current thread since the last call
+     * to {@link #resetOpenedConnections()}.
+     */
+    public static int getOpenedConnections() {
+        return openedConnections.get()[0];
+    }
+
+    public static void resetOpenedConnections() {
+        openedConnections.get()[0] = 0;
+    }
+
+    public Repository getRepository() {
+        return repository;
+    }
+
+    /**
+     * Commits the transaction of the unit of work. Has no effect when called on
+     * a joined (nested) unit of work, i.e. only the outermost unit of work
+     * commits.
+     */
+    public void commit() throws RepositoryException {
+        if (!transactional) {
+            throw new IllegalStateException("Unit of work has not been started with a transaction.");
+        }
+        if (nesting > 0) {
+            return;
+        }
+        if (rollbackOnly) {
+            throw new RepositoryException("Transaction has been marked as rollback-only by a nested operation.");
+        }
+        connection.commit();
+    }
+
+    @Override
+    public void close() throws RepositoryException {
+        if (nesting > 0) {
+            nesting--;
+            return;
+        }
+        bound.get().remove(repository);
+        try {
+            if (connection.isActive()) {
+                logger.debug("Rolling back uncommitted transaction of unit of work on repository {}.", repository);
+                connection.rollback();
+            }
+        } finally {
+            connection.close();
+        }
+    }
+
+    /**
+     * Connection handed out while the unit of work is active. Closing it has
+     * no effect and begin/commit join the transaction of the unit of work (if
+     * there is any). A transaction started through the connection itself is
+     * rolled back on close if it has not been committed, otherwise later
+     * operations of the unit of work would join the stale transaction.
+     */
+    private class BoundConnection extends RepositoryConnectionWrapper {
+
+        private boolean joined = false;
+        private boolean started = false;
+
+        BoundConnection() {
+            super(repository, connection);
+        }
+
+        @Override
+        public void begin() throws RepositoryException {
+            checkWritable();
+            if (getDelegate().isActive()) {
+                joined = true;
+            } else {
+                super.begin();
+                started = true;
+            }
+        }
+
+        @Override
+        public void begin(IsolationLevel level) throws RepositoryException {
+            checkWritable();
+            if (getDelegate().isActive()) {
+                joined = true;
+            } else {
+                super.begin(level);
+                started = true;
+            }
+        }
+
+        @Override
+        public void commit() throws RepositoryException {
+            if (joined) {
+                joined = false;
+            } else {
+                super.commit();
+                started = false;
+            }
+        }
+
+        @Override
+        public void rollback() throws RepositoryException {
+            if (joined) {
+                joined = false;
+                rollbackOnly = true;
+            } else {
+                super.rollback();
+                started = false;
+            }
+        }
+
+        private void checkWritable() {
+            if (readOnly) {
+                throw new IllegalStateException("Can not start a transaction within a read-only snapshot.");
+            }
+        }
+
+        @Override
+        public void close() throws RepositoryException {
+            if (joined) {
+                // closing without commit, the surrounding transaction must not succeed
+                rollbackOnly = true;
+            } else if (started) {
+                started = false;
+                if (getDelegate().isActive()) {
+                    logger.debug("Rolling back uncommitted transaction on connection bound to {}.", repository);
+                    getDelegate().rollback();
+                }
+            }
+        }
+    }
+}
@@ -23,8 +23,6 @@
 import java.util.Date;
 import java.util.Set;
 
-import javax.inject.Inject;
-
 import org.eclipse.rdf4j.model.IRI;
 import org.eclipse.rdf4j.model.Model;
 import org.eclipse.rdf4j.model.Resource;
@@ -42,7 +40,6 @@
 import org.eclipse.rdf4j.repository.RepositoryException;
 
 import com.google.common.base.Throwables;
-import com.metaphacts.cache.CacheManager;
 import com.metaphacts.data.rdf.PointedGraph;
 import com.metaphacts.vocabulary.LDP;
 import com.metaphacts.vocabulary.PROV;
@@ -52,9 +49,6 @@
  */
 public abstract class AbstractLDPContainer extends AbstractLDPResource implements LDPContainer {
 
-	@Inject
-    protected CacheManager cacheManager;
-
     public AbstractLDPContainer(IRI iri, Repository repository) {
         super(iri, repository);
     }
@@ -78,7 +72,7 @@ public Set<IRI> getLDPTypes() {
     }
 
     public IRI add(PointedGraph pointedGraph) throws RepositoryException {
-        try (RepositoryConnection connection = getRepository().getConnection()) {
+        try (RepositoryConnection connection = getConnection()) {
             add(pointedGraph, connection);
         }
         return pointedGraph.getPointer();
@@ -90,7 +84,7 @@ protected void add(PointedGraph pointedGraph, RepositoryConnection repConnection
     }
 
     public void update(PointedGraph pointedGraph) throws RepositoryException {
-        try (RepositoryConnection connection = getRepository().getConnection()) {
+        try (RepositoryConnection connection = getConnection()) {
             connection.begin();
             LDPResource toDelete = getLdpApi().getLDPResource(pointedGraph.getPointer());
             if(!AbstractLDPResource.class.isAssignableFrom(toDelete.getClass()))
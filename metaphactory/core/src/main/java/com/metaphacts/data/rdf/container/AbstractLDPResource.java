@@ -19,6 +19,9 @@
 package com.metaphacts.data.rdf.container;
 
 
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
@@ -31,7 +34,7 @@
 import org.apache.logging.log4j.Logger;
 import org.eclipse.rdf4j.model.IRI;
 import org.eclipse.rdf4j.model.Model;
-import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.Resource;
 import org.eclipse.rdf4j.model.Value;
 import org.eclipse.rdf4j.model.ValueFactory;
 import org.eclipse.rdf4j.model.impl.LinkedHashModel;
@@ -45,10 +48,13 @@
 import com.google.common.base.Throwables;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import com.google.inject.Injector;
+import com.metaphacts.cache.CacheManager;
 import com.metaphacts.config.NamespaceRegistry;
 import com.metaphacts.data.rdf.ReadConnection;
+import com.metaphacts.data.rdf.UnitOfWork;
 import com.metaphacts.vocabulary.LDP;
 
 /**
@@ -64,6 +70,9 @@ public abstract class AbstractLDPResource implements LDPResource {
     @Inject
     protected NamespaceRegistry ns;
 
+    @Inject
+    protected CacheManager cacheManager;
+
     @Inject //TODO move to a factory https://github.com/google/guice/wiki/AssistedInject
     private Injector injector;
 
@@ -127,22 +136,92 @@ public IRI getContextIRI(){
     }
 
     public void delete() throws RepositoryException {
+        Set<IRI> deletedResources = Sets.newLinkedHashSet();
         try (RepositoryConnection connection = getConnection()) {
-            delete(connection);
+            connection.begin();
+            if (this instanceof LDPCustomDeletion) {
+                // the subtree is collected beforehand, since the implementation does not report it
+                addSubtree(LDPContainmentTree.load(connection, this.getResourceIRI()), this.getResourceIRI(),
+                        deletedResources);
+                delete(connection);
+            } else {
+                delete(connection, deletedResources);
+            }
+            connection.commit();
         }
+        cacheManager.invalidateResources(Lists.newArrayList(deletedResources));
     }
 
+    /**
+     * Deletes the resource within the transaction of the caller.
+     * Implementations overriding this method need to implement
+     * {@link LDPCustomDeletion}, otherwise it is bypassed when the resource is
+     * deleted as part of a container tree.
+     */
     protected void delete(RepositoryConnection repConnection) throws RepositoryException {
-        for (Statement stmt : getReadConnection().getStatements(this.getResourceIRI(), LDP.contains, null)) {
-            try {
-                LDPResource instance = LDPImplManager.getLDPImplementation((IRI) stmt.getObject(), getLdpApi().getLDPTypesFromRepository((IRI) stmt.getObject()), this.repository);
-                if(AbstractLDPResource.class.isAssignableFrom(instance.getClass()))
-                    ((AbstractLDPResource)instance).delete(repConnection);
-            } catch (Exception e) {
-                throw Throwables.propagate(e);
+        delete(repConnection, Sets.newLinkedHashSet());
+    }
+
+    /**
+     * Deletes the resource together with all resources it transitively
+     * ldp:contains. The entire subtree is retrieved with a single property path
+     * query and all affected named graphs are cleared with one batched
+     * {@link RepositoryConnection#clear(Resource...)} call on the supplied
+     * connection, i.e. within the transaction of the caller.
+     *
+     * Contained resources whose implementation is marked as
+     * {@link LDPCustomDeletion} are instantiated and delegated to (together
+     * with their own subtree) in order to preserve type specific delete
+     * behaviour.
+     *
+     * @param repConnection
+     * @param deletedResources will be filled with the IRIs of all deleted resources
+     * @throws RepositoryException
+     */
+    protected void delete(RepositoryConnection repConnection, Set<IRI> deletedResources) throws RepositoryException {
+        LDPContainmentTree tree = LDPContainmentTree.load(repConnection, this.getResourceIRI());
+
+        List<Resource> contextsToClear = Lists.newArrayList(this.getContextIRI());
+        deletedResources.add(this.getResourceIRI());
+        Deque<IRI> queue = new ArrayDeque<>(tree.getChildren(this.getResourceIRI()));
+        while (!queue.isEmpty()) {
+            IRI child = queue.poll();
+            if (!deletedResources.add(child)) {
+                // already reached via another parent
+                continue;
+            }
+            Set<IRI> childTypes = tree.getTypes(child);
+            if (LDPCustomDeletion.class.isAssignableFrom(LDPImplManager.getLDPImplementationClass(child, childTypes))) {
+                logger.trace("Delegating deletion of {} to its LDP implementation.", child);
+                addSubtree(tree, child, deletedResources);
+                try {
+                    LDPResource instance = LDPImplManager.getLDPImplementation(child, childTypes, this.repository);
+                    ((AbstractLDPResource) instance).delete(repConnection);
+                } catch (Exception e) {
+                    throw Throwables.propagate(e);
+                }
+                continue;
+            }
+            contextsToClear.add(tree.getContext(child));
+            queue.addAll(tree.getChildren(child));
+        }
+
+        logger.debug("Deleting LDP resource {} by clearing {} named graphs.", this.getResourceIRI(), contextsToClear.size());
+        repConnection.clear(contextsToClear.toArray(new Resource[contextsToClear.size()]));
+    }
+
+    /**
+     * Adds the resource and all resources it transitively ldp:contains.
+     */
+    private static void addSubtree(LDPContainmentTree tree, IRI root, Set<IRI> resources) {
+        Deque<IRI> queue = new ArrayDeque<>();
+        queue.add(root);
+        while (!queue.isEmpty()) {
+            IRI resource = queue.poll();
+            if (resources.add(resource) || resource.equals(root)) {
+                queue.addAll(tree.getChildren(resource));
             }
         }
-        repConnection.clear(this.getContextIRI());
     }
 
     public Set<IRI> getLDPTypes() {
@@ -167,8 +246,10 @@ public boolean isContainer() {
     }
 
     /**
-     * Returns a {@link RepositoryConnection}. Clients <b>MUST</b> take care for
-     * closing connections properly using, for example, auto-closeables:
+     * Returns a {@link RepositoryConnection}, which is shared with all other
+     * repository accesses of the current thread while a {@link UnitOfWork} is
+     * active. Clients <b>MUST</b> take care for closing connections properly
+     * using, for example, auto-closeables:
      * <code>
      * try(RepositoryConnection con = getConnection()){
      * ...
@@ -178,7 +259,7 @@ public boolean isContainer() {
      * @throws RepositoryException
      */
     protected RepositoryConnection getConnection() throws RepositoryException{
-        return getRepository().getConnection();
+        return UnitOfWork.getConnection(getRepository());
     }
 
     /**
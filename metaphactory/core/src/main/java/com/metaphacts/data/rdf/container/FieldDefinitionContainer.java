@@ -18,6 +18,8 @@
 
 package com.metaphacts.data.rdf.container;
 
+import java.util.Collections;
+
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.eclipse.rdf4j.model.IRI;
@@ -65,9 +67,16 @@ public void initialize() {
         }
     }
 
+    /**
+     * Besides adding the field definition, purges the field IRI from all caches,
+     * since the {@link com.metaphacts.cache.FieldDefinitionCache} holds negative
+     * entries for unknown fields. Updates and deletes are purged by the super class.
+     */
     @Override
     public IRI add(PointedGraph pointedGraph) throws RepositoryException {
-        return super.add(pointedGraph);
+        IRI field = super.add(pointedGraph);
+        cacheManager.invalidateResources(Collections.singletonList(field));
+        return field;
     }
 
     @Override
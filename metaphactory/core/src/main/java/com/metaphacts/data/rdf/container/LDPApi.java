@@ -19,8 +19,12 @@
 package com.metaphacts.data.rdf.container;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URISyntaxException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -28,9 +32,12 @@
 import java.util.Set;
 import java.util.UUID;
 
+import javax.inject.Inject;
+
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.metaphacts.api.sparql.SparqlOperationBuilder;
+import com.metaphacts.cache.CacheManager;
 import org.apache.commons.lang3.RandomStringUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -52,7 +59,12 @@
 import org.eclipse.rdf4j.repository.Repository;
 import org.eclipse.rdf4j.repository.RepositoryConnection;
 import org.eclipse.rdf4j.repository.RepositoryException;
+import org.eclipse.rdf4j.repository.RepositoryResult;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.RDFHandler;
+import org.eclipse.rdf4j.rio.RDFHandlerException;
 import org.eclipse.rdf4j.rio.RDFParseException;
+import org.eclipse.rdf4j.rio.RDFParser;
 import org.eclipse.rdf4j.rio.Rio;
 import org.eclipse.rdf4j.rio.UnsupportedRDFormatException;
 
@@ -61,6 +73,7 @@
 import com.metaphacts.data.rdf.ModelUtils;
 import com.metaphacts.data.rdf.PointedGraph;
 import com.metaphacts.data.rdf.ReadConnection;
+import com.metaphacts.data.rdf.UnitOfWork;
 import com.metaphacts.vocabulary.LDP;
 import com.metaphacts.vocabulary.PROV;
 
@@ -72,6 +85,9 @@ public class LDPApi {
 
     private static final Logger logger = LogManager.getLogger(LDPApi.class);
 
+    @Inject
+    private static CacheManager cacheManager;
+
     private final ReadConnection read ;
     private final ValueFactory vf;
     private final Repository repository;
@@ -236,6 +252,107 @@ public Model exportLDPResource(List<IRI> iris) throws Exception {
         return result;
     }
 
+    /**
+     * Streaming variant of {@link #exportLDPResource(List)}. Rather than
+     * building the complete recursive model in memory, the named graphs of the
+     * exported resources and everything they (transitively) ldp:contains are
+     * written to the supplied handler one after the other in containment order
+     * (i.e. the graph of a container always precedes the graphs of its
+     * children). This makes the output suitable for line based formats like
+     * N-Quads and for {@link #importLDPResource(InputStream, RDFFormat, IRI, int)}.
+     *
+     * As in the non-streaming export, the ldp:contains statement pointing to an
+     * exported root resource is replaced by a blank node hint typed with the
+     * rdf:types of the original parent container.
+     */
+    public void exportLDPResource(List<IRI> iris, RDFHandler handler) throws Exception {
+        handler.startRDF();
+        // share a single connection between all lookups of the export
+        try (UnitOfWork uow = UnitOfWork.begin(repository);
+                RepositoryConnection con = UnitOfWork.getConnection(repository)) {
+            for (IRI iri : iris) {
+                LDPResource root = getLDPResource(iri);
+                Map<Resource, BNode> hints = Maps.newHashMap();
+                for (Statement triple : read.getStatements(null, LDP.contains, iri)) {
+                    BNode containerBNode = vf.createBNode();
+                    hints.put(triple.getContext(), containerBNode);
+                    for (IRI containerType : getLDPTypesFromRepository((IRI) triple.getSubject())) {
+                        handler.handleStatement(vf.createStatement(containerBNode, RDF.TYPE, containerType));
+                    }
+                }
+                for (Map.Entry<Resource, BNode> hint : hints.entrySet()) {
+                    handler.handleStatement(vf.createStatement(hint.getValue(), LDP.contains, iri, hint.getKey()));
+                }
+                exportContext(con, root.getContextIRI(), iri, handler);
+
+                LDPContainmentTree tree = LDPContainmentTree.load(con, iri);
+                Set<IRI> exported = Sets.newHashSet(iri);
+                Deque<IRI> queue = new ArrayDeque<>(tree.getChildren(iri));
+                while (!queue.isEmpty()) {
+                    IRI child = queue.poll();
+                    if (!exported.add(child)) {
+                        continue;
+                    }
+                    exportContext(con, tree.getContext(child), null, handler);
+                    queue.addAll(tree.getChildren(child));
+                }
+            }
+        }
+        handler.endRDF();
+    }
+
+    /**
+     * Writes all statements of the specified named graph to the handler,
+     * omitting the ldp:contains statements pointing to the given export root.
+     */
+    private void exportContext(RepositoryConnection con, Resource context, IRI exportRoot, RDFHandler handler) {
+        try (RepositoryResult<Statement> stmts = con.getStatements(null, null, null, false, context)) {
+            while (stmts.hasNext()) {
+                Statement st = stmts.next();
+                if (exportRoot != null && st.getPredicate().equals(LDP.contains) && st.getObject().equals(exportRoot)) {
+                    continue;
+                }
+                // some stores do not return the context if it is given as a parameter
+                handler.handleStatement(vf.createStatement(st.getSubject(), st.getPredicate(), st.getObject(), context));
+            }
+        }
+    }
+
+    /**
+     * Streaming import of LDP resources exported with
+     * {@link #exportLDPResource(List, RDFHandler)}, committing every
+     * <code>chunkSize</code> resources. Resources keep their IRIs and resources
+     * which already exist are skipped, i.e. a failed import can be resumed by
+     * re-submitting the same data.
+     *
+     * @see LDPStreamingImporter
+     * @param in           the serialized named graphs in containment order
+     * @param format       format of the input, usually {@link RDFFormat#NQUADS}
+     * @param containerIRI container to import the root resources into
+     * @param chunkSize    number of resources to commit per transaction
+     */
+    public LDPStreamingImporter.Result importLDPResource(
+        InputStream in,
+        RDFFormat format,
+        IRI containerIRI,
+        int chunkSize
+    ) throws Exception {
+        LDPResource container = getLDPResource(containerIRI);
+        if (!container.isContainer()) {
+            throw new IllegalArgumentException("Target resource " + containerIRI + " is not a container.");
+        }
+        LDPStreamingImporter importer = new LDPStreamingImporter(this.repository, containerIRI, chunkSize, cacheManager);
+        RDFParser parser = Rio.createParser(format, vf);
+        parser.setRDFHandler(importer);
+        try {
+            parser.parse(in, "");
+        } catch (RDFParseException | RDFHandlerException e) {
+            throw new IllegalStateException("Streaming import into " + containerIRI + " failed ("
+                    + importer.getResult() + "). Re-submitting the data will skip the already imported resources. "
+                    + "Cause: " + e.getMessage(), e);
+        }
+        return importer.getResult();
+    }
 
     private Set<IRI> getImportPossibleContainers(Model resource) {
         // look for blank nodes with rdf:type predicates
@@ -278,7 +395,7 @@ private Set<IRI> getImportPossibleContainers(Model resource) {
 
         Set<IRI> result = Sets.newHashSet();
         SparqlOperationBuilder<TupleQuery> builder = SparqlOperationBuilder.create(query, TupleQuery.class);
-        try (RepositoryConnection readConn = read.getRepository().getConnection()) {
+        try (RepositoryConnection readConn = UnitOfWork.getConnection(read.getRepository())) {
             TupleQuery tq = builder.build(readConn);
             try (TupleQueryResult queryResult = tq.evaluate()){
                 while (queryResult.hasNext()) {
@@ -351,6 +468,9 @@ private List<IRI> addImportGraph(List<IRI> roots, Model graph, String instanceBa
 
         List<IRI> topSort = getImportTopologicalSort(adjacencyList, roots);
 
+        // check existence of all items at once rather than one by one
+        Set<IRI> existingItems = read.getExistingResources(topSort);
+
         // in order of topsort add triples from child context into container of A, rename if needed
         Map<IRI, IRI> renamedIRIs = Maps.newHashMap();
         for (IRI item : topSort) {
@@ -362,7 +482,7 @@ private List<IRI> addImportGraph(List<IRI> roots, Model graph, String instanceBa
                 // Use source root IRI if it doesn't exist in target DB
                 // else generate it from rdfs:label (assume "imported" if none)
                 IRI itemRenamed = null;
-                if (!resourceAlreadyExists(item)) {
+                if (!existingItems.contains(item)) {
                     itemRenamed = item;
                 } else {
                     String slug = getImportSlugForResource(model, item);
@@ -373,6 +493,7 @@ private List<IRI> addImportGraph(List<IRI> roots, Model graph, String instanceBa
                 LDPContainer parentContainer = getImportContainerToAddInto(insertIntoIRI);
                 IRI createdResourceURI = parentContainer.add(new PointedGraph(itemRenamed, modelRenamed));
                 renamedIRIs.put(item, createdResourceURI);
+                existingItems.add(createdResourceURI);
             }
         }
 
@@ -442,13 +563,14 @@ public List<LDPResource> importLDPResource(
         filteredResource = removeContainerItemMetadata(filteredResource, roots);
 
         // check if all Objects \setminus Subjects are present in DB
+        Set<Resource> subjects = filteredResource.subjects();
+        Set<IRI> objectsToCheck = Sets.newHashSet();
         for (Value object : filteredResource.objects()) {
-            if (object instanceof IRI && !filteredResource.subjects().contains(object)) {
-                if (!(read.hasOutgoingStatements((IRI) object) || read.hasIncomingStatements((IRI) object))) {
-                    unknownObjects.add((IRI) object);
-                }
+            if (object instanceof IRI && !subjects.contains(object)) {
+                objectsToCheck.add((IRI) object);
             }
         }
+        unknownObjects.addAll(Sets.difference(objectsToCheck, read.getExistingResources(objectsToCheck)));
 
         // if import request can be done immediately, do it, else put it in delayed cache
         boolean success = (unknownObjects.isEmpty() || force) && (possibleContainers.size() == 1 || containerIRI.isPresent());
@@ -509,23 +631,29 @@ Set<IRI> getLDPTypesFromRepository(IRI  uri){
 
 
     private boolean resourceAlreadyExists(IRI  uri) throws RepositoryException {
-        return read.hasOutgoingStatements(uri) || read.hasIncomingStatements(uri);
+        return !read.getExistingResources(Collections.singleton(uri)).isEmpty();
    }
 
+    /**
+     * Mints the IRI for a new resource in the target container. If a slug is
+     * given, it is either used as is (absolute IRI) or as local name, unless a
+     * resource with this IRI exists already. Otherwise (and on collision) the
+     * local name is a random UUID, which is considered collision free and as
+     * such does not require any existence check.
+     */
     private IRI createResourceURI(Optional<String> slug, IRI targetContainer, String newInstanceBase) throws  RepositoryException, URISyntaxException {
-        String _slug = slug.orElse(generateRundomSlug()).replaceAll("\\s", "_");
-        if(URIUtil.isValidURIReference(_slug) && !resourceAlreadyExists(vf.createIRI(_slug)))
-            return vf.createIRI(slug.get());
-
-        String localName = _slug;
-        if(URIUtil.isValidURIReference(_slug))
-            localName = generateRundomSlug();
+        if(slug.isPresent()){
+            String _slug = slug.get().replaceAll("\\s", "_");
+            IRI uri = URIUtil.isValidURIReference(_slug) ? vf.createIRI(_slug) : mintResourceURI(targetContainer, newInstanceBase, _slug);
+            if(!resourceAlreadyExists(uri))
+                return uri;
+        }
+        return mintResourceURI(targetContainer, newInstanceBase, generateRundomSlug());
+    }
 
+    private IRI mintResourceURI(IRI targetContainer, String newInstanceBase, String localName) {
         String host = newInstanceBase.endsWith("/") ? newInstanceBase : newInstanceBase+"/";
-        IRI uri = vf.createIRI(host+targetContainer.getLocalName()+"/"+localName); //TODO something better than default namespace e.g. physical server address
-        if(resourceAlreadyExists(uri))
-                return createResourceURI(Optional.ofNullable(RandomStringUtils.randomAlphabetic(40).replaceAll("\\s", "_")), targetContainer,  newInstanceBase);
-        return uri;
+        return vf.createIRI(host+targetContainer.getLocalName()+"/"+localName); //TODO something better than default namespace e.g. physical server address
     }
 
 
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2015-2017, metaphacts GmbH
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, you can receive a copy
+ * of the GNU Lesser General Public License from http://www.gnu.org/
+ */
+
+package com.metaphacts.data.rdf.container;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.QueryLanguage;
+import org.eclipse.rdf4j.query.TupleQuery;
+import org.eclipse.rdf4j.query.TupleQueryResult;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.repository.RepositoryException;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.metaphacts.vocabulary.LDP;
+
+/**
+ * In-memory view on the ldp:contains subtree below a given LDP resource. The
+ * entire tree (including the named graph and the rdf:types of every contained
+ * resource) is retrieved with a single property path query, so that bulk
+ * operations like deletion or export do not need to look up every child
+ * individually.
+ *
+ * Only resource IRIs are held in memory, not the actual resource data.
+ */
+class LDPContainmentTree {
+
+    /**
+     * Retrieves the entire ldp:contains subtree below ?root, together with the
+     * named graph of every contained resource (which always holds the
+     * ldp:contains statement pointing to it) and its rdf:types.
+     */
+    private static final String CONTAINED_SUBTREE_QUERY = "SELECT ?parent ?child ?context ?type WHERE {"
+            + " ?root <" + LDP.contains + ">* ?parent ."
+            + " GRAPH ?context { ?parent <" + LDP.contains + "> ?child . }"
+            + " OPTIONAL { ?child a ?type . }"
+            + "}";
+
+    private final IRI root;
+    private final Map<IRI, Set<IRI>> children = Maps.newHashMap();
+    private final Map<IRI, Resource> contexts = Maps.newHashMap();
+    private final Map<IRI, Set<IRI>> types = Maps.newHashMap();
+
+    private LDPContainmentTree(IRI root) {
+        this.root = root;
+    }
+
+    /**
+     * Loads the containment tree below the specified root using the supplied
+     * connection, i.e. the result reflects uncommitted changes of an active
+     * transaction on that connection.
+     */
+    static LDPContainmentTree load(RepositoryConnection con, IRI root) throws RepositoryException {
+        LDPContainmentTree tree = new LDPContainmentTree(root);
+        TupleQuery tq = con.prepareTupleQuery(QueryLanguage.SPARQL, CONTAINED_SUBTREE_QUERY);
+        tq.setBinding("root", root);
+        try (TupleQueryResult result = tq.evaluate()) {
+            while (result.hasNext()) {
+                BindingSet bs = result.next();
+                Value parent = bs.getValue("parent");
+                Value child = bs.getValue("child");
+                if (!(parent instanceof IRI) || !(child instanceof IRI)) {
+                    continue;
+                }
+                tree.children.computeIfAbsent((IRI) parent, k -> Sets.newLinkedHashSet()).add((IRI) child);
+                tree.contexts.put((IRI) child, (Resource) bs.getValue("context"));
+                Set<IRI> childTypes = tree.types.computeIfAbsent((IRI) child, k -> Sets.newHashSet());
+                if (bs.getValue("type") instanceof IRI) {
+                    childTypes.add((IRI) bs.getValue("type"));
+                }
+            }
+        }
+        return tree;
+    }
+
+    IRI getRoot() {
+        return root;
+    }
+
+    /**
+     * Resources directly contained in the specified resource.
+     */
+    Set<IRI> getChildren(IRI resource) {
+        return children.getOrDefault(resource, Collections.emptySet());
+    }
+
+    /**
+     * Named graph of the specified contained resource or <code>null</code> if
+     * the resource is not part of the tree (or is the root itself).
+     */
+    Resource getContext(IRI resource) {
+        return contexts.get(resource);
+    }
+
+    /**
+     * rdf:types of the specified contained resource.
+     */
+    Set<IRI> getTypes(IRI resource) {
+        return types.getOrDefault(resource, Collections.emptySet());
+    }
+
+    /**
+     * Number of resources contained (transitively) in the root.
+     */
+    int size() {
+        return contexts.size();
+    }
+}
@@ -0,0 +1,28 @@
+/*
+ * Copyright (C) 2015-2017, metaphacts GmbH
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, you can receive a copy
+ * of the GNU Lesser General Public License from http://www.gnu.org/
+ */
+
+package com.metaphacts.data.rdf.container;
+
+/**
+ * Marks LDP implementations which override
+ * {@link AbstractLDPResource#delete(org.eclipse.rdf4j.repository.RepositoryConnection)}.
+ * Such resources are instantiated and delegated to when they are deleted as
+ * part of a container tree, instead of clearing their named graphs in bulk.
+ */
+public interface LDPCustomDeletion {
+}
@@ -69,12 +69,7 @@ public class LDPImplManager {
     private static Injector injector;
     
     public static LDPResource getLDPImplementation(IRI iri, Set<IRI> types, Repository repository) throws Exception{
-        Class<? extends LDPResource> cl = null;
-        if(knownContainerImplementations.containsKey(iri))
-            cl=knownContainerImplementations.get(iri);
-        else
-            cl = isContainer(iri, types) ? getContainerImplementation(iri, types) : getResourceImplementation(iri, types);
-            
+        Class<? extends LDPResource> cl = getLDPImplementationClass(iri, types);
         logger.trace("Selected implementation for LDP Container: " + cl);
         try {
             @SuppressWarnings("unchecked")
@@ -92,6 +87,22 @@ public static LDPResource getLDPImplementation(IRI iri, Set<IRI> types, Reposito
         }
     }
     
+    /**
+     * Resolves the implementation class for the specified resource and
+     * rdf:types <b>without</b> instantiating it. Useful for deciding whether a
+     * (potentially expensive) instantiation is required at all, e.g. when
+     * processing entire container trees in bulk.
+     * 
+     * @param iri
+     * @param types
+     * @return
+     */
+    public static Class<? extends LDPResource> getLDPImplementationClass(IRI iri, Set<IRI> types){
+        if(knownContainerImplementations.containsKey(iri))
+            return knownContainerImplementations.get(iri);
+        return isContainer(iri, types) ? getContainerImplementation(iri, types) : getResourceImplementation(iri, types);
+    }
+    
     private static boolean isContainer(IRI iri, Set<IRI> types){
         boolean b = RootContainer.IRI.equals(iri) || !Collections.disjoint(types, Sets.newHashSet(LDP.Container, LDP.BasicContainer, LDP.DirectContainer));
         if(logger.isTraceEnabled()) logger.trace("Resource is a LDP Container: "+b );
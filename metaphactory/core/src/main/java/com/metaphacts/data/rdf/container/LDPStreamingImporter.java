@@ -0,0 +1,310 @@
+/*
+ * Copyright (C) 2015-2017, metaphacts GmbH
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, you can receive a copy
+ * of the GNU Lesser General Public License from http://www.gnu.org/
+ */
+
+package com.metaphacts.data.rdf.container;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.rdf4j.model.BNode;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.impl.LinkedHashModel;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.QueryLanguage;
+import org.eclipse.rdf4j.query.TupleQuery;
+import org.eclipse.rdf4j.query.TupleQueryResult;
+import org.eclipse.rdf4j.repository.Repository;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.repository.RepositoryException;
+import org.eclipse.rdf4j.rio.RDFHandlerException;
+import org.eclipse.rdf4j.rio.helpers.AbstractRDFHandler;
+import org.eclipse.rdf4j.rio.ntriples.NTriplesUtil;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.metaphacts.cache.CacheManager;
+import com.metaphacts.data.rdf.UnitOfWork;
+import com.metaphacts.vocabulary.LDP;
+
+/**
+ * Streaming counterpart of
+ * {@link LDPApi#importLDPResource(Model, Set, java.util.Optional, Set, boolean, String)}
+ * for the export format produced by
+ * {@link LDPApi#exportLDPResource(List, org.eclipse.rdf4j.rio.RDFHandler)},
+ * i.e. the named graphs of an LDP container tree emitted one after the other in
+ * containment order.
+ *
+ * <p>
+ * Only the named graphs of the current chunk are held in memory. Every chunk is
+ * checked for already existing resources with a single query and is committed
+ * in its own transaction. In contrast to the interactive import, resources keep
+ * their IRIs (the use case is migrating container trees between environments)
+ * and resources which already exist in the target repository are skipped. As a
+ * consequence an import that failed in the middle can simply be resumed by
+ * re-submitting the same payload.
+ * </p>
+ *
+ * <p>
+ * Graphs arriving before the graph of their parent container are deferred until
+ * the parent has been imported. Parents which neither exist in the target
+ * repository nor are part of the payload will fail the import at the very end.
+ * </p>
+ *
+ * <p>
+ * Since the graphs are written directly to the repository, the imported
+ * resources are purged from all platform caches after every committed chunk.
+ * </p>
+ */
+public class LDPStreamingImporter extends AbstractRDFHandler {
+
+    private static final Logger logger = LogManager.getLogger(LDPStreamingImporter.class);
+
+    public static final int DEFAULT_CHUNK_SIZE = 500;
+
+    /**
+     * Summary of a (possibly partially) completed streaming import.
+     */
+    public static class Result {
+        public List<IRI> roots = Lists.newArrayList();
+        public long importedResources;
+        public long skippedResources;
+        public long committedChunks;
+
+        @Override
+        public String toString() {
+            return String.format("imported: %d, skipped: %d, committed chunks: %d",
+                    importedResources, skippedResources, committedChunks);
+        }
+    }
+
+    /**
+     * The named graph of a single LDP resource together with the container it
+     * has to be added to.
+     */
+    private static class ResourceGraph {
+        final IRI resource;
+        final IRI parent;
+        final Resource context;
+        final Model graph;
+
+        ResourceGraph(IRI resource, IRI parent, Resource context, Model graph) {
+            this.resource = resource;
+            this.parent = parent;
+            this.context = context;
+            this.graph = graph;
+        }
+    }
+
+    private final Repository repository;
+    private final IRI targetContainer;
+    private final int chunkSize;
+    private final CacheManager cacheManager;
+    private final Result result = new Result();
+
+    private Resource currentContext;
+    private Model currentGraph = new LinkedHashModel();
+    private final List<ResourceGraph> chunk = Lists.newArrayList();
+
+    /**
+     * IRIs of LDP resources known to exist in the target repository, either
+     * because they have been imported or because they have been looked up.
+     */
+    private final Set<IRI> knownResources = Sets.newHashSet();
+    private final Map<IRI, List<ResourceGraph>> waitingForParent = Maps.newHashMap();
+
+    /**
+     * Resources imported in the current (uncommitted) chunk.
+     */
+    private final List<IRI> importedInChunk = Lists.newArrayList();
+
+    /**
+     * @param repository      the repository to import into
+     * @param targetContainer container to add the root resources of the payload to
+     * @param chunkSize       number of resource graphs to commit per transaction
+     * @param cacheManager    to invalidate the imported resources in
+     */
+    public LDPStreamingImporter(Repository repository, IRI targetContainer, int chunkSize, CacheManager cacheManager) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be a positive number.");
+        }
+        this.repository = repository;
+        this.targetContainer = targetContainer;
+        this.chunkSize = chunkSize;
+        this.cacheManager = cacheManager;
+        this.knownResources.add(targetContainer);
+    }
+
+    public Result getResult() {
+        return result;
+    }
+
+    @Override
+    public void handleStatement(Statement st) throws RDFHandlerException {
+        if (st.getContext() == null) {
+            // the default graph only holds the container type hints of the export
+            return;
+        }
+        if (!st.getContext().equals(currentContext)) {
+            flushGraph();
+            currentContext = st.getContext();
+        }
+        currentGraph.add(st);
+    }
+
+    @Override
+    public void endRDF() throws RDFHandlerException {
+        flushGraph();
+        processChunk();
+        if (!waitingForParent.isEmpty()) {
+            throw new RDFHandlerException("The following parent containers neither exist in the repository "
+                    + "nor are part of the imported data: " + waitingForParent.keySet());
+        }
+    }
+
+    private void flushGraph() {
+        if (currentGraph.isEmpty()) {
+            return;
+        }
+        chunk.add(toResourceGraph(currentContext, currentGraph));
+        currentGraph = new LinkedHashModel();
+        if (chunk.size() >= chunkSize) {
+            processChunk();
+        }
+    }
+
+    /**
+     * Determines the resource (and its parent) the named graph belongs to by
+     * means of the ldp:contains statement, which is always stored in the named
+     * graph of the contained resource. The placeholder blank node of root
+     * resources is replaced by the target container.
+     */
+    private ResourceGraph toResourceGraph(Resource context, Model graph) {
+        Model contains = graph.filter(null, LDP.contains, null);
+        if (contains.size() != 1 || !(contains.objects().iterator().next() instanceof IRI)) {
+            throw new RDFHandlerException("Named graph " + context
+                    + " must hold exactly one ldp:contains statement pointing to the LDP resource it belongs to.");
+        }
+        Statement stmt = contains.iterator().next();
+        IRI resource = (IRI) stmt.getObject();
+        if (stmt.getSubject() instanceof BNode) {
+            graph.remove(stmt);
+            graph.add(targetContainer, LDP.contains, resource, context);
+            result.roots.add(resource);
+            return new ResourceGraph(resource, targetContainer, context, graph);
+        }
+        if (!(stmt.getSubject() instanceof IRI)) {
+            throw new RDFHandlerException("Invalid parent container in named graph " + context);
+        }
+        return new ResourceGraph(resource, (IRI) stmt.getSubject(), context, graph);
+    }
+
+    private void processChunk() {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        importedInChunk.clear();
+        try (RepositoryConnection con = UnitOfWork.getConnection(repository)) {
+            Set<IRI> lookup = Sets.newHashSet();
+            for (ResourceGraph rg : chunk) {
+                lookup.add(rg.resource);
+                if (!knownResources.contains(rg.parent)) {
+                    lookup.add(rg.parent);
+                }
+            }
+            Set<IRI> existing = existingLDPResources(con, lookup);
+
+            con.begin();
+            for (ResourceGraph rg : chunk) {
+                if (existing.contains(rg.resource)) {
+                    logger.trace("Skipping import of {}, resource already exists.", rg.resource);
+                    result.skippedResources++;
+                    markKnown(con, rg.resource);
+                } else if (knownResources.contains(rg.parent) || existing.contains(rg.parent)) {
+                    knownResources.add(rg.parent);
+                    add(con, rg);
+                } else {
+                    waitingForParent.computeIfAbsent(rg.parent, k -> Lists.newArrayList()).add(rg);
+                }
+            }
+            con.commit();
+            result.committedChunks++;
+            logger.debug("Committed chunk of streaming LDP import into {} ({}).", targetContainer, result);
+        } catch (RepositoryException e) {
+            throw new RDFHandlerException("Failed to import chunk of LDP resources: " + e.getMessage(), e);
+        } finally {
+            chunk.clear();
+        }
+        if (!importedInChunk.isEmpty()) {
+            cacheManager.invalidateResources(Lists.newArrayList(importedInChunk));
+            importedInChunk.clear();
+        }
+    }
+
+    private void add(RepositoryConnection con, ResourceGraph rg) {
+        con.add(rg.graph, rg.context);
+        importedInChunk.add(rg.resource);
+        result.importedResources++;
+        markKnown(con, rg.resource);
+    }
+
+    /**
+     * Marks the resource as existing and adds all graphs which have been
+     * waiting for it as a parent container.
+     */
+    private void markKnown(RepositoryConnection con, IRI resource) {
+        knownResources.add(resource);
+        List<ResourceGraph> waiting = waitingForParent.remove(resource);
+        if (waiting != null) {
+            for (ResourceGraph rg : waiting) {
+                add(con, rg);
+            }
+        }
+    }
+
+    /**
+     * Checks in a single query which of the supplied IRIs are already LDP
+     * resources in the repository.
+     */
+    private static Set<IRI> existingLDPResources(RepositoryConnection con, Set<IRI> iris) {
+        Set<IRI> existing = Sets.newHashSet();
+        if (iris.isEmpty()) {
+            return existing;
+        }
+        String values = iris.stream().map(NTriplesUtil::toNTriplesString).collect(Collectors.joining(" "));
+        String query = "SELECT DISTINCT ?resource WHERE { VALUES ?resource { " + values + " } "
+                + "?resource a <" + LDP.Resource + "> . }";
+        TupleQuery tq = con.prepareTupleQuery(QueryLanguage.SPARQL, query);
+        try (TupleQueryResult res = tq.evaluate()) {
+            while (res.hasNext()) {
+                BindingSet bs = res.next();
+                if (bs.getValue("resource") instanceof IRI) {
+                    existing.add((IRI) bs.getValue("resource"));
+                }
+            }
+        }
+        return existing;
+    }
+}
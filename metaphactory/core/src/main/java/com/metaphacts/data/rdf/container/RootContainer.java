@@ -71,7 +71,7 @@ public void initialize() throws RepositoryException {
             m.add(vf.createStatement(this.getResourceIRI(), RDF.TYPE, LDP.Resource));
             m.add(vf.createStatement(this.getResourceIRI(), RDFS.LABEL,
                     vf.createLiteral("Root Container")));
-            try (RepositoryConnection connection = getRepository().getConnection()) {
+            try (RepositoryConnection connection = getConnection()) {
                 connection.add(m, getContextIRI());
             }
         }
@@ -31,6 +31,7 @@
 import com.google.inject.servlet.GuiceServletContextListener;
 import com.metaphacts.repository.RepositoryManager;
 import com.metaphacts.security.ShiroGuiceModule;
+import com.metaphacts.templates.TemplateWarmup;
 
 /**
  * @author Artem Kozlov <ak@metaphacts.com>
@@ -65,6 +66,8 @@ public void contextInitialized(ServletContextEvent event) {
         
         // Replace with proper onContextInitialized hook
         injector.getInstance(RepositoryManager.class).sentTestQueries();
+        // not on creation by the injector, since the apps install their templates only when the plugins are started
+        injector.getInstance(TemplateWarmup.class).start();
     }
 
     @Override
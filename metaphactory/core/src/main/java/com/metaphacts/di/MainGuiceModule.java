@@ -18,13 +18,17 @@
 
 package com.metaphacts.di;
 
+import java.io.File;
 import java.io.IOException;
+import java.net.URL;
 import java.util.Map;
 
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.servlet.ServletContext;
 
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.apache.shiro.authc.credential.CredentialsMatcher;
 import org.apache.shiro.authc.credential.DefaultPasswordService;
 import org.apache.shiro.authc.credential.PasswordMatcher;
@@ -42,14 +46,27 @@
 import com.google.inject.multibindings.MapBinder;
 import com.google.inject.multibindings.Multibinder;
 import com.metaphacts.cache.CacheManager;
+import com.metaphacts.cache.FieldDefinitionCache;
 import com.metaphacts.cache.LabelCache;
+import com.metaphacts.cache.RenderedTemplateCache;
 import com.metaphacts.cache.TemplateIncludeCache;
+import com.metaphacts.config.Configuration;
+import com.metaphacts.config.NamespaceRegistry;
 import com.metaphacts.data.rdf.container.LDPApi;
 import com.metaphacts.data.rdf.container.LDPImplManager;
 import com.metaphacts.plugin.MetaphactoryPluginManager;
 import com.metaphacts.repository.RepositoryManager;
 import com.metaphacts.security.ShiroTextRealm;
 import com.metaphacts.servlet.SparqlServlet;
+import com.metaphacts.templates.AbstractFileTemplateStorage;
+import com.metaphacts.templates.FileTemplateLoader;
+import com.metaphacts.templates.HandlebarsHelperRegistry;
+import com.metaphacts.templates.MetaphactsHandlebars;
+import com.metaphacts.templates.RenderProfiler;
+import com.metaphacts.templates.RevisionedFileTemplateStorage;
+import com.metaphacts.templates.SimpleFileTemplateStorage;
+import com.metaphacts.templates.TemplateStorage;
+import com.metaphacts.templates.TemplateWarmup;
 import com.metaphacts.thumbnails.DefaultThumbnailService;
 import com.metaphacts.thumbnails.ThumbnailServiceRegistry;
 import com.metaphacts.ui.templates.MainTemplate;
@@ -61,6 +78,8 @@
  * @author Artem Kozlov <ak@metaphacts.com>
  */
 public class MainGuiceModule extends AbstractModule {
+
+    private static final Logger logger = LogManager.getLogger(MainGuiceModule.class);
     
     @SuppressWarnings("unused")
     private Injector coreInjector;
@@ -86,7 +105,11 @@ protected void configure() {
         bind(RepositoryManager.class).in(Singleton.class);
         bind(CacheManager.class).in(Singleton.class);
         bind(LabelCache.class).in(Singleton.class);
+        bind(FieldDefinitionCache.class).in(Singleton.class);
         bind(TemplateIncludeCache.class).in(Singleton.class);
+        bind(RenderedTemplateCache.class).in(Singleton.class);
+        bind(RenderProfiler.class).in(Singleton.class);
+        bind(TemplateWarmup.class).in(Singleton.class);
         bind(SparqlServlet.class).in(Singleton.class);
         bind(ThumbnailServiceRegistry.class).in(Singleton.class);
         bind(DefaultThumbnailService.class).asEagerSingleton();
@@ -102,6 +125,27 @@ protected void configure() {
         bind(MetaphactoryPluginManager.class).in(Singleton.class);
     }
 
+    @Provides
+    @Singleton
+    public TemplateStorage<Long, URL> getTemplateStorage(Configuration config) {
+        File baseFolder = new File(config.getRuntimeDirectory(), AbstractFileTemplateStorage.BASE_STORAGE_LOCATION);
+        String type = config.getEnvironmentConfig().getTemplateStorage();
+        if ("revisioned".equals(type)) {
+            return new RevisionedFileTemplateStorage(baseFolder);
+        }
+        if (!"simple".equals(type)) {
+            logger.warn("Unknown template storage \"{}\", using the simple file based template storage.", type);
+        }
+        return new SimpleFileTemplateStorage(baseFolder);
+    }
+
+    @Provides
+    @Singleton
+    public MetaphactsHandlebars getHandlebars(TemplateStorage<Long, URL> templateStorage, NamespaceRegistry ns,
+            HandlebarsHelperRegistry helperRegistry) {
+        return new MetaphactsHandlebars(new FileTemplateLoader(templateStorage, ns), helperRegistry);
+    }
+
     /**
      * When bundling client-side assets with webpack we attach bundle hash to
      * every file to make sure that browser cache is reset when we deploy new version.
@@ -63,6 +63,41 @@ public class MpRepositoryVocabulary {
      * via HTTP.
      */
     public static final IRI SERVICE_URL = VF.createIRI(SERVICE_NAMESPACE, "serviceURL");
+    /**
+     * In REST service wrapper configs maxConnections holds the maximum number
+     * of concurrent HTTP connections to the service.
+     */
+    public static final IRI MAX_CONNECTIONS = VF.createIRI(SERVICE_NAMESPACE, "maxConnections");
+    /**
+     * In REST service wrapper configs connectionTimeout holds the connection
+     * and socket timeout (in seconds).
+     */
+    public static final IRI CONNECTION_TIMEOUT = VF.createIRI(SERVICE_NAMESPACE, "connectionTimeout");
+    /**
+     * In REST service wrapper configs cacheTTL holds the time (in seconds)
+     * responses of the service are cached, 0 disables the cache.
+     */
+    public static final IRI CACHE_TTL = VF.createIRI(SERVICE_NAMESPACE, "cacheTTL");
+    /**
+     * In REST service wrapper configs cacheSize holds the maximum number of
+     * cached responses.
+     */
+    public static final IRI CACHE_SIZE = VF.createIRI(SERVICE_NAMESPACE, "cacheSize");
+    /**
+     * In REST service wrapper configs maxConcurrentRequests holds the maximum
+     * number of requests sent in parallel for a block of input bindings.
+     */
+    public static final IRI MAX_CONCURRENT_REQUESTS = VF.createIRI(SERVICE_NAMESPACE, "maxConcurrentRequests");
+    /**
+     * In REST service wrapper configs maxBatchSize holds the maximum number of
+     * values passed to a multi-value parameter in a single request.
+     */
+    public static final IRI MAX_BATCH_SIZE = VF.createIRI(SERVICE_NAMESPACE, "maxBatchSize");
+    /**
+     * In REST service wrapper configs requestsPerSecond holds the maximum rate
+     * of requests sent to the service.
+     */
+    public static final IRI REQUESTS_PER_SECOND = VF.createIRI(SERVICE_NAMESPACE, "requestsPerSecond");
     /**
      * A datatype property that points to the repository ID which would be treated as the default
      * federation member.
@@ -73,6 +108,17 @@ public class MpRepositoryVocabulary {
     public static final IRI REALM = VF.createIRI(NAMESPACE, "realm");
     public static final IRI QUAD_MODE = VF.createIRI(NAMESPACE, "quadMode");
 
+    /**
+     * In keyword search sail configs indexedPredicate holds a predicate whose
+     * literal values are added to the keyword index (may be repeated).
+     */
+    public static final IRI INDEXED_PREDICATE = VF.createIRI(NAMESPACE, "indexedPredicate");
+    /**
+     * In keyword search sail configs indexDirectory holds the local directory
+     * where the keyword index is persisted.
+     */
+    public static final IRI INDEX_DIRECTORY = VF.createIRI(NAMESPACE, "indexDirectory");
+
     private MpRepositoryVocabulary() {
 
     }
@@ -36,6 +36,7 @@
 
 import com.metaphacts.di.GuiceServletConfig;
 import com.metaphacts.rest.feature.CacheControlFeature;
+import com.metaphacts.rest.feature.RepositoryConnectionCountFilter;
 import com.metaphacts.rest.providers.IriParamProvider;
 import com.metaphacts.rest.providers.JacksonObjectMapperProvider;
 import com.metaphacts.rest.providers.OptionalParamProvider;
@@ -75,6 +76,7 @@ public AbstractPlatformApplication(ServiceLocator serviceLocator) {
         register(MultiPartFeature.class);
 
         register(CacheControlFeature.class);
+        register(RepositoryConnectionCountFilter.class);
 
         if(logger.isLoggable(java.util.logging.Level.FINER)) {
             registerInstances(
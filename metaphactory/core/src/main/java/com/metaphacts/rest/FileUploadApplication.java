@@ -19,6 +19,7 @@
 package com.metaphacts.rest;
 
 import com.metaphacts.rest.endpoint.FileUploadEndpoint;
+import com.metaphacts.rest.endpoint.ImageTileEndpoint;
 import org.glassfish.hk2.api.ServiceLocator;
 
 import javax.inject.Inject;
@@ -34,6 +35,7 @@ public class FileUploadApplication extends AbstractPlatformApplication {
     public FileUploadApplication(ServiceLocator serviceLocator) {
         super(serviceLocator);
         register(FileUploadEndpoint.class);
+        register(ImageTileEndpoint.class);
     }
 
 }
\ No newline at end of file
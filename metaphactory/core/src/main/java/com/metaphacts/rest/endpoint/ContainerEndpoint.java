@@ -25,7 +25,6 @@
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -59,7 +58,6 @@
 import javax.ws.rs.core.UriInfo;
 
 import org.apache.commons.lang3.StringUtils;
-import org.apache.commons.lang3.RandomStringUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.shiro.authz.annotation.RequiresAuthentication;
@@ -87,10 +85,13 @@
 import com.metaphacts.data.rdf.container.LDPApi;
 import com.metaphacts.data.rdf.container.LDPResource;
 import com.metaphacts.data.rdf.container.LDPResourceNotFoundException;
+import com.metaphacts.data.rdf.container.LDPStreamingImporter;
 import com.metaphacts.data.rdf.container.RDFStream;
 import com.metaphacts.data.rdf.container.RootContainer;
 import com.metaphacts.data.rdf.RioUtils;
+import com.metaphacts.data.rdf.UnitOfWork;
 import com.metaphacts.repository.RepositoryManager;
+import com.metaphacts.rest.endpoint.DelayedImportRegistry.DelayedImport;
 
 /**
  * @author Johannes Trame <jt@metaphacts.com>
@@ -122,6 +123,9 @@ public class ContainerEndpoint {
     @Inject
     private Configuration config;
 
+    @Inject
+    private DelayedImportRegistry delayedImports;
+
     private static final Cache<Repository, LDPApi> ldp = CacheBuilder.newBuilder()
             .maximumSize(5).expireAfterAccess(30, TimeUnit.MINUTES)
             .build();
@@ -141,7 +145,7 @@ public Response createResource(
             logger.trace("Request to create a new LDP resource with slug: "+slug.orElse("NO SLUG"));
 
         LDPResource ldpResource;
-        try{
+        try (UnitOfWork uow = unitOfWork(repositoryID)) {
             java.util.Optional<RDFFormat> format = Rio.getParserFormatForMIMEType(contentType);
             if (!format.isPresent()) return Response.status(Status.UNSUPPORTED_MEDIA_TYPE).build();
             ldpResource = api(repositoryID).createLDPResource(slug, new RDFStream(in, format.get()), uri, getBaseUri());
@@ -170,7 +174,7 @@ public Response copyResource(
             logger.trace("Request to copy LDP resource " + uri.stringValue() + " with slug " + slug.orElse("NO SLUG"));
         }
         LDPResource ldpResource;
-        try {
+        try (UnitOfWork uow = unitOfWork(repositoryID)) {
             ldpResource = api(repositoryID).copyLDPResource(slug, uri, targetContainer, getBaseUri());
         } catch (Exception e) {
             logger.error("Failed to copy LDP resource " + uri + " with slug " + slug.orElse("NO SLUG") + ": " + e.getMessage());
@@ -182,8 +186,7 @@ public Response copyResource(
 
 
     private final static RDFFormat ExportImportFormat = RDFFormat.TRIG;
-    private final static int DelayedImportRequestCacheLifeMs = 15 * 60 * 1000;
-    private final static int DelayedImportRequestCacheKeyLength = 32;
+    private final static RDFFormat StreamingExportImportFormat = RDFFormat.NQUADS;
 
     @GET
     @Path("/exportResource")
@@ -197,7 +200,7 @@ public Response exportResource(
             List<String> iriStrings = iris.stream().map((IRI iri) -> iri.stringValue()).collect(Collectors.toList());
             logger.trace("Request to export LDP resources " + String.join(", ", iriStrings));
         }
-        try {
+        try (UnitOfWork uow = unitOfWork(repositoryID)) {
             Model exportedModel = api(repositoryID).exportLDPResource(iris);
             ByteArrayOutputStream out = new ByteArrayOutputStream();
             rioUtils.write(ExportImportFormat, exportedModel, out);
@@ -211,20 +214,89 @@ public Response exportResource(
         }
     }
 
+    /**
+     * Streaming export of LDP resources as N-Quads, emitting the named graphs of
+     * the resources in containment order without materializing them in memory.
+     * The result can be imported with {@link #importResourceStream}.
+     */
+    @GET
+    @Path("/exportResourceStream")
+    @RequiresAuthentication
+    @Produces("application/n-quads")
+    public Response exportResourceStream(
+        @QueryParam("iris") List<IRI> iris,
+        @DefaultValue(RepositoryManager.ASSET_REPOSITORY_ID) @QueryParam("repository") String repositoryID
+    ) throws RepositoryException {
+        final LDPApi api;
+        try (UnitOfWork uow = unitOfWork(repositoryID)) {
+            api = api(repositoryID);
+            // fail early, i.e. before the response has been committed
+            for (IRI iri : iris) {
+                api.getLDPResource(iri);
+            }
+        } catch (Exception e) {
+            logger.error("Failed to export LDP resources: " + e.getMessage());
+            logger.debug("Details: ", e);
+            if (e instanceof LDPResourceNotFoundException) {
+                return Response.status(Status.NOT_FOUND).entity(e.getMessage()).build();
+            }
+            return Response.serverError().entity(e.getMessage()).build();
+        }
+
+        StreamingOutput stream = new StreamingOutput() {
+            @Override
+            public void write(OutputStream os) throws IOException, WebApplicationException {
+                Writer writer = new BufferedWriter(new OutputStreamWriter(os, Charsets.UTF_8));
+                try {
+                    api.exportLDPResource(iris, Rio.createWriter(StreamingExportImportFormat, writer));
+                } catch (Exception e) {
+                    logger.error("Failed to export LDP resources: " + e.getMessage());
+                    logger.debug("Details: ", e);
+                    throw new WebApplicationException(e);
+                }
+                writer.flush();
+            }
+        };
+        return Response.ok(stream)
+            .header("Content-Disposition", "attachment; filename=\"export.nq\"")
+            .build();
+    }
 
-    private class DelayedImportRequest {
-        Model resource;
-        long requestTime;
-        DelayedImportRequest(Model resource) {
-            this.resource = resource;
-            this.requestTime = System.currentTimeMillis();
+    /**
+     * Streaming import of LDP resources exported with
+     * {@link #exportResourceStream}. Resources are committed in chunks of
+     * <code>chunkSize</code> resources, keep their IRIs and are skipped if they
+     * already exist. Consequently a failed import can be resumed by posting the
+     * same data again.
+     */
+    @POST
+    @Path("/importResourceStream")
+    @RequiresAuthentication
+    @Produces("application/json")
+    public Response importResourceStream(
+        @QueryParam("containerIRI") IRI containerIRI,
+        @QueryParam("chunkSize") @DefaultValue("" + LDPStreamingImporter.DEFAULT_CHUNK_SIZE) int chunkSize,
+        @DefaultValue(RepositoryManager.ASSET_REPOSITORY_ID) @QueryParam("repository") String repositoryID,
+        InputStream in
+    ) {
+        if (containerIRI == null) {
+            return Response.status(Status.BAD_REQUEST).entity("Parameter containerIRI must be specified.").build();
+        }
+        logger.trace("Request to stream import LDP resources into " + containerIRI + " with chunk size " + chunkSize);
+        try (UnitOfWork uow = unitOfWork(repositoryID)) {
+            LDPStreamingImporter.Result result = api(repositoryID).importLDPResource(
+                in, StreamingExportImportFormat, containerIRI, chunkSize);
+            return Response.ok(result).build();
+        } catch (Exception e) {
+            logger.error("Exception while stream importing LDP resources: " + e.getMessage());
+            logger.debug("Details: ", e);
+            return Response.serverError().entity(e.getMessage()).build();
         }
     }
-    // ToFix: move it to server singleton, ContainerEndpoint id differs between requests
-    private static Map<String, DelayedImportRequest> delayedImportRequestSet = new LinkedHashMap<>();
+
 
     public class DelayedImportResponse {
-        public String delayedImportRequestId = RandomStringUtils.randomAlphanumeric(DelayedImportRequestCacheKeyLength);
+        public String delayedImportRequestId;
         public Set<IRI> possibleContainers = Sets.newHashSet();
         public Set<IRI> unknownObjects = Sets.newHashSet();
     }
@@ -245,19 +317,26 @@ public Response importResource(
             " force=" + String.valueOf(force) + " delayedId=" + delayedId.toString()
         );
 
-        long currentTime = System.currentTimeMillis();
-        for (String id : delayedImportRequestSet.keySet()) {
-            if (currentTime - delayedImportRequestSet.get(id).requestTime > DelayedImportRequestCacheLifeMs) {
-                delayedImportRequestSet.remove(id);
+        DelayedImport delayedImport;
+        if (delayedId.isPresent()) {
+            try {
+                Optional<DelayedImport> claimed = delayedImports.claim(delayedId.get());
+                if (!claimed.isPresent()) {
+                    return Response.status(Status.NOT_FOUND)
+                        .entity("Import request " + delayedId.get() + " does not exist or has expired.").build();
+                }
+                delayedImport = claimed.get();
+            } catch (IllegalStateException e) {
+                return Response.status(Status.CONFLICT).entity(e.getMessage()).build();
             }
+        } else {
+            delayedImport = delayedImports.spool(in);
         }
 
-        try {
+        try (UnitOfWork uow = unitOfWork(repositoryID)) {
             Model resource;
-            if (delayedId.isPresent()) {
-                resource = delayedImportRequestSet.get(delayedId.get()).resource;
-            } else {
-                resource = rioUtils.parse(in, "", ExportImportFormat);
+            try (InputStream payload = delayedImport.openStream()) {
+                resource = rioUtils.parse(payload, "", ExportImportFormat);
             }
 
             DelayedImportResponse response = new DelayedImportResponse();
@@ -267,20 +346,23 @@ public Response importResource(
                 response.unknownObjects, force,
                 uriInfo.getBaseUri().toString());
             if (ldpResources == null) {
-                if (delayedId.isPresent()) {
-                    response.delayedImportRequestId = delayedId.get();
-                } else {
-                    delayedImportRequestSet.put(response.delayedImportRequestId, new DelayedImportRequest(resource));
+                // keep the spooled payload until the user confirms the import
+                if (!delayedImports.register(delayedImport)) {
+                    return Response.status(Status.REQUEST_ENTITY_TOO_LARGE)
+                        .entity("Import request is too large to be confirmed later, "
+                            + "please specify the target container.").build();
                 }
+                response.delayedImportRequestId = delayedImport.getId();
                 return Response.status(Status.ACCEPTED).entity(response).build();
-            } else if (delayedId.isPresent()) {
-                delayedImportRequestSet.remove(delayedId.get());
             }
+            delayedImports.complete(delayedImport);
             return Response.created(java.net.URI.create(ldpResources.get(0).getResourceIRI().stringValue())).build();
         } catch (Exception e) {
             logger.error("Exception while import LDP resource: " + e.getMessage());
             logger.debug("Details: ", e);
             return Response.serverError().entity(e.getMessage()).build();
+        } finally {
+            delayedImports.release(delayedImport);
         }
     }
 
@@ -296,7 +378,7 @@ public Response getResource(
             logger.trace("Request to return LDP resource: "+ uri);
         }
 
-        try{
+        try (UnitOfWork uow = unitOfWork(repositoryID)) {
             LDPResource ldpResource = api(repositoryID).getLDPResource(uri);
             final Model m = ldpResource.getModel();
             CacheControl cc = new CacheControl();
@@ -375,7 +457,7 @@ public Response delete(@QueryParam("uri") IRI uri, @QueryParam("repository") Str
         if(logger.isTraceEnabled())
             logger.trace("Request to delete collection or item: "+ uri);
 
-        try{
+        try (UnitOfWork uow = unitOfWork(repositoryID)) {
             api(repositoryID).deleteLDPResource(uri);
         }catch(Exception e){
             logger.error("Failed to delete LDP resource \""+ uri +"\": "+e.getMessage());
@@ -393,7 +475,7 @@ public Response updateResource(@QueryParam("uri") IRI uri, InputStream in, @Head
             logger.trace("Request to update LDP resource with URI: "+uri);
 
         LDPResource ldpResource = null;
-        try{
+        try (UnitOfWork uow = unitOfWork(repositoryID)) {
             java.util.Optional<RDFFormat> format = Rio.getParserFormatForMIMEType(contentType);
             if (!format.isPresent()) return Response.status(Status.UNSUPPORTED_MEDIA_TYPE).build();
             ldpResource = api(repositoryID).updateLDPResource(new RDFStream(in, format.get()), uri);
@@ -417,7 +499,7 @@ public Response renameResource(
         @QueryParam("repository") String repositoryID
     ) {
         LDPResource resource;
-        try {
+        try (UnitOfWork uow = unitOfWork(repositoryID)) {
             LDPApi ldp = api(repositoryID);
             resource = ldp.getLDPResource(uri);
             AbstractLDPContainer parent = (AbstractLDPContainer)ldp.getLDPResource(resource.getParentContainer());
@@ -438,7 +520,7 @@ public Response renameResource(
     @RequiresAuthentication
     public Response getOptions(@DefaultValue(RootContainer.IRI_STRING) @QueryParam("uri") IRI uri, @QueryParam("repository") String repositoryID) throws Exception{
         Set<String> operations;
-        try{
+        try (UnitOfWork uow = unitOfWork(repositoryID)) {
             operations = api(repositoryID).getLDPResource(uri).isContainer() ? supporteContainerOperations : supportedResourceOperations;
         }catch(Exception e){
             if(e instanceof LDPResourceNotFoundException)
@@ -473,11 +555,23 @@ private Link[] generateLinks(Set<IRI> set){
         return links.toArray(new Link[]{});
     }
 
+    /**
+     * Binds a single repository connection to the current request, such that
+     * all repository accesses of the LDP operation share it.
+     */
+    private UnitOfWork unitOfWork(String repositoryID) throws RepositoryException{
+        return UnitOfWork.begin(repository(repositoryID));
+    }
+
+    private Repository repository(String repositoryID){
+        return repositoryManager.getRepository(
+                Optional.ofNullable(repositoryID).orElse(RepositoryManager.ASSET_REPOSITORY_ID)
+        );
+    }
+
     private LDPApi api(String repositoryID) throws ExecutionException{
         final String repID = Optional.ofNullable(repositoryID).orElse(RepositoryManager.ASSET_REPOSITORY_ID);
-        final Repository rep = repositoryManager.getRepository(
-                repID
-        );
+        final Repository rep = repository(repID);
 
         return ldp.get(rep, new Callable<LDPApi>() {
             @Override
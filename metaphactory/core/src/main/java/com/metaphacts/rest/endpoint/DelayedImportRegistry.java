@@ -0,0 +1,247 @@
+/*
+ * Copyright (C) 2015-2017, metaphacts GmbH
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, you can receive a copy
+ * of the GNU Lesser General Public License from http://www.gnu.org/
+ */
+package com.metaphacts.rest.endpoint;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.SecureRandom;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.inject.Singleton;
+
+import org.apache.commons.lang3.RandomStringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalNotification;
+
+/**
+ * Registry of LDP import requests which have been staged by the first step of
+ * the interactive import (i.e. which are waiting for the user to select a
+ * target container or to confirm unknown objects).
+ *
+ * <p>
+ * Payloads are spooled to temporary files instead of being held in memory
+ * between the two steps. The registry is safe for concurrent use and bounded
+ * both in the age of the staged imports and in the total size of the spooled
+ * files. The temporary file of an import is deleted as soon as the import is
+ * completed, expires or is evicted. Imports which expire or are evicted while
+ * a request is processing them keep their file until they are released.
+ * Files left over by an earlier run are deleted on startup.
+ * </p>
+ */
+@Singleton
+public class DelayedImportRegistry {
+
+    private static final Logger logger = LogManager.getLogger(DelayedImportRegistry.class);
+
+    public static final long DEFAULT_MAX_AGE_MINUTES = 15;
+
+    /**
+     * Upper bound for the total size of all staged payloads in kilobytes.
+     */
+    public static final long DEFAULT_MAX_SIZE_KB = 512 * 1024;
+
+    private static final int ID_LENGTH = 32;
+
+    private static final String SPOOL_FILE_PREFIX = "ldp-import-";
+    private static final String SPOOL_FILE_SUFFIX = ".tmp";
+
+    /**
+     * Import payload spooled to a temporary file.
+     */
+    public static class DelayedImport {
+        private final String id;
+        private final File file;
+        private final AtomicBoolean inUse = new AtomicBoolean(true);
+
+        private DelayedImport(String id, File file) {
+            this.id = id;
+            this.file = file;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * Opens a new stream on the spooled payload. Clients <b>MUST</b> close
+         * the stream.
+         */
+        public InputStream openStream() throws IOException {
+            return new FileInputStream(file);
+        }
+
+        private int sizeInKb() {
+            return (int) Math.min(Integer.MAX_VALUE, file.length() / 1024 + 1);
+        }
+
+        private void deleteFile() {
+            if (file.exists() && !file.delete()) {
+                logger.warn("Failed to delete spooled import payload {}.", file);
+            }
+        }
+    }
+
+    private final Cache<String, DelayedImport> imports;
+    private final long maxSizeKb;
+    private final SecureRandom random = new SecureRandom();
+
+    public DelayedImportRegistry() {
+        this(DEFAULT_MAX_AGE_MINUTES, TimeUnit.MINUTES, DEFAULT_MAX_SIZE_KB);
+        deleteStaleFiles(TimeUnit.MINUTES.toMillis(DEFAULT_MAX_AGE_MINUTES));
+    }
+
+    DelayedImportRegistry(long maxAge, TimeUnit unit, long maxSizeKb) {
+        this.maxSizeKb = maxSizeKb;
+        // a single segment, such that every payload up to the maximum size can be kept
+        this.imports = CacheBuilder.newBuilder()
+                .concurrencyLevel(1)
+                .expireAfterWrite(maxAge, unit)
+                .maximumWeight(maxSizeKb)
+                .<String, DelayedImport>weigher((id, delayedImport) -> delayedImport.sizeInKb())
+                .<String, DelayedImport>removalListener(this::onRemoval)
+                .build();
+    }
+
+    private void onRemoval(RemovalNotification<String, DelayedImport> notification) {
+        logger.debug("Removing delayed import request {} ({}).", notification.getKey(), notification.getCause());
+        // imports in use are deleted on release, marking removed ones as in
+        // use prevents them from being claimed
+        if (notification.getValue().inUse.compareAndSet(false, true)) {
+            notification.getValue().deleteFile();
+        }
+    }
+
+    /**
+     * Deletes spooled payloads of previous runs which are older than the
+     * maximum age of staged imports.
+     */
+    static void deleteStaleFiles(long maxAgeMillis) {
+        Path tmpDir = Paths.get(System.getProperty("java.io.tmpdir"));
+        long threshold = System.currentTimeMillis() - maxAgeMillis;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(tmpDir, SPOOL_FILE_PREFIX + "*" + SPOOL_FILE_SUFFIX)) {
+            for (Path file : files) {
+                if (Files.getLastModifiedTime(file).toMillis() < threshold) {
+                    logger.debug("Deleting stale import payload {}.", file);
+                    Files.deleteIfExists(file);
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to delete stale import payloads in {}: {}", tmpDir, e.getMessage());
+        }
+    }
+
+    /**
+     * Spools the payload to a temporary file. The returned import is not yet
+     * registered (see {@link #register(DelayedImport)}) and is in use by the
+     * caller, i.e. it <b>MUST</b> be passed to {@link #release(DelayedImport)}
+     * eventually.
+     */
+    public DelayedImport spool(InputStream in) throws IOException {
+        File file = File.createTempFile(SPOOL_FILE_PREFIX, SPOOL_FILE_SUFFIX);
+        try {
+            Files.copy(in, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            file.delete();
+            throw e;
+        }
+        String id = RandomStringUtils.random(ID_LENGTH, 0, 0, true, true, null, random);
+        return new DelayedImport(id, file);
+    }
+
+    /**
+     * Keeps the import for a subsequent request. Has no effect if the import
+     * has already been registered.
+     *
+     * @return <code>false</code> if the payload exceeds the maximum size of
+     *         all staged payloads, i.e. can not be kept
+     */
+    public boolean register(DelayedImport delayedImport) {
+        if (delayedImport.sizeInKb() > maxSizeKb) {
+            logger.debug("Not keeping delayed import request {}, its payload exceeds {} KB.",
+                    delayedImport.getId(), maxSizeKb);
+            return false;
+        }
+        imports.asMap().putIfAbsent(delayedImport.getId(), delayedImport);
+        imports.cleanUp();
+        return true;
+    }
+
+    /**
+     * Claims the registered import with the given id for exclusive use by the
+     * current request.
+     *
+     * @return the import or an empty optional if there is no such import,
+     *         e.g. since it has expired
+     * @throws IllegalStateException
+     *             if the import is currently in use by another request
+     */
+    public Optional<DelayedImport> claim(String id) {
+        DelayedImport delayedImport = imports.getIfPresent(id);
+        if (delayedImport == null) {
+            return Optional.empty();
+        }
+        if (!delayedImport.inUse.compareAndSet(false, true)) {
+            if (imports.getIfPresent(id) != delayedImport) {
+                // removed concurrently
+                return Optional.empty();
+            }
+            throw new IllegalStateException("Import request " + id + " is already being processed.");
+        }
+        return Optional.of(delayedImport);
+    }
+
+    /**
+     * Removes the import from the registry and deletes its payload.
+     */
+    public void complete(DelayedImport delayedImport) {
+        imports.invalidate(delayedImport.getId());
+        delayedImport.deleteFile();
+    }
+
+    /**
+     * Releases an import after processing a request. Payloads of imports which
+     * are not (or no longer) registered are deleted.
+     */
+    public void release(DelayedImport delayedImport) {
+        delayedImport.inUse.set(false);
+        if (imports.getIfPresent(delayedImport.getId()) != delayedImport) {
+            delayedImport.deleteFile();
+        }
+    }
+
+    /**
+     * Number of currently registered imports.
+     */
+    public long size() {
+        imports.cleanUp();
+        return imports.size();
+    }
+}
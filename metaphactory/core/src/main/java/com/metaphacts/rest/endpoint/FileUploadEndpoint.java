@@ -20,10 +20,13 @@
 
 import java.io.InputStream;
 import java.net.URL;
+import java.util.Collections;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.function.Predicate;
 
 import javax.inject.Inject;
@@ -52,13 +55,16 @@
 import org.eclipse.rdf4j.query.QueryResults;
 import org.eclipse.rdf4j.query.TupleQuery;
 import org.eclipse.rdf4j.query.TupleQueryResult;
+import org.eclipse.rdf4j.repository.Repository;
 import org.eclipse.rdf4j.repository.RepositoryConnection;
 import org.eclipse.rdf4j.repository.RepositoryException;
 
 import com.google.common.collect.Sets;
 import com.google.inject.Injector;
 import com.metaphacts.api.sparql.SparqlOperationBuilder;
+import com.metaphacts.cache.CacheManager;
 import com.metaphacts.data.rdf.PointedGraph;
+import com.metaphacts.data.rdf.container.DefaultLDPResource;
 import com.metaphacts.data.rdf.container.FileContainer;
 import com.metaphacts.data.rdf.container.LDPImplManager;
 import com.metaphacts.repository.RepositoryManager;
@@ -116,6 +122,9 @@ public class FileUploadEndpoint {
     @Inject
     Set<UploadHandler> uploadHandlers;
 
+    @Inject
+    private CacheManager cacheManager;
+
     @POST
     @RequiresAuthentication
     @Consumes(MediaType.MULTIPART_FORM_DATA)
@@ -160,22 +169,36 @@ public Response createDocument(
             }
 
             //todo: should we fail upload on failed metadata extraction? or just skip it?
+            CompletableFuture<Model> metadata = null;
             try {
                 if (StringUtils.isNotEmpty(metadataExtractor)) {
                     MetadataExtractor metadataExtractorInstance = (MetadataExtractor) injector.getInstance(Class.forName(metadataExtractor));
                     if (metadataExtractorInstance != null) {
-                        Model metadata = metadataExtractorInstance.extractMetadata(newId, ldpGraph.getGraph());
-                        ldpGraph.getGraph().addAll(metadata);
+                        metadata = metadataExtractorInstance.extractMetadataAsync(newId, ldpGraph.getGraph());
                     }
                 }
             } catch (Exception e) {
-                logger.error("Failed to extract metadata for file with context " + contextUri + ", sequence " + sequence + ":" + e.getMessage());
-                logger.debug("Details:" , e);
+                logMetadataFailure(contextUri, sequence, e);
+            }
+
+            // metadata which is available already is stored together with the resource
+            if (metadata != null && metadata.isDone()) {
+                try {
+                    ldpGraph.getGraph().addAll(metadata.join());
+                } catch (CompletionException e) {
+                    logMetadataFailure(contextUri, sequence, e.getCause());
+                }
+                metadata = null;
             }
 
             //adding resource to container
             fileContainer.add(ldpGraph);
 
+            // does not wait for the metadata, it is attached to the resource once extracted
+            if (metadata != null) {
+                attachMetadata(newId, metadata, contextUri, sequence);
+            }
+
             return Response.created(new java.net.URI(newId.toString())).build();
 
         } catch (Exception e) {
@@ -187,6 +210,33 @@ public Response createDocument(
         }
     }
 
+    /**
+     * Adds the metadata to the named graph of the uploaded resource as soon as
+     * it has been extracted.
+     */
+    private void attachMetadata(IRI newId, CompletableFuture<Model> metadata, String contextUri, String sequence) {
+        Repository repository = repositoryManager.getAssetRepository();
+        metadata.whenComplete((model, e) -> {
+            if (e != null) {
+                logMetadataFailure(contextUri, sequence, e instanceof CompletionException ? e.getCause() : e);
+                return;
+            }
+            try (RepositoryConnection con = repository.getConnection()) {
+                con.add(model, new DefaultLDPResource(newId, repository).getContextIRI());
+            } catch (RepositoryException re) {
+                logMetadataFailure(contextUri, sequence, re);
+                return;
+            }
+            cacheManager.invalidateResources(Collections.singletonList(newId));
+            logger.trace("Attached extracted metadata to {}.", newId);
+        });
+    }
+
+    private void logMetadataFailure(String contextUri, String sequence, Throwable e) {
+        logger.error("Failed to extract metadata for file with context " + contextUri + ", sequence " + sequence + ":" + e.getMessage());
+        logger.debug("Details:" , e);
+    }
+
     private IRI getGeneratedId(String sequence, String contextUri, String generateIdQuery) throws RepositoryException, MalformedQueryException, QueryEvaluationException {
         try(RepositoryConnection con = repositoryManager.getDefault().getConnection()){
             SparqlOperationBuilder<TupleQuery> operationBuilder = SparqlOperationBuilder.create(generateIdQuery, TupleQuery.class);
@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2015-2017, metaphacts GmbH
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, you can receive a copy
+ * of the GNU Lesser General Public License from http://www.gnu.org/
+ */
+
+package com.metaphacts.rest.endpoint;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+import javax.ws.rs.GET;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.UriInfo;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.shiro.authz.annotation.RequiresAuthentication;
+
+import com.metaphacts.rest.feature.CacheControl.MaxAgeCache;
+import com.metaphacts.rest.feature.CacheControl.NoCache;
+import com.metaphacts.upload.tiles.TilePyramid;
+import com.metaphacts.upload.tiles.TilePyramidService;
+
+/**
+ * Serves the {@link TilePyramid}s (Deep Zoom descriptor, tiles and thumbnail)
+ * of images in the file storages used by the file upload.
+ *
+ * <p>
+ * Tiles and thumbnails are addressed by the version of the pyramid, i.e.
+ * their URLs change whenever the image changes, and can be cached by clients
+ * for a long time. The descriptor (<code>tiles/{storage}/{id}.dzi</code>) and
+ * the unversioned thumbnail URL (<code>tiles/{storage}/{id}/thumbnail.jpg</code>)
+ * resolve to the current version and must not be cached. If the pyramid has
+ * not been generated yet, its generation is scheduled and the request is
+ * answered with 503 (Service Unavailable).
+ * </p>
+ */
+@javax.ws.rs.Path("tiles")
+public class ImageTileEndpoint {
+
+    private static final Logger logger = LogManager.getLogger(ImageTileEndpoint.class);
+
+    private static final String STORAGE = "{storage: [\\w-]+}";
+    private static final String ID = "{id: [\\w-][\\w.-]*}";
+    private static final String VERSION = "{version: [0-9a-f]+}";
+
+    /**
+     * Seconds after which clients should retry while the pyramid is generated.
+     */
+    private static final int RETRY_AFTER = 5;
+
+    @Inject
+    private TilePyramidService tilePyramids;
+
+    @Context
+    private UriInfo uriInfo;
+
+    @GET
+    @javax.ws.rs.Path(STORAGE + "/" + ID + ".dzi")
+    @Produces("application/xml")
+    @NoCache
+    @RequiresAuthentication
+    public Response getDescriptor(@PathParam("storage") String storage, @PathParam("id") String id) throws IOException {
+        Optional<TilePyramid> pyramid = tilePyramids.getPyramid(storage, id);
+        if (!pyramid.isPresent()) {
+            return Response.status(Status.NOT_FOUND).build();
+        }
+        Optional<String> version = getCurrentVersion(pyramid.get());
+        if (!version.isPresent()) {
+            return Response.status(Status.SERVICE_UNAVAILABLE).header("Retry-After", RETRY_AFTER).build();
+        }
+        // tiles are resolved relative to the versioned folder instead of the descriptor URL
+        URI tiles = uriInfo.getBaseUriBuilder().path(ImageTileEndpoint.class).path(storage).path(id)
+                .path(version.get()).path(TilePyramid.TILES).build();
+        String descriptor = new String(Files.readAllBytes(pyramid.get().getDescriptor(version.get())),
+                StandardCharsets.UTF_8);
+        return Response.ok(descriptor.replaceFirst("<Image ", "<Image Url=\"" + tiles + "/\" ")).build();
+    }
+
+    @GET
+    @javax.ws.rs.Path(STORAGE + "/" + ID + "/thumbnail.jpg")
+    @NoCache
+    @RequiresAuthentication
+    public Response getThumbnail(@PathParam("storage") String storage, @PathParam("id") String id) throws IOException {
+        Optional<TilePyramid> pyramid = tilePyramids.getPyramid(storage, id);
+        if (!pyramid.isPresent()) {
+            return Response.status(Status.NOT_FOUND).build();
+        }
+        Optional<String> version = getCurrentVersion(pyramid.get());
+        if (!version.isPresent()) {
+            return Response.status(Status.SERVICE_UNAVAILABLE).header("Retry-After", RETRY_AFTER).build();
+        }
+        return Response.seeOther(uriInfo.getBaseUriBuilder().path(ImageTileEndpoint.class).path(storage).path(id)
+                .path(version.get()).path(TilePyramid.THUMBNAIL).build()).build();
+    }
+
+    @GET
+    @javax.ws.rs.Path(STORAGE + "/" + ID + "/" + VERSION + "/thumbnail.jpg")
+    @Produces("image/jpeg")
+    @MaxAgeCache(time = 365, unit = TimeUnit.DAYS)
+    @RequiresAuthentication
+    public Response getVersionedThumbnail(@PathParam("storage") String storage, @PathParam("id") String id,
+            @PathParam("version") String version) {
+        return serve(tilePyramids.getPyramid(storage, id).map(p -> p.getThumbnail(version)));
+    }
+
+    @GET
+    @javax.ws.rs.Path(STORAGE + "/" + ID + "/" + VERSION + "/" + TilePyramid.TILES
+            + "/{level: \\d{1,2}}/{column: \\d{1,6}}_{row: \\d{1,6}}.jpg")
+    @Produces("image/jpeg")
+    @MaxAgeCache(time = 365, unit = TimeUnit.DAYS)
+    @RequiresAuthentication
+    public Response getTile(@PathParam("storage") String storage, @PathParam("id") String id,
+            @PathParam("version") String version, @PathParam("level") int level,
+            @PathParam("column") int column, @PathParam("row") int row) {
+        return serve(tilePyramids.getPyramid(storage, id).map(p -> p.getTile(version, level, column, row)));
+    }
+
+    /**
+     * The current version of the pyramid, schedules the generation of a new
+     * version if the image has been modified since.
+     */
+    private Optional<String> getCurrentVersion(TilePyramid pyramid) throws IOException {
+        if (!pyramid.isUpToDate()) {
+            logger.trace("Tile pyramid of {} is missing or outdated.", pyramid.getImage());
+            tilePyramids.generateAsync(pyramid.getImage());
+        }
+        return pyramid.getCurrentVersion();
+    }
+
+    private static Response serve(Optional<Path> file) {
+        if (!file.isPresent() || !Files.isRegularFile(file.get())) {
+            return Response.status(Status.NOT_FOUND).build();
+        }
+        return Response.ok(file.get().toFile()).build();
+    }
+}
@@ -72,8 +72,10 @@
 import org.eclipse.rdf4j.rio.Rio;
 
 import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import com.metaphacts.api.sparql.ServletRequestUtil;
+import com.metaphacts.cache.CacheManager;
 import com.metaphacts.config.Configuration;
 import com.metaphacts.config.NamespaceRegistry;
 import com.metaphacts.data.rdf.ReadConnection;
@@ -120,6 +122,9 @@ public class RDFGraphStoreEndpoint {
     @Inject
     private Configuration config;
 
+    @Inject
+    private CacheManager cacheManager;
+
     @POST
     @RequiresAuthentication
     @RequiresPermissions(SPARQL.GRAPH_STORE_CREATE)
@@ -145,9 +150,11 @@ public Response createGraph(
             return Response.serverError().status(Status.NOT_ACCEPTABLE).entity("Unkown content type.").build();
         }
         
+        Set<IRI> modified = Sets.newHashSet(graphUri);
         try (RepositoryConnection con = getRepository(repository).getConnection()){
             RDFFormat rioFormat = format.get();
             Model results = Rio.parse(in, uriInfo.getAbsolutePath().toString(), rioFormat);
+            addSubjectIRIs(results, modified);
             
             boolean quadFormat = (rioFormat == RDFFormat.TRIG) 
                                     || (rioFormat == RDFFormat.TRIX)
@@ -196,6 +203,7 @@ public Response createGraph(
             
         }
         
+        cacheManager.invalidateResources(Lists.newArrayList(modified));
         return Response.created(new java.net.URI(graphUri.stringValue())).build();
     }
     
@@ -298,13 +306,16 @@ public Response deleteGraph(@QueryParam("graph") IRI uri,
                     .entity("NamedGraph " + uri+ " does not exist or is empty.").build();
         }
         
+        Set<IRI> modified = Sets.newHashSet(uri);
         try(RepositoryConnection con = getRepository(repository).getConnection()){
+            addSubjectIRIs(con, uri, modified);
             con.remove(null,null,null, new Resource[]{uri});
         }catch(Exception e){
             logger.error("Failed to delete GRAPH \""+ uri +"\": "+e.getMessage());
             logger.debug("Details:" , e);
             return Response.serverError().entity(e.getMessage()).build();
         }
+        cacheManager.invalidateResources(Lists.newArrayList(modified));
         return Response.ok().build();
     }  
     
@@ -331,9 +342,12 @@ public Response updateGraph(
         if(!format.isPresent()){
             return Response.serverError().status(Status.NOT_ACCEPTABLE).build();
         }
+        Set<IRI> modified = Sets.newHashSet(graphUri);
         try(RepositoryConnection con= getRepository(repository).getConnection() ) {
             Model results = Rio.parse(in, uriInfo.getAbsolutePath().toString(), format.get());
+            addSubjectIRIs(results, modified);
             con.begin();
+            addSubjectIRIs(con, graphUri, modified);
             con.remove(null,null,null, new Resource[]{graphUri});
             con.add(results, graphUri);
             con.commit();
@@ -344,9 +358,33 @@ public Response updateGraph(
             return Response.serverError().entity(e.getMessage()).build();
         }
         
+        cacheManager.invalidateResources(Lists.newArrayList(modified));
         return Response.created(new java.net.URI(graphUri.toString())).build();
     }
     
+    /**
+     * Collects the subjects of the statements, which are purged from the
+     * platform caches after modifying a graph.
+     */
+    private static void addSubjectIRIs(Iterable<Statement> statements, Set<IRI> subjects) {
+        for (Statement st : statements) {
+            if (st.getSubject() instanceof IRI) {
+                subjects.add((IRI) st.getSubject());
+            }
+        }
+    }
+
+    private static void addSubjectIRIs(RepositoryConnection con, IRI graph, Set<IRI> subjects) {
+        try (RepositoryResult<Statement> statements = con.getStatements(null, null, null, false, graph)) {
+            while (statements.hasNext()) {
+                Statement st = statements.next();
+                if (st.getSubject() instanceof IRI) {
+                    subjects.add((IRI) st.getSubject());
+                }
+            }
+        }
+    }
+
     @HEAD
     @RequiresAuthentication
     @RequiresPermissions(SPARQL.GRAPH_STORE_HEAD)
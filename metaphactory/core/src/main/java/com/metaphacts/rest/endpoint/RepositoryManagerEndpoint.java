@@ -20,19 +20,27 @@
 
 import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
 
+import java.util.Optional;
+
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import javax.validation.constraints.NotNull;
 import javax.ws.rs.GET;
+import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
 
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.apache.shiro.authz.annotation.RequiresAuthentication;
+import org.apache.shiro.authz.annotation.RequiresPermissions;
 
 import com.metaphacts.repository.RepositoryManager;
+import com.metaphacts.sail.keyword.KeywordSearchSail;
+import com.metaphacts.security.Permissions.REPOSITORIES;
 
 /**
  * @author Johannes Trame <jt@metaphacts.com>
@@ -40,6 +48,8 @@
 @Singleton
 @Path("repositories")
 public class RepositoryManagerEndpoint {
+    private static final Logger logger = LogManager.getLogger(RepositoryManagerEndpoint.class);
+
     @Inject
     private RepositoryManager repositoryManager;
     
@@ -67,4 +77,53 @@ public  Response getAvailableRepositoryConfigs(@NotNull @PathParam("repositoryId
             return Response.status(Status.INTERNAL_SERVER_ERROR).entity(e.getMessage()).build();
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Size of the embedded keyword index of the repository and progress of
+     * the running (or most recent) rebuild.
+     */
+    @GET
+    @Path("{repositoryId}/keyword-index")
+    @RequiresAuthentication
+    @RequiresPermissions(REPOSITORIES.KEYWORD_INDEX_VIEW)
+    @Produces(APPLICATION_JSON)
+    public Response getKeywordIndexStatus(@NotNull @PathParam("repositoryId") String repID) {
+        try{
+            Optional<KeywordSearchSail> sail = KeywordSearchSail.find(repositoryManager.getRepository(repID));
+            if (!sail.isPresent()) {
+                return Response.status(Status.NOT_FOUND)
+                        .entity("Repository " + repID + " does not maintain a keyword index.").build();
+            }
+            return Response.ok(sail.get().getStatus()).build();
+        }catch(Exception e){
+            return Response.status(Status.INTERNAL_SERVER_ERROR).entity(e.getMessage()).build();
+        }
+    }
+
+    /**
+     * Starts a full rebuild of the embedded keyword index of the repository in
+     * the background. Queries are answered by the previous index until the
+     * rebuild has finished.
+     */
+    @POST
+    @Path("{repositoryId}/keyword-index/rebuild")
+    @RequiresAuthentication
+    @RequiresPermissions(REPOSITORIES.KEYWORD_INDEX_REBUILD)
+    @Produces(APPLICATION_JSON)
+    public Response rebuildKeywordIndex(@NotNull @PathParam("repositoryId") String repID) {
+        try{
+            Optional<KeywordSearchSail> sail = KeywordSearchSail.find(repositoryManager.getRepository(repID));
+            if (!sail.isPresent()) {
+                return Response.status(Status.NOT_FOUND)
+                        .entity("Repository " + repID + " does not maintain a keyword index.").build();
+            }
+            logger.info("Rebuild of keyword index of repository {} has been triggered by a REST call.", repID);
+            sail.get().startRebuild();
+            return Response.status(Status.ACCEPTED).entity(sail.get().getStatus()).build();
+        }catch(IllegalStateException e){
+            return Response.status(Status.CONFLICT).entity(e.getMessage()).build();
+        }catch(Exception e){
+            return Response.status(Status.INTERNAL_SERVER_ERROR).entity(e.getMessage()).build();
+        }
+    }
+}
@@ -30,8 +30,11 @@
 import javax.ws.rs.Produces;
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.core.Response.Status;
 import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriInfo;
@@ -56,8 +59,9 @@
 import com.metaphacts.config.NamespaceRegistry;
 import com.metaphacts.data.rdf.ReadConnection;
 import com.metaphacts.repository.RepositoryManager;
-import com.metaphacts.rest.feature.CacheControl.NoCache;
+import com.metaphacts.rest.feature.CacheControl.Cache;
 import com.metaphacts.ui.templates.MainTemplate;
+import com.metaphacts.ui.templates.MainTemplate.RenderedMainTemplate;
 
 /**
  * Main application entry point.
@@ -81,7 +85,9 @@ public class ResourceEndpoint {
     private NamespaceRegistry namespaceRegistry;
     
     /**
-     * When accessing from browser, return main template with client-side logic to present resource
+     * When accessing from browser, return main template with client-side logic to present resource.
+     * The rendered main template is served with a strong entity tag, i.e. browsers need to
+     * revalidate it on every request, but will receive a 304 as long as it has not changed.
      *
      * @return
      * @throws IOException
@@ -89,9 +95,15 @@ public class ResourceEndpoint {
     @GET()
     @Path("{path: .*}")
     @Produces(MediaType.TEXT_HTML)
-    @NoCache
-    public String getMainPage() throws IOException {
-        return mainTemplate.getMainTemplate();
+    @Cache("no-cache")
+    public Response getMainPage(@Context Request request) throws IOException {
+        RenderedMainTemplate main = mainTemplate.getRenderedMainTemplate();
+        EntityTag tag = new EntityTag(main.getEntityTag());
+        ResponseBuilder notModified = request.evaluatePreconditions(tag);
+        if (notModified != null) {
+            return notModified.build();
+        }
+        return Response.ok(main.getHtml()).tag(tag).build();
     }
 
     /**
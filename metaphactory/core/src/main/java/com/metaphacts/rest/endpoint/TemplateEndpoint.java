@@ -18,13 +18,17 @@
 
 package com.metaphacts.rest.endpoint;
 
-import java.io.File;
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
+import java.util.Collections;
 import java.util.Date;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -32,6 +36,8 @@
 import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
 import java.util.zip.ZipOutputStream;
 
 import javax.inject.Inject;
@@ -40,6 +46,7 @@
 import javax.validation.constraints.NotNull;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.PUT;
@@ -50,6 +57,7 @@
 import javax.ws.rs.core.CacheControl;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
@@ -76,12 +84,15 @@
 import org.eclipse.rdf4j.repository.Repository;
 import org.glassfish.jersey.server.ResourceConfig;
 
+import com.github.jknack.handlebars.Template;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import com.metaphacts.cache.LabelCache;
+import com.metaphacts.cache.RenderedTemplateCache;
 import com.metaphacts.cache.TemplateIncludeCache;
 import com.metaphacts.config.Configuration;
 import com.metaphacts.config.NamespaceRegistry;
+import com.metaphacts.data.json.JsonStringWriter;
 import com.metaphacts.repository.RepositoryManager;
 import com.metaphacts.rest.feature.CacheControl.NoCache;
 import com.metaphacts.security.Permissions.TEMPLATE_PAGES;
@@ -100,15 +111,21 @@ public class TemplateEndpoint extends ResourceConfig {
 
     private static final String Template_MIME_TYPE = "text/html";
 
+    private static final String RENDERED_TEMPLATE_PREFIX = "{\"templateHtml\":\"";
+    private static final String RENDERED_TEMPLATE_SUFFIX = "\"}";
+
     private static final IRI DEFAULT_TEMPLATE = RDFS.RESOURCE;
 
-    private TemplateStorage<Long,URL> templateStorage;
+    private final TemplateStorage<Long,URL> templateStorage;
     @Inject
     private ST st;
 
     @Inject
     private LabelCache labelCache;
 
+    @Inject
+    private RenderProfiler profiler;
+
     @Context
     private UriInfo uriInfo;
 
@@ -127,25 +144,29 @@ public class TemplateEndpoint extends ResourceConfig {
 
     private  TemplateIncludeCache includeCache;
 
+    private final RenderedTemplateCache renderedTemplateCache;
+
+    private final TemplateWarmup templateWarmup;
+
     @Inject
     public TemplateEndpoint(
         Configuration config,
         NamespaceRegistry ns,
         RepositoryManager repositoryManager,
         TemplateIncludeCache includeCache,
-        HandlebarsHelperRegistry helperRegistry
+        RenderedTemplateCache renderedTemplateCache,
+        TemplateStorage<Long, URL> templateStorage,
+        MetaphactsHandlebars handlebars,
+        TemplateWarmup templateWarmup
     ) {
         this.config= config;
         this.ns = ns;
         this.includeCache=includeCache;
+        this.renderedTemplateCache = renderedTemplateCache;
         this.repositoryManager=repositoryManager;
-        templateStorage = new SimpleFileTemplateStorage(
-                new File(
-                    config.getRuntimeDirectory(),
-                    SimpleFileTemplateStorage.BASE_STORAGE_LOCATION
-                )
-        );
-        handlebars  = new MetaphactsHandlebars(new FileTemplateLoader(templateStorage, ns), helperRegistry);
+        this.templateStorage = templateStorage;
+        this.handlebars = handlebars;
+        this.templateWarmup = templateWarmup;
         vf = SimpleValueFactory.getInstance();
     }
 
@@ -224,6 +245,19 @@ public static String getCompiledHtml(
             MetaphactsHandlebars handlebars,
             TemplateIncludeCache includeCache) throws IOException {
 
+            return TemplateUtil.compileAndReturnFirstExistingTemplate(tc, getApplicableTemplates(pageId, tc, includeCache), handlebars)
+                    .orElse(getNoTemplateHtml(pageId));
+        }
+
+        /**
+         * Ordered set of templates applicable to the specified page, i.e. the
+         * page itself, its template includes and the default template.
+         */
+        static LinkedHashSet<String> getApplicableTemplates(
+            IRI pageId,
+            TemplateContext tc,
+            TemplateIncludeCache includeCache) {
+
             if (!(tc.getValue() instanceof IRI)) {
                 throw new IllegalArgumentException("Currently only browsing IRIs is supported.");
             }
@@ -238,11 +272,12 @@ public static String getCompiledHtml(
             // add default Template:rdfs:Resource as last option
             // TODO might need to be configurable in the future
             rdfTemplateIncludes.add(TemplateUtil.convertResourceToTemplateIdentifier(DEFAULT_TEMPLATE));
+            return rdfTemplateIncludes;
+        }
 
-            return TemplateUtil.compileAndReturnFirstExistingTemplate(tc, rdfTemplateIncludes, handlebars).orElse(
-                    "<i>It seems that the current resource \"" + pageId.stringValue()
-                    + "\" does not identify any application or template page as well as none of the applicable template pages is instantiated.</i>"
-                   );
+        static String getNoTemplateHtml(IRI pageId) {
+            return "<i>It seems that the current resource \"" + pageId.stringValue()
+                    + "\" does not identify any application or template page as well as none of the applicable template pages is instantiated.</i>";
         }
     }
 
@@ -265,13 +300,19 @@ public Response getResourceHtml(
         IRI templateContextIri = context.orElse(iri);
         try {
             Repository repo = repositoryManager.getRepository(repositoryId).orElse(repositoryManager.getDefault());
-            TemplateContext tc = new TemplateContext(templateContextIri, repo, uriInfo);
-            tc.setLabelCache(labelCache);
-            tc.setNamespaceRegistry(this.ns);
-            RenderedTemplate template = new RenderedTemplate(
-                RenderedTemplate.getCompiledHtml(iri, tc, handlebars, includeCache));
-
-            return withETagCacheControl(request, template, iri).build();
+            RenderedTemplateCache.Key key = renderKey("html", repositoryId, iri, templateContextIri, uriInfo);
+            Optional<Response.ResponseBuilder> response = render(request, key, iri, () -> {
+                TemplateContext tc = new TemplateContext(templateContextIri, repo, uriInfo);
+                tc.setLabelCache(labelCache);
+                tc.setNamespaceRegistry(this.ns);
+                Optional<Template> template = TemplateUtil.compileFirstExistingTemplate(
+                        tc, RenderedTemplate.getApplicableTemplates(iri, tc, includeCache), handlebars);
+                if (template.isPresent()) {
+                    return Optional.of(writer -> TemplateUtil.applyTemplate(template.get(), tc, writer));
+                }
+                return Optional.of(writer -> writer.write(RenderedTemplate.getNoTemplateHtml(iri)));
+            });
+            return response.get().build();
         } catch (IllegalArgumentException e) {
             return Response.serverError().entity(e.getMessage()).build();
         } catch (QueryEvaluationException | RepositoryException | SailException e){
@@ -281,27 +322,184 @@ public Response getResourceHtml(
         }
     }
 
-    private Response.ResponseBuilder withETagCacheControl(Request request, RenderedTemplate template, IRI templateIri) {
+    /**
+     * Renders the output of a template into a {@link Writer}.
+     */
+    @FunctionalInterface
+    private interface TemplateRenderer {
+        void render(Writer writer) throws IOException;
+    }
+
+    /**
+     * Returns the rendering from the {@link RenderedTemplateCache} or prepares
+     * (i.e. resolves and compiles) and renders the template while recording
+     * its dependencies. The output is buffered up to
+     * {@link RenderedTemplateCache#MAXIMUM_ENTRY_LENGTH} and added to the
+     * cache before the response is created, i.e. errors are thrown and result
+     * in a proper error status.
+     *
+     * <p>
+     * Once a rendering exceeds the buffer, the headers and the buffered output
+     * are sent and the remaining output is streamed as JSON object (compare
+     * {@link RenderedTemplate}) directly to the response, such that it does
+     * not need to be held in memory. Such renderings are not cached and errors
+     * occurring afterwards can only abort the response, i.e. the client
+     * receives a truncated response with status 200.
+     * </p>
+     *
+     * @return the response or {@link Optional#empty()} if the preparation did
+     *         not yield any template
+     */
+    private Optional<Response.ResponseBuilder> render(
+        Request request,
+        RenderedTemplateCache.Key key,
+        IRI templateIri,
+        Callable<Optional<TemplateRenderer>> preparation
+    ) throws Exception {
+        Optional<RenderedTemplateCache.Rendering> cached = renderedTemplateCache.getRendering(key);
+        if (cached.isPresent()) {
+            String html = cached.get().getHtml();
+            return Optional.of(withETagCacheControl(request, new EntityTag(cached.get().getEntityTag()), templateIri,
+                    output -> writeRenderedTemplate(output, writer -> writer.write(html))));
+        }
+
+        long generation = renderedTemplateCache.getGeneration();
+        Optional<RenderProfile> profile = profiler.begin(templateIri.stringValue());
+        RenderDependencies dependencies = RenderDependencies.begin();
+        Optional<TemplateRenderer> renderer;
+        try {
+            renderer = preparation.call();
+        } finally {
+            dependencies.end();
+            profile.ifPresent(RenderProfile::end);
+        }
+        if (!renderer.isPresent()) {
+            profile.ifPresent(profiler::complete);
+            return Optional.empty();
+        }
+
+        // entity tags of streamed renderings identify the rendering rather than the content
+        StreamedRendering streamed = new StreamedRendering(
+                request, new EntityTag(renderedTemplateCache.newEntityTag(key)), templateIri);
+        RenderedTemplateCache.Buffer buffer = new RenderedTemplateCache.Buffer(streamed);
+        dependencies.bind();
+        profile.ifPresent(RenderProfile::bind);
+        try {
+            renderer.get().render(buffer);
+        } catch (Exception e) {
+            // the abort may be wrapped by the template engine
+            if (streamed.notModified != null) {
+                return Optional.of(streamed.notModified);
+            }
+            if (buffer.isOverflown()) {
+                logger.error("Aborting response, rendering of {} failed: {}", templateIri, e.getMessage());
+            }
+            throw e;
+        } finally {
+            dependencies.end();
+            profile.ifPresent(profiler::complete);
+        }
+        if (buffer.isOverflown()) {
+            buffer.flush();
+            streamed.complete();
+            // the response has been committed already, i.e. status and headers are ignored
+            return Optional.of(Response.ok());
+        }
+
+        String html = buffer.toString();
+        RenderedTemplateCache.Rendering rendering = renderedTemplateCache.put(key, html, dependencies, generation);
+        return Optional.of(withETagCacheControl(request, new EntityTag(rendering.getEntityTag()), templateIri,
+                output -> writeRenderedTemplate(output, writer -> writer.write(html))));
+    }
+
+    /**
+     * Sends the headers and the beginning of the JSON object of a rendering
+     * once it exceeds the buffer, see {@link #render}.
+     */
+    private class StreamedRendering implements RenderedTemplateCache.Buffer.Spill {
+        private final Request request;
+        private final EntityTag etag;
+        private final IRI templateIri;
+        private Writer writer;
+        private Response.ResponseBuilder notModified;
+
+        StreamedRendering(Request request, EntityTag etag, IRI templateIri) {
+            this.request = request;
+            this.etag = etag;
+            this.templateIri = templateIri;
+        }
+
+        @Override
+        public Writer open() throws IOException {
+            Response.ResponseBuilder rb = request.evaluatePreconditions(etag);
+            if (rb != null) {
+                logger.trace("Returning 304: Streamed template {} with eTag {} seems to be cached by browser.", templateIri, etag.getValue());
+                notModified = rb.cacheControl(new CacheControl());
+                throw new IOException("Aborting rendering, it is cached by the client.");
+            }
+            logger.debug("Streaming rendering of {}, it exceeds {} characters.", templateIri,
+                    RenderedTemplateCache.MAXIMUM_ENTRY_LENGTH);
+            servletResponse.setStatus(Status.OK.getStatusCode());
+            servletResponse.setContentType(MediaType.APPLICATION_JSON + ";charset=UTF-8");
+            servletResponse.setHeader(HttpHeaders.CACHE_CONTROL, revalidateCacheControl().toString());
+            servletResponse.setHeader(HttpHeaders.ETAG, etag.toString());
+            writer = new BufferedWriter(new OutputStreamWriter(servletResponse.getOutputStream(), StandardCharsets.UTF_8));
+            writer.write(RENDERED_TEMPLATE_PREFIX);
+            return new JsonStringWriter(writer);
+        }
+
+        void complete() throws IOException {
+            writer.write(RENDERED_TEMPLATE_SUFFIX);
+            writer.flush();
+        }
+    }
+
+    /**
+     * Writes the rendered template as JSON object with the single key
+     * <code>templateHtml</code>.
+     */
+    private static void writeRenderedTemplate(OutputStream output, TemplateRenderer renderer) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+        writer.write(RENDERED_TEMPLATE_PREFIX);
+        renderer.render(new JsonStringWriter(writer));
+        writer.write(RENDERED_TEMPLATE_SUFFIX);
+        writer.flush();
+    }
+
+    private RenderedTemplateCache.Key renderKey(String variant, Optional<String> repositoryId, IRI page, IRI context, UriInfo uriInfo) {
+        return new RenderedTemplateCache.Key(
+            variant,
+            repositoryId.orElse(RepositoryManager.DEFAULT_REPOSITORY_ID),
+            page,
+            context,
+            ns.getUserIRI(),
+            new TreeMap<>(uriInfo.getQueryParameters()).toString()
+        );
+    }
+
+    private Response.ResponseBuilder withETagCacheControl(Request request, EntityTag etag, IRI templateIri, StreamingOutput template) {
         // evaluate eTag precondition
-        CacheControl cc = new CacheControl();
-        EntityTag etag = new EntityTag(String.valueOf(template.hashCode()));
         Response.ResponseBuilder rb = request.evaluatePreconditions(etag);
 
         if (rb != null) {
             logger.trace("Returning 304: Compiled template {} with eTag {} seems to be cached by browser.", templateIri, etag.getValue());
-            return rb.cacheControl(cc);
+            return rb.cacheControl(new CacheControl());
         }
 
+        return Response.ok(template, MediaType.APPLICATION_JSON).cacheControl(revalidateCacheControl()).tag(etag);
+    }
+
+    private static CacheControl revalidateCacheControl() {
         // tell the client that the response is stale
         // setting both "Cache-Control: max-age=0, must-revalidate" and "Cache-Control: no-cache" due to different browser interpretations
         // c.f. http://stackoverflow.com/questions/1046966/whats-the-difference-between-cache-control-max-age-0-and-no-cache
+        CacheControl cc = new CacheControl();
         //  SHOULD revalidate the response
         cc.setMaxAge(0);
         cc.setMustRevalidate(true);
         // MUST revalidate
         cc.setNoCache(true);
-
-        return Response.ok(template, MediaType.APPLICATION_JSON).cacheControl(cc).tag(etag);
+        return cc;
     }
 
     /**
@@ -319,20 +517,22 @@ public Response getTemplateHtml(
     ) throws IOException {
         try {
             Repository repo = repositoryManager.getRepository(repositoryId).orElse(repositoryManager.getDefault());
-            TemplateContext tc = new TemplateContext(iri, repo, uriInfo);
-            tc.setLabelCache(labelCache);
-            tc.setNamespaceRegistry(this.ns);
-
-            LinkedHashSet<String> templateIncludes = Sets.newLinkedHashSet();
-            templateIncludes.add(iri.stringValue());
-
-            Optional<String> content = TemplateUtil.compileAndReturnFirstExistingTemplate(tc, templateIncludes, handlebars);
-            if (!content.isPresent()) {
+            RenderedTemplateCache.Key key = renderKey("pageHtml", repositoryId, iri, iri, uriInfo);
+            Optional<Response.ResponseBuilder> response = render(request, key, iri, () -> {
+                TemplateContext tc = new TemplateContext(iri, repo, uriInfo);
+                tc.setLabelCache(labelCache);
+                tc.setNamespaceRegistry(this.ns);
+
+                LinkedHashSet<String> templateIncludes = Sets.newLinkedHashSet();
+                templateIncludes.add(iri.stringValue());
+
+                return TemplateUtil.compileFirstExistingTemplate(tc, templateIncludes, handlebars)
+                        .<TemplateRenderer>map(template -> writer -> TemplateUtil.applyTemplate(template, tc, writer));
+            });
+            if (!response.isPresent()) {
                 return Response.status(Status.NOT_FOUND).build();
             }
-
-            RenderedTemplate template = new RenderedTemplate(content.get());
-            return withETagCacheControl(request, template, iri).build();
+            return response.get().build();
         } catch (IllegalArgumentException e) {
             return Response.serverError().entity(e.getMessage()).build();
         } catch (Exception e) {
@@ -404,9 +604,28 @@ public Response save(@QueryParam("iri") IRI iri,  @QueryParam("beforeModificatio
             }
         }
         templateStorage.storeNewRevision(iri, pageSource);
+        renderedTemplateCache.invalidateTemplate(iri);
+        templateWarmup.warmAsync(iri);
         return Response.created(new URI(iri.stringValue())).build();
     }
 
+    @POST
+    @Path("rollback")
+    @RequiresPermissions(TEMPLATE_PAGES.EDIT_SAVE)
+    @RequiresAuthentication
+    public Response rollback(@NotNull @QueryParam("iri") IRI iri, @NotNull @QueryParam("revision") Long revision) throws IOException {
+        try {
+            Long latest = templateStorage.rollback(iri, revision);
+            renderedTemplateCache.invalidateTemplate(iri);
+            templateWarmup.warmAsync(iri);
+            return Response.ok(String.valueOf(latest)).build();
+        } catch (UnsupportedOperationException e) {
+            return Response.status(Status.NOT_IMPLEMENTED).entity(e.getMessage()).build();
+        } catch (IllegalArgumentException e) {
+            return Response.status(Status.NOT_FOUND).entity(e.getMessage()).build();
+        }
+    }
+
     @GET
     @NoCache
     @Path("getAllInfo")
@@ -419,7 +638,8 @@ public List< TemplateInfo> getAllInfo() throws IOException, URISyntaxException {
             Optional<URL> latest = templateStorage.getTemplateLocation(iri);
             if(latest.isPresent()){
                 TemplateInfo info = new TemplateInfo(iri.stringValue(), latest.get());
-                info.date = new Date(new File(latest.get().toURI()).lastModified());
+                // revision identifiers of the file based storages are modification dates
+                info.date = new Date(Collections.max(templateStorage.getRevisions(iri).keySet()));
                 list.add(info);
             }
 
@@ -473,8 +693,58 @@ private String getExportFileName(){
     @RequiresAuthentication
     public void deleteRevisions(final Map<String, Long> selected) throws IOException, EncoderException {
         for (Entry<String, Long> s : selected.entrySet()) {
-            templateStorage.deleteTemplate(vf.createIRI(s.getKey()));
+            IRI iri = vf.createIRI(s.getKey());
+            templateStorage.deleteTemplate(iri);
+            renderedTemplateCache.invalidateTemplate(iri);
+        }
+    }
+
+    /**
+     * Lists the slowest templates and helper queries of all renderings
+     * profiled within the last <code>windowMinutes</code>, see
+     * {@link RenderProfiler}.
+     */
+    @GET
+    @NoCache
+    @Path("profile")
+    @Produces(MediaType.APPLICATION_JSON)
+    @RequiresPermissions(TEMPLATE_PAGES.PROFILE_VIEW)
+    @RequiresAuthentication
+    public Response getProfileReport(
+        @QueryParam("windowMinutes") @DefaultValue("15") long windowMinutes,
+        @QueryParam("limit") @DefaultValue("20") int limit
+    ) {
+        if (windowMinutes < 1 || limit < 1) {
+            return Response.status(Status.BAD_REQUEST).entity("windowMinutes and limit must be positive numbers.").build();
         }
+        return Response.ok(profiler.getReport(windowMinutes, limit)).build();
+    }
+
+    /**
+     * Returns the report of the last warm-up of all templates, see
+     * {@link TemplateWarmup}.
+     */
+    @GET
+    @NoCache
+    @Path("warmup")
+    @Produces(MediaType.APPLICATION_JSON)
+    @RequiresPermissions(TEMPLATE_PAGES.PROFILE_VIEW)
+    @RequiresAuthentication
+    public Response getWarmupReport() {
+        return templateWarmup.getLastReport()
+                .map(report -> Response.ok(report))
+                .orElse(Response.status(Status.NOT_FOUND).entity("No warm-up of all templates has been completed."))
+                .build();
+    }
+
+    @DELETE
+    @Path("profile")
+    @RequiresPermissions(TEMPLATE_PAGES.PROFILE_CLEAR)
+    @RequiresAuthentication
+    public Response clearProfiles() {
+        logger.info("Template rendering profiles have been cleared by a REST call.");
+        profiler.clear();
+        return Response.ok().build();
     }
 
     @GET()
@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2015-2017, metaphacts GmbH
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, you can receive a copy
+ * of the GNU Lesser General Public License from http://www.gnu.org/
+ */
+package com.metaphacts.rest.feature;
+
+import java.io.IOException;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.metaphacts.data.rdf.UnitOfWork;
+
+/**
+ * Instruments the number of repository connections opened while processing a
+ * request (see {@link UnitOfWork#getOpenedConnections()}). The count is logged
+ * on debug level and, if debug logging is enabled, returned in the
+ * {@value #HEADER} response header.
+ *
+ * Please note that connections opened while writing a streamed response entity
+ * are not included, since the entity is written after the response filters
+ * have been invoked.
+ */
+public class RepositoryConnectionCountFilter implements ContainerRequestFilter, ContainerResponseFilter {
+
+    private static final Logger logger = LogManager.getLogger(RepositoryConnectionCountFilter.class);
+
+    public static final String HEADER = "X-Repository-Connections";
+
+    @Override
+    public void filter(ContainerRequestContext requestContext) throws IOException {
+        UnitOfWork.resetOpenedConnections();
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext) throws IOException {
+        if (!logger.isDebugEnabled()) {
+            return;
+        }
+        int opened = UnitOfWork.getOpenedConnections();
+        logger.debug("{} {} opened {} repository connection(s).", requestContext.getMethod(),
+                requestContext.getUriInfo().getPath(), opened);
+        responseContext.getHeaders().putSingle(HEADER, opened);
+    }
+}
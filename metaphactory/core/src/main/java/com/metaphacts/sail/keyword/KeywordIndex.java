@@ -0,0 +1,835 @@
+/*
+ * Copyright (C) 2015-2017, metaphacts GmbH
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, you can receive a copy
+ * of the GNU Lesser General Public License from http://www.gnu.org/
+ */
+
+package com.metaphacts.sail.keyword;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Literal;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.model.vocabulary.RDF;
+import org.eclipse.rdf4j.rio.ntriples.NTriplesUtil;
+
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multiset;
+import com.google.common.collect.Sets;
+
+/**
+ * Inverted index over literal values, maintained by the
+ * {@link KeywordSearchSail}. Every indexed statement (subject, predicate and
+ * literal, counted over all contexts) is a document, which is split into terms
+ * by {@link KeywordQuery#analyze(String)}.
+ *
+ * <p>
+ * Matching documents need to contain all terms of a query. Documents are
+ * ranked by the sum of the TF-IDF weights of the matched terms, normalized by
+ * the number of terms of the document, i.e. short labels which match the query
+ * rank higher than long descriptions mentioning it.
+ * </p>
+ *
+ * <p>
+ * Queries whose last term is a prefix (e.g. <code>"black ca*"</code>) are
+ * typeahead queries, which are answered by a dedicated completion path (see
+ * {@link #search(KeywordQuery, Set, Set, Resource, long)}): for all term
+ * prefixes of up to {@link #EDGE_NGRAM_LENGTH} characters (edge n-grams), the
+ * index maintains the documents ordered by their length. Matching documents
+ * are thus visited best first and the search stops as soon as the requested
+ * number of hits has been found, i.e. latency does not depend on the number of
+ * documents matching a short prefix. In addition the index keeps the
+ * <code>rdf:type</code>s of all resources, such that searches can be
+ * restricted to instances of certain types.
+ * </p>
+ *
+ * <p>
+ * The index is held in memory and persisted as snapshot to a single file in
+ * the index directory. Every snapshot records the sequence number of the last
+ * transaction it contains, so that the {@link KeywordIndexLog} can be replayed
+ * on top of it after an unclean shutdown.
+ * </p>
+ */
+public class KeywordIndex {
+
+    private static final Logger logger = LogManager.getLogger(KeywordIndex.class);
+
+    private static final int FORMAT_VERSION = 3;
+
+    static final String DATA_FILE = "keyword-index.bin";
+
+    /**
+     * Maximum number of distinct terms a single prefix term is expanded to.
+     */
+    public static final int MAX_PREFIX_EXPANSIONS = 1024;
+
+    /**
+     * Maximum length of the term prefixes, for which ranked postings are
+     * maintained. Longer prefixes are expanded using the term dictionary.
+     */
+    public static final int EDGE_NGRAM_LENGTH = 3;
+
+    /**
+     * Minimum number of changes applied at once, for which ranked postings are
+     * sorted after all changes have been applied instead of inserting each
+     * document at its position.
+     */
+    private static final int BULK_UPDATE_SIZE = 64;
+
+    private static final ValueFactory VF = SimpleValueFactory.getInstance();
+
+    /**
+     * An added or removed statement, in the order of the modifications.
+     */
+    public static class Change {
+        private final boolean added;
+        private final Statement statement;
+
+        public Change(boolean added, Statement statement) {
+            this.added = added;
+            this.statement = statement;
+        }
+
+        public boolean isAdded() {
+            return added;
+        }
+
+        public Statement getStatement() {
+            return statement;
+        }
+    }
+
+    public static class Hit {
+        private final Resource subject;
+        private final IRI predicate;
+        private final Literal literal;
+        private final double score;
+
+        Hit(Resource subject, IRI predicate, Literal literal, double score) {
+            this.subject = subject;
+            this.predicate = predicate;
+            this.literal = literal;
+            this.score = score;
+        }
+
+        public Resource getSubject() {
+            return subject;
+        }
+
+        public IRI getPredicate() {
+            return predicate;
+        }
+
+        public Literal getLiteral() {
+            return literal;
+        }
+
+        public double getScore() {
+            return score;
+        }
+    }
+
+    private static class Document {
+        final Resource subject;
+        final IRI predicate;
+        final Literal literal;
+        final String[] terms;
+        int references;
+
+        Document(Resource subject, IRI predicate, Literal literal, String[] terms) {
+            this.subject = subject;
+            this.predicate = predicate;
+            this.literal = literal;
+            this.terms = terms;
+        }
+
+        int length() {
+            return terms.length;
+        }
+
+        boolean hasTerm(String term) {
+            for (String t : terms) {
+                if (t.equals(term)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        boolean hasTermWithPrefix(String prefix) {
+            for (String t : terms) {
+                if (t.startsWith(prefix)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Postings of an edge n-gram, ordered by the length of the documents
+     * (see {@link KeywordIndex#rankKey(int, Document)}).
+     */
+    private static class RankedPostings {
+        private long[] keys = new long[4];
+        private int size = 0;
+        private boolean sorted = true;
+
+        void add(long key, boolean bulk) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size + (size >> 1) + 1);
+            }
+            if (bulk || !sorted) {
+                sorted = sorted && (size == 0 || keys[size - 1] < key);
+                keys[size++] = key;
+                return;
+            }
+            int pos = Arrays.binarySearch(keys, 0, size, key);
+            if (pos >= 0) {
+                return;
+            }
+            pos = -pos - 1;
+            System.arraycopy(keys, pos, keys, pos + 1, size - pos);
+            keys[pos] = key;
+            size++;
+        }
+
+        void remove(long key) {
+            sort();
+            int pos = Arrays.binarySearch(keys, 0, size, key);
+            if (pos >= 0) {
+                System.arraycopy(keys, pos + 1, keys, pos, size - pos - 1);
+                size--;
+            }
+        }
+
+        void sort() {
+            if (!sorted) {
+                Arrays.sort(keys, 0, size);
+                sorted = true;
+            }
+        }
+
+        int size() {
+            return size;
+        }
+
+        long get(int i) {
+            return keys[i];
+        }
+    }
+
+    private final File directory;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Map<List<Value>, Integer> ids = Maps.newHashMap();
+    private final List<Document> documents = Lists.newArrayList();
+    private final Deque<Integer> freeIds = new ArrayDeque<>();
+    private final TreeMap<String, Map<Integer, Integer>> postings = new TreeMap<>();
+    private final Map<String, RankedPostings> edgeNgrams = Maps.newHashMap();
+    private final Map<Resource, Multiset<IRI>> resourceTypes = Maps.newHashMap();
+    private long sequence = 0;
+    private boolean bulkUpdate = false;
+
+    /**
+     * @param directory directory to persist the index to or <code>null</code>
+     *                  if the index should only be held in memory
+     */
+    public KeywordIndex(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Loads the latest snapshot of the index.
+     *
+     * @return <code>false</code> if the index needs to be rebuilt, because no
+     *         (readable) snapshot exists or the index is not persisted at all
+     */
+    public boolean load() throws IOException {
+        if (directory == null) {
+            return false;
+        }
+        File data = new File(directory, DATA_FILE);
+        if (!data.exists()) {
+            logger.info("Keyword index snapshot is missing in {}.", directory);
+            return false;
+        }
+        lock.writeLock().lock();
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new GZIPInputStream(new FileInputStream(data))))) {
+            clearInternal();
+            if (in.readInt() != FORMAT_VERSION) {
+                logger.info("Keyword index in {} has been written in an outdated format.", directory);
+                return false;
+            }
+            sequence = in.readLong();
+            bulkUpdate = true;
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                Resource subject = NTriplesUtil.parseResource(readString(in), VF);
+                IRI predicate = (IRI) NTriplesUtil.parseResource(readString(in), VF);
+                Literal literal = NTriplesUtil.parseLiteral(readString(in), VF);
+                int references = in.readInt();
+                for (int r = 0; r < references; r++) {
+                    add(VF.createStatement(subject, predicate, literal));
+                }
+            }
+            int typed = in.readInt();
+            for (int i = 0; i < typed; i++) {
+                Resource subject = NTriplesUtil.parseResource(readString(in), VF);
+                int typeCount = in.readInt();
+                for (int t = 0; t < typeCount; t++) {
+                    IRI type = (IRI) NTriplesUtil.parseResource(readString(in), VF);
+                    resourceTypes.computeIfAbsent(subject, k -> HashMultiset.create()).add(type, in.readInt());
+                }
+            }
+            logger.info("Loaded keyword index snapshot with {} documents (sequence {}) from {}.",
+                    count, sequence, directory);
+            return true;
+        } finally {
+            finishBulkUpdate();
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Persists a snapshot of the index, if it has a directory.
+     */
+    public void save() throws IOException {
+        if (directory == null) {
+            return;
+        }
+        lock.readLock().lock();
+        try {
+            directory.mkdirs();
+            File tmp = new File(directory, DATA_FILE + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(tmp))))) {
+                out.writeInt(FORMAT_VERSION);
+                out.writeLong(sequence);
+                out.writeInt(ids.size());
+                for (Document doc : documents) {
+                    if (doc != null) {
+                        writeString(out, NTriplesUtil.toNTriplesString(doc.subject));
+                        writeString(out, NTriplesUtil.toNTriplesString(doc.predicate));
+                        writeString(out, NTriplesUtil.toNTriplesString(doc.literal));
+                        out.writeInt(doc.references);
+                    }
+                }
+                out.writeInt(resourceTypes.size());
+                for (Map.Entry<Resource, Multiset<IRI>> entry : resourceTypes.entrySet()) {
+                    writeString(out, NTriplesUtil.toNTriplesString(entry.getKey()));
+                    out.writeInt(entry.getValue().elementSet().size());
+                    for (Multiset.Entry<IRI> type : entry.getValue().entrySet()) {
+                        writeString(out, NTriplesUtil.toNTriplesString(type.getElement()));
+                        out.writeInt(type.getCount());
+                    }
+                }
+            }
+            Files.move(tmp.toPath(), new File(directory, DATA_FILE).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            logger.debug("Persisted keyword index snapshot with {} documents (sequence {}) to {}.",
+                    ids.size(), sequence, directory);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Applies the changes of a transaction.
+     */
+    public void apply(Collection<Change> changes) {
+        lock.writeLock().lock();
+        try {
+            bulkUpdate = changes.size() >= BULK_UPDATE_SIZE;
+            for (Change change : changes) {
+                if (change.isAdded()) {
+                    add(change.getStatement());
+                } else {
+                    remove(change.getStatement());
+                }
+            }
+        } finally {
+            finishBulkUpdate();
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void finishBulkUpdate() {
+        if (bulkUpdate) {
+            edgeNgrams.values().forEach(RankedPostings::sort);
+            bulkUpdate = false;
+        }
+    }
+
+    /**
+     * Applies the changes of the committed transaction with the specified
+     * sequence number.
+     */
+    public void apply(Collection<Change> changes, long sequence) {
+        lock.writeLock().lock();
+        try {
+            apply(changes);
+            this.sequence = sequence;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            clearInternal();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void clearInternal() {
+        sequence = 0;
+        ids.clear();
+        documents.clear();
+        freeIds.clear();
+        postings.clear();
+        edgeNgrams.clear();
+        resourceTypes.clear();
+    }
+
+    private static List<Value> key(Statement st) {
+        return Arrays.asList(st.getSubject(), st.getPredicate(), st.getObject());
+    }
+
+    private static boolean isType(Statement st) {
+        return RDF.TYPE.equals(st.getPredicate()) && st.getObject() instanceof IRI;
+    }
+
+    private void add(Statement st) {
+        if (isType(st)) {
+            resourceTypes.computeIfAbsent(st.getSubject(), k -> HashMultiset.create()).add((IRI) st.getObject());
+            return;
+        }
+        if (!(st.getObject() instanceof Literal)) {
+            return;
+        }
+        List<Value> key = key(st);
+        Integer id = ids.get(key);
+        if (id != null) {
+            documents.get(id).references++;
+            return;
+        }
+        Literal literal = (Literal) st.getObject();
+        List<String> terms = KeywordQuery.analyze(literal.getLabel());
+        Document doc = new Document(st.getSubject(), st.getPredicate(), literal, terms.toArray(new String[0]));
+        doc.references = 1;
+        if (freeIds.isEmpty()) {
+            id = documents.size();
+            documents.add(doc);
+        } else {
+            id = freeIds.pop();
+            documents.set(id, doc);
+        }
+        ids.put(key, id);
+        for (String term : terms) {
+            postings.computeIfAbsent(term, t -> Maps.newHashMap()).merge(id, 1, Integer::sum);
+        }
+        long rankKey = rankKey(id, doc);
+        for (String gram : edgeNgrams(doc)) {
+            edgeNgrams.computeIfAbsent(gram, g -> new RankedPostings()).add(rankKey, bulkUpdate);
+        }
+    }
+
+    private void remove(Statement st) {
+        if (isType(st)) {
+            Multiset<IRI> subjectTypes = resourceTypes.get(st.getSubject());
+            if (subjectTypes != null) {
+                subjectTypes.remove(st.getObject());
+                if (subjectTypes.isEmpty()) {
+                    resourceTypes.remove(st.getSubject());
+                }
+            }
+            return;
+        }
+        List<Value> key = key(st);
+        Integer id = ids.get(key);
+        if (id == null) {
+            return;
+        }
+        Document doc = documents.get(id);
+        if (--doc.references > 0) {
+            return;
+        }
+        for (String term : doc.terms) {
+            Map<Integer, Integer> posting = postings.get(term);
+            if (posting != null) {
+                posting.remove(id);
+                if (posting.isEmpty()) {
+                    postings.remove(term);
+                }
+            }
+        }
+        long rankKey = rankKey(id, doc);
+        for (String gram : edgeNgrams(doc)) {
+            RankedPostings ranked = edgeNgrams.get(gram);
+            if (ranked != null) {
+                ranked.remove(rankKey);
+                if (ranked.size() == 0) {
+                    edgeNgrams.remove(gram);
+                }
+            }
+        }
+        ids.remove(key);
+        documents.set(id, null);
+        freeIds.push(id);
+    }
+
+    /**
+     * Distinct prefixes of up to {@link #EDGE_NGRAM_LENGTH} characters of the
+     * terms of the document.
+     */
+    private static Set<String> edgeNgrams(Document doc) {
+        Set<String> grams = Sets.newHashSet();
+        for (String term : doc.terms) {
+            for (int length = 1; length <= Math.min(EDGE_NGRAM_LENGTH, term.length()); length++) {
+                grams.add(term.substring(0, length));
+            }
+        }
+        return grams;
+    }
+
+    /**
+     * Orders documents by their length (shorter ones first) and their id.
+     */
+    private static long rankKey(int id, Document doc) {
+        return ((long) doc.length() << 32) | id;
+    }
+
+    /**
+     * Searches for documents matching all terms of the query.
+     *
+     * @see #search(KeywordQuery, Set, Set, Resource, long)
+     */
+    public List<Hit> search(KeywordQuery query, Set<IRI> predicates, Resource subject, long limit) {
+        return search(query, predicates, Collections.emptySet(), subject, limit);
+    }
+
+    /**
+     * Searches for documents matching all terms of the query.
+     *
+     * <p>
+     * If the last term of the query is a prefix, the documents are ranked by
+     * their length only (the score is <code>1 / sqrt(length)</code>), such that
+     * the best matches can be found without visiting all documents matching the
+     * prefix. Otherwise documents are ranked by TF-IDF.
+     * </p>
+     *
+     * @param predicates only return documents of these predicates, all if empty
+     * @param types      only return documents whose subject is an instance of
+     *                   at least one of these types, all if empty
+     * @param subject    only return documents of this subject, all if
+     *                   <code>null</code>
+     * @param limit      maximum number of hits, unlimited if negative
+     * @return the hits ordered by their score (descending)
+     */
+    public List<Hit> search(KeywordQuery query, Set<IRI> predicates, Set<IRI> types, Resource subject,
+            long limit) {
+        if (query.isEmpty()) {
+            return Lists.newArrayList();
+        }
+        int maxHits = limit < 0 || limit > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) limit;
+        lock.readLock().lock();
+        try {
+            Predicate<Document> filter = doc -> (predicates.isEmpty() || predicates.contains(doc.predicate))
+                    && (subject == null || subject.equals(doc.subject))
+                    && (types.isEmpty() || hasAnyType(doc.subject, types));
+            if (query.getTerms().get(query.getTerms().size() - 1).isPrefix()) {
+                return complete(query, filter, maxHits);
+            }
+            Map<Integer, Double> scores = null;
+            for (KeywordQuery.Term term : query.getTerms()) {
+                Map<Integer, Double> termScores = scoreTerm(term);
+                if (scores == null) {
+                    scores = termScores;
+                } else {
+                    scores.keySet().retainAll(termScores.keySet());
+                    scores.replaceAll((id, score) -> score + termScores.get(id));
+                }
+                if (scores.isEmpty()) {
+                    break;
+                }
+            }
+            // bounded heap of the best hits, the worst one on top
+            Comparator<Hit> byScore = Comparator.comparingDouble(Hit::getScore);
+            PriorityQueue<Hit> best = new PriorityQueue<>(byScore);
+            for (Map.Entry<Integer, Double> e : scores.entrySet()) {
+                Document doc = documents.get(e.getKey());
+                if (!filter.test(doc)) {
+                    continue;
+                }
+                Hit hit = toHit(doc, e.getValue());
+                if (best.size() < maxHits) {
+                    best.add(hit);
+                } else if (maxHits > 0 && best.peek().getScore() < hit.getScore()) {
+                    best.poll();
+                    best.add(hit);
+                }
+            }
+            List<Hit> hits = Lists.newArrayList(best);
+            hits.sort(byScore.reversed());
+            return hits;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private boolean hasAnyType(Resource subject, Set<IRI> requiredTypes) {
+        Multiset<IRI> subjectTypes = resourceTypes.get(subject);
+        if (subjectTypes == null) {
+            return false;
+        }
+        for (IRI type : requiredTypes) {
+            if (subjectTypes.contains(type)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Completion path for typeahead queries.
+     *
+     * <p>
+     * By default, the ranked postings of the smallest edge n-gram of the query
+     * terms are visited best first and every document is verified against all
+     * terms of the query, until the requested number of hits has been found.
+     * If the exact candidates of a term (the postings of a complete term or of
+     * all expansions of a long prefix) are considerably fewer, such that
+     * verifying and ranking all of them is cheaper than the expected number of
+     * visited ranked postings, the exact candidates are used instead.
+     * </p>
+     */
+    private List<Hit> complete(KeywordQuery query, Predicate<Document> filter, int maxHits) {
+        RankedPostings ranked = null;
+        Supplier<Collection<Integer>> exact = null;
+        long exactSize = Long.MAX_VALUE;
+        for (KeywordQuery.Term term : query.getTerms()) {
+            String text = term.getText();
+            RankedPostings gram = edgeNgrams.get(text.substring(0, Math.min(EDGE_NGRAM_LENGTH, text.length())));
+            if (gram == null) {
+                return Lists.newArrayList();
+            }
+            if (ranked == null || gram.size() < ranked.size()) {
+                ranked = gram;
+            }
+            if (!term.isPrefix()) {
+                Map<Integer, Integer> posting = postings.get(text);
+                if (posting == null) {
+                    return Lists.newArrayList();
+                }
+                if (posting.size() < exactSize) {
+                    exact = posting::keySet;
+                    exactSize = posting.size();
+                }
+            } else if (text.length() > EDGE_NGRAM_LENGTH) {
+                // long prefixes usually expand to few terms only
+                long size = 0;
+                for (Map<Integer, Integer> posting : prefixPostings(text)) {
+                    size += posting.size();
+                    if (size >= exactSize) {
+                        break;
+                    }
+                }
+                if (size < exactSize) {
+                    exact = () -> {
+                        Set<Integer> candidates = Sets.newHashSet();
+                        prefixPostings(text).forEach(posting -> candidates.addAll(posting.keySet()));
+                        return candidates;
+                    };
+                    exactSize = size;
+                }
+            }
+        }
+        Predicate<Document> matches = filter.and(doc -> matchesAllTerms(doc, query));
+        List<Hit> hits = Lists.newArrayList();
+
+        // expected number of visited ranked postings: maxHits / (exactSize / ranked.size())
+        if (exact == null || (double) exactSize * exactSize > (double) maxHits * ranked.size()) {
+            for (int i = 0; i < ranked.size() && hits.size() < maxHits; i++) {
+                Document doc = documents.get((int) ranked.get(i));
+                if (matches.test(doc)) {
+                    hits.add(toCompletionHit(doc));
+                }
+            }
+            return hits;
+        }
+        Collection<Integer> candidates = exact.get();
+        long[] keys = new long[candidates.size()];
+        int size = 0;
+        for (int id : candidates) {
+            Document doc = documents.get(id);
+            if (matches.test(doc)) {
+                keys[size++] = rankKey(id, doc);
+            }
+        }
+        Arrays.sort(keys, 0, size);
+        for (int i = 0; i < size && hits.size() < maxHits; i++) {
+            hits.add(toCompletionHit(documents.get((int) keys[i])));
+        }
+        return hits;
+    }
+
+    private Collection<Map<Integer, Integer>> prefixPostings(String prefix) {
+        return postings.subMap(prefix, true, prefix + Character.MAX_VALUE, true).values();
+    }
+
+    private static boolean matchesAllTerms(Document doc, KeywordQuery query) {
+        for (KeywordQuery.Term term : query.getTerms()) {
+            if (term.isPrefix() ? !doc.hasTermWithPrefix(term.getText()) : !doc.hasTerm(term.getText())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Hit toCompletionHit(Document doc) {
+        return new Hit(doc.subject, doc.predicate, doc.literal, 1.0 / Math.sqrt(Math.max(1, doc.length())));
+    }
+
+    private Map<Integer, Double> scoreTerm(KeywordQuery.Term term) {
+        Map<Integer, Double> scores = Maps.newHashMap();
+        Map<String, Map<Integer, Integer>> matching;
+        if (term.isPrefix()) {
+            matching = postings.subMap(term.getText(), true, term.getText() + Character.MAX_VALUE, true);
+        } else {
+            Map<Integer, Integer> posting = postings.get(term.getText());
+            matching = posting == null ? Collections.emptyMap() : Collections.singletonMap(term.getText(), posting);
+        }
+        int expansions = 0;
+        for (Map<Integer, Integer> posting : matching.values()) {
+            if (++expansions > MAX_PREFIX_EXPANSIONS) {
+                logger.debug("Prefix term {} matches more than {} terms, ignoring the remaining ones.",
+                        term, MAX_PREFIX_EXPANSIONS);
+                break;
+            }
+            double idf = Math.log(1.0 + (double) ids.size() / posting.size());
+            posting.forEach((id, tf) -> scores.merge(id, tf * idf, Double::sum));
+        }
+        return scores;
+    }
+
+    private static Hit toHit(Document doc, double score) {
+        return new Hit(doc.subject, doc.predicate, doc.literal, score / Math.sqrt(Math.max(1, doc.length())));
+    }
+
+    /**
+     * Number of indexed documents.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return ids.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Number of resources with at least one <code>rdf:type</code>.
+     */
+    public int getTypedResourceCount() {
+        lock.readLock().lock();
+        try {
+            return resourceTypes.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Number of distinct terms.
+     */
+    public int getTermCount() {
+        lock.readLock().lock();
+        try {
+            return postings.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Sequence number of the last committed transaction contained in the
+     * index.
+     */
+    public long getSequence() {
+        lock.readLock().lock();
+        try {
+            return sequence;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,322 @@
+/*
+ * Copyright (C) 2015-2017, metaphacts GmbH
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, you can receive a copy
+ * of the GNU Lesser General Public License from http://www.gnu.org/
+ */
+
+package com.metaphacts.sail.keyword;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.rio.ntriples.NTriplesUtil;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.metaphacts.sail.keyword.KeywordIndex.Change;
+
+/**
+ * Write-ahead log of the {@link KeywordIndex}, which allows to recover the
+ * index after an unclean shutdown without a full rebuild.
+ *
+ * <p>
+ * The changes of every transaction are written (and forced to disk) as
+ * <i>prepare</i> record before the transaction is committed to the underlying
+ * store. After the store commit succeeded, a <i>commit</i> record assigns the
+ * sequence number of the transaction, otherwise an <i>abort</i> record is
+ * written. On startup, all committed transactions with a sequence number
+ * greater than the one of the loaded index snapshot are replayed. Transactions
+ * which have been prepared but neither committed nor aborted (i.e. the process
+ * died during the store commit) need to be reconciled against the store.
+ * </p>
+ *
+ * <p>
+ * Records are framed by their length and a CRC32 checksum. Reading stops at
+ * the first incomplete or corrupt record, i.e. a record which has been torn
+ * by a crash while being written, and the log is truncated to the last
+ * complete record.
+ * </p>
+ */
+class KeywordIndexLog {
+
+    private static final Logger logger = LogManager.getLogger(KeywordIndexLog.class);
+
+    static final String LOG_FILE = "keyword-index.wal";
+
+    private static final byte PREPARE = 1;
+    private static final byte COMMIT = 2;
+    private static final byte ABORT = 3;
+
+    private static final ValueFactory VF = SimpleValueFactory.getInstance();
+
+    /**
+     * A transaction read from the log.
+     */
+    static class Transaction {
+        private final long id;
+        private final List<Change> changes;
+        private long sequence = -1;
+
+        Transaction(long id, List<Change> changes) {
+            this.id = id;
+            this.changes = changes;
+        }
+
+        long getId() {
+            return id;
+        }
+
+        List<Change> getChanges() {
+            return changes;
+        }
+
+        /**
+         * Sequence number assigned by the commit record.
+         */
+        long getSequence() {
+            return sequence;
+        }
+    }
+
+    /**
+     * Content of the log at the time it has been opened.
+     */
+    static class Replay {
+        private final List<Transaction> committed = Lists.newArrayList();
+        private final List<Transaction> pending = Lists.newArrayList();
+
+        /**
+         * Committed transactions in the order of their commit.
+         */
+        List<Transaction> getCommitted() {
+            return committed;
+        }
+
+        /**
+         * Transactions with an unknown outcome of the store commit.
+         */
+        List<Transaction> getPending() {
+            return pending;
+        }
+    }
+
+    private final File file;
+    private FileChannel channel;
+    private long nextTransaction = 1;
+
+    KeywordIndexLog(File directory) {
+        this.file = new File(directory, LOG_FILE);
+    }
+
+    /**
+     * Reads the existing log (if any) and opens it for appending further
+     * records.
+     */
+    synchronized Replay open() throws IOException {
+        file.getParentFile().mkdirs();
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        Replay replay = new Replay();
+        Map<Long, Transaction> prepared = Maps.newLinkedHashMap();
+        long valid = 0;
+        channel.position(0);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+        while (true) {
+            byte[] record;
+            try {
+                int length = in.readInt();
+                if (length <= 0 || length > channel.size() - valid) {
+                    break;
+                }
+                record = new byte[length];
+                in.readFully(record);
+                if (in.readLong() != checksum(record)) {
+                    break;
+                }
+            } catch (EOFException e) {
+                break;
+            }
+            valid += 4 + record.length + 8;
+            readRecord(record, prepared, replay);
+        }
+        replay.pending.addAll(prepared.values());
+        if (valid < channel.size()) {
+            logger.warn("Discarding {} bytes of incomplete records at the end of the keyword index log {}.",
+                    channel.size() - valid, file);
+            channel.truncate(valid);
+        }
+        channel.position(valid);
+        return replay;
+    }
+
+    private void readRecord(byte[] record, Map<Long, Transaction> prepared, Replay replay) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        byte type = in.readByte();
+        long id = in.readLong();
+        nextTransaction = Math.max(nextTransaction, id + 1);
+        switch (type) {
+        case PREPARE:
+            int count = in.readInt();
+            List<Change> changes = Lists.newArrayListWithCapacity(count);
+            for (int i = 0; i < count; i++) {
+                boolean added = in.readBoolean();
+                Resource subject = NTriplesUtil.parseResource(KeywordIndex.readString(in), VF);
+                IRI predicate = (IRI) NTriplesUtil.parseResource(KeywordIndex.readString(in), VF);
+                Value object = NTriplesUtil.parseValue(KeywordIndex.readString(in), VF);
+                String context = KeywordIndex.readString(in);
+                Statement st = context.isEmpty() ? VF.createStatement(subject, predicate, object)
+                        : VF.createStatement(subject, predicate, object, NTriplesUtil.parseResource(context, VF));
+                changes.add(new Change(added, st));
+            }
+            prepared.put(id, new Transaction(id, changes));
+            break;
+        case COMMIT:
+            Transaction tx = prepared.remove(id);
+            if (tx != null) {
+                tx.sequence = in.readLong();
+                replay.committed.add(tx);
+            }
+            break;
+        case ABORT:
+            prepared.remove(id);
+            break;
+        default:
+            throw new IOException("Unknown record type " + type + " in keyword index log " + file);
+        }
+    }
+
+    /**
+     * Durably records the changes of a transaction, which is about to be
+     * committed to the store.
+     *
+     * @return the identifier of the transaction in the log
+     */
+    synchronized long prepare(Collection<Change> changes) throws IOException {
+        long id = nextTransaction++;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(PREPARE);
+        out.writeLong(id);
+        out.writeInt(changes.size());
+        for (Change change : changes) {
+            Statement st = change.getStatement();
+            out.writeBoolean(change.isAdded());
+            KeywordIndex.writeString(out, NTriplesUtil.toNTriplesString(st.getSubject()));
+            KeywordIndex.writeString(out, NTriplesUtil.toNTriplesString(st.getPredicate()));
+            KeywordIndex.writeString(out, NTriplesUtil.toNTriplesString(st.getObject()));
+            KeywordIndex.writeString(out,
+                    st.getContext() == null ? "" : NTriplesUtil.toNTriplesString(st.getContext()));
+        }
+        append(bytes.toByteArray(), true);
+        return id;
+    }
+
+    /**
+     * Records that the store commit of the transaction succeeded. The record
+     * is not forced to disk, since a lost commit record is recovered by
+     * reconciling the prepared changes against the store.
+     */
+    synchronized void commit(long id, long sequence) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(COMMIT);
+        out.writeLong(id);
+        out.writeLong(sequence);
+        append(bytes.toByteArray(), false);
+    }
+
+    /**
+     * Records that the store commit of the transaction failed.
+     */
+    synchronized void abort(long id) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(ABORT);
+        out.writeLong(id);
+        append(bytes.toByteArray(), false);
+    }
+
+    private void append(byte[] record, boolean force) throws IOException {
+        if (channel == null) {
+            throw new IllegalStateException("Keyword index log has not been opened.");
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(4 + record.length + 8);
+        buffer.putInt(record.length);
+        buffer.put(record);
+        buffer.putLong(checksum(record));
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        if (force) {
+            channel.force(false);
+        }
+    }
+
+    private static long checksum(byte[] record) {
+        CRC32 crc = new CRC32();
+        crc.update(record);
+        return crc.getValue();
+    }
+
+    /**
+     * Discards all records, to be called after a snapshot of the index has
+     * been persisted.
+     */
+    synchronized void truncate() throws IOException {
+        if (channel != null) {
+            channel.truncate(0);
+            channel.position(0);
+            channel.force(true);
+        }
+    }
+
+    synchronized long size() throws IOException {
+        return channel == null ? 0 : channel.size();
+    }
+
+    synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    File getFile() {
+        return file;
+    }
+}
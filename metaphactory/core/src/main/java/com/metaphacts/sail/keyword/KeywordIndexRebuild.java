@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2015-2017, metaphacts GmbH
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, you can receive a copy
+ * of the GNU Lesser General Public License from http://www.gnu.org/
+ */
+
+package com.metaphacts.sail.keyword;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Progress of a full rebuild of the {@link KeywordIndex}, which is executed in
+ * the background by the {@link KeywordSearchSail}.
+ */
+public class KeywordIndexRebuild {
+
+    public enum State {
+        RUNNING, COMPLETED, FAILED, CANCELLED
+    }
+
+    private final Instant startedAt = Instant.now();
+    private final AtomicLong processedStatements = new AtomicLong();
+    private volatile State state = State.RUNNING;
+    private volatile String currentPredicate;
+    private volatile Instant finishedAt;
+    private volatile String error;
+    private volatile boolean cancelRequested = false;
+
+    void processing(String predicate) {
+        this.currentPredicate = predicate;
+    }
+
+    void processed(long statements) {
+        processedStatements.addAndGet(statements);
+    }
+
+    void completed() {
+        finish(State.COMPLETED);
+    }
+
+    void failed(Throwable t) {
+        this.error = t.getMessage();
+        finish(State.FAILED);
+    }
+
+    void cancelled() {
+        finish(State.CANCELLED);
+    }
+
+    private synchronized void finish(State state) {
+        this.currentPredicate = null;
+        this.finishedAt = Instant.now();
+        this.state = state;
+        notifyAll();
+    }
+
+    /**
+     * Asks the rebuild to stop at the next batch of statements.
+     */
+    void cancel() {
+        cancelRequested = true;
+    }
+
+    boolean isCancelRequested() {
+        return cancelRequested;
+    }
+
+    /**
+     * Blocks until the rebuild has finished.
+     */
+    synchronized void await() throws InterruptedException {
+        while (isRunning()) {
+            wait();
+        }
+    }
+
+    public boolean isRunning() {
+        return state == State.RUNNING;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public String getStartedAt() {
+        return startedAt.toString();
+    }
+
+    public String getFinishedAt() {
+        return finishedAt == null ? null : finishedAt.toString();
+    }
+
+    public long getProcessedStatements() {
+        return processedStatements.get();
+    }
+
+    /**
+     * Predicate whose statements are currently being indexed.
+     */
+    public String getCurrentPredicate() {
+        return currentPredicate;
+    }
+
+    public String getError() {
+        return error;
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2015-2017, metaphacts GmbH
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, you can receive a copy
+ * of the GNU Lesser General Public License from http://www.gnu.org/
+ */
+
+package com.metaphacts.sail.keyword;
+
+import java.text.Normalizer;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Parsed keyword search query, i.e. the list of terms all of which need to be
+ * matched by a literal. Terms followed by a <code>*</code> are matched as
+ * prefixes, e.g. <code>"cat* black"</code> matches "Black cats".
+ *
+ * <p>
+ * Query strings and indexed literals are analyzed the same way (see
+ * {@link #analyze(String)}): text is split at all characters other than
+ * letters and digits, lower-cased and diacritics are removed.
+ * </p>
+ */
+public class KeywordQuery {
+
+    private static final Pattern TOKEN_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    public static class Term {
+        private final String text;
+        private final boolean prefix;
+
+        Term(String text, boolean prefix) {
+            this.text = text;
+            this.prefix = prefix;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public boolean isPrefix() {
+            return prefix;
+        }
+
+        @Override
+        public String toString() {
+            return prefix ? text + "*" : text;
+        }
+    }
+
+    private final List<Term> terms;
+
+    private KeywordQuery(List<Term> terms) {
+        this.terms = Collections.unmodifiableList(terms);
+    }
+
+    public static KeywordQuery parse(String query) {
+        List<Term> terms = Lists.newArrayList();
+        for (String raw : WHITESPACE.split(query.trim())) {
+            boolean prefix = raw.endsWith("*") || raw.endsWith("*'") || raw.endsWith("*\"");
+            List<String> tokens = analyze(raw);
+            for (int i = 0; i < tokens.size(); i++) {
+                // only the last token of e.g. "foo-ba*" is a prefix
+                terms.add(new Term(tokens.get(i), prefix && i == tokens.size() - 1));
+            }
+        }
+        return new KeywordQuery(terms);
+    }
+
+    /**
+     * Splits the text into normalized tokens.
+     */
+    public static List<String> analyze(String text) {
+        String normalized = DIACRITICS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("")
+                .toLowerCase(Locale.ROOT);
+        List<String> tokens = Lists.newArrayList();
+        for (String token : TOKEN_SEPARATOR.split(normalized)) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    public List<Term> getTerms() {
+        return terms;
+    }
+
+    public boolean isEmpty() {
+        return terms.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return terms.toString();
+    }
+}
@@ -0,0 +1,558 @@
+/*
+ * Copyright (C) 2015-2017, metaphacts GmbH
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, you can receive a copy
+ * of the GNU Lesser General Public License from http://www.gnu.org/
+ */
+
+package com.metaphacts.sail.keyword;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.rdf4j.IsolationLevels;
+import org.eclipse.rdf4j.common.iteration.CloseableIteration;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Literal;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.vocabulary.RDF;
+import org.eclipse.rdf4j.repository.Repository;
+import org.eclipse.rdf4j.repository.sail.SailRepository;
+import org.eclipse.rdf4j.sail.NotifyingSail;
+import org.eclipse.rdf4j.sail.NotifyingSailConnection;
+import org.eclipse.rdf4j.sail.Sail;
+import org.eclipse.rdf4j.sail.SailConnection;
+import org.eclipse.rdf4j.sail.SailException;
+import org.eclipse.rdf4j.sail.StackableSail;
+import org.eclipse.rdf4j.sail.helpers.NotifyingSailWrapper;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.metaphacts.sail.keyword.KeywordIndex.Change;
+
+/**
+ * A stackable {@link NotifyingSail} which maintains an embedded
+ * {@link KeywordIndex} over the literal values of the configured predicates of
+ * its base sail (e.g. a memory or native store), i.e. provides keyword search
+ * without an external full-text search service.
+ *
+ * <p>
+ * Keyword search clauses are expressed the same way as for the
+ * {@link com.metaphacts.sail.virtuoso.VirtuosoKeywordSearchSail}, so that
+ * queries can be used with either backend:
+ * <pre><code>
+ *  ?instance rdfs:label ?label .
+ *  ?label bif:contains "cat* black" .
+ *  ?label bif:score ?score .
+ *  </code></pre>
+ * See {@link KeywordSearchSailConnection} for the evaluation.
+ * </p>
+ *
+ * <p>
+ * The index is persisted in the index directory (by default a sub-directory
+ * of the data directory of the base sail) and is maintained transactionally:
+ * the changes of every transaction are recorded in the {@link KeywordIndexLog}
+ * before they are committed to the base sail and are applied to the index
+ * afterwards. On initialization, the log is replayed on top of the latest
+ * snapshot of the index, i.e. an unclean shutdown does not require a rebuild.
+ * The log is truncated whenever a new snapshot is persisted (on shutdown and
+ * when the log exceeds {@link #CHECKPOINT_LOG_SIZE}).
+ * </p>
+ *
+ * <p>
+ * Full rebuilds (if there is no snapshot or on request, see
+ * {@link #startRebuild()}) are executed in the background on a read snapshot
+ * of the base sail. Queries are answered by the previous index and
+ * transactions committed in the meantime are applied to both indexes, until
+ * the rebuilt index replaces the previous one.
+ * </p>
+ */
+public class KeywordSearchSail extends NotifyingSailWrapper {
+
+    private static final Logger logger = LogManager.getLogger(KeywordSearchSail.class);
+
+    public static final String INDEX_DIRECTORY_NAME = "keyword-index";
+
+    /**
+     * Size of the log (in bytes) after which a snapshot of the index is
+     * persisted.
+     */
+    static final long CHECKPOINT_LOG_SIZE = 64 * 1024 * 1024;
+
+    private static final int REBUILD_BATCH_SIZE = 10000;
+
+    private final Set<IRI> indexedPredicates;
+    private final File indexDirectory;
+
+    private volatile KeywordIndex index;
+    /**
+     * Whether the index reflects the entire base sail, i.e. may be persisted.
+     */
+    private volatile boolean indexComplete = false;
+    private KeywordIndexLog log;
+
+    /**
+     * Commits hold the read lock from the log record before the base commit
+     * until the index has been updated, such that operations which need a
+     * consistent state of base sail, log and index (checkpoints, the start and
+     * the end of a rebuild) can exclude them by holding the write lock.
+     */
+    private final ReadWriteLock commitLock = new ReentrantReadWriteLock();
+    private final Object applyMonitor = new Object();
+
+    private ExecutorService rebuildExecutor;
+    private volatile KeywordIndexRebuild rebuild;
+    /**
+     * Changes committed while a rebuild is in progress, guarded by the apply
+     * monitor.
+     */
+    private List<Change> rebuildBuffer;
+
+    /**
+     * Commit of the base sail connection.
+     */
+    @FunctionalInterface
+    interface BaseCommit {
+        void commit() throws SailException;
+    }
+
+    /**
+     * State of the index as reported by the REST API.
+     */
+    public static class Status {
+        private final int documents;
+        private final int terms;
+        private final int typedResources;
+        private final long sequence;
+        private final boolean complete;
+        private final String directory;
+        private final long logSize;
+        private final List<String> indexedPredicates;
+        private final KeywordIndexRebuild rebuild;
+
+        Status(KeywordSearchSail sail, long logSize) {
+            KeywordIndex index = sail.index;
+            this.documents = index.size();
+            this.terms = index.getTermCount();
+            this.typedResources = index.getTypedResourceCount();
+            this.sequence = index.getSequence();
+            this.complete = sail.indexComplete;
+            this.directory = index.getDirectory() == null ? null : index.getDirectory().getAbsolutePath();
+            this.logSize = logSize;
+            this.indexedPredicates = sail.indexedPredicates.stream().map(IRI::stringValue)
+                    .collect(Collectors.toList());
+            this.rebuild = sail.rebuild;
+        }
+
+        public int getDocuments() {
+            return documents;
+        }
+
+        public int getTerms() {
+            return terms;
+        }
+
+        public int getTypedResources() {
+            return typedResources;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        /**
+         * Whether the index has been built completely, i.e. is not waiting for
+         * the initial build.
+         */
+        public boolean isComplete() {
+            return complete;
+        }
+
+        public String getDirectory() {
+            return directory;
+        }
+
+        public long getLogSize() {
+            return logSize;
+        }
+
+        public List<String> getIndexedPredicates() {
+            return indexedPredicates;
+        }
+
+        /**
+         * The running or the most recent rebuild (if any).
+         */
+        public KeywordIndexRebuild getRebuild() {
+            return rebuild;
+        }
+    }
+
+    /**
+     * @param indexedPredicates predicates whose literal values are indexed
+     * @param indexDirectory    directory to persist the index to or
+     *                          <code>null</code> to use the data directory of
+     *                          the base sail (if there is any)
+     */
+    public KeywordSearchSail(Set<IRI> indexedPredicates, File indexDirectory) {
+        this.indexedPredicates = ImmutableSet.copyOf(indexedPredicates);
+        this.indexDirectory = indexDirectory;
+    }
+
+    public KeywordSearchSail(NotifyingSail baseSail, Set<IRI> indexedPredicates, File indexDirectory) {
+        this(indexedPredicates, indexDirectory);
+        setBaseSail(baseSail);
+    }
+
+    @Override
+    public void initialize() throws SailException {
+        super.initialize();
+        File directory = indexDirectory;
+        if (directory == null && getDataDir() != null) {
+            directory = new File(getDataDir(), INDEX_DIRECTORY_NAME);
+        }
+        index = new KeywordIndex(directory);
+        rebuildExecutor = Executors.newSingleThreadExecutor(
+                new ThreadFactoryBuilder().setNameFormat("keyword-index-rebuild-%d").setDaemon(true).build());
+        try {
+            if (directory != null) {
+                log = new KeywordIndexLog(directory);
+                KeywordIndexLog.Replay replay = log.open();
+                if (index.load()) {
+                    recover(replay);
+                    return;
+                }
+                // the log is meaningless without a snapshot
+                log.truncate();
+            }
+        } catch (IOException e) {
+            throw new SailException("Failed to initialize keyword index: " + e.getMessage(), e);
+        }
+        startRebuild();
+    }
+
+    /**
+     * Replays the log on top of the loaded snapshot.
+     */
+    private void recover(KeywordIndexLog.Replay replay) throws IOException {
+        int replayed = 0;
+        for (KeywordIndexLog.Transaction tx : replay.getCommitted()) {
+            if (tx.getSequence() > index.getSequence()) {
+                index.apply(tx.getChanges(), tx.getSequence());
+                replayed++;
+            }
+        }
+        if (!replay.getPending().isEmpty()) {
+            // the outcome of the base commit is unknown, keep the changes
+            // which are reflected by the base sail
+            List<Change> reconciled = Lists.newArrayList();
+            try (SailConnection con = getBaseSail().getConnection()) {
+                for (KeywordIndexLog.Transaction tx : replay.getPending()) {
+                    for (Change change : tx.getChanges()) {
+                        Statement st = change.getStatement();
+                        boolean exists = con.hasStatement(st.getSubject(), st.getPredicate(), st.getObject(),
+                                false, new Resource[] { st.getContext() });
+                        if (exists == change.isAdded()) {
+                            reconciled.add(change);
+                        }
+                    }
+                }
+            }
+            index.apply(reconciled, index.getSequence() + 1);
+        }
+        indexComplete = true;
+        if (replayed > 0 || !replay.getPending().isEmpty()) {
+            logger.info("Recovered keyword index by replaying {} committed and reconciling {} pending transactions.",
+                    replayed, replay.getPending().size());
+        }
+        checkpoint();
+    }
+
+    /**
+     * Commits a transaction of a connection of this sail.
+     *
+     * @param changes    changes to indexed statements in the transaction
+     * @param baseCommit commit of the base sail connection
+     */
+    void commit(List<Change> changes, BaseCommit baseCommit) throws SailException {
+        if (changes.isEmpty()) {
+            baseCommit.commit();
+            return;
+        }
+        boolean checkpoint;
+        commitLock.readLock().lock();
+        try {
+            long tx = log != null ? log.prepare(changes) : -1;
+            try {
+                baseCommit.commit();
+            } catch (SailException | RuntimeException e) {
+                if (log != null) {
+                    log.abort(tx);
+                }
+                throw e;
+            }
+            synchronized (applyMonitor) {
+                long sequence = index.getSequence() + 1;
+                index.apply(changes, sequence);
+                if (rebuildBuffer != null) {
+                    rebuildBuffer.addAll(changes);
+                }
+                if (log != null) {
+                    try {
+                        log.commit(tx, sequence);
+                    } catch (IOException e) {
+                        // the base commit succeeded, the prepared changes are
+                        // reconciled on recovery
+                        logger.error("Failed to write commit record to keyword index log: {}", e.getMessage());
+                    }
+                }
+            }
+            checkpoint = log != null && log.size() > CHECKPOINT_LOG_SIZE;
+        } catch (IOException e) {
+            throw new SailException("Failed to write keyword index log: " + e.getMessage(), e);
+        } finally {
+            commitLock.readLock().unlock();
+        }
+        if (checkpoint) {
+            try {
+                checkpoint();
+            } catch (IOException e) {
+                logger.error("Failed to persist keyword index snapshot: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Persists a snapshot of the index and truncates the log, unless the
+     * index has not been built completely yet.
+     */
+    private void checkpoint() throws IOException {
+        commitLock.writeLock().lock();
+        try {
+            if (!indexComplete || log == null) {
+                return;
+            }
+            index.save();
+            log.truncate();
+        } finally {
+            commitLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Starts a full rebuild of the index in the background.
+     *
+     * @throws IllegalStateException if a rebuild is running already
+     */
+    public synchronized KeywordIndexRebuild startRebuild() {
+        if (rebuild != null && rebuild.isRunning()) {
+            throw new IllegalStateException("A rebuild of the keyword index is running already.");
+        }
+        KeywordIndexRebuild progress = new KeywordIndexRebuild();
+        rebuild = progress;
+        rebuildExecutor.submit(() -> runRebuild(progress));
+        return progress;
+    }
+
+    /**
+     * Blocks until the running rebuild (if any) has finished.
+     */
+    public void awaitRebuild() throws InterruptedException {
+        KeywordIndexRebuild progress = rebuild;
+        if (progress != null) {
+            progress.await();
+        }
+    }
+
+    private void runRebuild(KeywordIndexRebuild progress) {
+        logger.info("Rebuilding keyword index for predicates {}.", indexedPredicates);
+        KeywordIndex rebuilt = new KeywordIndex(index.getDirectory());
+        try {
+            try (SailConnection con = getBaseSail().getConnection()) {
+                commitLock.writeLock().lock();
+                try {
+                    con.begin(IsolationLevels.SNAPSHOT);
+                    // make sure the snapshot is taken before commits are resumed
+                    con.hasStatement(null, null, null, false);
+                    synchronized (applyMonitor) {
+                        rebuildBuffer = Lists.newArrayList();
+                    }
+                } finally {
+                    commitLock.writeLock().unlock();
+                }
+                try {
+                    for (IRI predicate : Sets.union(indexedPredicates, Collections.singleton(RDF.TYPE))) {
+                        progress.processing(predicate.stringValue());
+                        indexPredicate(con, predicate, rebuilt, progress);
+                    }
+                } finally {
+                    // releases the read snapshot
+                    con.rollback();
+                }
+            }
+            commitLock.writeLock().lock();
+            try {
+                synchronized (applyMonitor) {
+                    rebuilt.apply(rebuildBuffer, index.getSequence());
+                    rebuildBuffer = null;
+                }
+                rebuilt.save();
+                if (log != null) {
+                    log.truncate();
+                }
+                index = rebuilt;
+                indexComplete = true;
+            } finally {
+                commitLock.writeLock().unlock();
+            }
+            progress.completed();
+            logger.info("Rebuilt keyword index with {} documents.", rebuilt.size());
+        } catch (RebuildCancelledException e) {
+            progress.cancelled();
+            logger.info("Rebuild of keyword index has been cancelled.");
+        } catch (Exception e) {
+            progress.failed(e);
+            logger.error("Failed to rebuild keyword index: {}", e.getMessage());
+            logger.debug("Details: ", e);
+        } finally {
+            synchronized (applyMonitor) {
+                rebuildBuffer = null;
+            }
+        }
+    }
+
+    private void indexPredicate(SailConnection con, IRI predicate, KeywordIndex rebuilt,
+            KeywordIndexRebuild progress) throws SailException {
+        List<Change> batch = Lists.newArrayListWithCapacity(REBUILD_BATCH_SIZE);
+        try (CloseableIteration<? extends Statement, SailException> statements =
+                con.getStatements(null, predicate, null, false)) {
+            while (statements.hasNext()) {
+                Statement st = statements.next();
+                if (isIndexed(st)) {
+                    batch.add(new Change(true, st));
+                }
+                if (batch.size() >= REBUILD_BATCH_SIZE) {
+                    flush(batch, rebuilt, progress);
+                }
+            }
+        }
+        flush(batch, rebuilt, progress);
+    }
+
+    private static void flush(List<Change> batch, KeywordIndex rebuilt, KeywordIndexRebuild progress) {
+        if (progress.isCancelRequested()) {
+            throw new RebuildCancelledException();
+        }
+        rebuilt.apply(batch);
+        progress.processed(batch.size());
+        batch.clear();
+    }
+
+    private static class RebuildCancelledException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+    }
+
+    @Override
+    public NotifyingSailConnection getConnection() throws SailException {
+        return new KeywordSearchSailConnection(this, super.getConnection());
+    }
+
+    @Override
+    public void shutDown() throws SailException {
+        try {
+            KeywordIndexRebuild progress = rebuild;
+            if (progress != null) {
+                progress.cancel();
+            }
+            if (rebuildExecutor != null) {
+                rebuildExecutor.shutdown();
+                rebuildExecutor.awaitTermination(1, TimeUnit.MINUTES);
+            }
+            if (index != null) {
+                checkpoint();
+            }
+            if (log != null) {
+                log.close();
+            }
+        } catch (IOException e) {
+            logger.error("Failed to persist keyword index: {}", e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            super.shutDown();
+        }
+    }
+
+    /**
+     * Whether the statement is added to the index, i.e. has an indexed
+     * predicate and a literal value or is an <code>rdf:type</code> statement
+     * (used to restrict searches by type).
+     */
+    boolean isIndexed(Statement st) {
+        if (st.getObject() instanceof Literal) {
+            return indexedPredicates.contains(st.getPredicate());
+        }
+        return RDF.TYPE.equals(st.getPredicate()) && st.getObject() instanceof IRI;
+    }
+
+    public Set<IRI> getIndexedPredicates() {
+        return indexedPredicates;
+    }
+
+    public KeywordIndex getIndex() {
+        return index;
+    }
+
+    public Status getStatus() {
+        long logSize = 0;
+        try {
+            logSize = log != null ? log.size() : 0;
+        } catch (IOException e) {
+            logger.warn("Failed to determine size of keyword index log: {}", e.getMessage());
+        }
+        return new Status(this, logSize);
+    }
+
+    /**
+     * Looks up the keyword search sail in the sail stack of the repository.
+     */
+    public static Optional<KeywordSearchSail> find(Repository repository) {
+        if (!(repository instanceof SailRepository)) {
+            return Optional.empty();
+        }
+        Sail sail = ((SailRepository) repository).getSail();
+        while (sail != null) {
+            if (sail instanceof KeywordSearchSail) {
+                return Optional.of((KeywordSearchSail) sail);
+            }
+            sail = sail instanceof StackableSail ? ((StackableSail) sail).getBaseSail() : null;
+        }
+        return Optional.empty();
+    }
+}
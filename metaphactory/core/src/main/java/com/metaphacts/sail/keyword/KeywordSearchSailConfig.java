@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2015-2017, metaphacts GmbH
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, you can receive a copy
+ * of the GNU Lesser General Public License from http://www.gnu.org/
+ */
+
+package com.metaphacts.sail.keyword;
+
+import java.util.Set;
+
+import org.apache.commons.lang3.StringUtils;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.model.util.ModelException;
+import org.eclipse.rdf4j.model.util.Models;
+import org.eclipse.rdf4j.model.vocabulary.RDFS;
+import org.eclipse.rdf4j.sail.config.AbstractDelegatingSailImplConfig;
+import org.eclipse.rdf4j.sail.config.SailConfigException;
+import org.eclipse.rdf4j.sail.config.SailImplConfig;
+
+import com.google.common.collect.Sets;
+import com.metaphacts.repository.MpRepositoryVocabulary;
+
+/**
+ * Configuration of the {@link KeywordSearchSail}, which is stacked on top of
+ * the configured delegate sail. If no predicates are configured, the values
+ * of rdfs:label are indexed.
+ */
+public class KeywordSearchSailConfig extends AbstractDelegatingSailImplConfig {
+
+    private Set<IRI> indexedPredicates = Sets.newLinkedHashSet();
+    private String indexDirectory = null;
+
+    public KeywordSearchSailConfig() {
+        super(KeywordSearchSailFactory.SAIL_TYPE);
+    }
+
+    public KeywordSearchSailConfig(SailImplConfig delegate) {
+        super(KeywordSearchSailFactory.SAIL_TYPE, delegate);
+    }
+
+    @Override
+    public Resource export(Model model) {
+        Resource implNode = super.export(model);
+        for (IRI predicate : indexedPredicates) {
+            model.add(implNode, MpRepositoryVocabulary.INDEXED_PREDICATE, predicate);
+        }
+        if (!StringUtils.isEmpty(indexDirectory)) {
+            model.add(implNode, MpRepositoryVocabulary.INDEX_DIRECTORY,
+                    SimpleValueFactory.getInstance().createLiteral(indexDirectory));
+        }
+        return implNode;
+    }
+
+    @Override
+    public void parse(Model model, Resource implNode) throws SailConfigException {
+        super.parse(model, implNode);
+        try {
+            for (Value predicate : model.filter(implNode, MpRepositoryVocabulary.INDEXED_PREDICATE, null).objects()) {
+                if (!(predicate instanceof IRI)) {
+                    throw new SailConfigException("Indexed predicate must be an IRI: " + predicate);
+                }
+                indexedPredicates.add((IRI) predicate);
+            }
+            Models.objectLiteral(model.filter(implNode, MpRepositoryVocabulary.INDEX_DIRECTORY, null))
+                    .ifPresent(lit -> setIndexDirectory(lit.stringValue()));
+        } catch (ModelException e) {
+            throw new SailConfigException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return the configured predicates or rdfs:label if none are configured
+     */
+    public Set<IRI> getIndexedPredicates() {
+        return indexedPredicates.isEmpty() ? Sets.newHashSet(RDFS.LABEL) : indexedPredicates;
+    }
+
+    public void addIndexedPredicate(IRI predicate) {
+        indexedPredicates.add(predicate);
+    }
+
+    public String getIndexDirectory() {
+        return indexDirectory;
+    }
+
+    public void setIndexDirectory(String indexDirectory) {
+        this.indexDirectory = indexDirectory;
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright (C) 2015-2017, metaphacts GmbH
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, you can receive a copy
+ * of the GNU Lesser General Public License from http://www.gnu.org/
+ */
+
+package com.metaphacts.sail.keyword;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import org.eclipse.rdf4j.common.iteration.CloseableIteration;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.Dataset;
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+import org.eclipse.rdf4j.query.algebra.BindingSetAssignment;
+import org.eclipse.rdf4j.query.algebra.Extension;
+import org.eclipse.rdf4j.query.algebra.Order;
+import org.eclipse.rdf4j.query.algebra.OrderElem;
+import org.eclipse.rdf4j.query.algebra.Projection;
+import org.eclipse.rdf4j.query.algebra.QueryModelNode;
+import org.eclipse.rdf4j.query.algebra.QueryRoot;
+import org.eclipse.rdf4j.query.algebra.Slice;
+import org.eclipse.rdf4j.query.algebra.TupleExpr;
+import org.eclipse.rdf4j.query.algebra.Var;
+import org.eclipse.rdf4j.query.algebra.evaluation.QueryBindingSet;
+import org.eclipse.rdf4j.query.algebra.evaluation.impl.BindingAssigner;
+import org.eclipse.rdf4j.sail.NotifyingSailConnection;
+import org.eclipse.rdf4j.sail.SailConnectionListener;
+import org.eclipse.rdf4j.sail.SailException;
+import org.eclipse.rdf4j.sail.helpers.NotifyingSailConnectionWrapper;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.metaphacts.sail.virtuoso.VirtuosoKeywordSearchSail;
+import com.metaphacts.sparql.keyword.algebra.KeywordSearchGroupExtractor;
+import com.metaphacts.sparql.keyword.algebra.KeywordSearchGroupTupleExpr;
+import com.metaphacts.sparql.keyword.algebra.KeywordSearchPattern;
+
+/**
+ * Connection of the {@link KeywordSearchSail}. Collects the changes to
+ * indexed statements reported by the base sail and hands them to the sail on
+ * commit, which logs them and applies them to the {@link KeywordIndex} once the
+ * base sail has committed, i.e. keyword search does not reflect uncommitted
+ * changes of the current transaction.
+ *
+ * <p>
+ * A keyword search clause (see {@link KeywordSearchGroupExtractor}) is
+ * answered from the index and replaced by the matching bindings (like a
+ * <code>VALUES</code> clause), so that the remainder of the query is
+ * evaluated by the base sail as usual. The clause binds the subject, the
+ * predicate (if it is a variable), the matched literal and its score. If the
+ * predicate is a variable, the literals of all indexed predicates are
+ * searched, otherwise only the ones of the specified predicates.
+ * </p>
+ *
+ * <p>
+ * A single <code>rdf:type</code> restriction of the subject and the limit of
+ * the query are pushed into the index if they do not change the result (see
+ * {@link KeywordSearchGroupExtractor#extractTypeRestriction} and
+ * {@link #getPushableLimit}), i.e. typeahead queries like
+ * <pre><code>
+ *  SELECT ?instance ?label WHERE {
+ *    ?instance a foaf:Person .
+ *    ?instance rdfs:label ?label .
+ *    ?label bif:contains "ali*" .
+ *    ?label bif:score ?score .
+ *  } ORDER BY DESC(?score) LIMIT 10
+ *  </code></pre>
+ * only retrieve the ten best hits from the index.
+ * </p>
+ */
+public class KeywordSearchSailConnection extends NotifyingSailConnectionWrapper implements SailConnectionListener {
+
+    private static final ValueFactory VF = SimpleValueFactory.getInstance();
+
+    private final KeywordSearchSail sail;
+    private final List<KeywordIndex.Change> pendingChanges = Lists.newArrayList();
+
+    public KeywordSearchSailConnection(KeywordSearchSail sail, NotifyingSailConnection wrappedCon) {
+        super(wrappedCon);
+        this.sail = sail;
+        wrappedCon.addConnectionListener(this);
+    }
+
+    @Override
+    public void statementAdded(Statement st) {
+        if (sail.isIndexed(st)) {
+            pendingChanges.add(new KeywordIndex.Change(true, st));
+        }
+    }
+
+    @Override
+    public void statementRemoved(Statement st) {
+        if (sail.isIndexed(st)) {
+            pendingChanges.add(new KeywordIndex.Change(false, st));
+        }
+    }
+
+    @Override
+    public void commit() throws SailException {
+        try {
+            sail.commit(pendingChanges, super::commit);
+        } finally {
+            pendingChanges.clear();
+        }
+    }
+
+    @Override
+    public void rollback() throws SailException {
+        pendingChanges.clear();
+        super.rollback();
+    }
+
+    @Override
+    public CloseableIteration<? extends BindingSet, QueryEvaluationException> evaluate(
+            TupleExpr tupleExpr, Dataset dataset, BindingSet bindings, boolean includeInferred)
+            throws SailException {
+        TupleExpr cloned = tupleExpr.clone();
+        // Apply the provided binding sets
+        new BindingAssigner().optimize(cloned, dataset, bindings);
+        Optional<KeywordSearchGroupTupleExpr> keywordSearchGroup = KeywordSearchGroupExtractor.extract(
+                cloned, VirtuosoKeywordSearchSail.BIF_CONTAINS, VirtuosoKeywordSearchSail.BIF_SCORE);
+        if (!keywordSearchGroup.isPresent()) {
+            return super.evaluate(tupleExpr, dataset, bindings, includeInferred);
+        }
+        KeywordSearchGroupExtractor.extractTypeRestriction(keywordSearchGroup.get());
+        if (keywordSearchGroup.get().getLimit() < 0) {
+            keywordSearchGroup.get().setLimit(getPushableLimit(keywordSearchGroup.get()));
+        }
+        keywordSearchGroup.get().replaceWith(search(keywordSearchGroup.get()));
+        return super.evaluate(cloned, dataset, bindings, includeInferred);
+    }
+
+    private BindingSetAssignment search(KeywordSearchGroupTupleExpr group) throws SailException {
+        KeywordSearchPattern pattern = group.getKeywordSearchPattern();
+        if (!pattern.getValueVar().hasValue()) {
+            throw new SailException("The keyword search token needs to be a constant or bound value.");
+        }
+        KeywordQuery query = KeywordQuery.parse(pattern.getValueVar().getValue().stringValue());
+
+        Set<IRI> predicates = Sets.newHashSet();
+        for (Var predicateVar : pattern.getPredicateVars()) {
+            if (!predicateVar.hasValue()) {
+                // any indexed predicate
+                predicates.clear();
+                break;
+            }
+            if (predicateVar.getValue() instanceof IRI) {
+                predicates.add((IRI) predicateVar.getValue());
+            }
+        }
+        Set<IRI> types = Sets.newHashSet();
+        for (Var typeVar : pattern.getTypeVars()) {
+            if (typeVar.getValue() instanceof IRI) {
+                types.add((IRI) typeVar.getValue());
+            }
+        }
+        Var subjectVar = pattern.getSubjectVar();
+        Resource subject = subjectVar != null && subjectVar.getValue() instanceof Resource
+                ? (Resource) subjectVar.getValue() : null;
+
+        List<BindingSet> bindingSets = Lists.newArrayList();
+        Set<String> bindingNames = Sets.newHashSet();
+        for (KeywordIndex.Hit hit : sail.getIndex().search(query, predicates, types, subject, group.getLimit())) {
+            if (pattern.getMatchVar().hasValue() && !pattern.getMatchVar().getValue().equals(hit.getLiteral())) {
+                continue;
+            }
+            QueryBindingSet bs = new QueryBindingSet();
+            bind(bs, pattern.getMatchVar(), hit.getLiteral());
+            if (subjectVar != null) {
+                bind(bs, subjectVar, hit.getSubject());
+            }
+            for (Var predicateVar : pattern.getPredicateVars()) {
+                bind(bs, predicateVar, hit.getPredicate());
+            }
+            if (pattern.getScoreVar() != null) {
+                bind(bs, pattern.getScoreVar(), VF.createLiteral(hit.getScore()));
+            }
+            bindingNames.addAll(bs.getBindingNames());
+            bindingSets.add(bs);
+        }
+
+        BindingSetAssignment assignment = new BindingSetAssignment();
+        assignment.setBindingNames(bindingNames);
+        assignment.setBindingSets(bindingSets);
+        return assignment;
+    }
+
+    /**
+     * Determines the number of hits which are sufficient to answer the query,
+     * i.e. the limit (plus the offset) of the query, if the keyword search
+     * clause is the only pattern of the query and the results are not ordered
+     * or are ordered by the score only (as usual for autocompletion).
+     *
+     * @return the limit or <code>-1</code> if all hits are needed
+     */
+    static long getPushableLimit(KeywordSearchGroupTupleExpr group) {
+        Var scoreVar = group.getKeywordSearchPattern().getScoreVar();
+        QueryModelNode node = group.getParentNode();
+        while (node != null) {
+            if (node instanceof Slice) {
+                Slice slice = (Slice) node;
+                return slice.hasLimit() ? slice.getLimit() + Math.max(0, slice.getOffset()) : -1;
+            } else if (node instanceof Order) {
+                List<OrderElem> elements = ((Order) node).getElements();
+                if (elements.size() != 1 || elements.get(0).isAscending() || scoreVar == null
+                        || !(elements.get(0).getExpr() instanceof Var)
+                        || !((Var) elements.get(0).getExpr()).getName().equals(scoreVar.getName())) {
+                    return -1;
+                }
+            } else if (!(node instanceof Projection || node instanceof Extension || node instanceof QueryRoot)) {
+                // joins, filters, unions and distinct may drop or add solutions
+                return -1;
+            }
+            node = node.getParentNode();
+        }
+        return -1;
+    }
+
+    private static void bind(QueryBindingSet bs, Var var, Value value) {
+        if (!var.hasValue()) {
+            bs.setBinding(var.getName(), value);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2015-2017, metaphacts GmbH
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, you can receive a copy
+ * of the GNU Lesser General Public License from http://www.gnu.org/
+ */
+
+package com.metaphacts.sail.keyword;
+
+import java.io.File;
+
+import org.apache.commons.lang3.StringUtils;
+import org.eclipse.rdf4j.sail.Sail;
+import org.eclipse.rdf4j.sail.config.SailConfigException;
+import org.eclipse.rdf4j.sail.config.SailFactory;
+import org.eclipse.rdf4j.sail.config.SailImplConfig;
+
+/**
+ * {@link SailFactory} implementation to create {@link KeywordSearchSail}
+ * instances. The delegate sail is created and set as base sail by the
+ * repository factory.
+ */
+public class KeywordSearchSailFactory implements SailFactory {
+
+    public static final String SAIL_TYPE = "metaphacts:KeywordSearch";
+
+    @Override
+    public String getSailType() {
+        return SAIL_TYPE;
+    }
+
+    @Override
+    public SailImplConfig getConfig() {
+        return new KeywordSearchSailConfig();
+    }
+
+    @Override
+    public Sail getSail(SailImplConfig config) throws SailConfigException {
+        if (!(config instanceof KeywordSearchSailConfig)) {
+            throw new SailConfigException(
+                    "Wrong config type: "
+                            + config.getClass().getCanonicalName() + ". ");
+        }
+        KeywordSearchSailConfig keywordConfig = (KeywordSearchSailConfig) config;
+        File indexDirectory = StringUtils.isEmpty(keywordConfig.getIndexDirectory())
+                ? null : new File(keywordConfig.getIndexDirectory());
+        return new KeywordSearchSail(keywordConfig.getIndexedPredicates(), indexDirectory);
+    }
+}
@@ -18,22 +18,95 @@
 
 package com.metaphacts.sail.rest;
 
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.eclipse.rdf4j.model.ValueFactory;
 import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
 import org.eclipse.rdf4j.sail.Sail;
 import org.eclipse.rdf4j.sail.SailException;
 import org.eclipse.rdf4j.sail.helpers.AbstractSail;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
 /**
  * Abstract {@link Sail} implementation for REST API wrappers.
  * 
+ * <p>
+ * All connections of a sail share one connection-pooled HTTP client, which is
+ * created on first use and closed when the sail is shut down. Successful
+ * responses can optionally be cached for a configurable time (see
+ * {@link #setCacheTTL(int)}), keyed by the outgoing request.
+ * </p>
+ * 
+ * <p>
+ * Blocks of input bindings (e.g. the VALUES clause of a bound join) are
+ * evaluated with at most {@link #getMaxConcurrentRequests()} parallel requests
+ * per sail and all requests to the service can be throttled to
+ * {@link #getRequestsPerSecond()}.
+ * </p>
+ * 
  * @author Andriy Nikolov <an@metaphacts.com>
  *
  */
 public abstract class AbstractRESTWrappingSail extends AbstractSail {
+
+    private static final Logger logger = LogManager.getLogger(AbstractRESTWrappingSail.class);
+
+    public static final int DEFAULT_MAX_CONNECTIONS = 20;
+    /**
+     * Connection and socket timeout in seconds.
+     */
+    public static final int DEFAULT_CONNECTION_TIMEOUT = 30;
+    /**
+     * Time in seconds a response is cached, 0 disables the cache.
+     */
+    public static final int DEFAULT_CACHE_TTL = 300;
+    /**
+     * Maximum number of cached responses.
+     */
+    public static final int DEFAULT_CACHE_SIZE = 1000;
+    /**
+     * Responses exceeding this size (in bytes) are not cached.
+     */
+    public static final int MAX_CACHED_RESPONSE_SIZE = 1024 * 1024;
+    /**
+     * Maximum number of requests evaluated in parallel for a block of input
+     * bindings.
+     */
+    public static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 4;
+    /**
+     * Maximum number of values passed to a multi-value parameter in a single
+     * batched request.
+     */
+    public static final int DEFAULT_MAX_BATCH_SIZE = 50;
     
     private final String url;
 
+    private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+    private int connectionTimeout = DEFAULT_CONNECTION_TIMEOUT;
+    private int cacheTTL = DEFAULT_CACHE_TTL;
+    private int cacheSize = DEFAULT_CACHE_SIZE;
+    private int maxConcurrentRequests = DEFAULT_MAX_CONCURRENT_REQUESTS;
+    private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+    private double requestsPerSecond = 0;
+
+    private CloseableHttpClient httpClient;
+    private Cache<String, byte[]> responseCache;
+    private ExecutorService requestExecutor;
+    private RateLimiter rateLimiter;
+
     public AbstractRESTWrappingSail(String url) {
         this.url = url;
     }
@@ -50,11 +123,180 @@ public ValueFactory getValueFactory() {
 
     @Override
     protected void shutDownInternal() throws SailException {
-
+        CloseableHttpClient client;
+        synchronized (this) {
+            client = httpClient;
+            httpClient = null;
+            if (requestExecutor != null) {
+                requestExecutor.shutdownNow();
+                requestExecutor = null;
+            }
+            if (responseCache != null) {
+                responseCache.invalidateAll();
+                responseCache = null;
+            }
+        }
+        if (client != null) {
+            try {
+                client.close();
+            } catch (IOException e) {
+                logger.warn("Failed to close HTTP client of REST service {}: {}", url, e.getMessage());
+            }
+        }
     }
 
     public String getUrl() {
         return url;
     }
 
-}
\ No newline at end of file
+    /**
+     * Returns the HTTP client shared by all connections of this sail. Clients
+     * must not close it, but only the responses obtained from it.
+     */
+    public synchronized CloseableHttpClient getHttpClient() {
+        if (httpClient == null) {
+            PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+            connectionManager.setMaxTotal(maxConnections);
+            connectionManager.setDefaultMaxPerRoute(maxConnections);
+            RequestConfig requestConfig = RequestConfig.custom()
+                    .setConnectTimeout(connectionTimeout * 1000)
+                    .setSocketTimeout(connectionTimeout * 1000)
+                    .setConnectionRequestTimeout(connectionTimeout * 1000)
+                    .build();
+            httpClient = HttpClientBuilder.create()
+                    .setConnectionManager(connectionManager)
+                    .setDefaultRequestConfig(requestConfig)
+                    .build();
+        }
+        return httpClient;
+    }
+
+    /**
+     * @return the response cache or <code>null</code> if caching is disabled
+     */
+    public synchronized Cache<String, byte[]> getResponseCache() {
+        if (responseCache == null && cacheTTL > 0 && cacheSize > 0) {
+            responseCache = CacheBuilder.newBuilder()
+                    .expireAfterWrite(cacheTTL, TimeUnit.SECONDS)
+                    .maximumSize(cacheSize)
+                    .build();
+        }
+        return responseCache;
+    }
+
+    /**
+     * Returns the executor evaluating the requests for blocks of input bindings
+     * in parallel, its number of threads limits the number of parallel
+     * requests.
+     */
+    public synchronized ExecutorService getRequestExecutor() {
+        if (requestExecutor == null) {
+            requestExecutor = Executors.newFixedThreadPool(maxConcurrentRequests,
+                    new ThreadFactoryBuilder().setNameFormat("rest-sail-request-%d").setDaemon(true).build());
+        }
+        return requestExecutor;
+    }
+
+    /**
+     * @return the rate limiter for requests to the service or <code>null</code>
+     *         if requests are not throttled
+     */
+    public synchronized RateLimiter getRateLimiter() {
+        if (rateLimiter == null && requestsPerSecond > 0) {
+            rateLimiter = RateLimiter.create(requestsPerSecond);
+        }
+        return rateLimiter;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * Maximum number of concurrent HTTP connections to the service. Must be set
+     * before the sail is used.
+     */
+    public void setMaxConnections(int maxConnections) {
+        if (maxConnections < 1) {
+            throw new IllegalArgumentException("Maximum number of connections must be a positive number.");
+        }
+        this.maxConnections = maxConnections;
+    }
+
+    public int getConnectionTimeout() {
+        return connectionTimeout;
+    }
+
+    /**
+     * Connection and socket timeout in seconds. Must be set before the sail is
+     * used.
+     */
+    public void setConnectionTimeout(int connectionTimeout) {
+        this.connectionTimeout = connectionTimeout;
+    }
+
+    public int getCacheTTL() {
+        return cacheTTL;
+    }
+
+    /**
+     * Time in seconds a successful response is cached, 0 disables the cache.
+     * Must be set before the sail is used.
+     */
+    public void setCacheTTL(int cacheTTL) {
+        this.cacheTTL = cacheTTL;
+    }
+
+    public int getCacheSize() {
+        return cacheSize;
+    }
+
+    /**
+     * Maximum number of cached responses. Must be set before the sail is used.
+     */
+    public void setCacheSize(int cacheSize) {
+        this.cacheSize = cacheSize;
+    }
+
+    public int getMaxConcurrentRequests() {
+        return maxConcurrentRequests;
+    }
+
+    /**
+     * Maximum number of requests evaluated in parallel for a block of input
+     * bindings. Must be set before the sail is used.
+     */
+    public void setMaxConcurrentRequests(int maxConcurrentRequests) {
+        if (maxConcurrentRequests < 1) {
+            throw new IllegalArgumentException("Maximum number of concurrent requests must be a positive number.");
+        }
+        this.maxConcurrentRequests = maxConcurrentRequests;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    /**
+     * Maximum number of values passed to a multi-value parameter in a single
+     * request.
+     */
+    public void setMaxBatchSize(int maxBatchSize) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("Maximum batch size must be a positive number.");
+        }
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    public double getRequestsPerSecond() {
+        return requestsPerSecond;
+    }
+
+    /**
+     * Maximum number of requests per second sent to the service, 0 disables
+     * the rate limit. Must be set before the sail is used.
+     */
+    public void setRequestsPerSecond(double requestsPerSecond) {
+        this.requestsPerSecond = requestsPerSecond;
+    }
+}
@@ -19,9 +19,12 @@
 package com.metaphacts.sail.rest;
 
 import org.apache.commons.lang3.StringUtils;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Literal;
 import org.eclipse.rdf4j.model.Model;
 import org.eclipse.rdf4j.model.Resource;
 import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.model.util.ModelException;
 import org.eclipse.rdf4j.model.util.Models;
 import org.eclipse.rdf4j.sail.config.AbstractSailImplConfig;
 import org.eclipse.rdf4j.sail.config.SailConfigException;
@@ -30,7 +33,10 @@
 
 /**
  * Abstract {@link SailImplConfig} implementation for the REST API services.
- * Holds one generic parameter: service URL.
+ * Holds the generic parameters service URL, the size and timeout of the HTTP
+ * connection pool, the time-to-live and size of the response cache as well as
+ * the limits for batched and parallel requests. Unset
+ * optional parameters keep the defaults of {@link AbstractRESTWrappingSail}.
  * 
  * @author Andriy Nikolov <an@metaphacts.com>
  *
@@ -38,6 +44,13 @@
 public abstract class AbstractRESTWrappingSailConfig extends AbstractSailImplConfig {
 
     String url = null;
+    private Integer maxConnections = null;
+    private Integer connectionTimeout = null;
+    private Integer cacheTTL = null;
+    private Integer cacheSize = null;
+    private Integer maxConcurrentRequests = null;
+    private Integer maxBatchSize = null;
+    private Double requestsPerSecond = null;
 
     public AbstractRESTWrappingSailConfig() {
 
@@ -62,6 +75,16 @@ public Resource export(Model model) {
             model.add(implNode, MpRepositoryVocabulary.SERVICE_URL,
                     SimpleValueFactory.getInstance().createLiteral(url));
         }
+        export(model, implNode, MpRepositoryVocabulary.MAX_CONNECTIONS, maxConnections);
+        export(model, implNode, MpRepositoryVocabulary.CONNECTION_TIMEOUT, connectionTimeout);
+        export(model, implNode, MpRepositoryVocabulary.CACHE_TTL, cacheTTL);
+        export(model, implNode, MpRepositoryVocabulary.CACHE_SIZE, cacheSize);
+        export(model, implNode, MpRepositoryVocabulary.MAX_CONCURRENT_REQUESTS, maxConcurrentRequests);
+        export(model, implNode, MpRepositoryVocabulary.MAX_BATCH_SIZE, maxBatchSize);
+        if (requestsPerSecond != null) {
+            model.add(implNode, MpRepositoryVocabulary.REQUESTS_PER_SECOND,
+                    SimpleValueFactory.getInstance().createLiteral(requestsPerSecond));
+        }
         return implNode;
     }
 
@@ -70,6 +93,58 @@ public void parse(Model model, Resource implNode) throws SailConfigException {
         super.parse(model, implNode);
         Models.objectLiteral(model.filter(implNode, MpRepositoryVocabulary.SERVICE_URL, null))
                 .ifPresent(lit -> setUrl(lit.stringValue()));
+        try {
+            maxConnections = parseInteger(model, implNode, MpRepositoryVocabulary.MAX_CONNECTIONS);
+            connectionTimeout = parseInteger(model, implNode, MpRepositoryVocabulary.CONNECTION_TIMEOUT);
+            cacheTTL = parseInteger(model, implNode, MpRepositoryVocabulary.CACHE_TTL);
+            cacheSize = parseInteger(model, implNode, MpRepositoryVocabulary.CACHE_SIZE);
+            maxConcurrentRequests = parseInteger(model, implNode, MpRepositoryVocabulary.MAX_CONCURRENT_REQUESTS);
+            maxBatchSize = parseInteger(model, implNode, MpRepositoryVocabulary.MAX_BATCH_SIZE);
+            requestsPerSecond = Models
+                    .objectLiteral(model.filter(implNode, MpRepositoryVocabulary.REQUESTS_PER_SECOND, null))
+                    .map(Literal::doubleValue).orElse(null);
+        } catch (ModelException | NumberFormatException e) {
+            throw new SailConfigException(e.getMessage(), e);
+        }
+    }
+
+    private static void export(Model model, Resource implNode, IRI property, Integer value) {
+        if (value != null) {
+            model.add(implNode, property, SimpleValueFactory.getInstance().createLiteral(value));
+        }
+    }
+
+    private static Integer parseInteger(Model model, Resource implNode, IRI property) {
+        return Models.objectLiteral(model.filter(implNode, property, null))
+                .map(Literal::intValue).orElse(null);
+    }
+
+    /**
+     * Applies the configured connection pool and cache settings to the
+     * specified sail.
+     */
+    public void configure(AbstractRESTWrappingSail sail) {
+        if (maxConnections != null) {
+            sail.setMaxConnections(maxConnections);
+        }
+        if (connectionTimeout != null) {
+            sail.setConnectionTimeout(connectionTimeout);
+        }
+        if (cacheTTL != null) {
+            sail.setCacheTTL(cacheTTL);
+        }
+        if (cacheSize != null) {
+            sail.setCacheSize(cacheSize);
+        }
+        if (maxConcurrentRequests != null) {
+            sail.setMaxConcurrentRequests(maxConcurrentRequests);
+        }
+        if (maxBatchSize != null) {
+            sail.setMaxBatchSize(maxBatchSize);
+        }
+        if (requestsPerSecond != null) {
+            sail.setRequestsPerSecond(requestsPerSecond);
+        }
     }
 
     public String getUrl() {
@@ -79,4 +154,60 @@ public String getUrl() {
     public void setUrl(String url) {
         this.url = url;
     }
+
+    public Integer getMaxConnections() {
+        return maxConnections;
+    }
+
+    public void setMaxConnections(Integer maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
+    public Integer getConnectionTimeout() {
+        return connectionTimeout;
+    }
+
+    public void setConnectionTimeout(Integer connectionTimeout) {
+        this.connectionTimeout = connectionTimeout;
+    }
+
+    public Integer getCacheTTL() {
+        return cacheTTL;
+    }
+
+    public void setCacheTTL(Integer cacheTTL) {
+        this.cacheTTL = cacheTTL;
+    }
+
+    public Integer getCacheSize() {
+        return cacheSize;
+    }
+
+    public void setCacheSize(Integer cacheSize) {
+        this.cacheSize = cacheSize;
+    }
+
+    public Integer getMaxConcurrentRequests() {
+        return maxConcurrentRequests;
+    }
+
+    public void setMaxConcurrentRequests(Integer maxConcurrentRequests) {
+        this.maxConcurrentRequests = maxConcurrentRequests;
+    }
+
+    public Integer getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public void setMaxBatchSize(Integer maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    public Double getRequestsPerSecond() {
+        return requestsPerSecond;
+    }
+
+    public void setRequestsPerSecond(Double requestsPerSecond) {
+        this.requestsPerSecond = requestsPerSecond;
+    }
 }
\ No newline at end of file
@@ -18,39 +18,70 @@
 
 package com.metaphacts.sail.rest;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.net.URISyntaxException;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
-import javax.ws.rs.client.Client;
-import javax.ws.rs.client.ClientBuilder;
-import javax.ws.rs.client.WebTarget;
-import javax.ws.rs.core.MediaType;
-import javax.ws.rs.core.Response;
-import javax.ws.rs.core.Response.Status.Family;
-
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.StatusLine;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.utils.URIBuilder;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.eclipse.rdf4j.common.iteration.CloseableIteration;
+import org.eclipse.rdf4j.common.iteration.EmptyIteration;
+import org.eclipse.rdf4j.common.iteration.Iterations;
+import org.eclipse.rdf4j.common.iteration.LookAheadIteration;
 import org.eclipse.rdf4j.model.IRI;
 import org.eclipse.rdf4j.model.Namespace;
 import org.eclipse.rdf4j.model.Resource;
 import org.eclipse.rdf4j.model.Statement;
 import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.query.Binding;
 import org.eclipse.rdf4j.query.BindingSet;
 import org.eclipse.rdf4j.query.Dataset;
 import org.eclipse.rdf4j.query.QueryEvaluationException;
+import org.eclipse.rdf4j.query.QueryResults;
+import org.eclipse.rdf4j.query.algebra.BindingSetAssignment;
+import org.eclipse.rdf4j.query.algebra.Extension;
+import org.eclipse.rdf4j.query.algebra.Projection;
+import org.eclipse.rdf4j.query.algebra.QueryRoot;
+import org.eclipse.rdf4j.query.algebra.SingletonSet;
+import org.eclipse.rdf4j.query.algebra.Slice;
 import org.eclipse.rdf4j.query.algebra.StatementPattern;
 import org.eclipse.rdf4j.query.algebra.TupleExpr;
+import org.eclipse.rdf4j.query.algebra.UnaryTupleOperator;
 import org.eclipse.rdf4j.query.algebra.evaluation.impl.BindingAssigner;
 import org.eclipse.rdf4j.query.algebra.evaluation.iterator.CollectionIteration;
+import org.eclipse.rdf4j.query.algebra.helpers.AbstractQueryModelVisitor;
 import org.eclipse.rdf4j.query.algebra.helpers.StatementPatternCollector;
+import org.eclipse.rdf4j.query.impl.MapBindingSet;
 import org.eclipse.rdf4j.sail.SailException;
 import org.eclipse.rdf4j.sail.helpers.AbstractSailConnection;
-import org.glassfish.jersey.client.ClientProperties;
 
+import com.google.common.cache.Cache;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.RateLimiter;
 
 /**
  * Abstract {@link SailConnection} implementation for REST APIs. 
@@ -59,6 +90,15 @@
  *
  */
 public abstract class AbstractRESTWrappingSailConnection extends AbstractSailConnection {
+
+    private static final Logger logger = LogManager.getLogger(AbstractRESTWrappingSailConnection.class);
+
+    /**
+     * Maximum number of unread bytes which are read when a response is closed
+     * early, such that the response can still be cached and the connection be
+     * reused. Connections with more unread data are closed instead.
+     */
+    private static final int MAX_DRAIN_SIZE = 64 * 1024;
     
     /**
      * A class holding the mappings for the API inputs (parameter name->value as string) 
@@ -67,10 +107,11 @@ public abstract class AbstractRESTWrappingSailConnection extends AbstractSailCon
      * @author Andriy Nikolov an@metaphacts.com
      *
      */
-    protected static class RESTParametersHolder {
+    public static class RESTParametersHolder {
         private String subjVarName = null;
         private Map<String, String> inputParameters = Maps.newHashMap();
         private Map<IRI, String> outputVariables = Maps.newHashMap();
+        private long limit = -1;
         
         public RESTParametersHolder() {
             
@@ -88,6 +129,17 @@ public Map<String, String> getInputParameters() {
         public Map<IRI, String> getOutputVariables() {
             return outputVariables;
         }
+        /**
+         * Maximum number of results required by the query (i.e. further results
+         * can be discarded without being read) or -1 if all results are
+         * required.
+         */
+        public long getLimit() {
+            return limit;
+        }
+        public void setLimit(long limit) {
+            this.limit = limit;
+        }
     }
     
     private final AbstractRESTWrappingSail sail;
@@ -104,9 +156,18 @@ protected void closeInternal() throws SailException {
     /**
      * Follows the following workflow:
      * <ul>
-     *  <li>Extract input/output parameters and store them in a {@link RESTParametersHolder} object.</li>
-     *  <li>Submit an HTTP request (by default, an HTTP GET request passing parameters via URL)</li>
-     *  <li>Process the response and assign the outputs to the output variables.</li>
+     *  <li>Determine the input bindings, i.e. the supplied bindings joined with the VALUES
+     *  clauses of the query (as sent for bound joins by the federation).</li>
+     *  <li>Extract input/output parameters for every input binding set and store them in a
+     *  {@link RESTParametersHolder} object. Input binding sets resulting in equal parameters
+     *  share a single request, if the service supports multi-value parameters (see
+     *  {@link #getBatchParameter()}) up to {@link AbstractRESTWrappingSail#getMaxBatchSize()}
+     *  input values are passed in a single request.</li>
+     *  <li>Submit the HTTP requests (by default, an HTTP GET request passing parameters via URL).
+     *  Multiple requests are sent in parallel by the request executor of the sail.</li>
+     *  <li>Process the responses, assign the outputs to the output variables and join them with
+     *  the input bindings. The response stream of a single request is closed (and the pooled
+     *  HTTP connection released) when the returned iteration is closed.</li>
      * </ul>
      * 
      */
@@ -115,26 +176,155 @@ protected CloseableIteration<? extends BindingSet, QueryEvaluationException> eva
             TupleExpr tupleExpr, Dataset dataset, BindingSet bindings, boolean includeInferred)
             throws SailException {
         TupleExpr cloned = tupleExpr.clone();
-        new BindingAssigner().optimize(cloned, dataset, bindings);
-        StatementPatternCollector collector = new StatementPatternCollector();
-        cloned.visit(collector);
-        List<StatementPattern> stmtPatterns = collector.getStatementPatterns();
-        RESTParametersHolder parametersHolder = extractInputsAndOutputs(stmtPatterns);
-        Response response = submit(parametersHolder);
-        if (!response.getStatusInfo().getFamily().equals(Family.SUCCESSFUL)) {
-            throw new SailException(
-                    "Request failed with HTTP status code " 
-                            + response.getStatus()
-                            + ": " 
-                            + response.getStatusInfo().getReasonPhrase());
-        }
-        InputStream resultStream;
-        
-        resultStream = (InputStream)response.getEntity();
-        
-        
-        return new CollectionIteration<BindingSet, QueryEvaluationException>(
-                convertStream2BindingSets(resultStream, parametersHolder));
+        List<BindingSet> inputs = extractInputBindings(cloned, bindings);
+        List<BatchedRequest> requests = createRequests(cloned, dataset, inputs);
+        if (requests.isEmpty()) {
+            return new EmptyIteration<BindingSet, QueryEvaluationException>();
+        }
+        if (requests.size() == 1) {
+            if (inputs.size() == 1) {
+                requests.get(0).parameters.setLimit(getResultLimit(cloned));
+            }
+            return evaluate(requests.get(0));
+        }
+        logger.trace("Evaluating {} input bindings of REST service {} with {} requests.", inputs.size(),
+                getSail().getUrl(), requests.size());
+        return new ParallelRequestIteration(requests);
+    }
+
+    private CloseableIteration<BindingSet, QueryEvaluationException> evaluate(BatchedRequest request)
+            throws SailException {
+        InputStream resultStream = submit(request.parameters);
+        try {
+            return new InputJoinIteration(convertStream2BindingSetIteration(resultStream, request.parameters),
+                    request.inputs);
+        } catch (RuntimeException e) {
+            closeQuietly(resultStream);
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the number of results required by a LIMIT (plus OFFSET) of the
+     * query, if the slice is applied directly to the results of the service,
+     * or -1 otherwise.
+     */
+    static long getResultLimit(TupleExpr expr) {
+        TupleExpr node = expr instanceof QueryRoot ? ((QueryRoot) expr).getArg() : expr;
+        while (node instanceof UnaryTupleOperator) {
+            if (node instanceof Slice) {
+                Slice slice = (Slice) node;
+                if (!slice.hasLimit()) {
+                    return -1;
+                }
+                return slice.getLimit() + (slice.hasOffset() ? slice.getOffset() : 0);
+            }
+            if (!(node instanceof Projection) && !(node instanceof Extension)) {
+                // e.g. ORDER BY, DISTINCT or FILTER require all results
+                return -1;
+            }
+            node = ((UnaryTupleOperator) node).getArg();
+        }
+        return -1;
+    }
+
+    /**
+     * Removes the VALUES clauses from the expression and joins their binding
+     * sets with the supplied bindings.
+     */
+    private static List<BindingSet> extractInputBindings(TupleExpr expr, BindingSet bindings) {
+        List<BindingSetAssignment> assignments = Lists.newArrayList();
+        expr.visit(new AbstractQueryModelVisitor<RuntimeException>() {
+            @Override
+            public void meet(BindingSetAssignment node) {
+                assignments.add(node);
+            }
+        });
+        List<BindingSet> inputs = Collections.singletonList(bindings);
+        for (BindingSetAssignment assignment : assignments) {
+            List<BindingSet> joined = Lists.newArrayList();
+            for (BindingSet input : inputs) {
+                for (BindingSet values : assignment.getBindingSets()) {
+                    if (QueryResults.bindingSetsCompatible(input, values)) {
+                        joined.add(merge(input, values));
+                    }
+                }
+            }
+            inputs = joined;
+            assignment.replaceWith(new SingletonSet());
+        }
+        return inputs;
+    }
+
+    private List<BatchedRequest> createRequests(TupleExpr expr, Dataset dataset, List<BindingSet> inputs)
+            throws SailException {
+        String batchParameter = getBatchParameter();
+        int maxBatchSize = getSail().getMaxBatchSize();
+        List<BatchedRequest> requests = Lists.newArrayList();
+        // requests accepting further batch parameter values, by the remaining parameters
+        Map<String, BatchedRequest> openRequests = Maps.newHashMap();
+        // requests by all parameters (including the batch parameter value)
+        Map<String, BatchedRequest> requestsByParameters = Maps.newHashMap();
+        for (BindingSet input : inputs) {
+            TupleExpr bound = expr.clone();
+            new BindingAssigner().optimize(bound, dataset, input);
+            StatementPatternCollector collector = new StatementPatternCollector();
+            bound.visit(collector);
+            RESTParametersHolder parameters = extractInputsAndOutputs(collector.getStatementPatterns());
+
+            String batchValue = batchParameter == null ? null : parameters.getInputParameters().get(batchParameter);
+            String key = getRequestKey(parameters, batchValue == null ? null : batchParameter);
+            String fullKey = batchValue == null ? key : key + "\n" + batchValue;
+            BatchedRequest request = requestsByParameters.get(fullKey);
+            if (request == null && batchValue != null) {
+                request = openRequests.get(key);
+                if (request == null || request.batchValues.size() >= maxBatchSize) {
+                    request = null;
+                }
+            }
+            if (request == null) {
+                request = new BatchedRequest(parameters);
+                requests.add(request);
+                if (batchValue != null) {
+                    openRequests.put(key, request);
+                }
+            }
+            if (batchValue != null) {
+                request.batchValues.add(batchValue);
+            }
+            requestsByParameters.put(fullKey, request);
+            request.inputs.add(input);
+        }
+        for (BatchedRequest request : requests) {
+            if (request.batchValues.size() > 1) {
+                request.parameters.getInputParameters().put(batchParameter,
+                        String.join(getBatchParameterSeparator(), request.batchValues));
+            }
+        }
+        return requests;
+    }
+
+    /**
+     * Key identifying requests with equal parameters, optionally ignoring the
+     * value of the batch parameter.
+     */
+    private static String getRequestKey(RESTParametersHolder parameters, String ignoredParameter) {
+        Map<String, String> inputParameters = new TreeMap<>(parameters.getInputParameters());
+        inputParameters.remove(ignoredParameter);
+        Map<String, String> outputVariables = new TreeMap<>();
+        parameters.getOutputVariables().forEach((iri, var) -> outputVariables.put(iri.stringValue(), var));
+        return parameters.getSubjVarName() + " " + inputParameters + " " + outputVariables;
+    }
+
+    private static BindingSet merge(BindingSet first, BindingSet second) {
+        MapBindingSet merged = new MapBindingSet();
+        first.forEach(merged::addBinding);
+        for (Binding binding : second) {
+            if (!merged.hasBinding(binding.getName())) {
+                merged.addBinding(binding);
+            }
+        }
+        return merged;
     }
 
     @Override
@@ -221,32 +411,396 @@ public AbstractRESTWrappingSail getSail() {
         return sail;
     }
     
+    /**
+     * Submits the request created by {@link #createRequest(RESTParametersHolder)}
+     * using the pooled HTTP client of the sail and returns the response body.
+     * GET requests are answered from the response cache of the sail if
+     * possible, otherwise the response is added to the cache once it has been
+     * read completely. Callers <b>MUST</b> close the returned stream.
+     * 
+     * @param parametersHolder
+     * @return the response body
+     */
+    protected InputStream submit(RESTParametersHolder parametersHolder) throws SailException {
+        HttpUriRequest request = createRequest(parametersHolder);
+        Cache<String, byte[]> cache = getSail().getResponseCache();
+        String cacheKey = null;
+        if (cache != null && HttpGet.METHOD_NAME.equals(request.getMethod())) {
+            cacheKey = getCacheKey(request);
+            byte[] cached = cache.getIfPresent(cacheKey);
+            if (cached != null) {
+                logger.trace("Answering request {} from the response cache.", request.getURI());
+                return new ByteArrayInputStream(cached);
+            }
+        }
+        RateLimiter rateLimiter = getSail().getRateLimiter();
+        if (rateLimiter != null) {
+            rateLimiter.acquire();
+        }
+        CloseableHttpResponse response;
+        try {
+            response = getSail().getHttpClient().execute(request);
+        } catch (IOException e) {
+            throw new SailException("Request to REST service " + getSail().getUrl() + " failed: "
+                    + e.getMessage(), e);
+        }
+        try {
+            StatusLine status = response.getStatusLine();
+            if (status.getStatusCode() < 200 || status.getStatusCode() >= 300) {
+                throw new SailException(
+                        "Request failed with HTTP status code " 
+                                + status.getStatusCode()
+                                + ": " 
+                                + status.getReasonPhrase());
+            }
+            HttpEntity entity = response.getEntity();
+            InputStream content = entity != null ? entity.getContent() : new ByteArrayInputStream(new byte[0]);
+            InputStream resultStream = new ResponseInputStream(content, response);
+            return cacheKey == null ? resultStream : new CachingInputStream(resultStream, cache, cacheKey);
+        } catch (IOException e) {
+            closeQuietly(response);
+            throw new SailException(e);
+        } catch (RuntimeException e) {
+            closeQuietly(response);
+            throw e;
+        }
+    }
+
     /**
      * Default implementation calling the API using an HTTP GET method.
-     * Parameters are passed via URL.
+     * Parameters are passed via URL (in alphabetical order, such that equal
+     * parameters result in equal URLs and thereby in equal cache keys).
      * JSON expected as a result format.
      * 
      * @param parametersHolder
      * @return
      */
-    protected Response submit(RESTParametersHolder parametersHolder) {
+    protected HttpUriRequest createRequest(RESTParametersHolder parametersHolder) throws SailException {
         try {
-            Client client = ClientBuilder.newClient();
-            WebTarget targetResource = client
-                    .target(getSail().getUrl())
-                    .property(ClientProperties.FOLLOW_REDIRECTS, Boolean.TRUE);
-            for(Entry<String, String> entry : parametersHolder.inputParameters.entrySet()) {
-                targetResource = targetResource.queryParam(entry.getKey(), entry.getValue());
-            }
-            return targetResource.request(MediaType.TEXT_PLAIN).get();
-        } catch(Exception e) {
+            URIBuilder builder = new URIBuilder(getSail().getUrl());
+            for (Entry<String, String> entry : new TreeMap<>(parametersHolder.inputParameters).entrySet()) {
+                builder.addParameter(entry.getKey(), entry.getValue());
+            }
+            HttpGet request = new HttpGet(builder.build());
+            request.setHeader(HttpHeaders.ACCEPT, "application/json");
+            return request;
+        } catch (URISyntaxException e) {
+            throw new SailException("Invalid REST service URL: " + getSail().getUrl(), e);
+        }
+    }
+
+    /**
+     * Key of the request in the response cache, i.e. the request URL together
+     * with the accepted content types.
+     */
+    protected String getCacheKey(HttpUriRequest request) {
+        StringBuilder key = new StringBuilder(request.getMethod()).append(' ').append(request.getURI());
+        for (Header header : request.getHeaders(HttpHeaders.ACCEPT)) {
+            key.append(' ').append(header.getValue());
+        }
+        return key.toString();
+    }
+
+    /**
+     * Converts the response into binding sets. The returned iteration takes
+     * over the response stream and <b>MUST</b> close it when being closed.
+     * Implementations should read the stream lazily (e.g. by means of
+     * {@link JsonStreamingBindingSetIteration}), the default implementation
+     * materializes the result using
+     * {@link #convertStream2BindingSets(InputStream, RESTParametersHolder)}.
+     */
+    protected CloseableIteration<BindingSet, QueryEvaluationException> convertStream2BindingSetIteration(
+            InputStream inputStream, RESTParametersHolder parametersHolder) throws SailException {
+        try (InputStream in = inputStream) {
+            return new CollectionIteration<BindingSet, QueryEvaluationException>(
+                    convertStream2BindingSets(in, parametersHolder));
+        } catch (IOException e) {
             throw new SailException(e);
         }
     }
     
+    /**
+     * Name of an input parameter for which the service accepts multiple values
+     * in a single request (e.g. <code>ids=Q1|Q2</code>), or <code>null</code>
+     * (the default) if requests can not be batched. The results of a batched
+     * request are joined with the input bindings of all values, hence they must
+     * bind the variable the parameter value has been taken from.
+     */
+    protected String getBatchParameter() {
+        return null;
+    }
+
+    /**
+     * Separator of the values of the batch parameter.
+     */
+    protected String getBatchParameterSeparator() {
+        return "|";
+    }
+
     protected abstract RESTParametersHolder extractInputsAndOutputs(
             List<StatementPattern> stmtPatterns) throws SailException;
     
     protected abstract Collection<BindingSet> convertStream2BindingSets(InputStream inputStream, 
             RESTParametersHolder parametersHolder) throws SailException;
-}
\ No newline at end of file
+
+    private static void closeQuietly(AutoCloseable closeable) {
+        try {
+            closeable.close();
+        } catch (Exception e) {
+            logger.debug("Failed to close REST service response: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * A request together with the input binding sets it has been created for.
+     */
+    private static class BatchedRequest {
+
+        final RESTParametersHolder parameters;
+        final Set<String> batchValues = Sets.newLinkedHashSet();
+        final List<BindingSet> inputs = Lists.newArrayList();
+
+        BatchedRequest(RESTParametersHolder parameters) {
+            this.parameters = parameters;
+        }
+    }
+
+    /**
+     * Joins the results of a request with the compatible input binding sets of
+     * the request.
+     */
+    private static class InputJoinIteration extends LookAheadIteration<BindingSet, QueryEvaluationException> {
+
+        private final CloseableIteration<BindingSet, QueryEvaluationException> results;
+        private final List<BindingSet> inputs;
+        private BindingSet current;
+        private int inputIndex;
+
+        InputJoinIteration(CloseableIteration<BindingSet, QueryEvaluationException> results,
+                List<BindingSet> inputs) {
+            this.results = results;
+            this.inputs = inputs;
+        }
+
+        @Override
+        protected BindingSet getNextElement() throws QueryEvaluationException {
+            while (true) {
+                while (current != null && inputIndex < inputs.size()) {
+                    BindingSet input = inputs.get(inputIndex++);
+                    if (QueryResults.bindingSetsCompatible(input, current)) {
+                        return merge(input, current);
+                    }
+                }
+                if (!results.hasNext()) {
+                    return null;
+                }
+                current = results.next();
+                inputIndex = 0;
+            }
+        }
+
+        @Override
+        protected void handleClose() throws QueryEvaluationException {
+            try {
+                super.handleClose();
+            } finally {
+                results.close();
+            }
+        }
+    }
+
+    /**
+     * Submits all requests to the request executor of the sail and returns
+     * their (materialized) results in the order of the requests.
+     */
+    private class ParallelRequestIteration extends LookAheadIteration<BindingSet, QueryEvaluationException> {
+
+        private final List<Future<List<BindingSet>>> futures = Lists.newArrayList();
+        private int nextFuture = 0;
+        private Iterator<BindingSet> current = Collections.emptyIterator();
+
+        ParallelRequestIteration(List<BatchedRequest> requests) {
+            ExecutorService executor = getSail().getRequestExecutor();
+            for (BatchedRequest request : requests) {
+                futures.add(executor.submit(() -> Iterations.asList(evaluate(request))));
+            }
+        }
+
+        @Override
+        protected BindingSet getNextElement() throws QueryEvaluationException {
+            while (!current.hasNext()) {
+                if (nextFuture >= futures.size()) {
+                    return null;
+                }
+                current = getResults(futures.get(nextFuture++)).iterator();
+            }
+            return current.next();
+        }
+
+        private List<BindingSet> getResults(Future<List<BindingSet>> future) throws QueryEvaluationException {
+            try {
+                return future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new QueryEvaluationException(e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof QueryEvaluationException) {
+                    throw (QueryEvaluationException) e.getCause();
+                }
+                throw new QueryEvaluationException(e.getCause().getMessage(), e.getCause());
+            }
+        }
+
+        @Override
+        protected void handleClose() throws QueryEvaluationException {
+            try {
+                super.handleClose();
+            } finally {
+                for (Future<List<BindingSet>> future : futures) {
+                    future.cancel(true);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads and discards at most {@link #MAX_DRAIN_SIZE} bytes of the stream.
+     * 
+     * @return <code>true</code> if the end of the stream has been reached
+     */
+    private static boolean drain(InputStream in) throws IOException {
+        byte[] buffer = new byte[8192];
+        long drained = 0;
+        int read;
+        while ((read = in.read(buffer)) >= 0) {
+            drained += read;
+            if (drained > MAX_DRAIN_SIZE) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Response body which releases the HTTP response (and thereby the pooled
+     * connection) when being closed. If the body has not been read completely
+     * the connection is only reused if the remaining data is small, otherwise
+     * it is closed.
+     */
+    private static class ResponseInputStream extends FilterInputStream {
+
+        private final CloseableHttpResponse response;
+        private boolean eof = false;
+
+        ResponseInputStream(InputStream in, CloseableHttpResponse response) {
+            super(in);
+            this.response = response;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            eof = b < 0;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            eof = read < 0;
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                if (eof || drain(this)) {
+                    // releases the connection to the pool
+                    super.close();
+                }
+            } finally {
+                // closes the connection if it has not been released
+                response.close();
+            }
+        }
+    }
+
+    /**
+     * Records the bytes read from the response and adds them to the response
+     * cache once the end of the stream has been reached. Responses which
+     * exceed {@link AbstractRESTWrappingSail#MAX_CACHED_RESPONSE_SIZE} or are
+     * closed early with more than {@link #MAX_DRAIN_SIZE} unread bytes are not
+     * cached.
+     */
+    private static class CachingInputStream extends FilterInputStream {
+
+        private final Cache<String, byte[]> cache;
+        private final String cacheKey;
+        private ByteArrayOutputStream recorded = new ByteArrayOutputStream();
+
+        CachingInputStream(InputStream in, Cache<String, byte[]> cache, String cacheKey) {
+            super(in);
+            this.cache = cache;
+            this.cacheKey = cacheKey;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b < 0) {
+                complete();
+            } else if (recorded != null) {
+                recorded.write(b);
+                checkSize();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read < 0) {
+                complete();
+            } else if (recorded != null) {
+                recorded.write(b, off, read);
+                checkSize();
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            recorded = null;
+            return super.skip(n);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                if (recorded != null) {
+                    drain(this);
+                }
+            } finally {
+                super.close();
+            }
+        }
+
+        private void checkSize() {
+            if (recorded.size() > AbstractRESTWrappingSail.MAX_CACHED_RESPONSE_SIZE) {
+                recorded = null;
+            }
+        }
+
+        private void complete() {
+            if (recorded != null) {
+                cache.put(cacheKey, recorded.toByteArray());
+                recorded = null;
+            }
+        }
+    }
+}
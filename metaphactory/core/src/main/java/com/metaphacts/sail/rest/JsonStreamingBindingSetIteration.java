@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2015-2017, metaphacts GmbH
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, you can receive a copy
+ * of the GNU Lesser General Public License from http://www.gnu.org/
+ */
+
+package com.metaphacts.sail.rest;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.eclipse.rdf4j.common.iteration.LookAheadIteration;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Lazily converts the elements of a JSON array in a REST service response into
+ * binding sets, i.e. the response is parsed while the iteration is consumed and
+ * only the current array element is held in memory.
+ *
+ * <p>
+ * The array is either the top-level value of the response or the value of the
+ * specified field of the top-level object (e.g. <code>search</code> in
+ * <code>{"searchinfo": {...}, "search": [...]}</code>); all other fields are
+ * skipped without being materialized. Implementations read every element
+ * directly from the parser, optionally the iteration stops reading once a
+ * maximum number of binding sets has been produced. Closing the iteration
+ * closes the response stream.
+ * </p>
+ */
+public abstract class JsonStreamingBindingSetIteration
+        extends LookAheadIteration<BindingSet, QueryEvaluationException> {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final InputStream inputStream;
+    private final String arrayField;
+    private final long limit;
+    private JsonParser parser;
+    private int index = 0;
+    private long produced = 0;
+
+    /**
+     * @param inputStream the response body
+     * @param arrayField  the field of the top-level object holding the array or
+     *                    <code>null</code> if the response is an array itself
+     */
+    protected JsonStreamingBindingSetIteration(InputStream inputStream, String arrayField) {
+        this(inputStream, arrayField, -1);
+    }
+
+    /**
+     * @param inputStream the response body
+     * @param arrayField  the field of the top-level object holding the array or
+     *                    <code>null</code> if the response is an array itself
+     * @param limit       maximum number of binding sets to produce, the rest of
+     *                    the response is not read; -1 for no limit
+     */
+    protected JsonStreamingBindingSetIteration(InputStream inputStream, String arrayField, long limit) {
+        this.inputStream = inputStream;
+        this.arrayField = arrayField;
+        this.limit = limit;
+    }
+
+    @Override
+    protected BindingSet getNextElement() throws QueryEvaluationException {
+        if (limit >= 0 && produced >= limit) {
+            return null;
+        }
+        try {
+            if (parser == null) {
+                parser = MAPPER.getFactory().createParser(inputStream);
+                if (!seekArray()) {
+                    return null;
+                }
+            }
+            while (parser.nextToken() != null && parser.getCurrentToken() != JsonToken.END_ARRAY) {
+                BindingSet bs = convert(parser, ++index);
+                if (bs != null) {
+                    produced++;
+                    return bs;
+                }
+            }
+            return null;
+        } catch (IOException e) {
+            throw new QueryEvaluationException("Failed to parse REST service response: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Advances the parser to the start of the array.
+     * 
+     * @return <code>false</code> if the response does not contain the array
+     */
+    private boolean seekArray() throws IOException {
+        JsonToken token = parser.nextToken();
+        if (arrayField == null) {
+            return token == JsonToken.START_ARRAY;
+        }
+        if (token != JsonToken.START_OBJECT) {
+            return false;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if (arrayField.equals(field) && value == JsonToken.START_ARRAY) {
+                return true;
+            }
+            parser.skipChildren();
+        }
+        return false;
+    }
+
+    /**
+     * Number of array elements read so far.
+     */
+    protected int getIndex() {
+        return index;
+    }
+
+    @Override
+    protected void handleClose() throws QueryEvaluationException {
+        try {
+            super.handleClose();
+        } finally {
+            try {
+                if (parser != null) {
+                    parser.close();
+                }
+                inputStream.close();
+            } catch (IOException e) {
+                throw new QueryEvaluationException(e);
+            }
+        }
+    }
+
+    /**
+     * Converts an element of the array into a binding set. The parser is
+     * positioned at the first token of the element, implementations must
+     * consume the entire element (e.g. by means of
+     * {@link JsonParser#skipChildren()} or {@link JsonParser#readValueAsTree()}).
+     * 
+     * @param parser the parser positioned at the array element
+     * @param index  the (1-based) position of the element in the array
+     * @return the binding set or <code>null</code> to skip the element
+     */
+    protected abstract BindingSet convert(JsonParser parser, int index) throws IOException;
+}
@@ -18,28 +18,33 @@
 
 package com.metaphacts.sail.rest.wikidata;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
 
+import org.apache.http.client.methods.HttpUriRequest;
+import org.eclipse.rdf4j.common.iteration.CloseableIteration;
+import org.eclipse.rdf4j.common.iteration.Iterations;
 import org.eclipse.rdf4j.model.IRI;
 import org.eclipse.rdf4j.model.Literal;
 import org.eclipse.rdf4j.model.ValueFactory;
 import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
 import org.eclipse.rdf4j.model.vocabulary.RDFS;
 import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.QueryEvaluationException;
 import org.eclipse.rdf4j.query.algebra.StatementPattern;
 import org.eclipse.rdf4j.query.impl.MapBindingSet;
 import org.eclipse.rdf4j.sail.SailConnection;
 import org.eclipse.rdf4j.sail.SailException;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.google.common.collect.Lists;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.metaphacts.sail.rest.AbstractRESTWrappingSail;
 import com.metaphacts.sail.rest.AbstractRESTWrappingSailConnection;
+import com.metaphacts.sail.rest.JsonStreamingBindingSetIteration;
 
 /**
  * {@link SailConnection} implementation for {@link WikidataSail}
@@ -58,6 +63,11 @@ public class WikidataSailConnection extends AbstractRESTWrappingSailConnection {
     public static final IRI ORDER_NR = VF
             .createIRI("http://www.metaphacts.com/ontology/orderNr");
 
+    /**
+     * Maximum number of results the API returns for a single request.
+     */
+    public static final int MAX_API_LIMIT = 50;
+
     public WikidataSailConnection(AbstractRESTWrappingSail sailBase) {
         super(sailBase);
     }
@@ -123,47 +133,83 @@ protected RESTParametersHolder extractInputsAndOutputs(List<StatementPattern> st
         return res;
     }
 
-    @SuppressWarnings("unchecked")
+    /**
+     * Passes the LIMIT of the query to the API (which otherwise returns only
+     * its default number of results).
+     */
+    @Override
+    protected HttpUriRequest createRequest(RESTParametersHolder parametersHolder) throws SailException {
+        long limit = parametersHolder.getLimit();
+        if (limit > 0 && limit <= MAX_API_LIMIT) {
+            parametersHolder.getInputParameters().put("limit", Long.toString(limit));
+        }
+        return super.createRequest(parametersHolder);
+    }
+
+    /**
+     * Reads the entities of the "search" array of the response one after the
+     * other without materializing the response and stops reading as soon as
+     * the limit of the query (if any) is reached.
+     */
+    @Override
+    protected CloseableIteration<BindingSet, QueryEvaluationException> convertStream2BindingSetIteration(
+            InputStream inputStream, RESTParametersHolder parametersHolder) throws SailException {
+        return new JsonStreamingBindingSetIteration(inputStream, "search", parametersHolder.getLimit()) {
+            @Override
+            protected BindingSet convert(JsonParser parser, int index) throws IOException {
+                return convertSearchResult(parser, index, parametersHolder);
+            }
+        };
+    }
+
     @Override
     protected Collection<BindingSet> convertStream2BindingSets(InputStream inputStream,
             RESTParametersHolder parametersHolder) throws SailException {
-        try {
-            ObjectMapper mapper = new ObjectMapper();
-            HashMap<String, Object> map = (HashMap<String, Object>) mapper.readValue(inputStream,
-                    HashMap.class);
-            List<Object> resList = (List<Object>) map.get("search");
-            List<BindingSet> outList = Lists.newArrayList();
-            int idx = 0;
-            for (Object resObj : resList) {
-                idx++;
-                Map<String, Object> resMap = (Map<String, Object>) resObj;
-                IRI conceptURI = VF.createIRI((String) resMap.get("concepturi"));
-                MapBindingSet bs = new MapBindingSet();
-                bs.addBinding(parametersHolder.getOutputVariables().get(HAS_WIKIDATA_SEARCH_TOKEN),
-                        conceptURI);
-                if (parametersHolder.getOutputVariables().containsKey(RDFS.LABEL)) {
-                    Literal litLabel = VF.createLiteral((String) resMap.get("label"));
-                    bs.addBinding(parametersHolder.getOutputVariables().get(RDFS.LABEL),
-                            litLabel);
-                }
-                if (parametersHolder.getOutputVariables().containsKey(SCHEMA_ORG_DESCRIPTION)) {
-                    Literal litDesc = VF.createLiteral((String) resMap.get("description"));
-                    bs.addBinding(parametersHolder.getOutputVariables().get(SCHEMA_ORG_DESCRIPTION),
-                            litDesc);
-                }
-                if (parametersHolder.getOutputVariables().containsKey(ORDER_NR)) {
-                    Literal litDesc = VF.createLiteral(idx);
-                    bs.addBinding(parametersHolder.getOutputVariables().get(ORDER_NR),
-                            litDesc);
-                }
-                
-                
-                outList.add(bs);
+        return Iterations.asList(convertStream2BindingSetIteration(inputStream, parametersHolder));
+    }
+
+    /**
+     * Converts a single entity of the search result, e.g.
+     * <code>{"id": "Q64", "concepturi": "http://www.wikidata.org/entity/Q64", "label": "Berlin", 
+     * "description": "capital of Germany", "match": {...}}</code>.
+     */
+    private static BindingSet convertSearchResult(JsonParser parser, int index,
+            RESTParametersHolder parametersHolder) throws IOException {
+        if (parser.getCurrentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return null;
+        }
+        String conceptURI = null;
+        String label = null;
+        String description = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            if (parser.nextToken() != JsonToken.VALUE_STRING) {
+                parser.skipChildren();
+            } else if ("concepturi".equals(field)) {
+                conceptURI = parser.getText();
+            } else if ("label".equals(field)) {
+                label = parser.getText();
+            } else if ("description".equals(field)) {
+                description = parser.getText();
             }
-            return outList;
-        } catch (Exception e) {
-            throw new SailException(e);
         }
+        if (conceptURI == null) {
+            return null;
+        }
+        Map<IRI, String> outputVariables = parametersHolder.getOutputVariables();
+        MapBindingSet bs = new MapBindingSet();
+        bs.addBinding(outputVariables.get(HAS_WIKIDATA_SEARCH_TOKEN), VF.createIRI(conceptURI));
+        if (label != null && outputVariables.containsKey(RDFS.LABEL)) {
+            bs.addBinding(outputVariables.get(RDFS.LABEL), VF.createLiteral(label));
+        }
+        if (description != null && outputVariables.containsKey(SCHEMA_ORG_DESCRIPTION)) {
+            bs.addBinding(outputVariables.get(SCHEMA_ORG_DESCRIPTION), VF.createLiteral(description));
+        }
+        if (outputVariables.containsKey(ORDER_NR)) {
+            bs.addBinding(outputVariables.get(ORDER_NR), VF.createLiteral(index));
+        }
+        return bs;
     }
 
     @Override
@@ -56,7 +56,9 @@ public Sail getSail(SailImplConfig originalConfig) throws SailConfigException {
         }
         WikidataSailConfig config = (WikidataSailConfig)originalConfig;
         
-        return new WikidataSail(config.getUrl());
+        WikidataSail sail = new WikidataSail(config.getUrl());
+        config.configure(sail);
+        return sail;
         
     }
 
@@ -18,9 +18,6 @@
 
 package com.metaphacts.sail.virtuoso;
 
-import java.util.List;
-import java.util.stream.Collectors;
-
 import org.eclipse.rdf4j.common.iteration.CloseableIteration;
 import org.eclipse.rdf4j.model.IRI;
 import org.eclipse.rdf4j.model.Namespace;
@@ -30,11 +27,9 @@
 import org.eclipse.rdf4j.query.BindingSet;
 import org.eclipse.rdf4j.query.Dataset;
 import org.eclipse.rdf4j.query.QueryEvaluationException;
-import org.eclipse.rdf4j.query.algebra.StatementPattern;
 import org.eclipse.rdf4j.query.algebra.TupleExpr;
 import org.eclipse.rdf4j.query.algebra.evaluation.impl.BindingAssigner;
 import org.eclipse.rdf4j.query.algebra.evaluation.iterator.CollectionIteration;
-import org.eclipse.rdf4j.query.algebra.helpers.StatementPatternCollector;
 import org.eclipse.rdf4j.repository.RepositoryConnection;
 import org.eclipse.rdf4j.repository.RepositoryException;
 import org.eclipse.rdf4j.sail.SailConnection;
@@ -42,9 +37,7 @@
 import org.eclipse.rdf4j.sail.helpers.AbstractSailConnection;
 
 import com.google.common.collect.Lists;
-import com.metaphacts.sparql.SparqlAlgebraUtils;
-import com.metaphacts.sparql.keyword.algebra.KeywordSearchGroupTupleExpr;
-import com.metaphacts.sparql.keyword.algebra.KeywordSearchPattern;
+import com.metaphacts.sparql.keyword.algebra.KeywordSearchGroupExtractor;
 import com.metaphacts.sparql.keyword.virtuoso.VirtuosoKeywordSearchHandler;
 
 
@@ -86,60 +79,11 @@ protected CloseableIteration<? extends BindingSet, QueryEvaluationException> eva
         TupleExpr cloned = tupleExpr.clone();
         // Apply the provided binding sets
         new BindingAssigner().optimize(cloned, dataset, bindings);
-        StatementPatternCollector collector = new StatementPatternCollector();
-        cloned.visit(collector);
-        List<StatementPattern> stmtPatterns = collector.getStatementPatterns();
-        
-        KeywordSearchPattern pattern = new KeywordSearchPattern();
-        
-        List<StatementPattern> mainPatternAsList = stmtPatterns.stream().filter(
-            stmtPattern -> stmtPattern.getPredicateVar().hasValue() 
-                && stmtPattern.getPredicateVar().getValue()
-                    .equals(VirtuosoKeywordSearchSail.BIF_CONTAINS)).collect(Collectors.toList());
-        
-        if (mainPatternAsList.isEmpty()) {
+        if (!KeywordSearchGroupExtractor.extract(
+                cloned, VirtuosoKeywordSearchSail.BIF_CONTAINS, VirtuosoKeywordSearchSail.BIF_SCORE).isPresent()) {
             return this.evaluateAtTarget(tupleExpr, dataset, bindings, includeInferred);
         }
         
-        StatementPattern mainPattern = mainPatternAsList.iterator().next();
-        pattern.setMatchVar(mainPattern.getSubjectVar());
-        pattern.setValueVar(mainPattern.getObjectVar());
-        
-        TupleExpr scope = SparqlAlgebraUtils.getScopeRoot(mainPattern);
-        
-        stmtPatterns.stream().filter(stmtPattern -> 
-            stmtPattern.getObjectVar().equals(pattern.getMatchVar())
-                && SparqlAlgebraUtils.getScopeRoot(stmtPattern).equals(scope))
-                .forEach(stmtPattern -> {
-                    pattern.setSubjectVar(stmtPattern.getSubjectVar());
-                    pattern.addPredicateVar(stmtPattern.getPredicateVar());
-                    try {
-                        SparqlAlgebraUtils
-                            .removeTupleExpr(stmtPattern.getParentNode(), stmtPattern, scope);
-                    } catch (Exception e) {
-                        throw new SailException(e);
-                    }
-                });
-        stmtPatterns.stream().filter(stmtPattern -> stmtPattern.getPredicateVar().hasValue() 
-            && stmtPattern.getPredicateVar().getValue()
-                .equals(VirtuosoKeywordSearchSail.BIF_SCORE)
-            && stmtPattern.getSubjectVar().equals(pattern.getMatchVar())
-            && SparqlAlgebraUtils.getScopeRoot(stmtPattern).equals(scope))
-                .forEach(stmtPattern -> {
-                    pattern.setScoreVar(stmtPattern.getObjectVar());
-                    try {
-                        SparqlAlgebraUtils
-                            .removeTupleExpr(stmtPattern.getParentNode(), stmtPattern, scope);
-                    } catch (Exception e) {
-                        throw new SailException(e);
-                    }
-                });
-        
-        KeywordSearchGroupTupleExpr keywordSearchGroup = new KeywordSearchGroupTupleExpr();
-        keywordSearchGroup.setKeywordSearchPattern(pattern);
-        
-        mainPattern.getParentNode().replaceChildNode(mainPattern, keywordSearchGroup);
-        
         return this.evaluateAtTarget(cloned, dataset, bindings, includeInferred);
     }
     
@@ -30,6 +30,8 @@ final public class Permissions {
         public static final String INFO_EXPORT = "templates:info:export";
         public static final String INFO_VIEW = "templates:info:view";
         public static final String INFO_DELETE = "templates:info:delete";
+        public static final String PROFILE_VIEW = "templates:profile:view";
+        public static final String PROFILE_CLEAR = "templates:profile:clear";
     }
 
     public static class ACCOUNTS{
@@ -102,4 +104,9 @@ public static class SERVICES {
         public static final String URL_MINIFY = "services:url-minify";
     }
 
+    public static class REPOSITORIES {
+        public static final String KEYWORD_INDEX_VIEW = "repositories:keyword-index:view";
+        public static final String KEYWORD_INDEX_REBUILD = "repositories:keyword-index:rebuild";
+    }
+
 }
@@ -67,6 +67,7 @@
 import com.metaphacts.api.sparql.SparqlOperationBuilder;
 import com.metaphacts.api.sparql.SparqlUtil;
 import com.metaphacts.api.sparql.SparqlUtil.SparqlOperation;
+import com.metaphacts.cache.RenderedTemplateCache;
 import com.metaphacts.config.NamespaceRegistry;
 import com.metaphacts.di.MainGuiceModule.MainTemplateProvider;
 import com.metaphacts.repository.RepositoryManager;
@@ -95,6 +96,9 @@ public class SparqlServlet extends HttpServlet {
     @Inject
     private NamespaceRegistry nsRegistry;
 
+    @Inject
+    private RenderedTemplateCache renderedTemplateCache;
+
     static class ContentType{
         static String FORM_URLENCODED = "application/x-www-form-urlencoded";
         static String SPARQL_QUERY = "application/sparql-query";
@@ -305,6 +309,9 @@ protected void processOperation(Optional<String> query, HttpServletRequest req,
                 case UPDATE:{
                     logger.debug("Evaluating query with hash \"{}\" as UPDATE operation.", queryString.hashCode());
                     ((Update) sparqlOperation).execute();
+                    // renderings which evaluated helper queries are
+                    // invalidated with any resource, see RenderedTemplateCache
+                    renderedTemplateCache.invalidate(Lists.newArrayList(SparqlUtil.extractResources(queryString)));
                     resp.setStatus(Status.OK.getStatusCode());
                     return;
                 }
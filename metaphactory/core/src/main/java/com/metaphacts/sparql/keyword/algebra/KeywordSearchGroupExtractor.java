@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2015-2017, metaphacts GmbH
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, you can receive a copy
+ * of the GNU Lesser General Public License from http://www.gnu.org/
+ */
+
+package com.metaphacts.sparql.keyword.algebra;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.vocabulary.RDF;
+import org.eclipse.rdf4j.query.algebra.Distinct;
+import org.eclipse.rdf4j.query.algebra.Extension;
+import org.eclipse.rdf4j.query.algebra.Filter;
+import org.eclipse.rdf4j.query.algebra.Join;
+import org.eclipse.rdf4j.query.algebra.Order;
+import org.eclipse.rdf4j.query.algebra.QueryModelNode;
+import org.eclipse.rdf4j.query.algebra.Reduced;
+import org.eclipse.rdf4j.query.algebra.Slice;
+import org.eclipse.rdf4j.query.algebra.StatementPattern;
+import org.eclipse.rdf4j.query.algebra.TupleExpr;
+import org.eclipse.rdf4j.query.algebra.helpers.StatementPatternCollector;
+import org.eclipse.rdf4j.sail.SailException;
+
+import com.metaphacts.sparql.SparqlAlgebraUtils;
+
+/**
+ * Detects a keyword search clause expressed with a "contains" and a "score"
+ * predicate, e.g.
+ * <pre><code>
+ *  ?instance rdfs:label ?label .
+ *  ?label bif:contains ?token .
+ *  ?label bif:score ?score .
+ *  </code></pre>
+ * and replaces it with a backend-independent
+ * {@link KeywordSearchGroupTupleExpr}.
+ */
+public class KeywordSearchGroupExtractor {
+
+    private KeywordSearchGroupExtractor() {
+    }
+
+    /**
+     * Replaces the first keyword search clause in the supplied tuple
+     * expression (which is modified in place, i.e. usually needs to be cloned
+     * beforehand) with a {@link KeywordSearchGroupTupleExpr}.
+     *
+     * @return the inserted keyword search group or {@link Optional#empty()} if
+     *         the expression does not contain a keyword search clause
+     */
+    public static Optional<KeywordSearchGroupTupleExpr> extract(
+            TupleExpr tupleExpr, IRI containsPredicate, IRI scorePredicate) throws SailException {
+        StatementPatternCollector collector = new StatementPatternCollector();
+        tupleExpr.visit(collector);
+        List<StatementPattern> stmtPatterns = collector.getStatementPatterns();
+
+        KeywordSearchPattern pattern = new KeywordSearchPattern();
+
+        List<StatementPattern> mainPatternAsList = stmtPatterns.stream().filter(
+            stmtPattern -> stmtPattern.getPredicateVar().hasValue()
+                && stmtPattern.getPredicateVar().getValue()
+                    .equals(containsPredicate)).collect(Collectors.toList());
+
+        if (mainPatternAsList.isEmpty()) {
+            return Optional.empty();
+        }
+
+        StatementPattern mainPattern = mainPatternAsList.iterator().next();
+        pattern.setMatchVar(mainPattern.getSubjectVar());
+        pattern.setValueVar(mainPattern.getObjectVar());
+
+        TupleExpr scope = SparqlAlgebraUtils.getScopeRoot(mainPattern);
+
+        stmtPatterns.stream().filter(stmtPattern ->
+            stmtPattern.getObjectVar().equals(pattern.getMatchVar())
+                && SparqlAlgebraUtils.getScopeRoot(stmtPattern).equals(scope))
+                .forEach(stmtPattern -> {
+                    pattern.setSubjectVar(stmtPattern.getSubjectVar());
+                    pattern.addPredicateVar(stmtPattern.getPredicateVar());
+                    try {
+                        SparqlAlgebraUtils
+                            .removeTupleExpr(stmtPattern.getParentNode(), stmtPattern, scope);
+                    } catch (Exception e) {
+                        throw new SailException(e);
+                    }
+                });
+        stmtPatterns.stream().filter(stmtPattern -> stmtPattern.getPredicateVar().hasValue()
+            && stmtPattern.getPredicateVar().getValue()
+                .equals(scorePredicate)
+            && stmtPattern.getSubjectVar().equals(pattern.getMatchVar())
+            && SparqlAlgebraUtils.getScopeRoot(stmtPattern).equals(scope))
+                .forEach(stmtPattern -> {
+                    pattern.setScoreVar(stmtPattern.getObjectVar());
+                    try {
+                        SparqlAlgebraUtils
+                            .removeTupleExpr(stmtPattern.getParentNode(), stmtPattern, scope);
+                    } catch (Exception e) {
+                        throw new SailException(e);
+                    }
+                });
+
+        KeywordSearchGroupTupleExpr keywordSearchGroup = new KeywordSearchGroupTupleExpr();
+        keywordSearchGroup.setKeywordSearchPattern(pattern);
+
+        mainPattern.getParentNode().replaceChildNode(mainPattern, keywordSearchGroup);
+        return Optional.of(keywordSearchGroup);
+    }
+
+    /**
+     * Moves the <code>rdf:type</code> restriction of the subject of the keyword
+     * search clause, e.g. <code>?instance a foaf:Person .</code>, into the
+     * clause (see {@link KeywordSearchPattern#getTypeVars()}), such that it can
+     * be applied while searching. The restriction is only moved if there is
+     * exactly one with a constant type and both the restriction and the clause
+     * are part of the same conjunctive group of patterns, since multiple type
+     * variables of a keyword search pattern are alternatives.
+     *
+     * @return <code>true</code> if a restriction has been moved
+     */
+    public static boolean extractTypeRestriction(KeywordSearchGroupTupleExpr keywordSearchGroup)
+            throws SailException {
+        KeywordSearchPattern pattern = keywordSearchGroup.getKeywordSearchPattern();
+        if (pattern.getSubjectVar() == null || !pattern.getTypeVars().isEmpty()) {
+            return false;
+        }
+        TupleExpr scope = SparqlAlgebraUtils.getScopeRoot(keywordSearchGroup);
+        if (!isConjunctive(keywordSearchGroup, scope)) {
+            return false;
+        }
+        StatementPatternCollector collector = new StatementPatternCollector();
+        scope.visit(collector);
+        List<StatementPattern> typePatterns = collector.getStatementPatterns().stream()
+                .filter(stmtPattern -> stmtPattern.getPredicateVar().hasValue()
+                    && stmtPattern.getPredicateVar().getValue().equals(RDF.TYPE)
+                    && stmtPattern.getSubjectVar().equals(pattern.getSubjectVar())
+                    && SparqlAlgebraUtils.getScopeRoot(stmtPattern).equals(scope))
+                .collect(Collectors.toList());
+        if (typePatterns.size() != 1) {
+            return false;
+        }
+        StatementPattern typePattern = typePatterns.get(0);
+        if (!(typePattern.getObjectVar().getValue() instanceof IRI) || !isConjunctive(typePattern, scope)) {
+            return false;
+        }
+        pattern.addTypeVar(typePattern.getObjectVar().clone());
+        try {
+            SparqlAlgebraUtils.removeTupleExpr(typePattern.getParentNode(), typePattern, scope);
+        } catch (Exception e) {
+            throw new SailException(e);
+        }
+        return true;
+    }
+
+    /**
+     * Whether all operators between the node and the scope root apply to the
+     * node's solutions as a whole, i.e. the node is not part of an optional,
+     * alternative or negated group.
+     */
+    private static boolean isConjunctive(TupleExpr node, TupleExpr scope) {
+        QueryModelNode current = node.getParentNode();
+        while (current != null && current != scope) {
+            if (!(current instanceof Join || current instanceof Filter || current instanceof Extension
+                    || current instanceof Order || current instanceof Slice || current instanceof Distinct
+                    || current instanceof Reduced)) {
+                return false;
+            }
+            current = current.getParentNode();
+        }
+        return true;
+    }
+}
@@ -116,6 +116,9 @@ public KeywordSearchPattern clone() {
             cloned.addPredicateVar(predicateVar);
         }
         cloned.scoreVar = (this.scoreVar != null) ? this.scoreVar.clone() : null;
+        for (Var typeVar : typeVars) {
+            cloned.addTypeVar(typeVar.clone());
+        }
         return cloned;
     }
 }
\ No newline at end of file
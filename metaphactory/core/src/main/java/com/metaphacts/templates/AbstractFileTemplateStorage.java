@@ -19,9 +19,16 @@
 package com.metaphacts.templates;
 
 import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
 import java.net.URLEncoder;
+import java.nio.file.Path;
+import java.util.Optional;
 
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
 
 import com.google.common.base.Charsets;
 
@@ -29,7 +36,9 @@
  * @author Johannes Trame <jt@metaphacts.com>
  */
 public abstract class AbstractFileTemplateStorage<T extends Comparable<T>, E> implements TemplateStorage<T, E> {
-    
+
+    private static final Logger logger = LogManager.getLogger(AbstractFileTemplateStorage.class);
+
     // TODO should be config
     public final static String BASE_STORAGE_LOCATION = "data/templates";
     protected final static String SUFFIX = "html";
@@ -37,4 +46,22 @@
     public static String normalize(IRI uri) throws UnsupportedEncodingException{
         return URLEncoder.encode(uri.stringValue(), Charsets.UTF_8.name());
     }
+
+    /**
+     * Maps the name of a file in the template directory to the template it
+     * holds, i.e. reverts {@link #normalize(IRI)}.
+     */
+    protected static Optional<IRI> toTemplateIri(Path file) {
+        String name = file.getFileName().toString();
+        if (!name.endsWith("." + SUFFIX)) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(SimpleValueFactory.getInstance().createIRI(
+                    URLDecoder.decode(StringUtils.removeEnd(name, "." + SUFFIX), Charsets.UTF_8.name())));
+        } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+            logger.debug("Ignoring file {} in template directory: {}", name, e.getMessage());
+            return Optional.empty();
+        }
+    }
 }
\ No newline at end of file
@@ -18,62 +18,156 @@
 
 package com.metaphacts.templates;
 
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.URL;
+import java.util.Optional;
 
 import org.eclipse.rdf4j.model.IRI;
 import org.eclipse.rdf4j.model.ValueFactory;
 import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
 
 import com.github.jknack.handlebars.io.ReloadableTemplateSource;
+import com.github.jknack.handlebars.io.TemplateSource;
 import com.metaphacts.config.NamespaceRegistry;
+import com.metaphacts.templates.TemplateResolutionIndex.ResolvedTemplate;
 
 /**
  * @author Johannes Trame <jt@metaphacts.com>
  */
 public class FileTemplateLoader extends com.github.jknack.handlebars.io.FileTemplateLoader {
+    //TODO
+    private static final String TEMPLATE_PREFIX = "Template:";
+
     private TemplateStorage<Long,URL> storage;
     private NamespaceRegistry ns;
+    private final Optional<TemplateResolutionIndex> index;
     
     public FileTemplateLoader(TemplateStorage<Long, URL> templateStorage, NamespaceRegistry ns) {
         super(templateStorage.getBaseDir(), "");
         this.storage = templateStorage;
         this.ns = ns;
+        this.index = templateStorage.getResolutionIndex();
         this.setSuffix("");
     }
     
-    
+    /**
+     * Template source backed by the {@link TemplateResolutionIndex}. The
+     * version of the indexed template serves as modification date, i.e.
+     * checking whether a compiled template is stale is an in-memory
+     * comparison. Sources are equal if they have the same filename, such that
+     * the template cache replaces stale entries instead of accumulating them.
+     */
+    private static class IndexedTemplateSource implements TemplateSource {
+        private final String filename;
+        private final ResolvedTemplate template;
+
+        IndexedTemplateSource(String filename, ResolvedTemplate template) {
+            this.filename = filename;
+            this.template = template;
+        }
+
+        @Override
+        public String content() throws IOException {
+            return template.getContent();
+        }
+
+        @Override
+        public String filename() {
+            return filename;
+        }
+
+        @Override
+        public long lastModified() {
+            return template.getVersion();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof IndexedTemplateSource
+                    && filename.equals(((IndexedTemplateSource) obj).filename);
+        }
+
+        @Override
+        public int hashCode() {
+            return filename.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return filename;
+        }
+    }
+
+    private IRI toTemplateIri(String location) {
+        final boolean isTemplate =  location.startsWith(TEMPLATE_PREFIX);
+
+        final String plainLocation = isTemplate
+                ? location.substring(TEMPLATE_PREFIX.length())
+                : location;
+        //TODO 
+        ValueFactory vf = SimpleValueFactory.getInstance();
+        IRI iri = plainLocation.startsWith("http")
+                ? SimpleValueFactory.getInstance().createIRI(plainLocation)
+                : (IRI) ns.resolveToIRI(plainLocation).orElse(vf.createIRI(ns.getDefaultNamespace().toString(), plainLocation));
+        IRI fileIri = isTemplate
+                ? vf.createIRI(TEMPLATE_PREFIX + iri.stringValue())
+                : vf.createIRI(iri.stringValue());
+        // record lookups of not (yet) existing templates as well, creating them changes the rendering
+        RenderDependencies.recordTemplate(fileIri);
+        return fileIri;
+    }
+
     @Override
     protected URL getResource(String location) throws IOException {
         try {
             location = location.replace(this.getPrefix(), "").trim();
-            //TODO
-            final String TEMPLATE_PREFIX = "Template:";
-            final boolean isTemplate =  location.startsWith(TEMPLATE_PREFIX);
-
-            final String plainLocation = isTemplate
-                    ? location.substring(TEMPLATE_PREFIX.length())
-                    : location;
-            //TODO 
-            ValueFactory vf = SimpleValueFactory.getInstance();
-            IRI iri = plainLocation.startsWith("http")
-                    ? SimpleValueFactory.getInstance().createIRI(plainLocation)
-                    : (IRI) ns.resolveToIRI(plainLocation).orElse(vf.createIRI(ns.getDefaultNamespace().toString(), plainLocation));
-            IRI fileIri = vf.createIRI(iri.stringValue());
-
-            return isTemplate 
-                    ? storage.getTemplateLocation(vf.createIRI(TEMPLATE_PREFIX + iri.stringValue())).orElseThrow( () -> new IOException(
-                                "Template" +  TEMPLATE_PREFIX + iri.stringValue() + " does not exist."
+            final IRI fileIri = toTemplateIri(location);
+
+            return location.startsWith(TEMPLATE_PREFIX) 
+                    ? storage.getTemplateLocation(fileIri).orElseThrow( () -> new IOException(
+                                "Template" +  fileIri.stringValue() + " does not exist."
                             )) 
                     : storage.getTemplateLocation(fileIri).orElseThrow( () -> new IOException());
         } catch (Exception e) {
             throw new IOException(e);
         }
     }
-    
+
+    /**
+     * Looks up the template at the specified location in the
+     * {@link TemplateResolutionIndex} of the storage. In contrast to
+     * {@link #sourceAt(String)} a template which does not exist is not
+     * signaled by an exception, i.e. probing a list of candidate templates is
+     * cheap.
+     * 
+     * @param location
+     * @return the template source or an empty optional if no template exists
+     *         at the location
+     * @throws IOException
+     */
+    public Optional<TemplateSource> findSource(String location) throws IOException {
+        if (!index.isPresent()) {
+            try {
+                return Optional.of(sourceAt(location));
+            } catch (IOException e) {
+                return Optional.empty();
+            }
+        }
+        try {
+            return index.get().resolve(toTemplateIri(location.trim()))
+                    .map(template -> new IndexedTemplateSource(location, template));
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+
     @Override
-    public ReloadableTemplateSource sourceAt(String uri) throws IOException {
-        return new ReloadableTemplateSource(super.sourceAt(uri));
+    public TemplateSource sourceAt(String uri) throws IOException {
+        if (!index.isPresent()) {
+            return new ReloadableTemplateSource(super.sourceAt(uri));
+        }
+        return findSource(uri).orElseThrow(() -> new FileNotFoundException(uri));
     }
 
 }
\ No newline at end of file
@@ -20,6 +20,7 @@
 
 import com.google.common.collect.ImmutableList;
 import com.google.inject.Singleton;
+import com.metaphacts.cache.FieldDefinitionCache;
 import com.metaphacts.cache.LabelCache;
 import com.metaphacts.config.NamespaceRegistry;
 import com.metaphacts.repository.RepositoryManager;
@@ -34,7 +35,8 @@ public class HandlebarsHelperRegistry {
 
     @Inject
     public HandlebarsHelperRegistry(
-        LabelCache labelCache, NamespaceRegistry namespaceRegistry, RepositoryManager repositoryManager
+        LabelCache labelCache, NamespaceRegistry namespaceRegistry, RepositoryManager repositoryManager,
+        FieldDefinitionCache fieldDefinitionCache
     ) {
         this.helpers = ImmutableList.of(
             new AskHelperSource(),
@@ -44,7 +46,7 @@ public HandlebarsHelperRegistry(
             new JsonValueFromSelectSource(),
             new JsonArrayFromSelectSource(),
             new JsonObjectArrayFromSelectSource(),
-            new FieldDefinitionSource(labelCache, namespaceRegistry, repositoryManager),
+            new FieldDefinitionSource(labelCache, namespaceRegistry, repositoryManager, fieldDefinitionCache),
             new PrefixResolverHelperSource(),
             new SetManagementHelperSource()
         );
@@ -49,6 +49,8 @@ public MetaphactsHandlebars(TemplateLoader templateLoader, HandlebarsHelperRegis
 
     private void initialize(TemplateLoader templateLoader, HandlebarsHelperRegistry helperRegistry) {
 
+        // staleness checks compare the (in-memory) version of the template source, which
+        // for sources of the metaphacts FileTemplateLoader is maintained by the TemplateResolutionIndex
         ConcurrentMapTemplateCache cache = new ConcurrentMapTemplateCache().setReload(true);
 
         if(templateLoader!=null){
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2015-2017, metaphacts GmbH
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, you can receive a copy
+ * of the GNU Lesser General Public License from http://www.gnu.org/
+ */
+package com.metaphacts.templates;
+
+import java.util.Collections;
+import java.util.Set;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Value;
+
+import com.google.common.collect.Sets;
+
+/**
+ * Records what a single template rendering depends on, i.e. the templates
+ * which have been looked up (including the ones which turned out not to
+ * exist, since creating them changes the result), the resources touched by
+ * helper queries and whether any helper query has been evaluated at all
+ * (since new resources may match the query). The recorded dependencies are
+ * used to invalidate cached renderings, see
+ * {@link com.metaphacts.cache.RenderedTemplateCache}.
+ *
+ * <p>
+ * Recording is bound to the rendering thread:
+ * <code>
+ * RenderDependencies deps = RenderDependencies.begin();
+ * try{
+ *   ... // render
+ * }finally{
+ *   deps.end();
+ * }
+ * </code>
+ * Code evaluating parts of a rendering on other threads needs to record on
+ * the instance obtained through {@link #current()}.
+ * </p>
+ */
+public class RenderDependencies {
+
+    private static final ThreadLocal<RenderDependencies> current = new ThreadLocal<>();
+
+    private final Set<IRI> templates = Sets.newConcurrentHashSet();
+    private final Set<IRI> resources = Sets.newConcurrentHashSet();
+    private volatile boolean queries = false;
+
+    /**
+     * Starts recording the dependencies of a rendering on the current thread.
+     */
+    public static RenderDependencies begin() {
+        RenderDependencies deps = new RenderDependencies();
+        current.set(deps);
+        return deps;
+    }
+
+    /**
+     * @return the recorder bound to the current thread or <code>null</code>
+     *         if no rendering is being recorded
+     */
+    public static RenderDependencies current() {
+        return current.get();
+    }
+
+    /**
+     * Continues recording into this instance on the current thread, e.g. when
+     * the output of a rendering is streamed after the template has been
+     * compiled. Needs to be stopped with {@link #end()} as well.
+     */
+    public void bind() {
+        current.set(this);
+    }
+
+    /**
+     * Stops recording on the current thread.
+     */
+    public void end() {
+        if (current.get() == this) {
+            current.remove();
+        }
+    }
+
+    public static void recordTemplate(IRI template) {
+        RenderDependencies deps = current.get();
+        if (deps != null) {
+            deps.addTemplate(template);
+        }
+    }
+
+    public static void recordResource(Value value) {
+        RenderDependencies deps = current.get();
+        if (deps != null) {
+            deps.addResource(value);
+        }
+    }
+
+    public static void recordQuery() {
+        RenderDependencies deps = current.get();
+        if (deps != null) {
+            deps.addQuery();
+        }
+    }
+
+    public void addTemplate(IRI template) {
+        templates.add(template);
+    }
+
+    /**
+     * Adds the value as a dependency if it is an {@link IRI}, all other values
+     * are ignored.
+     */
+    public void addResource(Value value) {
+        if (value instanceof IRI) {
+            resources.add((IRI) value);
+        }
+    }
+
+    /**
+     * Records that the rendering has evaluated a helper query, i.e. that its
+     * result may change with any update of the repository.
+     */
+    public void addQuery() {
+        queries = true;
+    }
+
+    public boolean hasQueries() {
+        return queries;
+    }
+
+    public Set<IRI> getTemplates() {
+        return Collections.unmodifiableSet(templates);
+    }
+
+    public Set<IRI> getResources() {
+        return Collections.unmodifiableSet(resources);
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2015-2017, metaphacts GmbH
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, you can receive a copy
+ * of the GNU Lesser General Public License from http://www.gnu.org/
+ */
+package com.metaphacts.templates;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Literal;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.repository.Repository;
+
+import com.google.common.collect.Sets;
+import com.metaphacts.cache.LabelCache;
+import com.metaphacts.config.NamespaceRegistry;
+
+/**
+ * Memoizes label lookups and namespace resolutions for a single template
+ * rendering (see {@link TemplateContext#getLookups()}).
+ *
+ * <p>
+ * Resources which are likely to require a label (e.g. the IRIs returned by
+ * helper queries) can be registered as label candidates. Candidates are not
+ * looked up until a label is actually requested, at which point the labels of
+ * all pending candidates are fetched with a single
+ * {@link LabelCache#getLabels(Iterable, Repository)} call. Counters of all
+ * lookups are kept to report how many lookups a page triggers.
+ * </p>
+ */
+public class RenderLookups {
+
+    /**
+     * Upper bound for the number of pending label candidates, such that large
+     * query results do not cause excessive label queries.
+     */
+    static final int MAX_LABEL_CANDIDATES = 1000;
+
+    private final LabelCache labelCache;
+    private final NamespaceRegistry namespaceRegistry;
+    private final Repository repository;
+
+    private final Map<IRI, Optional<Literal>> labels = new ConcurrentHashMap<>();
+    private final Set<IRI> labelCandidates = Sets.newConcurrentHashSet();
+    private final Map<String, Optional<IRI>> resolvedIris = new ConcurrentHashMap<>();
+    private volatile Map<String, String> prefixMap;
+
+    private final AtomicInteger labelLookups = new AtomicInteger();
+    private final AtomicInteger labelMemoHits = new AtomicInteger();
+    private final AtomicInteger bulkLabelFetches = new AtomicInteger();
+    private final AtomicInteger fetchedLabels = new AtomicInteger();
+    private final AtomicInteger namespaceLookups = new AtomicInteger();
+    private final AtomicInteger namespaceMemoHits = new AtomicInteger();
+
+    /**
+     * @param labelCache        may be <code>null</code>, i.e. no labels are
+     *                          available
+     * @param namespaceRegistry may be <code>null</code>, i.e. no prefixes are
+     *                          available
+     * @param repository        repository to look up labels in
+     */
+    public RenderLookups(LabelCache labelCache, NamespaceRegistry namespaceRegistry, Repository repository) {
+        this.labelCache = labelCache;
+        this.namespaceRegistry = namespaceRegistry;
+        this.repository = repository;
+    }
+
+    /**
+     * Registers the IRIs among the supplied values as label candidates, i.e.
+     * their labels will be fetched together with the next label requested.
+     */
+    public void addLabelCandidates(Iterable<? extends Value> values) {
+        if (labelCache == null) {
+            return;
+        }
+        for (Value value : values) {
+            if (labelCandidates.size() >= MAX_LABEL_CANDIDATES) {
+                return;
+            }
+            if (value instanceof IRI && !labels.containsKey(value)) {
+                labelCandidates.add((IRI) value);
+            }
+        }
+    }
+
+    /**
+     * Returns the label of the resource, fetching it (together with all
+     * pending label candidates) if it has not been looked up during this
+     * rendering yet.
+     */
+    public Optional<Literal> getLabel(IRI iri) {
+        labelLookups.incrementAndGet();
+        Optional<Literal> label = labels.get(iri);
+        if (label != null) {
+            labelMemoHits.incrementAndGet();
+            return label;
+        }
+        if (labelCache == null) {
+            return Optional.empty();
+        }
+        Set<IRI> batch = Sets.newHashSet(iri);
+        for (IRI candidate : labelCandidates) {
+            labelCandidates.remove(candidate);
+            if (!labels.containsKey(candidate)) {
+                batch.add(candidate);
+            }
+        }
+        bulkLabelFetches.incrementAndGet();
+        fetchedLabels.addAndGet(batch.size());
+        long start = System.nanoTime();
+        labels.putAll(labelCache.getLabels(batch, repository));
+        RenderProfile.recordPhase(RenderProfile.Phase.LABELS, start);
+        return labels.getOrDefault(iri, Optional.empty());
+    }
+
+    /**
+     * Returns the label of the resource or a fallback derived from the IRI,
+     * see {@link LabelCache#resolveLabelWithFallback(Optional, IRI)}.
+     */
+    public String getLabelWithFallback(IRI iri) {
+        return LabelCache.resolveLabelWithFallback(getLabel(iri), iri);
+    }
+
+    /**
+     * Memoized {@link NamespaceRegistry#resolveToIRI(String)}.
+     */
+    public Optional<IRI> resolveToIRI(String prefixedIri) {
+        namespaceLookups.incrementAndGet();
+        Optional<IRI> iri = resolvedIris.get(prefixedIri);
+        if (iri != null) {
+            namespaceMemoHits.incrementAndGet();
+            return iri;
+        }
+        iri = namespaceRegistry == null ? Optional.empty() : namespaceRegistry.resolveToIRI(prefixedIri);
+        resolvedIris.put(prefixedIri, iri);
+        return iri;
+    }
+
+    /**
+     * Memoized {@link NamespaceRegistry#getPrefixMap()}, which copies the
+     * prefixes on every call.
+     */
+    public Map<String, String> getPrefixMap() {
+        namespaceLookups.incrementAndGet();
+        Map<String, String> result = prefixMap;
+        if (result != null) {
+            namespaceMemoHits.incrementAndGet();
+            return result;
+        }
+        result = namespaceRegistry == null ? Collections.emptyMap() : namespaceRegistry.getPrefixMap();
+        prefixMap = result;
+        return result;
+    }
+
+    /**
+     * Number of labels requested during the rendering.
+     */
+    public int getLabelLookups() {
+        return labelLookups.get();
+    }
+
+    public int getLabelMemoHits() {
+        return labelMemoHits.get();
+    }
+
+    /**
+     * Number of (bulk) requests to the {@link LabelCache}.
+     */
+    public int getBulkLabelFetches() {
+        return bulkLabelFetches.get();
+    }
+
+    /**
+     * Number of labels fetched from the {@link LabelCache}, including label
+     * candidates.
+     */
+    public int getFetchedLabels() {
+        return fetchedLabels.get();
+    }
+
+    /**
+     * Number of prefix resolutions (including requests for the prefix map)
+     * during the rendering.
+     */
+    public int getNamespaceLookups() {
+        return namespaceLookups.get();
+    }
+
+    public int getNamespaceMemoHits() {
+        return namespaceMemoHits.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "label lookups: %d (memo hits: %d, bulk fetches: %d, fetched labels: %d), "
+                        + "namespace lookups: %d (memo hits: %d)",
+                getLabelLookups(), getLabelMemoHits(), getBulkLabelFetches(), getFetchedLabels(),
+                getNamespaceLookups(), getNamespaceMemoHits());
+    }
+}
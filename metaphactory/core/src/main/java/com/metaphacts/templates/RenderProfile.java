@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2015-2017, metaphacts GmbH
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, you can receive a copy
+ * of the GNU Lesser General Public License from http://www.gnu.org/
+ */
+
+package com.metaphacts.templates;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.hash.Hashing;
+
+/**
+ * Timings of a single template rendering, collected by the
+ * {@link RenderProfiler} if profiling is enabled. Phases may overlap, e.g. the
+ * time spent in {@link Phase#APPLY} includes helper queries and label fetches
+ * which are evaluated while rendering.
+ *
+ * <p>
+ * Like {@link RenderDependencies} a profile is bound to the rendering thread.
+ * All static <code>record*</code> methods are no-ops if no profile is bound,
+ * i.e. instrumented code does not need to check whether profiling is enabled.
+ * Code evaluating parts of a rendering on other threads (e.g. prefetched
+ * helper queries) needs to record on the instance obtained through
+ * {@link #current()}.
+ * </p>
+ */
+public class RenderProfile {
+
+    public enum Phase {
+        /** resolving the applicable templates through the include scheme */
+        INCLUDES,
+        /** scanning templates (and their includes) for queries to prefetch */
+        PREFETCH,
+        COMPILE,
+        /** bulk fetching labels of resources */
+        LABELS,
+        /** applying the compiled template, i.e. writing the output */
+        APPLY
+    }
+
+    /**
+     * A single SPARQL query evaluated by a template helper. Only the hash of
+     * the query text is kept, so that profiles do not hold on to large
+     * strings.
+     */
+    public static class HelperInvocation {
+        private final String helperName;
+        private final String queryHash;
+        private final int rows;
+        private final long nanos;
+
+        HelperInvocation(String helperName, String queryHash, int rows, long nanos) {
+            this.helperName = helperName;
+            this.queryHash = queryHash;
+            this.rows = rows;
+            this.nanos = nanos;
+        }
+
+        public String getHelperName() {
+            return helperName;
+        }
+
+        public String getQueryHash() {
+            return queryHash;
+        }
+
+        public int getRows() {
+            return rows;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+    }
+
+    private static final ThreadLocal<RenderProfile> current = new ThreadLocal<>();
+
+    private final String resource;
+    private final long startedAt = System.currentTimeMillis();
+    private final long startNanos = System.nanoTime();
+    private volatile String template;
+    private volatile long totalNanos = -1;
+    private final Map<Phase, AtomicLong> phases = new EnumMap<>(Phase.class);
+    private final List<HelperInvocation> helperInvocations = new CopyOnWriteArrayList<>();
+
+    RenderProfile(String resource) {
+        this.resource = resource;
+        this.template = resource;
+        for (Phase phase : Phase.values()) {
+            phases.put(phase, new AtomicLong());
+        }
+    }
+
+    /**
+     * @return the profile bound to the current thread or <code>null</code> if
+     *         the current rendering is not profiled
+     */
+    public static RenderProfile current() {
+        return current.get();
+    }
+
+    /**
+     * Continues recording into this instance on the current thread. Needs to be
+     * stopped with {@link #end()}.
+     */
+    public void bind() {
+        current.set(this);
+    }
+
+    /**
+     * Stops recording on the current thread.
+     */
+    public void end() {
+        if (current.get() == this) {
+            current.remove();
+        }
+    }
+
+    /**
+     * Records the time elapsed since <code>startNanos</code> (as returned by
+     * {@link System#nanoTime()}) for the phase of the current rendering.
+     */
+    public static void recordPhase(Phase phase, long startNanos) {
+        RenderProfile profile = current.get();
+        if (profile != null) {
+            profile.addPhase(phase, System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * Records the template which has actually been applied for the current
+     * rendering, i.e. the first existing template of all applicable ones.
+     */
+    public static void recordTemplate(String template) {
+        RenderProfile profile = current.get();
+        if (profile != null) {
+            profile.template = template;
+        }
+    }
+
+    public void addPhase(Phase phase, long nanos) {
+        phases.get(phase).addAndGet(nanos);
+    }
+
+    public void addHelperInvocation(String helperName, String query, int rows, long nanos) {
+        String queryHash = Hashing.murmur3_32().hashString(query, StandardCharsets.UTF_8).toString();
+        helperInvocations.add(new HelperInvocation(helperName, queryHash, rows, nanos));
+    }
+
+    /**
+     * Marks the rendering as completed, i.e. fixes its total time.
+     */
+    void complete() {
+        totalNanos = System.nanoTime() - startNanos;
+    }
+
+    /**
+     * The requested resource the rendering has been triggered for.
+     */
+    public String getResource() {
+        return resource;
+    }
+
+    /**
+     * The applied template or the requested resource, if no template has been
+     * applied (yet).
+     */
+    public String getTemplate() {
+        return template;
+    }
+
+    public long getStartedAt() {
+        return startedAt;
+    }
+
+    /**
+     * @return total time of the rendering or <code>-1</code> if the rendering
+     *         has not been completed
+     */
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    public long getPhaseNanos(Phase phase) {
+        return phases.get(phase).get();
+    }
+
+    public List<HelperInvocation> getHelperInvocations() {
+        return Collections.unmodifiableList(helperInvocations);
+    }
+}
@@ -0,0 +1,323 @@
+/*
+ * Copyright (C) 2015-2017, metaphacts GmbH
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, you can receive a copy
+ * of the GNU Lesser General Public License from http://www.gnu.org/
+ */
+
+package com.metaphacts.templates;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.metaphacts.config.Configuration;
+import com.metaphacts.templates.RenderProfile.HelperInvocation;
+import com.metaphacts.templates.RenderProfile.Phase;
+
+/**
+ * Opt-in profiler for template renderings (see
+ * {@link com.metaphacts.config.groups.EnvironmentConfiguration#getProfileTemplateRendering()}).
+ * The profiles of the most recent renderings are kept in a fixed-size ring
+ * buffer, from which {@link #getReport(long, int)} aggregates the slowest
+ * templates and helper queries over a sliding time window.
+ *
+ * <p>
+ * Usage:
+ * <code>
+ * Optional&lt;RenderProfile&gt; profile = profiler.begin(resource);
+ * try{
+ *   ... // render
+ * }finally{
+ *   profile.ifPresent(profiler::complete);
+ * }
+ * </code>
+ * </p>
+ */
+@Singleton
+public class RenderProfiler {
+
+    private static final Logger logger = LogManager.getLogger(RenderProfiler.class);
+
+    /**
+     * Number of renderings kept for the report.
+     */
+    public static final int CAPACITY = 1000;
+
+    private final BooleanSupplier enabled;
+
+    private final RenderProfile[] profiles = new RenderProfile[CAPACITY];
+    private int next = 0;
+
+    @Inject
+    public RenderProfiler(Configuration config) {
+        this(() -> config.getEnvironmentConfig().getProfileTemplateRendering());
+    }
+
+    RenderProfiler(BooleanSupplier enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled.getAsBoolean();
+    }
+
+    /**
+     * Starts profiling a rendering of the specified resource on the current
+     * thread, if profiling is enabled.
+     */
+    public Optional<RenderProfile> begin(String resource) {
+        if (!isEnabled()) {
+            return Optional.empty();
+        }
+        RenderProfile profile = new RenderProfile(resource);
+        profile.bind();
+        return Optional.of(profile);
+    }
+
+    /**
+     * Stops recording on the current thread and adds the profile to the ring
+     * buffer.
+     */
+    public void complete(RenderProfile profile) {
+        profile.end();
+        profile.complete();
+        if (logger.isDebugEnabled()) {
+            logger.debug("Rendered {} with template {} in {} ms, {} helper queries.", profile.getResource(),
+                    profile.getTemplate(), TimeUnit.NANOSECONDS.toMillis(profile.getTotalNanos()),
+                    profile.getHelperInvocations().size());
+        }
+        synchronized (profiles) {
+            profiles[next] = profile;
+            next = (next + 1) % CAPACITY;
+        }
+    }
+
+    public void clear() {
+        synchronized (profiles) {
+            for (int i = 0; i < CAPACITY; i++) {
+                profiles[i] = null;
+            }
+            next = 0;
+        }
+    }
+
+    /**
+     * Profiles of all renderings completed within the last
+     * <code>windowMinutes</code>.
+     */
+    List<RenderProfile> getProfiles(long windowMinutes) {
+        long since = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(windowMinutes);
+        List<RenderProfile> result = Lists.newArrayList();
+        synchronized (profiles) {
+            for (RenderProfile profile : profiles) {
+                if (profile != null && profile.getStartedAt() >= since) {
+                    result.add(profile);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Aggregates the profiles of the renderings completed within the last
+     * <code>windowMinutes</code> per template and per helper query.
+     *
+     * @param limit maximum number of templates and helper queries to report,
+     *              ordered by their maximum time (descending)
+     */
+    public Report getReport(long windowMinutes, int limit) {
+        List<RenderProfile> window = getProfiles(windowMinutes);
+        Map<String, TemplateStatistics> templates = Maps.newHashMap();
+        Map<String, HelperStatistics> helpers = Maps.newHashMap();
+        for (RenderProfile profile : window) {
+            templates.computeIfAbsent(profile.getTemplate(), TemplateStatistics::new).add(profile);
+            for (HelperInvocation invocation : profile.getHelperInvocations()) {
+                helpers.computeIfAbsent(invocation.getHelperName() + "#" + invocation.getQueryHash(),
+                        k -> new HelperStatistics(invocation.getHelperName(), invocation.getQueryHash()))
+                        .add(profile.getTemplate(), invocation);
+            }
+        }
+        return new Report(isEnabled(), windowMinutes, window.size(),
+                slowest(templates.values(), limit), slowest(helpers.values(), limit));
+    }
+
+    private static <T extends Statistics> List<T> slowest(Collection<T> statistics, int limit) {
+        return statistics.stream()
+                .sorted(Comparator.comparingLong(Statistics::getMaxMillis).reversed())
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    public static class Report {
+        private final boolean enabled;
+        private final long windowMinutes;
+        private final int renderings;
+        private final List<TemplateStatistics> templates;
+        private final List<HelperStatistics> helpers;
+
+        Report(boolean enabled, long windowMinutes, int renderings, List<TemplateStatistics> templates,
+                List<HelperStatistics> helpers) {
+            this.enabled = enabled;
+            this.windowMinutes = windowMinutes;
+            this.renderings = renderings;
+            this.templates = templates;
+            this.helpers = helpers;
+        }
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public long getWindowMinutes() {
+            return windowMinutes;
+        }
+
+        /**
+         * Number of profiled renderings within the window.
+         */
+        public int getRenderings() {
+            return renderings;
+        }
+
+        public List<TemplateStatistics> getTemplates() {
+            return templates;
+        }
+
+        public List<HelperStatistics> getHelpers() {
+            return helpers;
+        }
+    }
+
+    public static abstract class Statistics {
+        private int count;
+        private long totalNanos;
+        private long maxNanos;
+
+        void add(long nanos) {
+            count++;
+            totalNanos += nanos;
+            maxNanos = Math.max(maxNanos, nanos);
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public long getTotalMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(totalNanos);
+        }
+
+        public long getMaxMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(maxNanos);
+        }
+
+        public long getAvgMillis() {
+            return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalNanos / count);
+        }
+    }
+
+    public static class TemplateStatistics extends Statistics {
+        private final String template;
+        private final Map<Phase, Long> phaseNanos = new EnumMap<>(Phase.class);
+        private int helperQueries;
+
+        TemplateStatistics(String template) {
+            this.template = template;
+        }
+
+        void add(RenderProfile profile) {
+            add(profile.getTotalNanos());
+            for (Phase phase : Phase.values()) {
+                phaseNanos.merge(phase, profile.getPhaseNanos(phase), Long::sum);
+            }
+            helperQueries += profile.getHelperInvocations().size();
+        }
+
+        public String getTemplate() {
+            return template;
+        }
+
+        /**
+         * Total time spent in the individual phases over all renderings.
+         */
+        public Map<Phase, Long> getPhaseMillis() {
+            Map<Phase, Long> millis = new EnumMap<>(Phase.class);
+            phaseNanos.forEach((phase, nanos) -> millis.put(phase, TimeUnit.NANOSECONDS.toMillis(nanos)));
+            return millis;
+        }
+
+        /**
+         * Number of helper queries evaluated over all renderings.
+         */
+        public int getHelperQueries() {
+            return helperQueries;
+        }
+    }
+
+    public static class HelperStatistics extends Statistics {
+        private final String helperName;
+        private final String queryHash;
+        private int maxRows;
+        private String slowestTemplate;
+        private long slowestNanos = -1;
+
+        HelperStatistics(String helperName, String queryHash) {
+            this.helperName = helperName;
+            this.queryHash = queryHash;
+        }
+
+        void add(String template, HelperInvocation invocation) {
+            add(invocation.getNanos());
+            maxRows = Math.max(maxRows, invocation.getRows());
+            if (invocation.getNanos() > slowestNanos) {
+                slowestNanos = invocation.getNanos();
+                slowestTemplate = template;
+            }
+        }
+
+        public String getHelperName() {
+            return helperName;
+        }
+
+        public String getQueryHash() {
+            return queryHash;
+        }
+
+        public int getMaxRows() {
+            return maxRows;
+        }
+
+        /**
+         * The template whose rendering contained the slowest evaluation.
+         */
+        public String getSlowestTemplate() {
+            return slowestTemplate;
+        }
+    }
+}
@@ -0,0 +1,483 @@
+/*
+ * Copyright (C) 2015-2017, metaphacts GmbH
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, you can receive a copy
+ * of the GNU Lesser General Public License from http://www.gnu.org/
+ */
+package com.metaphacts.templates;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.hash.Hashing;
+
+/**
+ * {@link TemplateStorage} keeping every revision of a template. Template
+ * bodies are stored as content-addressed blobs (named by the SHA-256 hash of
+ * their content, i.e. identical revisions share one blob) and every change is
+ * appended to a revision log. The latest revision of every template is held in
+ * memory, such that lookups and listing the stored templates do not access the
+ * filesystem, and rolling back to a previous revision only appends a log entry.
+ *
+ * <p>
+ * Revision identifiers are (strictly increasing) timestamps of the
+ * modification. The latest revision of every template is additionally kept as
+ * plain template file in the storage folder (i.e. in the layout of the
+ * {@link SimpleFileTemplateStorage}), such that switching back to the simple
+ * storage keeps all templates. Plain template files which are modified or
+ * added outside of the storage (e.g. by installing an app, while running or
+ * not) are imported as new revisions and removed plain template files are
+ * recorded as deletions. The storage folder is scanned on startup and watched
+ * by the {@link TemplateResolutionIndex} while running, templates which are
+ * not indexed are in addition synchronized with their plain file on lookup.
+ * </p>
+ *
+ * <p>
+ * Layout of the storage folder:
+ * <code>
+ * .revisions/revisions.log            revision log, one line per change
+ * .revisions/blobs/ab/abcdef...       template bodies
+ * &lt;encoded IRI&gt;.html                  latest revision of every template
+ * </code>
+ * </p>
+ */
+public class RevisionedFileTemplateStorage extends AbstractFileTemplateStorage<Long, URL> {
+
+    private static final Logger logger = LogManager.getLogger(RevisionedFileTemplateStorage.class);
+
+    static final String REVISIONS_FOLDER = ".revisions";
+    private static final String BLOBS_FOLDER = "blobs";
+    private static final String LOG_FILE = "revisions.log";
+
+    /**
+     * Marks the deletion of a template in the revision log.
+     */
+    private static final String DELETED = "-";
+
+    /**
+     * Entry of the revision log, the hash is <code>null</code> if the template
+     * has been deleted with this revision.
+     */
+    private static class Revision {
+        final long revision;
+        final String hash;
+
+        Revision(long revision, String hash) {
+            this.revision = revision;
+            this.hash = hash;
+        }
+    }
+
+    private final File baseStorageFolder;
+    private final File blobsFolder;
+    private final Path logFile;
+
+    /**
+     * All revisions per template, guarded by <code>this</code>.
+     */
+    private final Map<IRI, TreeMap<Long, Revision>> history = Maps.newHashMap();
+
+    /**
+     * Latest revision of every existing (i.e. not deleted) template.
+     */
+    private final Map<IRI, Revision> latest = new ConcurrentHashMap<>();
+
+    private long lastRevision = 0;
+
+    private final TemplateResolutionIndex resolutionIndex;
+
+    public RevisionedFileTemplateStorage(File baseStorageFolder) {
+        this.baseStorageFolder = baseStorageFolder;
+        File revisionsFolder = new File(baseStorageFolder, REVISIONS_FOLDER);
+        this.blobsFolder = new File(revisionsFolder, BLOBS_FOLDER);
+        this.logFile = new File(revisionsFolder, LOG_FILE).toPath();
+        try {
+            Files.createDirectories(blobsFolder.toPath());
+            readLog();
+            syncPlainFiles();
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+        this.resolutionIndex = new TemplateResolutionIndex(baseStorageFolder.toPath(), this::resolveSynced,
+                this::syncChangedPlainFile);
+        logger.info("Initalized revisioned file based template storage with base storage location: {} ({} templates)",
+                baseStorageFolder.getAbsolutePath(), latest.size());
+    }
+
+    private void readLog() throws IOException {
+        if (!Files.exists(logFile)) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(logFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split("\t");
+                if (parts.length != 3) {
+                    // e.g. an incomplete line written while crashing
+                    logger.warn("Skipping invalid line in template revision log {}: {}", logFile, line);
+                    continue;
+                }
+                try {
+                    IRI iri = SimpleValueFactory.getInstance().createIRI(parts[2]);
+                    Revision revision = new Revision(Long.parseLong(parts[0]),
+                            DELETED.equals(parts[1]) ? null : parts[1]);
+                    apply(iri, revision);
+                } catch (IllegalArgumentException e) {
+                    logger.warn("Skipping invalid line in template revision log {}: {}", logFile, line);
+                }
+            }
+        }
+        // terminate an incomplete last line, such that subsequent entries are not appended to it
+        try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer last = ByteBuffer.allocate(1);
+            if (channel.size() > 0 && channel.read(last, channel.size() - 1) == 1 && last.get(0) != '\n') {
+                channel.write(ByteBuffer.wrap(new byte[] { '\n' }), channel.size());
+                channel.force(false);
+            }
+        }
+    }
+
+    /**
+     * Synchronizes all templates which have a plain template file or a latest
+     * revision, see {@link #syncPlainFile(IRI)}.
+     */
+    private void syncPlainFiles() throws IOException {
+        Set<IRI> templates = Sets.newHashSet(latest.keySet());
+        File[] files = baseStorageFolder.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File current, String name) {
+                return new File(current, name).isFile() && name.endsWith("." + SUFFIX);
+            }
+        });
+        for (File file : files == null ? new File[0] : files) {
+            toTemplateIri(file.toPath()).ifPresent(templates::add);
+        }
+        int changed = 0;
+        for (IRI iri : templates) {
+            if (syncPlainFile(iri)) {
+                changed++;
+            }
+        }
+        if (changed > 0) {
+            logger.info("Imported {} changed template files into the revisioned template storage.", changed);
+        }
+    }
+
+    /**
+     * Imports the plain template file of the template as new revision if it
+     * differs from the latest revision, or records the deletion of the
+     * template if the plain file has been removed.
+     *
+     * @return whether a new revision has been appended
+     */
+    private synchronized boolean syncPlainFile(IRI iri) throws IOException {
+        Path file = getPlainFile(iri);
+        Revision current = latest.get(iri);
+        if (!Files.isRegularFile(file)) {
+            if (current == null) {
+                return false;
+            }
+            append(iri, null);
+            return true;
+        }
+        String content = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+        // files which are being written are empty temporarily, i.e. must not delete the template
+        if (content.isEmpty() || (current != null && current.hash.equals(hash(content)))) {
+            return false;
+        }
+        storeNewRevision(iri, content);
+        return true;
+    }
+
+    /**
+     * Called by the {@link TemplateResolutionIndex} for every changed file in
+     * the storage folder, i.e. also for the plain files written by the storage
+     * itself, which are in sync already.
+     */
+    private Optional<IRI> syncChangedPlainFile(Path file) {
+        Optional<IRI> iri = toTemplateIri(file);
+        if (iri.isPresent()) {
+            try {
+                if (syncPlainFile(iri.get())) {
+                    logger.info("Imported changed template file of {} into the revisioned template storage.",
+                            iri.get());
+                }
+            } catch (IOException e) {
+                logger.warn("Failed to import changed template file of {}: {}", iri.get(), e.getMessage());
+            }
+        }
+        return iri;
+    }
+
+    private synchronized void apply(IRI iri, Revision revision) {
+        history.computeIfAbsent(iri, k -> Maps.newTreeMap()).put(revision.revision, revision);
+        if (revision.hash == null) {
+            latest.remove(iri);
+        } else {
+            latest.put(iri, revision);
+        }
+        lastRevision = Math.max(lastRevision, revision.revision);
+    }
+
+    /**
+     * Appends a new revision to the log. The blob of the revision must have
+     * been written before. The plain template file is updated before the log,
+     * such that it is imported again on startup if the log entry is lost.
+     */
+    private synchronized long append(IRI iri, String hash) throws IOException {
+        writePlainFile(iri, hash);
+        Revision revision = new Revision(Math.max(System.currentTimeMillis(), lastRevision + 1), hash);
+        String line = revision.revision + "\t" + (hash == null ? DELETED : hash) + "\t" + iri.stringValue() + "\n";
+        Files.write(logFile, line.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND, StandardOpenOption.SYNC);
+        apply(iri, revision);
+        resolutionIndex().ifPresent(index -> index.invalidate(iri));
+        return revision.revision;
+    }
+
+    /**
+     * Replaces the plain template file by the content of the specified blob or
+     * deletes it, if the hash is <code>null</code>.
+     */
+    private void writePlainFile(IRI iri, String hash) throws IOException {
+        Path file = getPlainFile(iri);
+        if (hash == null) {
+            Files.deleteIfExists(file);
+            return;
+        }
+        // not ending with the template suffix, i.e. ignored by the simple storage
+        Path tmp = Files.createTempFile(baseStorageFolder.toPath(), ".template", ".tmp");
+        try {
+            Files.copy(getBlobFile(hash).toPath(), tmp, StandardCopyOption.REPLACE_EXISTING);
+            try {
+                Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private Path getPlainFile(IRI iri) throws IOException {
+        return new File(baseStorageFolder, normalize(iri) + "." + SUFFIX).toPath();
+    }
+
+    /**
+     * The resolution index is not yet available while migrating on startup.
+     */
+    private Optional<TemplateResolutionIndex> resolutionIndex() {
+        return Optional.ofNullable(resolutionIndex);
+    }
+
+    private File getBlobFile(String hash) {
+        return new File(new File(blobsFolder, hash.substring(0, 2)), hash);
+    }
+
+    private static String hash(String content) {
+        return Hashing.sha256().hashString(content, StandardCharsets.UTF_8).toString();
+    }
+
+    private String writeBlob(String content) throws IOException {
+        String hash = hash(content);
+        Path blob = getBlobFile(hash).toPath();
+        if (Files.exists(blob)) {
+            return hash;
+        }
+        Files.createDirectories(blob.getParent());
+        Path tmp = Files.createTempFile(blob.getParent(), hash, ".tmp");
+        try {
+            Files.write(tmp, content.getBytes(StandardCharsets.UTF_8), StandardOpenOption.SYNC);
+            try {
+                Files.move(tmp, blob, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, blob, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        return hash;
+    }
+
+    private Optional<URL> toLocation(Revision revision) {
+        if (revision == null || revision.hash == null) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(getBlobFile(revision.hash).toURI().toURL());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Resolves templates which are not indexed, after synchronizing them with
+     * their plain file, since changes may have been missed by the watcher.
+     */
+    private Optional<URL> resolveSynced(IRI iri) {
+        try {
+            syncPlainFile(iri);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return toLocation(latest.get(iri));
+    }
+
+    @Override
+    public Optional<String> getTemplateContent(IRI iri) throws IOException {
+        return getTemplateContent(iri, null);
+    }
+
+    @Override
+    public Optional<String> getTemplateContent(IRI iri, Long revision) throws IOException {
+        Optional<URL> location = getTemplateLocation(iri, revision);
+        if (!location.isPresent()) {
+            return Optional.empty();
+        }
+        if (revision == null) {
+            // served from the resolution index, which caches the content
+            return resolutionIndex.resolve(iri).map(template -> {
+                try {
+                    return template.getContent();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+        return Optional.of(new String(Files.readAllBytes(getBlobFile(getRevision(iri, revision).hash).toPath()),
+                StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public Optional<URL> getTemplateLocation(IRI iri) throws IOException {
+        return getTemplateLocation(iri, null);
+    }
+
+    @Override
+    public Optional<URL> getTemplateLocation(IRI iri, Long revision) throws IOException {
+        if (revision == null) {
+            return resolutionIndex.resolve(iri).map(TemplateResolutionIndex.ResolvedTemplate::getLocation);
+        }
+        return toLocation(getRevision(iri, revision));
+    }
+
+    private synchronized Revision getRevision(IRI iri, Long revision) {
+        TreeMap<Long, Revision> revisions = history.get(iri);
+        return revisions == null ? null : revisions.get(revision);
+    }
+
+    @Override
+    public synchronized SortedMap<Long, URL> getRevisions(IRI iri) throws IOException {
+        TreeMap<Long, URL> map = Maps.newTreeMap();
+        TreeMap<Long, Revision> revisions = history.get(iri);
+        if (revisions != null) {
+            for (Revision revision : revisions.values()) {
+                toLocation(revision).ifPresent(url -> map.put(revision.revision, url));
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Returns a view on the templates known to the storage, i.e. does not
+     * access the filesystem.
+     */
+    @Override
+    public Set<IRI> getAllStoredTemplates() throws IOException {
+        return Collections.unmodifiableSet(latest.keySet());
+    }
+
+    @Override
+    public synchronized Long storeNewRevision(IRI iri, String rawContent) throws IOException {
+        checkNotNull(iri, "IRI for storing new template revision must not be null.");
+        if (StringUtils.isEmpty(rawContent)) {
+            deleteTemplate(iri);
+            return lastRevision;
+        }
+        String hash = writeBlob(rawContent);
+        Revision current = latest.get(iri);
+        if (current != null && current.hash.equals(hash)) {
+            return current.revision;
+        }
+        return append(iri, hash);
+    }
+
+    /**
+     * Makes a previous revision the latest revision of the template, by
+     * appending a new revision referring to the content of the specified one.
+     * 
+     * @return the new revision
+     * @throws IllegalArgumentException if the revision does not exist
+     */
+    @Override
+    public synchronized Long rollback(IRI iri, Long revision) throws IOException {
+        Revision previous = getRevision(iri, revision);
+        if (previous == null || previous.hash == null) {
+            throw new IllegalArgumentException("Revision " + revision + " of template " + iri + " does not exist.");
+        }
+        Revision current = latest.get(iri);
+        if (current != null && current.hash.equals(previous.hash)) {
+            return current.revision;
+        }
+        return append(iri, previous.hash);
+    }
+
+    @Override
+    public synchronized void deleteTemplate(IRI iri) throws IOException {
+        if (!latest.containsKey(iri)) {
+            return;
+        }
+        append(iri, null);
+    }
+
+    @Override
+    public Optional<TemplateResolutionIndex> getResolutionIndex() {
+        return Optional.of(resolutionIndex);
+    }
+
+    @Override
+    public File getBaseDir() {
+        return this.baseStorageFolder;
+    }
+}
@@ -24,6 +24,7 @@
 import java.io.FileOutputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URISyntaxException;
 import java.net.URL;
@@ -59,9 +60,13 @@ public class SimpleFileTemplateStorage extends AbstractFileTemplateStorage<Long,
     private final static Logger logger = LogManager.getLogger(SimpleFileTemplateStorage.class);
 
     private final File baseStorageFolder;
+
+    private final TemplateResolutionIndex resolutionIndex;
     
     public SimpleFileTemplateStorage(File baseStorageFolder){
         this.baseStorageFolder = baseStorageFolder;
+        this.resolutionIndex = new TemplateResolutionIndex(baseStorageFolder.toPath(),
+                this::resolveTemplateLocation, AbstractFileTemplateStorage::toTemplateIri);
         logger.info("Initalized simple file based template storage with base storage location: "
                 + baseStorageFolder.getAbsolutePath()
           );
@@ -94,12 +99,24 @@ public Optional<URL> getTemplateLocation(IRI iri) throws IOException {
 
     @Override
     public Optional<URL> getTemplateLocation(IRI iri, Long revision) throws IOException{
-       File f = this.getTemplateFile(iri);
-       if(f.exists()){
-           return Optional.of(f.toURI().toURL());
-       }
+       return resolutionIndex.resolve(iri).map(TemplateResolutionIndex.ResolvedTemplate::getLocation);
+    }
+
+    @Override
+    public Optional<TemplateResolutionIndex> getResolutionIndex() {
+        return Optional.of(resolutionIndex);
+    }
 
-       return Optional.<URL>empty();
+    private Optional<URL> resolveTemplateLocation(IRI iri) {
+        try {
+            File f = this.getTemplateFile(iri);
+            if(f.exists()){
+                return Optional.of(f.toURI().toURL());
+            }
+            return Optional.<URL>empty();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
     @Override
@@ -110,7 +127,11 @@ public synchronized Long storeNewRevision(IRI iri, String rawContent) throws IOE
             return new Date().getTime();
         }else{
             File file = getTemplateFile(iri);
-            IOUtils.write(rawContent, new FileOutputStream(file), StandardCharsets.UTF_8);
+            try (FileOutputStream out = new FileOutputStream(file)) {
+                IOUtils.write(rawContent, out, StandardCharsets.UTF_8);
+            } finally {
+                resolutionIndex.invalidate(iri);
+            }
             return file.lastModified();
         }
     }
@@ -151,6 +172,7 @@ public void deleteTemplate(IRI iri) throws IOException {
         if(!file.exists()) return;
         
         FileUtils.deleteQuietly(file);
+        resolutionIndex.invalidate(iri);
     }
 
     @Override
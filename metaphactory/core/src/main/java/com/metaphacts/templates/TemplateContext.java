@@ -24,13 +24,13 @@
 import javax.ws.rs.core.UriInfo;
 
 import org.eclipse.rdf4j.model.IRI;
-import org.eclipse.rdf4j.model.Literal;
 import org.eclipse.rdf4j.model.Value;
 import org.eclipse.rdf4j.repository.Repository;
 
 import com.google.common.collect.Maps;
 import com.metaphacts.cache.LabelCache;
 import com.metaphacts.config.NamespaceRegistry;
+import com.metaphacts.templates.helper.HelperQueryMemo;
 
 /**
  * Carries all the information and references to services required for compiling a handlebars
@@ -50,17 +50,34 @@ public class TemplateContext {
     private LabelCache labelCache;
     
     private NamespaceRegistry namespaceRegistry;
+
+    private final HelperQueryMemo helperQueryMemo = new HelperQueryMemo();
+
+    private RenderLookups lookups;
     
     public Optional<NamespaceRegistry> getNamespaceRegistry() {
         return Optional.<NamespaceRegistry>ofNullable(namespaceRegistry);
     }
 
-    public void setNamespaceRegistry(NamespaceRegistry ns) {
+    public synchronized void setNamespaceRegistry(NamespaceRegistry ns) {
         this.namespaceRegistry = ns;
+        this.lookups = null;
     }
 
-    public void setLabelCache(LabelCache labelCache) {
+    public synchronized void setLabelCache(LabelCache labelCache) {
         this.labelCache = labelCache;
+        this.lookups = null;
+    }
+
+    /**
+     * Label lookups and namespace resolutions memoized for rendering with this
+     * context.
+     */
+    public synchronized RenderLookups getLookups() {
+        if (lookups == null) {
+            lookups = new RenderLookups(labelCache, namespaceRegistry, repository);
+        }
+        return lookups;
     }
 
     public Map<String, Value> getParams() {
@@ -81,6 +98,13 @@ public Value getValue() {
         return value;
     }
 
+    /**
+     * Results of helper queries evaluated while rendering with this context.
+     */
+    public HelperQueryMemo getHelperQueryMemo() {
+        return helperQueryMemo;
+    }
+
     public UriInfo getUriInfo() {
         return uriInfo;
     }
@@ -93,10 +117,7 @@ public Repository getRepository() {
     
     public String getLabel() {
         if (this.labelCache != null && this.value instanceof IRI) {
-            final IRI iri = (IRI) this.value;
-            final Optional<Literal> label = labelCache.getLabel(iri, this.repository);
-            return LabelCache.resolveLabelWithFallback(label, iri);    
-                    
+            return getLookups().getLabelWithFallback((IRI) this.value);
         }
         return "";
     }
@@ -0,0 +1,357 @@
+/*
+ * Copyright (C) 2015-2017, metaphacts GmbH
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, you can receive a copy
+ * of the GNU Lesser General Public License from http://www.gnu.org/
+ */
+package com.metaphacts.templates;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.rdf4j.model.IRI;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.io.Resources;
+
+/**
+ * In-memory index of resolved template locations (including negative entries
+ * for templates which do not exist), such that resolving a template and
+ * checking whether a compiled template is stale do not need to touch the
+ * filesystem on every request.
+ *
+ * <p>
+ * The index is kept up to date by a {@link WatchService} on the template
+ * directory, i.e. templates which are added, modified or deleted outside of the
+ * platform (e.g. by installing an app) are picked up automatically. Changes
+ * made through the {@link TemplateStorage} are applied synchronously by calling
+ * {@link #invalidate(IRI)}, since the watcher delivers events asynchronously.
+ * If the directory can not be watched (e.g. since it does not exist yet), the
+ * index falls back to resolving every lookup directly. Resolved templates are
+ * still kept in this mode, but are re-validated against the modification date
+ * of their file, such that their version (and content) only changes if the
+ * file has been changed. Watching the directory is retried periodically.
+ * </p>
+ */
+public class TemplateResolutionIndex implements AutoCloseable {
+
+    private static final Logger logger = LogManager.getLogger(TemplateResolutionIndex.class);
+
+    /**
+     * Upper bound for the number of indexed templates. Negative entries are
+     * created for every resource page visited, hence need to be bounded.
+     */
+    private static final int MAX_ENTRIES = 10000;
+
+    /**
+     * Minimum time between two attempts to (re-)start watching the template
+     * directory while the index is inactive.
+     */
+    static final long WATCH_RETRY_INTERVAL_MS = 30000;
+
+    /**
+     * Versions are unique across all index instances and increase with every
+     * (re-)resolution of a template, they are used as in-memory replacement for
+     * the file modification date.
+     */
+    private static final AtomicLong versions = new AtomicLong();
+
+    /**
+     * A template which exists in the storage. The content is read lazily and
+     * kept until the template is changed.
+     */
+    public static class ResolvedTemplate {
+        private final URL location;
+        private final long version;
+        private final long lastModified;
+        private volatile String content;
+
+        ResolvedTemplate(URL location) {
+            this.location = location;
+            this.version = versions.incrementAndGet();
+            this.lastModified = lastModified(location);
+        }
+
+        public URL getLocation() {
+            return location;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public String getContent() throws IOException {
+            String result = content;
+            if (result == null) {
+                result = Resources.toString(location, StandardCharsets.UTF_8);
+                content = result;
+            }
+            return result;
+        }
+    }
+
+    private final Path directory;
+    private final Function<IRI, Optional<URL>> resolver;
+    private final Function<Path, Optional<IRI>> fileToIri;
+
+    private final Cache<IRI, Optional<ResolvedTemplate>> entries = CacheBuilder.newBuilder()
+            .maximumSize(MAX_ENTRIES).build();
+
+    /**
+     * Templates resolved while the index is inactive, which need to be
+     * re-validated on every lookup.
+     */
+    private final Cache<IRI, ResolvedTemplate> unwatchedEntries = CacheBuilder.newBuilder()
+            .maximumSize(MAX_ENTRIES).build();
+
+    /**
+     * Incremented on every invalidation, used to detect invalidations which
+     * happen while a template is being resolved.
+     */
+    private final AtomicLong modifications = new AtomicLong();
+
+    private volatile boolean active = false;
+    private volatile boolean closed = false;
+    private volatile long lastWatchAttempt;
+    private WatchService watchService;
+
+    /**
+     * @param directory the template directory to watch for changes
+     * @param resolver  resolves the location of a template from the storage,
+     *                  called for templates which are not indexed (yet)
+     * @param fileToIri maps the name of a file in the template directory to the
+     *                  template it holds (if any)
+     */
+    public TemplateResolutionIndex(Path directory, Function<IRI, Optional<URL>> resolver,
+            Function<Path, Optional<IRI>> fileToIri) {
+        this.directory = directory;
+        this.resolver = resolver;
+        this.fileToIri = fileToIri;
+        startWatching();
+    }
+
+    /**
+     * Creates an index for a storage which reports all changes through
+     * {@link #invalidate(IRI)} itself, i.e. no directory is watched.
+     */
+    public TemplateResolutionIndex(Function<IRI, Optional<URL>> resolver) {
+        this.directory = null;
+        this.resolver = resolver;
+        this.fileToIri = null;
+        this.active = true;
+    }
+
+    private synchronized void startWatching() {
+        lastWatchAttempt = System.currentTimeMillis();
+        if (active || closed) {
+            return;
+        }
+        if (!Files.isDirectory(directory)) {
+            logger.debug("Template directory {} does not exist (yet), templates will be resolved without index.",
+                    directory);
+            return;
+        }
+        try {
+            watchService = directory.getFileSystem().newWatchService();
+            directory.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+        } catch (IOException | UnsupportedOperationException e) {
+            logger.warn("Failed to watch template directory {}, templates will be resolved without index: {}",
+                    directory, e.getMessage());
+            closeWatchService();
+            return;
+        }
+        // changes which happened while not watching are not known
+        invalidateAll();
+        active = true;
+        WatchService service = watchService;
+        Thread watcher = new Thread(() -> processEvents(service), "template-index-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+        logger.debug("Watching template directory {} for changes.", directory);
+    }
+
+    private void processEvents(WatchService service) {
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == OVERFLOW) {
+                        invalidateAll();
+                        continue;
+                    }
+                    Path file = (Path) event.context();
+                    logger.trace("Template file {} has been changed ({}).", file, event.kind());
+                    fileToIri.apply(file).ifPresent(this::invalidate);
+                }
+                if (!key.reset()) {
+                    logger.warn("Template directory {} is no longer accessible, disabling the template index.",
+                            directory);
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // index has been closed
+        }
+        synchronized (this) {
+            if (watchService == service) {
+                closeWatchService();
+                active = false;
+            }
+            invalidateAll();
+        }
+    }
+
+    /**
+     * Tries to (re-)start watching the template directory if the index is
+     * inactive and the last attempt is long enough ago.
+     */
+    private void retryWatching() {
+        if (directory != null && !closed
+                && System.currentTimeMillis() - lastWatchAttempt >= WATCH_RETRY_INTERVAL_MS) {
+            startWatching();
+        }
+    }
+
+    /**
+     * Returns the template stored for the supplied IRI, resolving it through
+     * the storage only if it is not indexed yet.
+     */
+    public Optional<ResolvedTemplate> resolve(IRI iri) {
+        if (!active) {
+            retryWatching();
+        }
+        if (!active) {
+            return resolveUnwatched(iri);
+        }
+        Optional<ResolvedTemplate> entry = entries.getIfPresent(iri);
+        if (entry != null) {
+            return entry;
+        }
+        long before = modifications.get();
+        entry = resolver.apply(iri).map(ResolvedTemplate::new);
+        // do not index results which might have been invalidated in the meantime
+        if (modifications.get() == before) {
+            entries.put(iri, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * Resolves the template through the storage, but keeps the previously
+     * resolved template (and its version) if neither its location nor the
+     * modification date of its file have changed.
+     */
+    private Optional<ResolvedTemplate> resolveUnwatched(IRI iri) {
+        Optional<URL> location = resolver.apply(iri);
+        if (!location.isPresent()) {
+            unwatchedEntries.invalidate(iri);
+            return Optional.empty();
+        }
+        ResolvedTemplate previous = unwatchedEntries.getIfPresent(iri);
+        if (previous != null && previous.location.equals(location.get())
+                && previous.lastModified == lastModified(location.get())) {
+            return Optional.of(previous);
+        }
+        ResolvedTemplate resolved = new ResolvedTemplate(location.get());
+        unwatchedEntries.put(iri, resolved);
+        return Optional.of(resolved);
+    }
+
+    /**
+     * Modification date of the file at the location, 0 for locations which
+     * are not files (e.g. templates on the classpath), which do not change at
+     * runtime.
+     */
+    private static long lastModified(URL location) {
+        if (!"file".equals(location.getProtocol())) {
+            return 0;
+        }
+        try {
+            return Files.getLastModifiedTime(Paths.get(location.toURI())).toMillis();
+        } catch (IOException | URISyntaxException | IllegalArgumentException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Removes the template from the index, e.g. after it has been changed.
+     */
+    public void invalidate(IRI iri) {
+        modifications.incrementAndGet();
+        entries.invalidate(iri);
+        unwatchedEntries.invalidate(iri);
+    }
+
+    public void invalidateAll() {
+        modifications.incrementAndGet();
+        entries.invalidateAll();
+        unwatchedEntries.invalidateAll();
+    }
+
+    /**
+     * Whether lookups are answered from the index, i.e. whether changes of the
+     * template directory are being watched (or reported by the storage).
+     */
+    public boolean isActive() {
+        return active;
+    }
+
+    /**
+     * Number of indexed templates (including negative entries).
+     */
+    public long size() {
+        return entries.size();
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        active = false;
+        closeWatchService();
+        invalidateAll();
+    }
+
+    private void closeWatchService() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                logger.debug("Failed to close watcher of template directory {}: {}", directory, e.getMessage());
+            }
+            watchService = null;
+        }
+    }
+}
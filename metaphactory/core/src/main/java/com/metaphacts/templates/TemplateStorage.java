@@ -145,4 +145,26 @@
      * @return
      */
     public abstract File getBaseDir();
+
+    /**
+     * Makes the specified (previous) revision the latest revision of the
+     * template, if supported by the implementation.
+     * 
+     * @return the identifier of the resulting latest revision
+     * @throws IOException
+     *             On any error related to the storage system.
+     * @throws UnsupportedOperationException
+     *             If the storage does not keep previous revisions.
+     */
+    public default T rollback(IRI iri, T revision) throws IOException {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support rollbacks.");
+    }
+
+    /**
+     * Index for resolving the latest revision of templates without accessing
+     * the storage system on every lookup, if supported by the implementation.
+     */
+    public default Optional<TemplateResolutionIndex> getResolutionIndex() {
+        return Optional.empty();
+    }
 }
\ No newline at end of file
@@ -19,6 +19,10 @@
 package com.metaphacts.templates;
 
 import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.LinkedHashSet;
 import java.util.Optional;
 import java.util.Set;
@@ -43,6 +47,7 @@
 import com.google.common.collect.Sets;
 import com.metaphacts.cache.TemplateIncludeCache;
 import com.metaphacts.config.NamespaceRegistry;
+import com.metaphacts.templates.helper.HelperQueryMemo;
 
 /**
  * Convenience to handle handlebars templates. In particular, generating and extracting includes
@@ -56,6 +61,12 @@ public class TemplateUtil {
     private static final Pattern INCLUDE_PATTERN = Pattern.compile("\\[\\[\\#?\\>\\s?\\\"?([^\"\\]\\s]*)\\\"?\\s?.*?\\]\\]");
     public static final String TEMPLATE_PREFIX = "Template:";
     private static final Logger logger = LogManager.getLogger(TemplateUtil.class);
+
+    /**
+     * Upper bound for the number of (included) templates scanned for helper
+     * queries to prefetch before rendering a template.
+     */
+    private static final int MAX_PREFETCHED_TEMPLATES = 50;
     
     /**
      * Converts a set of {@link Resource}s to template identifiers by prepending the "Template:" prefix
@@ -138,7 +149,8 @@ static Set<String> extractIncludeStrings(String rawTemplateText) {
     /**
      * Tries to resolve a template from the specified location through the supplied template loader.
      * Catches {@link IOException}s silently (meaning not template exists) and wraps the resulting
-     * {@link TemplateSource} into an {@link Optional}.
+     * {@link TemplateSource} into an {@link Optional}. Templates of a {@link FileTemplateLoader}
+     * are looked up in its resolution index without raising exceptions for missing templates.
      * 
      * @param loader
      * @param location
@@ -147,6 +159,9 @@ static Set<String> extractIncludeStrings(String rawTemplateText) {
     public static Optional<TemplateSource> getTemplateSource(TemplateLoader loader, String location){
         TemplateSource source = null;
         try {
+            if (loader instanceof FileTemplateLoader) {
+                return ((FileTemplateLoader) loader).findSource(location);
+            }
             source = loader.sourceAt(location);
         } catch (IOException ioException) {
             // silently catch IOException i.e. means that there is not template
@@ -183,13 +198,37 @@ public static LinkedHashSet<String> getRdfTemplateIncludeIdentifiers(Value pageI
             logger.warn(value + " is not a IRI. Currently only templates for IRIs are supported.");
             return Sets.<String>newLinkedHashSet();
         }
+        long start = System.nanoTime();
         Set<Resource> set = includeCache.getTypesForIncludeScheme(tc.getRepository(), (IRI) value, tc.getNamespaceRegistry());
+        RenderProfile.recordPhase(RenderProfile.Phase.INCLUDES, start);
         if(set.isEmpty()){
             return  Sets.<String>newLinkedHashSet();
         }
         return TemplateUtil.convertResourcesToTemplateIdentifiers(set);
     }
     
+    /**
+     * Starts evaluating the helper queries of the template and (transitively)
+     * of all templates it includes, see {@link HelperQueryMemo}.
+     */
+    private static void prefetchHelperQueries(TemplateContext tc, TemplateSource source, TemplateLoader loader) throws IOException {
+        Set<String> visited = Sets.newHashSet(source.filename());
+        Deque<String> pending = new ArrayDeque<>();
+        pending.add(source.content());
+        while (!pending.isEmpty() && visited.size() <= MAX_PREFETCHED_TEMPLATES) {
+            String content = pending.poll();
+            tc.getHelperQueryMemo().prefetch(tc, content);
+            for (String include : extractIncludeStrings(content)) {
+                if (visited.add(include)) {
+                    Optional<TemplateSource> included = getTemplateSource(loader, include);
+                    if (included.isPresent()) {
+                        pending.add(included.get().content());
+                    }
+                }
+            }
+        }
+    }
+
     /**
      * Iterates of the the supplied, ordered set of applicable templates for the specified {@link TemplateContext}.
      * Returns the first (existing) template as compiled string.
@@ -204,32 +243,86 @@ public static LinkedHashSet<String> getRdfTemplateIncludeIdentifiers(Value pageI
     public static Optional<String> compileAndReturnFirstExistingTemplate(
             TemplateContext tc, LinkedHashSet<String> appplicableTemplates, Handlebars handlebars
     ) throws MissingHelperException, IllegalArgumentException{
-        try {      
-            // returns the first template that can be loaded (exists) from the ordered set of template candidates
+        Optional<Template> template = compileFirstExistingTemplate(tc, appplicableTemplates, handlebars);
+        if (!template.isPresent()) {
+            return Optional.<String>empty();
+        }
+        StringWriter writer = new StringWriter();
+        applyTemplate(template.get(), tc, writer);
+        return Optional.of(writer.toString());
+    }
+
+    /**
+     * Compiles the first template that can be loaded (exists) from the ordered
+     * set of template candidates, after prefetching its helper queries into
+     * the template context. Compilation errors are reported the same way as by
+     * {@link #compileAndReturnFirstExistingTemplate(TemplateContext, LinkedHashSet, Handlebars)}.
+     */
+    public static Optional<Template> compileFirstExistingTemplate(
+            TemplateContext tc, LinkedHashSet<String> appplicableTemplates, Handlebars handlebars
+    ) throws MissingHelperException, IllegalArgumentException{
+        try {
             // no concatenation
             for (String location : appplicableTemplates) {
                 Optional<TemplateSource> source = TemplateUtil.getTemplateSource(handlebars.getLoader(), location);
                 if(source.isPresent()){
+                    RenderProfile.recordTemplate(location);
+                    long start = System.nanoTime();
+                    try {
+                        prefetchHelperQueries(tc, source.get(), handlebars.getLoader());
+                    } catch (Exception e) {
+                        // queries will be evaluated while rendering instead
+                        logger.debug("Failed to prefetch helper queries of template {}: {}", location, e.getMessage());
+                    } finally {
+                        RenderProfile.recordPhase(RenderProfile.Phase.PREFETCH, start);
+                    }
+                    start = System.nanoTime();
                     Template template = handlebars.compile(source.get());
+                    RenderProfile.recordPhase(RenderProfile.Phase.COMPILE, start);
                     if (logger.isTraceEnabled()) {
                         logger.trace("Found the following handlebar tags {} in template: {}", template.collect(TagType.values()), location);
                     }
-                    return Optional.ofNullable(template.apply(tc));
-                }  
+                    return Optional.of(template);
+                }
             }
         } catch (Exception e) {
-            logger.error(e.getMessage());
-            if (e.getCause() != null && e.getCause() instanceof ClassCastException) {
-                throw new IllegalArgumentException("Probably wrong order or type of helper options:" + e.getMessage());
-            } else if (e.getCause() != null && e.getCause() instanceof MissingHelperException) {
-                throw (MissingHelperException) e.getCause();
-            } else if (e instanceof HandlebarsException) {
-                throw new IllegalArgumentException(e.getMessage());
+            throw translateRenderException(e);
+        }
+        return Optional.<Template>empty();
+    }
+
+    /**
+     * Renders the compiled template directly into the writer, i.e. without
+     * holding the entire output in memory. Note that output written before an
+     * error occurred can not be taken back.
+     */
+    public static void applyTemplate(Template template, TemplateContext tc, Writer writer)
+            throws MissingHelperException, IllegalArgumentException {
+        long start = System.nanoTime();
+        try {
+            template.apply(tc, writer);
+            RenderProfile.recordPhase(RenderProfile.Phase.APPLY, start);
+            if (logger.isDebugEnabled()) {
+                logger.debug("Rendered template {} with {}, helper queries: {} ({} memo hits)", template.filename(),
+                        tc.getLookups(), tc.getHelperQueryMemo().getEvaluatedQueries(),
+                        tc.getHelperQueryMemo().getMemoHits());
             }
-            // propagate all other errors
-            throw Throwables.propagate(e);
+        } catch (Exception e) {
+            throw translateRenderException(e);
+        }
+    }
+
+    private static RuntimeException translateRenderException(Exception e) {
+        logger.error(e.getMessage());
+        if (e.getCause() != null && e.getCause() instanceof ClassCastException) {
+            return new IllegalArgumentException("Probably wrong order or type of helper options:" + e.getMessage());
+        } else if (e.getCause() != null && e.getCause() instanceof MissingHelperException) {
+            return (MissingHelperException) e.getCause();
+        } else if (e instanceof HandlebarsException) {
+            return new IllegalArgumentException(e.getMessage());
         }
-        return Optional.<String>empty();
+        // propagate all other errors
+        return Throwables.propagate(e);
     }
     
 }
\ No newline at end of file
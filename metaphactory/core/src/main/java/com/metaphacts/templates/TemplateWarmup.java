@@ -0,0 +1,280 @@
+/*
+ * Copyright (C) 2015-2017, metaphacts GmbH
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, you can receive a copy
+ * of the GNU Lesser General Public License from http://www.gnu.org/
+ */
+package com.metaphacts.templates;
+
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.rdf4j.model.IRI;
+
+import com.github.jknack.handlebars.io.TemplateSource;
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.metaphacts.config.Configuration;
+import com.metaphacts.plugin.MetaphactoryPluginManager;
+
+/**
+ * Compiles stored templates ahead of time, such that the first request for a
+ * template page does not pay for parsing the template and resolving its
+ * partials. If enabled (see
+ * {@link com.metaphacts.config.groups.EnvironmentConfiguration#getWarmupTemplates()}),
+ * all stored templates are warmed up in the background once the platform has
+ * been initialized (see {@link #start()}) and every template is recompiled
+ * after it has been saved.
+ *
+ * <p>
+ * Templates are compiled in parallel into the template cache of the shared
+ * {@link MetaphactsHandlebars} instance, including all partials they
+ * (transitively) include. Parse errors and compile times are reported per
+ * template in a {@link Report}, which is exposed through the template
+ * endpoint. Failures and slow templates are logged in addition.
+ * </p>
+ */
+@Singleton
+public class TemplateWarmup {
+
+    private static final Logger logger = LogManager.getLogger(TemplateWarmup.class);
+
+    /**
+     * Templates which take longer to compile (including their partials) are
+     * logged on every warm-up.
+     */
+    static final long SLOW_TEMPLATE_MS = 1000;
+
+    /**
+     * Warm-up status of a single template.
+     */
+    public static class TemplateStatus {
+        private final String template;
+        private long compileTimeMs;
+        private String error;
+        private final Set<String> missingPartials = Sets.newConcurrentHashSet();
+
+        TemplateStatus(String template) {
+            this.template = template;
+        }
+
+        public String getTemplate() {
+            return template;
+        }
+
+        /**
+         * Time (in milliseconds) for compiling the template and all of its
+         * partials.
+         */
+        public long getCompileTimeMs() {
+            return compileTimeMs;
+        }
+
+        /**
+         * The parse error or <code>null</code> if the template compiled.
+         */
+        public String getError() {
+            return error;
+        }
+
+        /**
+         * Included partials which do not exist (yet). These are not
+         * necessarily errors, since templates may include optional partials.
+         */
+        public Set<String> getMissingPartials() {
+            return missingPartials;
+        }
+    }
+
+    /**
+     * Result of warming up a set of templates.
+     */
+    public static class Report {
+        private final List<TemplateStatus> templates;
+        private final long totalTimeMs;
+
+        Report(List<TemplateStatus> templates, long totalTimeMs) {
+            this.templates = Collections.unmodifiableList(templates);
+            this.totalTimeMs = totalTimeMs;
+        }
+
+        public List<TemplateStatus> getTemplates() {
+            return templates;
+        }
+
+        public List<TemplateStatus> getErrors() {
+            return templates.stream().filter(status -> status.error != null).collect(Collectors.toList());
+        }
+
+        public long getTotalTimeMs() {
+            return totalTimeMs;
+        }
+    }
+
+    private final TemplateStorage<Long, URL> storage;
+    private final MetaphactsHandlebars handlebars;
+    private final boolean enabled;
+    private final ThreadPoolExecutor executor;
+
+    private volatile Report lastReport;
+
+    /**
+     * The plugin manager is not used, but the apps install their templates
+     * when it is created, i.e. it needs to be created before the templates are
+     * enumerated.
+     */
+    @Inject
+    public TemplateWarmup(Configuration config, MetaphactoryPluginManager pluginManager,
+            TemplateStorage<Long, URL> storage, MetaphactsHandlebars handlebars) {
+        this(storage, handlebars, config.getEnvironmentConfig().getWarmupTemplates());
+    }
+
+    TemplateWarmup(TemplateStorage<Long, URL> storage, MetaphactsHandlebars handlebars, boolean enabled) {
+        this.storage = storage;
+        this.handlebars = handlebars;
+        this.enabled = enabled;
+        int threads = Runtime.getRuntime().availableProcessors();
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                new ThreadFactoryBuilder().setNameFormat("template-warmup-%d").setDaemon(true).build());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Starts warming up all stored templates in the background, if enabled.
+     * Called once on startup after the injector has been created.
+     */
+    public void start() {
+        if (enabled) {
+            warmAllAsync();
+        }
+    }
+
+    /**
+     * The report of the last warm-up of all templates, if any.
+     */
+    public Optional<Report> getLastReport() {
+        return Optional.ofNullable(lastReport);
+    }
+
+    /**
+     * Starts warming up all stored templates in the background.
+     */
+    public CompletableFuture<Report> warmAllAsync() {
+        // not on the executor itself, which would block one of its threads while waiting
+        return CompletableFuture.supplyAsync(this::warmAll);
+    }
+
+    /**
+     * Compiles all stored templates in parallel and blocks until all of them
+     * have been compiled.
+     */
+    public Report warmAll() {
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        List<CompletableFuture<TemplateStatus>> futures = Lists.newArrayList();
+        try {
+            for (IRI iri : storage.getAllStoredTemplates()) {
+                futures.add(CompletableFuture.supplyAsync(() -> warm(iri), executor));
+            }
+        } catch (Exception e) {
+            logger.error("Failed to enumerate the stored templates for warm-up: {}", e.getMessage());
+        }
+        List<TemplateStatus> result = futures.stream().map(CompletableFuture::join).collect(Collectors.toList());
+        Report report = new Report(result, stopwatch.elapsed(TimeUnit.MILLISECONDS));
+        lastReport = report;
+
+        result.forEach(TemplateWarmup::log);
+        logger.info("Warmed up {} templates in {} ms ({} with errors).", result.size(), report.totalTimeMs,
+                report.getErrors().size());
+        return report;
+    }
+
+    /**
+     * Recompiles the specified template in the background, e.g. after it has
+     * been saved. Has no effect if the warm-up is disabled.
+     */
+    public void warmAsync(IRI iri) {
+        if (!enabled) {
+            return;
+        }
+        executor.execute(() -> log(warm(iri)));
+    }
+
+    private static void log(TemplateStatus status) {
+        if (status.error != null) {
+            logger.warn("Failed to compile template {}: {}", status.template, status.error);
+        } else if (status.compileTimeMs >= SLOW_TEMPLATE_MS) {
+            logger.info("Compiling template {} took {} ms.", status.template, status.compileTimeMs);
+        }
+    }
+
+    /**
+     * Compiles the template and all partials it (transitively) includes.
+     */
+    TemplateStatus warm(IRI iri) {
+        TemplateStatus status = new TemplateStatus(iri.stringValue());
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        try {
+            Optional<TemplateSource> source = TemplateUtil.getTemplateSource(handlebars.getLoader(), status.template);
+            if (!source.isPresent()) {
+                status.error = "Template does not exist.";
+                return status;
+            }
+            handlebars.compile(source.get());
+
+            Set<String> visited = Sets.newHashSet(status.template);
+            Deque<String> pending = new ArrayDeque<>();
+            pending.add(source.get().content());
+            while (!pending.isEmpty()) {
+                for (String include : TemplateUtil.extractIncludeStrings(pending.poll())) {
+                    if (!visited.add(include)) {
+                        continue;
+                    }
+                    Optional<TemplateSource> partial = TemplateUtil.getTemplateSource(handlebars.getLoader(), include);
+                    if (partial.isPresent()) {
+                        handlebars.compile(partial.get());
+                        pending.add(partial.get().content());
+                    } else {
+                        status.missingPartials.add(include);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            status.error = e.getMessage();
+        } finally {
+            status.compileTimeMs = stopwatch.elapsed(TimeUnit.MILLISECONDS);
+        }
+        logger.debug("Compiled template {} in {} ms.", status.template, status.compileTimeMs);
+        return status;
+    }
+}
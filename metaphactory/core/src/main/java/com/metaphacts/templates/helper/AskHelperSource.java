@@ -18,20 +18,11 @@
 
 package com.metaphacts.templates.helper;
 
-import static com.google.common.base.Preconditions.checkNotNull;
-
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.eclipse.rdf4j.query.BooleanQuery;
-import org.eclipse.rdf4j.query.MalformedQueryException;
-import org.eclipse.rdf4j.query.QueryEvaluationException;
-import org.eclipse.rdf4j.repository.RepositoryConnection;
-import org.eclipse.rdf4j.repository.RepositoryException;
 
 import com.github.jknack.handlebars.Options;
 import com.github.jknack.handlebars.helper.IfHelper;
-import com.metaphacts.api.sparql.SparqlOperationBuilder;
-import com.metaphacts.templates.TemplateContext;
 
 /**
  * Handlebars helper to execute SPARQL ASK queries. Helper will return either
@@ -61,33 +52,8 @@ public class AskHelperSource {
     private static final Logger logger = LogManager.getLogger(AskHelperSource.class);
 
     public String ask(String param0, Options options) {
-        TemplateContext context =  (TemplateContext) options.context.model();
-        String queryString = checkNotNull(param0);
-        try (RepositoryConnection con =context.getRepository().getConnection()) {
-            SparqlOperationBuilder<BooleanQuery> tqb = HelperUtil.contextualizeSparqlOperation(SparqlOperationBuilder.<BooleanQuery>create(queryString, BooleanQuery.class), context);
-            context.getNamespaceRegistry().map( ns -> tqb.setNamespaces(ns.getPrefixMap()));
-            BooleanQuery op = tqb.build(con);
-            if (!(op instanceof BooleanQuery))
-                throw new IllegalArgumentException(
-                        "Only SPARQL ASK queries are not supported in SPARQL "
-                                + options.helperName + " Template Helper Function.");
-
-            logger.trace("Evaluating SPARQL ASK query in SPARQL " + options.helperName
-                    + " Template Helper: " + queryString);
-            boolean b = ((BooleanQuery) op).evaluate();
-            return b ? "true" : ""; // handlebars requires empty string for
-                                    // false, if not native boolean
-        } catch (RepositoryException e) {
-            throw new RuntimeException(
-                    "Repository Exception while evaluating query in SPARQL "
-                            + options.helperName + " Template Helper: " + queryString, e);
-        } catch (MalformedQueryException e) {
-            throw new IllegalArgumentException("Malformed Query in SPARQL "
-                    + options.helperName + "  Template Helper: \""+queryString +"\" .\nDetails: "+e.getMessage(), e);
-        } catch (QueryEvaluationException e) {
-            throw new RuntimeException(
-                    "Error while evaluating query in SPARQL " + options.helperName
-                            + " Template Helper: " + queryString, e);
-        }
+        boolean b = HelperUtil.evaluateAskQuery(param0, options, logger);
+        return b ? "true" : ""; // handlebars requires empty string for
+                                // false, if not native boolean
     }
 }
\ No newline at end of file
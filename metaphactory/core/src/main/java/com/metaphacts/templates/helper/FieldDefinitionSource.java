@@ -20,6 +20,7 @@
 
 import java.io.IOException;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -58,11 +59,13 @@
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
+import com.metaphacts.cache.FieldDefinitionCache;
+import com.metaphacts.cache.FieldDefinitionCache.FieldDefinition;
 import com.metaphacts.cache.LabelCache;
 import com.metaphacts.config.NamespaceRegistry;
 import com.metaphacts.data.json.JsonUtil;
-import com.metaphacts.data.rdf.container.FieldDefinitionContainer;
 import com.metaphacts.repository.RepositoryManager;
+import com.metaphacts.templates.RenderDependencies;
 import com.metaphacts.templates.helper.HelperUtil.QueryResult;
 
 /**
@@ -77,14 +80,27 @@ public class FieldDefinitionSource {
 
     private static final Logger logger = LogManager.getLogger(FieldDefinitionSource.class);
 
+    /**
+     * Keys of the values derived from (and cached along with) a {@link FieldDefinition}.
+     */
+    private static final String DERIVED_JSON = "json";
+    private static final String DERIVED_SEARCH_RELATION = "searchRelation";
+
     private final LabelCache labelCache;
     private final NamespaceRegistry namespaceRegistry;
     private final RepositoryManager repositoryManager;
+    private final FieldDefinitionCache fieldDefinitionCache;
 
-    public FieldDefinitionSource(LabelCache labelCache, NamespaceRegistry namespaceRegistry, RepositoryManager repositoryManager) {
+    public FieldDefinitionSource(
+        LabelCache labelCache,
+        NamespaceRegistry namespaceRegistry,
+        RepositoryManager repositoryManager,
+        FieldDefinitionCache fieldDefinitionCache
+    ) {
         this.labelCache = labelCache;
         this.namespaceRegistry = namespaceRegistry;
         this.repositoryManager = repositoryManager;
+        this.fieldDefinitionCache = fieldDefinitionCache;
     }
 
     /**
@@ -121,92 +137,65 @@ public String fieldDefinitionsFromQuery(String param0, Options options) {
         }
     }
 
+    /**
+     * Serializes the definitions of the fields in the alias map (or of all
+     * fields if the map is empty) as JSON object array ordered by their
+     * position in the map (or by field IRI). The definitions including their
+     * JSON serialization are taken from the {@link FieldDefinitionCache}.
+     */
     private String generateFieldDefinitons(Map<String, Object> aliasMap, Options options) {
-        String valuesClause = "";
-        if (!aliasMap.isEmpty()) {
-            StringBuilder sb = new StringBuilder();
-            sb.append("VALUES (?field ?alias ?order){");
+        ValueFactory vf = SimpleValueFactory.getInstance();
+        StringBuilder sb = new StringBuilder();
+        sb.append("[");
+        if (aliasMap.isEmpty()) {
+            List<IRI> fields = fieldDefinitionCache.getAllFieldIris();
+            fields.sort(Comparator.comparing(IRI::stringValue));
+            Map<IRI, Optional<FieldDefinition>> definitions = getFieldDefinitions(fields);
+            for (IRI field : fields) {
+                definitions.get(field).ifPresent(def -> appendFieldDefinition(sb, field.stringValue(), def, null));
+            }
+        } else {
+            Map<String, IRI> fields = new LinkedHashMap<>();
+            Map<String, Integer> order = new HashMap<>();
             int i = 0;
             for (Entry<String, Object> e: aliasMap.entrySet()) {
                 if (e.getValue() instanceof String) {
-                    sb.append("(<");
-                    sb.append(e.getValue());
-                    sb.append(">");
-                    sb.append(" \"");
-                    sb.append(e.getKey());
-                    sb.append("\" ");
-                    sb.append(i);
-                    sb.append(")");
+                    fields.put(e.getKey(), vf.createIRI((String) e.getValue()));
+                    order.put(e.getKey(), i);
                 }
                 i++;
             }
-            sb.append("}");
-            valuesClause = sb.toString();
+            Map<IRI, Optional<FieldDefinition>> definitions = getFieldDefinitions(fields.values());
+            fields.forEach((alias, field) -> definitions.get(field).ifPresent(
+                def -> appendFieldDefinition(sb, alias, def, order.get(alias))));
         }
+        sb.append("]");
+        return new Handlebars.SafeString(StringEscapeUtils.escapeHtml4(sb.toString())).toString();
+    }
 
-        String queryString = makeFieldDefinitionQuery(valuesClause);
-        logger.trace("Query for reading field definitions: {}", queryString);
-        return new Handlebars.SafeString(StringEscapeUtils.escapeHtml4(
-            JsonObjectArrayFromSelectSource.transformTupleQueryResultToJSON(
-                queryString, options, Optional.of(repositoryManager.getAssetRepository())
-            )
-        )).toString();
+    /**
+     * Looks up the definitions of the fields and records the fields as
+     * dependencies of the current rendering.
+     */
+    private Map<IRI, Optional<FieldDefinition>> getFieldDefinitions(Collection<IRI> fields) {
+        fields.forEach(RenderDependencies::recordResource);
+        return fieldDefinitionCache.getFieldDefinitions(fields);
     }
 
-    private String makeFieldDefinitionQuery(String valuesClause) {
-        String jsonDatatype = JsonObjectArrayFromSelectSource.SYNTHETIC_JSON_DATATYPE;
-        return String.join("\n",
-            "PREFIX field: <http://www.metaphacts.com/ontology/fields#> ",
-            "PREFIX rdfs: <http://www.w3.org/2000/01/rdf-schema#>",
-            "PREFIX sp: <http://spinrdf.org/sp#>",
-            "SELECT DISTINCT ?id",
-            "(SAMPLE(?label) AS ?label)",
-            "(SAMPLE(?description) AS ?description)",
-            "(SAMPLE(?minOccurs) AS ?minOccurs)",
-            "(SAMPLE(?maxOccurs) AS ?maxOccurs)",
-            "(STRDT(",
-            "  IF(COUNT(?defaultValue) > 0,",
-            "    CONCAT(\"[\\\"\",",
-            "      GROUP_CONCAT(?defaultValue; separator=\"\\\", \\\"\"),",
-            "      \"\\\"]\"",
-            "    ),",
-            "    \"[]\"",
-            "  ),",
-            "  <" + jsonDatatype + ">",
-            ") AS ?defaultValues)",
-            "(SAMPLE(?domain) AS ?domain)",
-            "(SAMPLE(?xsdDatatype) AS ?xsdDatatype)",
-            "(SAMPLE(?range) AS ?range)",
-            "(SAMPLE(?insertPattern) AS ?insertPattern)",
-            "(SAMPLE(?selectPattern) AS ?selectPattern)",
-            "(SAMPLE(?askPattern) AS ?askPattern)",
-            "(SAMPLE(?autosuggestionPattern) AS ?autosuggestionPattern)",
-            "(SAMPLE(?valueSetPattern) AS ?valueSetPattern)",
-            "(SAMPLE(?treePatterns) AS ?treePatterns)",
-            "(SAMPLE(?order) as ?order)",
-            "WHERE {",
-            "<" + FieldDefinitionContainer.IRI_STRING + "> <http://www.w3.org/ns/ldp#contains> ?field.",
-            "?field a field:Field.",
-            "?field field:insertPattern [ sp:text ?insertPattern].",
-            "OPTIONAL{?field field:selectPattern [ sp:text ?selectPattern]}.",
-            "OPTIONAL{?field field:valueSetPattern [ sp:text ?valueSetPattern]}.",
-            "OPTIONAL{?field field:autosuggestionPattern [ sp:text ?autosuggestionPattern]}.",
-            "OPTIONAL{?field field:minOccurs ?minOccurs.}.",
-            "OPTIONAL{?field field:domain ?domain.}.",
-            "OPTIONAL{?field field:xsdDatatype ?xsdDatatype.}.",
-            "OPTIONAL{?field field:range ?range.}.",
-            "OPTIONAL{?field field:maxOccurs ?maxOccurs.}.",
-            "OPTIONAL { ?field field:defaultValue ?defaultValue . } .",
-            "OPTIONAL{?field rdfs:comment ?description.}.",
-            "OPTIONAL{?field field:askPattern [ sp:text ?askPattern]}.",
-            "OPTIONAL { ?field field:treePatterns ?treePatterns }",
-            "?field rdfs:label ?label.",
-            valuesClause,
-            "BIND(COALESCE(?alias, ?field) as ?id)",
-            "}",
-            "GROUP BY ?id",
-            "ORDER BY ?order ?id"
-        );
+    private static void appendFieldDefinition(StringBuilder sb, String id, FieldDefinition definition, Integer order) {
+        if (sb.length() > 1) {
+            sb.append(",");
+        }
+        sb.append("{\"id\":\"").append(StringEscapeUtils.escapeJson(id)).append("\",");
+        sb.append(definition.getDerived(DERIVED_JSON, def -> {
+            StringBuilder json = new StringBuilder();
+            JsonObjectArrayFromSelectSource.appendJsonMembers(json, def.getValues());
+            return json.toString();
+        }));
+        if (order != null) {
+            sb.append(",\"order\":\"").append(order).append("\"");
+        }
+        sb.append("}");
     }
 
     public static String FIELD_BINDING_VARIABLE = "field";
@@ -240,21 +229,22 @@ public String searchConfigForFields(String param0, Options options) throws IOExc
      */
     private String generateSearchConfigForFields(ImmutableList<Object> fields, Options options) throws IOException {
         ValueFactory vf = SimpleValueFactory.getInstance();
-        String queryString = makeQueryForFieldDefinitions(fields);
+        List<IRI> fieldIris = fields.isEmpty()
+            ? fieldDefinitionCache.getAllFieldIris()
+            : fields.stream().map(field -> vf.createIRI((String) field)).collect(Collectors.toList());
 
         Map<String, SearchRelation> relations = new HashMap<>();
-        JsonObjectArrayFromSelectSource.enumerateQueryTuples(queryString, options, Optional.of(repositoryManager.getAssetRepository()), (tuple, last) -> {
-            Map<String, String> values = Maps.transformValues(tuple, v -> v.stringValue());
-            if (values.get("id") == null) {
-                return;
+        for (Optional<FieldDefinition> definition : getFieldDefinitions(fieldIris).values()) {
+            if (!definition.isPresent()) {
+                continue;
             }
-            SearchRelation relation = relationFromTuple(values);
+            SearchRelation relation = definition.get().getDerived(DERIVED_SEARCH_RELATION, this::relationFromDefinition);
             if (relation.range != null && relation.domain != null) {
                 relations.put('<' + relation.id + '>', relation);
             } else {
                 throw new RuntimeException("Domain or Range is unknown for the field - " + relation.id);
             }
-        });
+        }
 
         Collection<SearchRelation> allRelations = relations.values();
         Set<IRI> categoryIris = Stream.concat(
@@ -322,17 +312,6 @@ private String generateSearchConfigForFields(ImmutableList<Object> fields, Optio
         )).toString();
     }
 
-    private String makeQueryForFieldDefinitions(List<?> definitionIds) {
-        ValueFactory vf = SimpleValueFactory.getInstance();
-        String valuesClause = definitionIds.size() > 0 ? renderValuesClause(
-            "?field", definitionIds,
-            param -> ImmutableList.of(vf.createIRI((String)param))
-        ) : "";
-        String query = makeFieldDefinitionQuery(valuesClause);
-        logger.trace("Query for reading field definitions: {}", query);
-        return query;
-    }
-
     private static <T> String renderValuesClause(
         String rowSpecification,
         Collection<T> values,
@@ -396,30 +375,36 @@ SearchRelation setRangePattern(String rangePattern) {
         }
     }
 
-    private SearchRelation relationFromTuple(Map<String, String> tuple) {
-        RelationKind kind = RelationKind.fromFieldDatatype(tuple.get("id"), tuple.get("xsdDatatype"));
+    /**
+     * Transforms the field definition into a search relation. As this
+     * requires to parse the field queries, the result is cached along with the
+     * field definition.
+     */
+    private SearchRelation relationFromDefinition(FieldDefinition definition) {
+        String id = definition.getIri().stringValue();
+        RelationKind kind = RelationKind.fromFieldDatatype(id, definition.getValue("xsdDatatype").orElse(null));
 
         String queryPattern;
         String rangePattern = null;
         try {
-            queryPattern = transformFieldInsertQueryToRelationPattern(kind, tuple.get("insertPattern"));
-            String selectQuery = tuple.get("selectPattern");
-            if (selectQuery != null) {
-                rangePattern = transformFieldSelectQueryToCategoryPattern(selectQuery);
+            queryPattern = transformFieldInsertQueryToRelationPattern(kind, definition.getValue("insertPattern").orElse(null));
+            Optional<String> selectQuery = definition.getValue("selectPattern");
+            if (selectQuery.isPresent()) {
+                rangePattern = transformFieldSelectQueryToCategoryPattern(selectQuery.get());
             }
         } catch (MalformedQueryException ex) {
             String message = String.format(
-                "Error transforming queries of field definition <%s>", tuple.get("id"));
+                "Error transforming queries of field definition <%s>", id);
             logger.error(message, ex);
             throw new RuntimeException(message, ex);
         }
 
         return new SearchRelation()
-            .setId(tuple.get("id"))
+            .setId(id)
             .setKind(kind.relationKind)
-            .setLabel(tuple.get("label"))
-            .setDomain(tuple.get("domain"))
-            .setRange(kind == RelationKind.Literal ? LITERAL_CATEGORY_IRI : tuple.get("range"))
+            .setLabel(definition.getValue("label").orElse(null))
+            .setDomain(definition.getValue("domain").orElse(null))
+            .setRange(kind == RelationKind.Literal ? LITERAL_CATEGORY_IRI : definition.getValue("range").orElse(null))
             .setQueryPattern(queryPattern)
             .setRangePattern(rangePattern);
     }
@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2015-2017, metaphacts GmbH
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, you can receive a copy
+ * of the GNU Lesser General Public License from http://www.gnu.org/
+ */
+package com.metaphacts.templates.helper;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.rdf4j.repository.Repository;
+
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.metaphacts.templates.TemplateContext;
+import com.metaphacts.templates.helper.HelperUtil.QueryResult;
+
+/**
+ * Per-rendering memo of the results of SPARQL queries evaluated by template
+ * helpers (see {@link HelperUtil#evaluateSelectQuery(String, com.github.jknack.handlebars.Options, Logger, Repository)}
+ * and {@link HelperUtil#evaluateAskQuery(String, com.github.jknack.handlebars.Options, Logger)}).
+ *
+ * <p>
+ * Rendering a template is done in two phases: before applying the template,
+ * {@link #prefetch(TemplateContext, String)} scans the template source for
+ * helper invocations with literal query strings, i.e. whose inputs are known
+ * upfront, and evaluates them concurrently on a bounded, shared executor.
+ * While applying the template, helpers obtain their results from the memo
+ * and only queries which have not been prefetched (e.g. since the query string
+ * is computed during rendering) are evaluated synchronously. Prefetched queries
+ * which have not been started by the executor when their result is requested
+ * are evaluated by the rendering thread, i.e. renderings never wait for queries
+ * of other renderings. Identical queries are evaluated only once per
+ * rendering.
+ * </p>
+ */
+public class HelperQueryMemo {
+
+    private static final Logger logger = LogManager.getLogger(HelperQueryMemo.class);
+
+    /**
+     * Maximum number of helper queries evaluated in parallel across all
+     * renderings. If the queue of pending queries is full, queries are
+     * evaluated by the rendering thread itself.
+     */
+    public static final int MAX_CONCURRENT_QUERIES = 8;
+
+    private static final int MAX_PENDING_QUERIES = 256;
+
+    private static final ExecutorService executor;
+    static {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(
+                MAX_CONCURRENT_QUERIES, MAX_CONCURRENT_QUERIES, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(MAX_PENDING_QUERIES),
+                new ThreadFactoryBuilder().setNameFormat("template-helper-query-%d").setDaemon(true).build(),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        pool.allowCoreThreadTimeOut(true);
+        executor = pool;
+    }
+
+    /**
+     * Invocations of query helpers with a literal (double or single quoted)
+     * query string, either as block/simple expression or as subexpression.
+     * Group 1 is the helper name, group 2 or 3 the query and group 4 the
+     * remaining hash parameters.
+     */
+    private static final Pattern HELPER_QUERY_PATTERN = Pattern.compile(
+            "(?:\\[\\[#?|\\()\\s*(singleValueFromSelect|jsonValueFromSelect|jsonArrayFromSelect|jsonObjectArrayFromSelect|ask)\\s+"
+            + "(?:\"((?:[^\"\\\\]|\\\\.)*)\"|'((?:[^'\\\\]|\\\\.)*)')([^\\]\\)]*)");
+
+    private static final String ASK_HELPER = "ask";
+
+    private static class Key {
+        final Repository repository;
+        final boolean ask;
+        final String query;
+
+        Key(Repository repository, boolean ask, String query) {
+            this.repository = repository;
+            this.ask = ask;
+            this.query = query;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return repository == other.repository && ask == other.ask && query.equals(other.query);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(System.identityHashCode(repository), ask, query);
+        }
+    }
+
+    private final ConcurrentMap<Key, FutureTask<Object>> results = new ConcurrentHashMap<>();
+
+    private final AtomicInteger evaluatedQueries = new AtomicInteger();
+    private final AtomicInteger prefetchedQueries = new AtomicInteger();
+    private final AtomicInteger memoHits = new AtomicInteger();
+
+    /**
+     * Scans the supplied template source for helper queries and starts
+     * evaluating them in the background. Invocations which specify a
+     * different repository are skipped. Failures are not reported here, but
+     * when (and only if) the result is requested while rendering.
+     */
+    public void prefetch(TemplateContext context, String templateSource) {
+        Matcher m = HELPER_QUERY_PATTERN.matcher(templateSource);
+        while (m.find()) {
+            if (m.group(4).contains("repository=")) {
+                continue;
+            }
+            String helperName = m.group(1);
+            String query = m.group(2) != null
+                    ? m.group(2).replace("\\\"", "\"")
+                    : m.group(3).replace("\\'", "'");
+            Repository repository = context.getRepository();
+            boolean ask = ASK_HELPER.equals(helperName);
+            FutureTask<Object> task;
+            try {
+                Supplier<?> evaluation = ask
+                        ? HelperUtil.askEvaluation(query, helperName, context, repository, logger)
+                        : HelperUtil.selectEvaluation(query, helperName, context, repository, logger);
+                task = new FutureTask<Object>(evaluation::get);
+            } catch (RuntimeException e) {
+                // e.g. the query type can not be determined, reported when rendering
+                logger.trace("Not prefetching query of {} helper: {}", helperName, e.getMessage());
+                continue;
+            }
+            if (results.putIfAbsent(new Key(repository, ask, query), task) == null) {
+                prefetchedQueries.incrementAndGet();
+                evaluatedQueries.incrementAndGet();
+                executor.execute(task);
+            }
+        }
+    }
+
+    QueryResult select(Repository repository, String query, Supplier<QueryResult> evaluation) {
+        return (QueryResult) get(new Key(repository, false, query), evaluation);
+    }
+
+    boolean ask(Repository repository, String query, Supplier<Boolean> evaluation) {
+        return (Boolean) get(new Key(repository, true, query), evaluation);
+    }
+
+    private Object get(Key key, Supplier<?> evaluation) {
+        FutureTask<Object> task = new FutureTask<Object>(evaluation::get);
+        FutureTask<Object> existing = results.putIfAbsent(key, task);
+        if (existing == null) {
+            evaluatedQueries.incrementAndGet();
+            task.run();
+        } else {
+            memoHits.incrementAndGet();
+            task = existing;
+            // evaluates a prefetched query which is still queued behind
+            // queries of other renderings, no-op if it has been started
+            task.run();
+        }
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw Throwables.propagate(e);
+        } catch (ExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    /**
+     * Number of distinct queries evaluated (or being evaluated) for this
+     * rendering, including prefetched ones.
+     */
+    public int getEvaluatedQueries() {
+        return evaluatedQueries.get();
+    }
+
+    public int getPrefetchedQueries() {
+        return prefetchedQueries.get();
+    }
+
+    /**
+     * Number of helper invocations answered from the memo, including results
+     * of prefetched queries.
+     */
+    public int getMemoHits() {
+        return memoHits.get();
+    }
+}
@@ -21,10 +21,13 @@
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.util.List;
+import java.util.function.Supplier;
 
 import org.apache.logging.log4j.Logger;
 import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Value;
 import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.BooleanQuery;
 import org.eclipse.rdf4j.query.MalformedQueryException;
 import org.eclipse.rdf4j.query.Operation;
 import org.eclipse.rdf4j.query.QueryEvaluationException;
@@ -36,7 +39,11 @@
 import org.eclipse.rdf4j.repository.RepositoryException;
 
 import com.github.jknack.handlebars.Options;
+import com.google.common.collect.Lists;
 import com.metaphacts.api.sparql.SparqlOperationBuilder;
+import com.metaphacts.templates.RenderDependencies;
+import com.metaphacts.templates.RenderLookups;
+import com.metaphacts.templates.RenderProfile;
 import com.metaphacts.templates.TemplateContext;
 
 /**
@@ -59,6 +66,8 @@ public class HelperUtil {
      */
     public static <T extends Operation> SparqlOperationBuilder<T> contextualizeSparqlOperation(SparqlOperationBuilder<T> builder, TemplateContext context){
         builder.resolveThis((IRI)context.getValue());
+        RenderDependencies.recordResource(context.getValue());
+        RenderDependencies.recordQuery();
         if(context.getNamespaceRegistry().isPresent()){
             builder.resolveUser(context.getNamespaceRegistry().get().getUserIRI());
         }
@@ -75,6 +84,23 @@ public QueryResult(List<BindingSet> bindings, List<String> bindingNames) {
 	}
     }
 
+    /**
+     * Records all IRIs of the supplied query result as dependencies of the
+     * current rendering (see {@link RenderDependencies}) and registers them as
+     * label candidates (see {@link RenderLookups}).
+     */
+    static void recordResources(TemplateContext context, List<BindingSet> bindings) {
+        RenderDependencies deps = RenderDependencies.current();
+        List<Value> values = Lists.newArrayList();
+        for (BindingSet bs : bindings) {
+            bs.forEach(binding -> values.add(binding.getValue()));
+        }
+        if (deps != null) {
+            values.forEach(deps::addResource);
+        }
+        context.getLookups().addLabelCandidates(values);
+    }
+
     public static QueryResult evaluateSelectQuery(
         String param0, Options options, Logger logger
     ) {
@@ -82,29 +108,104 @@ public static QueryResult evaluateSelectQuery(
 	return evaluateSelectQuery(param0, options, logger, context.getRepository());
     }
     
+    /**
+     * Evaluates the SPARQL SELECT query of a template helper or returns the
+     * result from the {@link HelperQueryMemo} of the current rendering, if
+     * the same query has already been evaluated (or prefetched).
+     */
     public static QueryResult evaluateSelectQuery(
         String param0, Options options, Logger logger, Repository repository
     ) {
         TemplateContext context =  (TemplateContext) options.context.model();
         String queryString = checkNotNull(param0, "Query string must not be null.");
-        try (RepositoryConnection con = repository.getConnection()) {
-            SparqlOperationBuilder<Operation> tqb = HelperUtil.contextualizeSparqlOperation(SparqlOperationBuilder.create(queryString), context);
-            context.getNamespaceRegistry().map( ns -> tqb.setNamespaces(ns.getPrefixMap()));
-            Operation op = tqb.build(con);
-            if (!(op instanceof TupleQuery)) {
-                throw new IllegalArgumentException("Only SPARQL SELECT queries are supported in "+options.helperName+" template helper.");
+        QueryResult result = context.getHelperQueryMemo().select(repository, queryString,
+            selectEvaluation(queryString, options.helperName, context, repository, logger));
+        recordResources(context, result.bindings);
+        return result;
+    }
+
+    /**
+     * Evaluates the SPARQL ASK query of a template helper or returns the
+     * result from the {@link HelperQueryMemo} of the current rendering.
+     */
+    public static boolean evaluateAskQuery(String param0, Options options, Logger logger) {
+        TemplateContext context =  (TemplateContext) options.context.model();
+        String queryString = checkNotNull(param0, "Query string must not be null.");
+        return context.getHelperQueryMemo().ask(context.getRepository(), queryString,
+            askEvaluation(queryString, options.helperName, context, context.getRepository(), logger));
+    }
+
+    /**
+     * Prepares the evaluation of a SPARQL SELECT query. The query is
+     * contextualized on the calling thread (i.e. the user is resolved from
+     * the current subject), whereas the returned supplier may be evaluated on
+     * any thread.
+     */
+    static Supplier<QueryResult> selectEvaluation(
+        String queryString, String helperName, TemplateContext context, Repository repository, Logger logger
+    ) {
+        SparqlOperationBuilder<Operation> tqb = HelperUtil.contextualizeSparqlOperation(SparqlOperationBuilder.create(queryString), context);
+        context.getNamespaceRegistry().ifPresent( ns -> tqb.setNamespaces(context.getLookups().getPrefixMap()));
+        RenderProfile profile = RenderProfile.current();
+        return () -> {
+            try (RepositoryConnection con = repository.getConnection()) {
+                Operation op = tqb.build(con);
+                if (!(op instanceof TupleQuery)) {
+                    throw new IllegalArgumentException("Only SPARQL SELECT queries are supported in "+helperName+" template helper.");
+                }
+                logger.trace("Evaluating SPARQL SELECT in {} Template Helper: {}", helperName, queryString);
+                long start = System.nanoTime();
+                try (TupleQueryResult tqr = ((TupleQuery)op).evaluate()){
+                    QueryResult result = new QueryResult(QueryResults.asList(tqr), tqr.getBindingNames());
+                    if (profile != null) {
+                        profile.addHelperInvocation(helperName, queryString, result.bindings.size(), System.nanoTime() - start);
+                    }
+                    return result;
+                }
+            } catch (RepositoryException e) {
+                throw new RuntimeException("Repository Exception while evaluating query in \""+helperName+"\" template helper: "+queryString, e);
+            } catch (MalformedQueryException e) {
+                throw new IllegalArgumentException("Malformed Query in \""+helperName+"\" template helper: \""+queryString +"\" .\nDetails: "+e.getMessage(), e);
+            } catch (QueryEvaluationException e) {
+                throw new RuntimeException("Error while evaluating query in \""+helperName+"\" template helper: "+queryString, e);
             }
-            logger.trace("Evaluating SPARQL SELECT in {} Template Helper: {}", options.helperName, queryString);
-            try (TupleQueryResult tqr = ((TupleQuery)op).evaluate()){
-                return new QueryResult(QueryResults.asList(tqr), tqr.getBindingNames());
+        };
+    }
+
+    /**
+     * Prepares the evaluation of a SPARQL ASK query, see
+     * {@link #selectEvaluation(String, String, TemplateContext, Repository, Logger)}.
+     */
+    static Supplier<Boolean> askEvaluation(
+        String queryString, String helperName, TemplateContext context, Repository repository, Logger logger
+    ) {
+        SparqlOperationBuilder<BooleanQuery> tqb = HelperUtil.contextualizeSparqlOperation(SparqlOperationBuilder.<BooleanQuery>create(queryString, BooleanQuery.class), context);
+        context.getNamespaceRegistry().ifPresent( ns -> tqb.setNamespaces(context.getLookups().getPrefixMap()));
+        RenderProfile profile = RenderProfile.current();
+        return () -> {
+            try (RepositoryConnection con = repository.getConnection()) {
+                BooleanQuery op = tqb.build(con);
+                logger.trace("Evaluating SPARQL ASK query in SPARQL " + helperName
+                        + " Template Helper: " + queryString);
+                long start = System.nanoTime();
+                boolean result = op.evaluate();
+                if (profile != null) {
+                    profile.addHelperInvocation(helperName, queryString, 1, System.nanoTime() - start);
+                }
+                return result;
+            } catch (RepositoryException e) {
+                throw new RuntimeException(
+                        "Repository Exception while evaluating query in SPARQL "
+                                + helperName + " Template Helper: " + queryString, e);
+            } catch (MalformedQueryException e) {
+                throw new IllegalArgumentException("Malformed Query in SPARQL "
+                        + helperName + "  Template Helper: \""+queryString +"\" .\nDetails: "+e.getMessage(), e);
+            } catch (QueryEvaluationException e) {
+                throw new RuntimeException(
+                        "Error while evaluating query in SPARQL " + helperName
+                                + " Template Helper: " + queryString, e);
             }
-        } catch (RepositoryException e) {
-            throw new RuntimeException("Repository Exception while evaluating query in \""+options.helperName+"\" template helper: "+queryString, e);
-        } catch (MalformedQueryException e) {
-            throw new IllegalArgumentException("Malformed Query in \""+options.helperName+"\" template helper: \""+queryString +"\" .\nDetails: "+e.getMessage(), e);
-        } catch (QueryEvaluationException e) {
-            throw new RuntimeException("Error while evaluating query in \""+options.helperName+"\" template helper: "+queryString, e);
-        }
+        };
     }
 
 }
@@ -111,42 +111,7 @@ static String transformTupleQueryResultToJSON(final String selectQueryString, Op
 
         enumerateQueryTuples(selectQueryString, options, repository, (tuple, last) -> {
             sb.append("{");
-            java.util.Iterator<Entry<String, Value>> e = tuple.entrySet().iterator();
-            while(e.hasNext()){
-                Entry<String, Value> v = e.next();
-                sb.append("\"");
-                sb.append(StringEscapeUtils.escapeJson(v.getKey()));
-                sb.append("\"");
-                sb.append(":");
-
-                Value value = v.getValue();
-                boolean isAlreadyJson = false;
-
-                if (value instanceof Literal) {
-                    Literal literal = (Literal)value;
-                    IRI datatype = literal.getDatatype();
-                    if (datatype.stringValue().equals(SYNTHETIC_JSON_DATATYPE)) {
-                        if (!isValidJson(literal.stringValue())) {
-                            throw new RuntimeException(String.format(
-                                "Tuple value with synthetic JSON datatype is not a valid json: %s",
-                                literal.stringValue()));
-                        }
-                        isAlreadyJson = true;
-                    }
-                }
-
-                if (isAlreadyJson) {
-                    sb.append(value.stringValue());
-                } else {
-                    sb.append("\"");
-                    sb.append(StringEscapeUtils.escapeJson(value.stringValue()));
-                    sb.append("\"");
-                }
-
-                if(e.hasNext()){
-                    sb.append(",");
-                }
-            }
+            appendJsonMembers(sb, tuple);
             sb.append("}");
             if (!last) {
                 sb.append(",");
@@ -158,6 +123,50 @@ static String transformTupleQueryResultToJSON(final String selectQueryString, Op
         return sb.toString();
     }
 
+    /**
+     * Appends the values of the tuple as comma separated JSON object members
+     * (without the enclosing braces). Literals with the
+     * {@link #SYNTHETIC_JSON_DATATYPE} are appended as they are.
+     */
+    static void appendJsonMembers(StringBuilder sb, Map<String, Value> tuple) {
+        java.util.Iterator<Entry<String, Value>> e = tuple.entrySet().iterator();
+        while(e.hasNext()){
+            Entry<String, Value> v = e.next();
+            sb.append("\"");
+            sb.append(StringEscapeUtils.escapeJson(v.getKey()));
+            sb.append("\"");
+            sb.append(":");
+
+            Value value = v.getValue();
+            boolean isAlreadyJson = false;
+
+            if (value instanceof Literal) {
+                Literal literal = (Literal)value;
+                IRI datatype = literal.getDatatype();
+                if (datatype.stringValue().equals(SYNTHETIC_JSON_DATATYPE)) {
+                    if (!isValidJson(literal.stringValue())) {
+                        throw new RuntimeException(String.format(
+                            "Tuple value with synthetic JSON datatype is not a valid json: %s",
+                            literal.stringValue()));
+                    }
+                    isAlreadyJson = true;
+                }
+            }
+
+            if (isAlreadyJson) {
+                sb.append(value.stringValue());
+            } else {
+                sb.append("\"");
+                sb.append(StringEscapeUtils.escapeJson(value.stringValue()));
+                sb.append("\"");
+            }
+
+            if(e.hasNext()){
+                sb.append(",");
+            }
+        }
+    }
+
     private static boolean isValidJson(String potentialJson) {
         ObjectMapper mapper = new ObjectMapper();
         try {
@@ -24,7 +24,6 @@
 import org.apache.logging.log4j.Logger;
 
 import com.github.jknack.handlebars.Options;
-import com.metaphacts.config.NamespaceRegistry;
 import com.metaphacts.templates.TemplateContext;
 
 /**
@@ -44,11 +43,11 @@ public String resolvePrefix(String param0, Options options) {
         TemplateContext context = (TemplateContext) options.context.model();
         String prefixedIri = checkNotNull(param0, "Parameter prefix must not null or empty.");
         logger.trace("Trying to resolve  {} to full IRI string.", prefixedIri);
-        NamespaceRegistry ns = context.getNamespaceRegistry().orElseThrow(
-                () -> new IllegalStateException("NamespaceService not available in helper function.") 
-        );
+        if (!context.getNamespaceRegistry().isPresent()) {
+            throw new IllegalStateException("NamespaceService not available in helper function.");
+        }
         
-        return ns.resolveToIRI(prefixedIri).orElseThrow( 
+        return context.getLookups().resolveToIRI(prefixedIri).orElseThrow( 
                 () -> new IllegalArgumentException("Prefixed IRI "+prefixedIri + " is not resolveable to full IRI.")
         ).stringValue();
     }
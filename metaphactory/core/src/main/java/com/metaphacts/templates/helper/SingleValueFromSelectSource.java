@@ -18,8 +18,6 @@
 
 package com.metaphacts.templates.helper;
 
-import static com.google.common.base.Preconditions.checkNotNull;
-
 import java.io.IOException;
 
 import org.apache.commons.lang3.StringEscapeUtils;
@@ -28,18 +26,10 @@
 import org.apache.logging.log4j.Logger;
 import org.eclipse.rdf4j.model.Value;
 import org.eclipse.rdf4j.query.BindingSet;
-import org.eclipse.rdf4j.query.MalformedQueryException;
-import org.eclipse.rdf4j.query.Operation;
-import org.eclipse.rdf4j.query.QueryEvaluationException;
-import org.eclipse.rdf4j.query.TupleQuery;
-import org.eclipse.rdf4j.query.TupleQueryResult;
-import org.eclipse.rdf4j.repository.RepositoryConnection;
-import org.eclipse.rdf4j.repository.RepositoryException;
 
 import com.github.jknack.handlebars.Handlebars;
 import com.github.jknack.handlebars.Options;
-import com.metaphacts.api.sparql.SparqlOperationBuilder;
-import com.metaphacts.templates.TemplateContext;
+import com.metaphacts.templates.helper.HelperUtil.QueryResult;
 
 /**
 
@@ -51,48 +41,22 @@ public class SingleValueFromSelectSource {
     private static final Logger logger = LogManager.getLogger(SingleValueFromSelectSource.class);
 
     public String singleValueFromSelect(String param0, Options options) throws IOException {
-        TemplateContext context =  (TemplateContext) options.context.model();
-        String queryString = checkNotNull(param0,"Query string must not be null.");
         String bindingVariable = options.hash("binding");
-        
-        try (RepositoryConnection con = context.getRepository().getConnection()) {
-            SparqlOperationBuilder<Operation> tqb = HelperUtil.contextualizeSparqlOperation(SparqlOperationBuilder.create(queryString), context);
-            context.getNamespaceRegistry().map( ns -> tqb.setNamespaces(ns.getPrefixMap()));
-            Operation op = tqb.build(con);
-            if(!(op instanceof TupleQuery))
-                throw new IllegalArgumentException("Only SPARQL SELECT queries are supported in \""+options.helperName+"\" template helper.");
-            
-                logger.trace("Evaluating SPARQL SELECT in {} Template Helper: {}", options.helperName, queryString);
-                try(TupleQueryResult tqr= ((TupleQuery)op).evaluate()){
-                    if(!StringUtils.isEmpty(bindingVariable) && !tqr.getBindingNames().contains(bindingVariable)){
-                        throw new IllegalArgumentException("Binding variable "+bindingVariable+" does not exist in query result.");
-                    }
-                    if(StringUtils.isEmpty(bindingVariable)){
-                        bindingVariable = tqr.getBindingNames().get(0);
-                    }
-                    
-                    // workaround, we need to iterate over the result entirely otherwise sesame will throw exception
-                    // info.aduna.io.UncloseableInputStream.doClose(UncloseableInputStream.java:45)
-                    // at org.eclipse.rdf4j.query.resultio.sparqlxml.AbstractSPARQLXMLParser.parseQueryResultInternal(AbstractSPARQLXMLParser.java:155)
-                    String stringValue = null;
-                    while(tqr.hasNext()){
-                        BindingSet b = tqr.next();
-                        
-                        Value v = b.getValue(bindingVariable);
-                        if(v !=null && stringValue == null){
-                            //TODO check whether this is safe enough or even to restrictive
-                            stringValue = new Handlebars.SafeString(StringEscapeUtils.escapeHtml4(v.stringValue())).toString();
-                        }
-                       
-                    }
-                   return stringValue != null ? stringValue : "";
-                }
-        } catch (RepositoryException e) {
-            throw new RuntimeException("Repository Exception while evaluating query in \""+options.helperName+"\" template helper: "+queryString, e);
-        } catch (MalformedQueryException e) {
-            throw new IllegalArgumentException("Malformed Query in \""+options.helperName+"\" template helper: "+queryString, e);
-        } catch (QueryEvaluationException e) {
-            throw new RuntimeException("Error while evaluating query in \""+options.helperName+"\" template helper: "+queryString, e);
+        QueryResult result = HelperUtil.evaluateSelectQuery(param0, options, logger);
+        if(!StringUtils.isEmpty(bindingVariable) && !result.bindingNames.contains(bindingVariable)){
+            throw new IllegalArgumentException("Binding variable "+bindingVariable+" does not exist in query result.");
+        }
+        if(StringUtils.isEmpty(bindingVariable)){
+            bindingVariable = result.bindingNames.get(0);
+        }
+
+        for(BindingSet b : result.bindings){
+            Value v = b.getValue(bindingVariable);
+            if(v != null){
+                //TODO check whether this is safe enough or even to restrictive
+                return new Handlebars.SafeString(StringEscapeUtils.escapeHtml4(v.stringValue())).toString();
+            }
         }
+        return "";
     }
 }
\ No newline at end of file
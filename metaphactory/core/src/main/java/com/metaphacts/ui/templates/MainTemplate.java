@@ -18,14 +18,23 @@
 
 package com.metaphacts.ui.templates;
 
+import java.util.List;
 import java.util.Map;
 
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
 
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.rdf4j.model.IRI;
+
 import com.github.jknack.handlebars.Context;
+import com.google.common.base.Charsets;
 import com.google.common.base.Throwables;
+import com.google.common.hash.Hashing;
+import com.metaphacts.cache.CacheManager;
+import com.metaphacts.cache.PlatformCache;
 import com.metaphacts.config.Configuration;
 import com.metaphacts.ui.templates.ST.TEMPLATES;
 
@@ -33,6 +42,12 @@
  *         Main application template with basic html skeleton and main js/css
  *         imports. While other ST templates can be loaded from different
  *         locations (i.e. classpath, app folder), the main template shouldn't be "overwritten".
+ *
+ *         As the inputs of the main template (assets, deployment title and
+ *         the html head template) hardly ever change, the rendered template is
+ *         cached together with a version key derived from these inputs and a
+ *         strong entity tag of the rendered html. It is re-rendered as soon as
+ *         the version key changes or the platform caches are invalidated.
  *         
  * @author Artem Kozlov <ak@metaphats.com>
  * @author Johannes Trame <jt@metaphats.com>
@@ -46,6 +61,8 @@ public class MainTemplate {
     
     private static String platformVersion = MainTemplate.class.getPackage().getImplementationVersion();
 
+    private static final Logger logger = LogManager.getLogger(MainTemplate.class);
+
     @Inject
     private ST st;
     
@@ -55,7 +72,93 @@ public class MainTemplate {
     @Inject @Named("ASSETS_MAP")
     private Map<String, String> assetsMap;
 
+    private volatile RenderedMainTemplate rendered;
+
+    /**
+     * Rendered main template together with the version key of its inputs.
+     */
+    public static class RenderedMainTemplate {
+        private final String versionKey;
+        private final String html;
+        private final String entityTag;
+
+        RenderedMainTemplate(String versionKey, String html) {
+            this.versionKey = versionKey;
+            this.html = html;
+            this.entityTag = Hashing.sha256().hashString(html, Charsets.UTF_8).toString();
+        }
+
+        public String getHtml() {
+            return html;
+        }
+
+        /**
+         * @return strong entity tag (without quotes) derived from the rendered html
+         */
+        public String getEntityTag() {
+            return entityTag;
+        }
+    }
+
+    @Inject
+    void registerCache(CacheManager cacheManager) {
+        cacheManager.register(new PlatformCache() {
+            @Override
+            public void invalidate() {
+                rendered = null;
+            }
+
+            @Override
+            public void invalidate(List<IRI> iris) {
+                // the main template does not depend on any resources
+            }
+
+            @Override
+            public String getId() {
+                return "MainTemplateCache";
+            }
+        });
+    }
+
     public String getMainTemplate() {
+        return getRenderedMainTemplate().getHtml();
+    }
+
+    /**
+     * Returns the cached main template, re-rendering it if any of its inputs
+     * changed since it has been rendered.
+     */
+    public RenderedMainTemplate getRenderedMainTemplate() {
+        String versionKey = getVersionKey();
+        RenderedMainTemplate current = rendered;
+        if (current != null && current.versionKey.equals(versionKey)) {
+            return current;
+        }
+        synchronized (this) {
+            current = rendered;
+            if (current == null || !current.versionKey.equals(versionKey)) {
+                logger.debug("Rendering main template for version key {}.", versionKey);
+                current = new RenderedMainTemplate(versionKey, render());
+                rendered = current;
+            }
+            return current;
+        }
+    }
+
+    /**
+     * Version key of all inputs of the main template. Cheap to compute
+     * compared to compiling and rendering the templates.
+     */
+    private String getVersionKey() {
+        return String.join("|",
+            String.valueOf(platformVersion),
+            String.valueOf(this.assetsMap),
+            String.valueOf(config.getUiConfig().getDeploymentTitle()),
+            st.getAppTemplateFingerprint(TEMPLATES.HTML_HEAD)
+        );
+    }
+
+    private String render() {
         try {
             MainTemplateOpts opts = new MainTemplateOpts(platformVersion, this.assetsMap, config);
             String html_head = st.getTemplateFromAppOrClasspath(TEMPLATES.HTML_HEAD, opts);
@@ -99,6 +99,28 @@ public String getTemplateFromAppOrClasspath(String path, Object params){
     
 
 
+    /**
+     * Returns a fingerprint of the app folder overrides of the specified
+     * template, which changes whenever an override is added, modified or
+     * removed. Templates which are only available on the classpath can not
+     * change without a redeployment.
+     *
+     * @param path
+     * @return
+     */
+    public String getAppTemplateFingerprint(String path){
+        StringBuilder sb = new StringBuilder();
+        for(File f : config.getEnvironmentConfig().getApplicationFolders()){
+            File template = new File(new File(f, "resources"), path + TemplateLoader.DEFAULT_SUFFIX);
+            if(template.isFile()){
+                sb.append(template.getAbsolutePath()).append(':')
+                    .append(template.lastModified()).append(':')
+                    .append(template.length()).append(';');
+            }
+        }
+        return sb.toString();
+    }
+
     private TemplateLoader[] getTemplateLoaders(){
         ArrayList<TemplateLoader> list = Lists.newArrayList();
 
@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2015-2017, metaphacts GmbH
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, you can receive a copy
+ * of the GNU Lesser General Public License from http://www.gnu.org/
+ */
+
+package com.metaphacts.upload;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * In-memory index of the file names in a (flat) file storage folder, e.g. the
+ * image folder of an IIIF server, which allows to resolve an image id to its
+ * file without probing the file system for every supported extension.
+ *
+ * <p>
+ * There is a single index per folder (see {@link #forFolder(Path)}). The
+ * folder is scanned in the background when the index is created and the index
+ * is kept current by a {@link WatchService} as well as by upload hooks calling
+ * {@link #add(Path)}. Lookups which miss the index (e.g. before the initial
+ * scan has completed or for files added on network file systems, which are
+ * not reported by the watch service) fall back to probing the file system and
+ * add the files found to the index. Hits are verified with a single file
+ * system check, such that files deleted without notice are not resolved.
+ * </p>
+ */
+public class ImagePathIndex {
+
+    private static final Logger logger = LogManager.getLogger(ImagePathIndex.class);
+
+    private static final Map<Path, ImagePathIndex> indexes = Maps.newConcurrentMap();
+
+    private final Path folder;
+    private final Set<String> files = Sets.newConcurrentHashSet();
+    private volatile boolean scanned = false;
+    private volatile WatchService watcher;
+    private volatile boolean closed = false;
+
+    ImagePathIndex(Path folder) {
+        this.folder = folder;
+    }
+
+    /**
+     * The index of the specified folder, creates (and starts scanning) the
+     * index on first access.
+     */
+    public static ImagePathIndex forFolder(Path folder) {
+        return indexes.computeIfAbsent(folder.toAbsolutePath().normalize(), f -> {
+            ImagePathIndex index = new ImagePathIndex(f);
+            index.start();
+            return index;
+        });
+    }
+
+    private void start() {
+        Thread thread = new Thread(this::scanAndWatch, "image-path-index-" + folder.getFileName());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public Path getFolder() {
+        return folder;
+    }
+
+    /**
+     * Whether the initial scan of the folder has completed.
+     */
+    public boolean isScanned() {
+        return scanned;
+    }
+
+    /**
+     * Resolves the file of the specified id. Extensions are checked in the
+     * given order and the first existing file wins. Ids which already end with
+     * one of the extensions are resolved as is.
+     */
+    public Optional<Path> resolve(String id, List<String> extensions) {
+        for (String extension : extensions) {
+            String name = candidate(id, extension);
+            if (files.contains(name)) {
+                Path path = folder.resolve(name);
+                if (Files.isRegularFile(path)) {
+                    return Optional.of(path);
+                }
+                // e.g. deleted on a network file system
+                logger.trace("Removing deleted image {} from the index.", path);
+                files.remove(name);
+            }
+        }
+        // not (yet) indexed, fall back to the file system
+        for (String extension : extensions) {
+            Path path = folder.resolve(candidate(id, extension));
+            if (Files.isRegularFile(path)) {
+                logger.trace("Image {} has not been indexed yet.", path);
+                files.add(path.getFileName().toString());
+                return Optional.of(path);
+            }
+        }
+        return Optional.empty();
+    }
+
+    private static String candidate(String id, String extension) {
+        return id.endsWith(extension) ? id : id + "." + extension;
+    }
+
+    /**
+     * Adds a file which has been stored in the folder.
+     */
+    public void add(Path file) {
+        files.add(file.getFileName().toString());
+    }
+
+    /**
+     * Removes a file which has been deleted from the folder.
+     */
+    public void remove(Path file) {
+        files.remove(file.getFileName().toString());
+    }
+
+    boolean contains(String fileName) {
+        return files.contains(fileName);
+    }
+
+    private void scanAndWatch() {
+        try {
+            // register first, so that no file created during the scan is missed
+            watcher = folder.getFileSystem().newWatchService();
+            folder.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE);
+            if (closed) {
+                watcher.close();
+                return;
+            }
+        } catch (IOException | UnsupportedOperationException e) {
+            logger.warn("Can not watch folder {}, the image index relies on upload hooks only: {}", folder,
+                    e.getMessage());
+            watcher = null;
+        }
+        scan();
+        if (watcher != null) {
+            watch();
+        }
+    }
+
+    /**
+     * Rebuilds the index from the content of the folder. Files added
+     * concurrently may be dropped, they are added again by the next lookup.
+     */
+    void scan() {
+        try (Stream<Path> entries = Files.list(folder)) {
+            Set<String> found = Sets.newHashSet();
+            entries.map(p -> p.getFileName().toString()).filter(name -> !name.startsWith(".")).forEach(found::add);
+            files.retainAll(found);
+            files.addAll(found);
+            scanned = true;
+            logger.debug("Indexed {} files in {}.", files.size(), folder);
+        } catch (IOException e) {
+            logger.warn("Failed to index folder {}: {}", folder, e.getMessage());
+        }
+    }
+
+    private void watch() {
+        try {
+            while (true) {
+                WatchKey key = watcher.take();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        logger.debug("Missed file system events in {}, re-indexing.", folder);
+                        scan();
+                    } else if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+                        files.add(event.context().toString());
+                    } else if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                        files.remove(event.context().toString());
+                    }
+                }
+                if (!key.reset()) {
+                    logger.warn("Folder {} is no longer accessible, stopped watching it.", folder);
+                    return;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // closed
+        }
+    }
+
+    /**
+     * Stops watching the folder and discards the index.
+     */
+    public void close() {
+        closed = true;
+        indexes.remove(folder, this);
+        WatchService w = watcher;
+        if (w != null) {
+            try {
+                w.close();
+            } catch (IOException e) {
+                logger.debug("Failed to close watch service of {}: {}", folder, e.getMessage());
+            }
+        }
+    }
+}
@@ -22,10 +22,27 @@
 import org.eclipse.rdf4j.model.Model;
 
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * @author Yury Emelyanov
  */
 public interface MetadataExtractor {
     public Model extractMetadata(IRI newId, Model graph) throws IOException, Exception;
+
+    /**
+     * Extracts the metadata without blocking the caller, e.g. such that an
+     * upload can complete before the metadata is available. The default
+     * implementation extracts the metadata synchronously and returns a
+     * completed future.
+     */
+    public default CompletableFuture<Model> extractMetadataAsync(IRI newId, Model graph) {
+        CompletableFuture<Model> result = new CompletableFuture<>();
+        try {
+            result.complete(extractMetadata(newId, graph));
+        } catch (Exception e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
 }
\ No newline at end of file
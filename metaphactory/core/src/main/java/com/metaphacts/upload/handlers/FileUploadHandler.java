@@ -18,8 +18,11 @@
 
 package com.metaphacts.upload.handlers;
 
+import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import com.metaphacts.upload.ImagePathIndex;
 import com.metaphacts.upload.UploadHandler;
+import com.metaphacts.upload.tiles.TilePyramidService;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -28,15 +31,22 @@
 import java.net.URL;
 import java.nio.file.CopyOption;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
 
 /**
+ * Stores uploads in a local folder and schedules the generation of the tile
+ * pyramid for uploaded images.
+ *
  * @author Yury Emelyanov
  */
 @Singleton
 public class FileUploadHandler implements UploadHandler {
 
+    @Inject
+    private TilePyramidService tilePyramids;
+
     @Override
     public boolean supportsProtocol(String protocol) {
         return "file".equals(protocol);
@@ -47,6 +57,9 @@ public void handleUpload(URL url, String generatedId, InputStream in) throws IOE
         CopyOption[] options = new CopyOption[]{
                 StandardCopyOption.REPLACE_EXISTING
         };
-        Files.copy(in, Paths.get(new URI(url.toString() + "/" + generatedId + ".jpg")), options);
+        Path target = Paths.get(new URI(url.toString() + "/" + generatedId + ".jpg"));
+        Files.copy(in, target, options);
+        ImagePathIndex.forFolder(target.getParent()).add(target);
+        tilePyramids.generateAsync(target);
     }
 }
\ No newline at end of file
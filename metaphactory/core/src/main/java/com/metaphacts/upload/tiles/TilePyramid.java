@@ -0,0 +1,417 @@
+/*
+ * Copyright (C) 2015-2017, metaphacts GmbH
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, you can receive a copy
+ * of the GNU Lesser General Public License from http://www.gnu.org/
+ */
+
+package com.metaphacts.upload.tiles;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Optional;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.plugins.jpeg.JPEGImageWriteParam;
+import javax.imageio.stream.FileImageOutputStream;
+import javax.imageio.stream.ImageInputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Multi-resolution tile pyramid (and thumbnail) of an image stored on local
+ * disk, in the <a href="https://msdn.microsoft.com/en-us/library/cc645077.aspx">Deep Zoom</a>
+ * layout understood by common deep-zoom viewers.
+ *
+ * <p>
+ * The pyramid of <code>folder/id.ext</code> is stored in
+ * <code>folder/.tiles/id/version/</code>, where the version is derived from
+ * the modification time of the image. Every version holds
+ * <ul>
+ * <li><code>image.dzi</code> - the Deep Zoom descriptor, which is written
+ * last, i.e. a version is complete once the descriptor exists</li>
+ * <li><code>image_files/level/column_row.jpg</code> - the tiles, where level
+ * 0 is the image scaled to a single pixel and the highest level is the image
+ * in full resolution</li>
+ * <li><code>thumbnail.jpg</code> - the image scaled to fit into
+ * {@link #THUMBNAIL_SIZE} pixels</li>
+ * </ul>
+ * Versions are immutable, a modified image results in a new version and
+ * outdated versions are deleted once the new one is complete.
+ * </p>
+ *
+ * <p>
+ * The full resolution level is cut from strips of the image read with
+ * {@link ImageReadParam#setSourceRegion(Rectangle)}, all lower levels are
+ * computed from the tiles of the level above. Hence the memory required for
+ * generating a pyramid does not depend on the size of the image. The strips
+ * are read in increasing order with a single reader which is kept open until
+ * the pyramid is complete. Still, readers of sequential formats (e.g. JPEG or
+ * PNG) decode the image from its first row for every strip, so the decoding
+ * work grows with the square of the number of strips. Strips are therefore
+ * large, images of up to {@link #STRIP_PIXELS} pixels are decoded once, and
+ * their number is bounded by {@link #MAX_STRIPS}, i.e. strips of images
+ * larger than <code>MAX_STRIPS * STRIP_PIXELS</code> pixels exceed the strip
+ * size.
+ * </p>
+ */
+public class TilePyramid {
+
+    private static final Logger logger = LogManager.getLogger(TilePyramid.class);
+
+    public static final String TILES_FOLDER = ".tiles";
+    public static final String DESCRIPTOR = "image.dzi";
+    public static final String TILES = "image_files";
+    public static final String THUMBNAIL = "thumbnail.jpg";
+
+    public static final int TILE_SIZE = 256;
+    public static final int THUMBNAIL_SIZE = 256;
+
+    /**
+     * Maximum number of pixels of the source image read at once (96MB for an
+     * RGB strip).
+     */
+    private static final int STRIP_PIXELS = 32 * 1024 * 1024;
+
+    /**
+     * Maximum number of strips, bounds how often images of sequential formats
+     * are decoded.
+     */
+    static final int MAX_STRIPS = 16;
+
+    private static final float JPEG_QUALITY = 0.85f;
+
+    private static final Pattern VERSION = Pattern.compile("[0-9a-f]+");
+
+    private final Path image;
+    private final Path folder;
+
+    public TilePyramid(Path image) {
+        this.image = image;
+        String fileName = image.getFileName().toString();
+        int extension = fileName.lastIndexOf('.');
+        String id = extension > 0 ? fileName.substring(0, extension) : fileName;
+        this.folder = image.resolveSibling(TILES_FOLDER).resolve(id);
+    }
+
+    public Path getImage() {
+        return image;
+    }
+
+    /**
+     * Version of the pyramid matching the current state of the image.
+     */
+    public String getExpectedVersion() throws IOException {
+        return Long.toHexString(Files.getLastModifiedTime(image).toMillis());
+    }
+
+    /**
+     * The most recent complete version of the pyramid, which may be outdated
+     * if the image has been modified since.
+     */
+    public Optional<String> getCurrentVersion() throws IOException {
+        if (!Files.isDirectory(folder)) {
+            return Optional.empty();
+        }
+        try (Stream<Path> versions = Files.list(folder)) {
+            return versions.filter(v -> VERSION.matcher(v.getFileName().toString()).matches())
+                    .filter(v -> Files.exists(v.resolve(DESCRIPTOR)))
+                    .max(Comparator.comparingLong(v -> Long.parseLong(v.getFileName().toString(), 16)))
+                    .map(v -> v.getFileName().toString());
+        }
+    }
+
+    public boolean isUpToDate() throws IOException {
+        return getCurrentVersion().map(v -> {
+            try {
+                return v.equals(getExpectedVersion());
+            } catch (IOException e) {
+                return false;
+            }
+        }).orElse(false);
+    }
+
+    public Path getDescriptor(String version) {
+        return folder.resolve(version).resolve(DESCRIPTOR);
+    }
+
+    public Path getTile(String version, int level, int column, int row) {
+        return tilePath(folder.resolve(version), level, column, row);
+    }
+
+    public Path getThumbnail(String version) {
+        return folder.resolve(version).resolve(THUMBNAIL);
+    }
+
+    /**
+     * Generates the pyramid for the current state of the image unless it
+     * exists already and deletes all outdated versions.
+     *
+     * @return the generated version
+     */
+    public String generate() throws IOException {
+        String version = getExpectedVersion();
+        Path target = folder.resolve(version);
+        if (Files.exists(target.resolve(DESCRIPTOR))) {
+            return version;
+        }
+        Files.createDirectories(folder);
+        // generate into a temporary folder, such that an incomplete version is never visible
+        Path tmp = Files.createTempDirectory(folder, "tmp-");
+        try {
+            generate(tmp);
+            if (Files.exists(target)) {
+                FileUtils.deleteDirectory(target.toFile());
+            }
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            if (Files.exists(tmp)) {
+                FileUtils.deleteQuietly(tmp.toFile());
+            }
+        }
+        deleteOutdatedVersions(version);
+        return version;
+    }
+
+    private void generate(Path target) throws IOException {
+        ImageReader reader = openReader(image);
+        int width, height;
+        try {
+            width = reader.getWidth(0);
+            height = reader.getHeight(0);
+            int maxLevel = getMaxLevel(width, height);
+            writeFullResolution(reader, target, maxLevel, width, height);
+            for (int level = maxLevel - 1; level >= 0; level--) {
+                writeLevel(target, level, getLevelSize(width, maxLevel, level),
+                        getLevelSize(height, maxLevel, level));
+            }
+            writeThumbnail(target, maxLevel, width, height);
+        } finally {
+            close(reader);
+        }
+        String descriptor = String.format("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<Image xmlns=\"http://schemas.microsoft.com/deepzoom/2008\" TileSize=\"%d\" Overlap=\"0\" Format=\"jpg\">"
+                + "<Size Width=\"%d\" Height=\"%d\"/></Image>\n", TILE_SIZE, width, height);
+        Files.write(target.resolve(DESCRIPTOR), descriptor.getBytes(StandardCharsets.UTF_8));
+        logger.debug("Generated tile pyramid of {} ({}x{} pixels).", image, width, height);
+    }
+
+    /**
+     * Level of the full resolution image, i.e. the number of times the image
+     * needs to be halved to end up with a single pixel.
+     */
+    static int getMaxLevel(int width, int height) {
+        int max = Math.max(width, height);
+        return max <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(max - 1);
+    }
+
+    static int getLevelSize(int size, int maxLevel, int level) {
+        int scale = 1 << (maxLevel - level);
+        return (size + scale - 1) / scale;
+    }
+
+    /**
+     * Height of the strips the full resolution level is cut from, a multiple
+     * of the tile size such that there are at most {@link #MAX_STRIPS} strips.
+     */
+    static int getStripHeight(int width, int height) {
+        int rows = (height + TILE_SIZE - 1) / TILE_SIZE;
+        int stripRows = (int) Math.max(1, STRIP_PIXELS / ((long) width * TILE_SIZE));
+        return TILE_SIZE * Math.max(stripRows, (rows + MAX_STRIPS - 1) / MAX_STRIPS);
+    }
+
+    private void writeFullResolution(ImageReader reader, Path target, int maxLevel, int width, int height)
+            throws IOException {
+        int stripHeight = getStripHeight(width, height);
+        for (int y = 0; y < height; y += stripHeight) {
+            ImageReadParam param = reader.getDefaultReadParam();
+            param.setSourceRegion(new Rectangle(0, y, width, Math.min(stripHeight, height - y)));
+            BufferedImage strip = reader.read(0, param);
+            for (int ty = 0; ty < strip.getHeight(); ty += TILE_SIZE) {
+                for (int tx = 0; tx < width; tx += TILE_SIZE) {
+                    BufferedImage tile = strip.getSubimage(tx, ty, Math.min(TILE_SIZE, width - tx),
+                            Math.min(TILE_SIZE, strip.getHeight() - ty));
+                    writeJpeg(tile, tile.getWidth(), tile.getHeight(),
+                            tilePath(target, maxLevel, tx / TILE_SIZE, (y + ty) / TILE_SIZE));
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes every tile of the level from the (up to) four tiles of the
+     * level above it covering the same area.
+     */
+    private void writeLevel(Path target, int level, int width, int height) throws IOException {
+        for (int row = 0; row * TILE_SIZE < height; row++) {
+            for (int column = 0; column * TILE_SIZE < width; column++) {
+                int tileWidth = Math.min(TILE_SIZE, width - column * TILE_SIZE);
+                int tileHeight = Math.min(TILE_SIZE, height - row * TILE_SIZE);
+                BufferedImage area = readTiles(target, level + 1, column * 2, row * 2, 2, 2);
+                writeJpeg(area, tileWidth, tileHeight, tilePath(target, level, column, row));
+            }
+        }
+    }
+
+    private void writeThumbnail(Path target, int maxLevel, int width, int height) throws IOException {
+        // the smallest level which is at least as large as the thumbnail, i.e. spans at most 2x2 tiles
+        int level = maxLevel;
+        while (level > 0 && Math.max(getLevelSize(width, maxLevel, level - 1),
+                getLevelSize(height, maxLevel, level - 1)) >= THUMBNAIL_SIZE) {
+            level--;
+        }
+        BufferedImage area = readTiles(target, level, 0, 0, 2, 2);
+        double scale = Math.min(1.0, (double) THUMBNAIL_SIZE / Math.max(area.getWidth(), area.getHeight()));
+        writeJpeg(area, Math.max(1, (int) Math.round(area.getWidth() * scale)),
+                Math.max(1, (int) Math.round(area.getHeight() * scale)), target.resolve(THUMBNAIL));
+    }
+
+    /**
+     * Stitches the existing tiles of the specified range of a level.
+     */
+    private BufferedImage readTiles(Path target, int level, int column, int row, int columns, int rows)
+            throws IOException {
+        BufferedImage[][] tiles = new BufferedImage[columns][rows];
+        int width = 0, height = 0;
+        for (int c = 0; c < columns; c++) {
+            for (int r = 0; r < rows; r++) {
+                Path tile = tilePath(target, level, column + c, row + r);
+                if (Files.exists(tile)) {
+                    tiles[c][r] = ImageIO.read(tile.toFile());
+                    width = Math.max(width, c * TILE_SIZE + tiles[c][r].getWidth());
+                    height = Math.max(height, r * TILE_SIZE + tiles[c][r].getHeight());
+                }
+            }
+        }
+        BufferedImage area = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = area.createGraphics();
+        try {
+            for (int c = 0; c < columns; c++) {
+                for (int r = 0; r < rows; r++) {
+                    if (tiles[c][r] != null) {
+                        g.drawImage(tiles[c][r], c * TILE_SIZE, r * TILE_SIZE, null);
+                    }
+                }
+            }
+        } finally {
+            g.dispose();
+        }
+        return area;
+    }
+
+    private static Path tilePath(Path target, int level, int column, int row) {
+        return target.resolve(TILES).resolve(Integer.toString(level)).resolve(column + "_" + row + ".jpg");
+    }
+
+    /**
+     * Scales the image to the specified size and writes it as JPEG. Transparent
+     * areas are painted white.
+     */
+    private static void writeJpeg(BufferedImage source, int width, int height, Path path) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, width, height);
+            g.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            g.dispose();
+        }
+
+        JPEGImageWriteParam jpegParams = new JPEGImageWriteParam(null);
+        jpegParams.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        jpegParams.setCompressionQuality(JPEG_QUALITY);
+        Files.createDirectories(path.getParent());
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpg").next();
+        try (FileImageOutputStream output = new FileImageOutputStream(path.toFile())) {
+            writer.setOutput(output);
+            writer.write(null, new IIOImage(image, null, null), jpegParams);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    /**
+     * Deletes the versions older than the specified one. Newer versions (e.g.
+     * generated concurrently for a modified image) and temporary folders of
+     * generations in progress are kept.
+     */
+    private void deleteOutdatedVersions(String version) throws IOException {
+        long timestamp = Long.parseLong(version, 16);
+        try (Stream<Path> versions = Files.list(folder)) {
+            versions.filter(v -> VERSION.matcher(v.getFileName().toString()).matches())
+                    .filter(v -> Long.parseLong(v.getFileName().toString(), 16) < timestamp).forEach(v -> {
+                logger.trace("Deleting outdated tile pyramid {}.", v);
+                FileUtils.deleteQuietly(v.toFile());
+            });
+        }
+    }
+
+    /**
+     * Whether the file is an image which can be read, checks the header only.
+     */
+    public static boolean isImage(Path file) {
+        try (InputStream in = Files.newInputStream(file); ImageInputStream input = ImageIO.createImageInputStream(in)) {
+            return input != null && ImageIO.getImageReaders(input).hasNext();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static ImageReader openReader(Path file) throws IOException {
+        ImageInputStream input = ImageIO.createImageInputStream(file.toFile());
+        if (input == null) {
+            throw new IOException("Can not open image " + file);
+        }
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+        if (!readers.hasNext()) {
+            input.close();
+            throw new IOException("No image reader available for " + file);
+        }
+        ImageReader reader = readers.next();
+        // the image is read strip by strip, i.e. seeking backwards is required
+        reader.setInput(input, false, true);
+        return reader;
+    }
+
+    private static void close(ImageReader reader) throws IOException {
+        Object input = reader.getInput();
+        reader.dispose();
+        if (input instanceof ImageInputStream) {
+            ((ImageInputStream) input).close();
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2015-2017, metaphacts GmbH
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, you can receive a copy
+ * of the GNU Lesser General Public License from http://www.gnu.org/
+ */
+
+package com.metaphacts.upload.tiles;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.metaphacts.config.Configuration;
+import com.metaphacts.upload.ImagePathIndex;
+
+/**
+ * Generates {@link TilePyramid}s of stored images in the background and
+ * locates them for the file storages configured as
+ * <code>upload-&lt;storage&gt;</code> in the environment configuration.
+ *
+ * <p>
+ * Generation is scheduled after an image has been stored (see
+ * {@link com.metaphacts.upload.handlers.FileUploadHandler}) or produced by a
+ * plugin, and lazily for images stored before, as soon as their pyramid is
+ * requested. Images are processed one after the other by a small thread pool,
+ * an image which is already waiting for or in generation is not queued again.
+ * </p>
+ */
+@Singleton
+public class TilePyramidService {
+
+    private static final Logger logger = LogManager.getLogger(TilePyramidService.class);
+
+    /**
+     * Extensions probed (in this order) when looking up an image by its id.
+     */
+    private static final List<String> extensions = ImmutableList.of("jpg", "JPG", "jpeg", "tiff", "TIFF", "tif", "TIF", "png", "PNG");
+
+    /**
+     * Ids must not allow to escape the storage folder.
+     */
+    private static final Pattern ID = Pattern.compile("[\\w-][\\w.-]*");
+
+    private final Configuration config;
+    private final ThreadPoolExecutor executor;
+    private final Set<Path> scheduled = Sets.newConcurrentHashSet();
+
+    @Inject
+    public TilePyramidService(Configuration config) {
+        this.config = config;
+        int threads = Math.max(1, Math.min(2, Runtime.getRuntime().availableProcessors() / 2));
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                new ThreadFactoryBuilder().setNameFormat("tile-pyramid-%d").setDaemon(true).build());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Schedules the generation of the tile pyramid of the image. Files which
+     * are not images are ignored.
+     */
+    public void generateAsync(Path image) {
+        Path normalized = image.toAbsolutePath().normalize();
+        if (!scheduled.add(normalized)) {
+            return;
+        }
+        executor.execute(() -> {
+            try {
+                if (!Files.exists(normalized) || !TilePyramid.isImage(normalized)) {
+                    logger.debug("Skipping tile pyramid of {}, not an image.", normalized);
+                    return;
+                }
+                new TilePyramid(normalized).generate();
+            } catch (Exception e) {
+                logger.warn("Failed to generate tile pyramid of {}: {}", normalized, e.getMessage());
+                logger.debug("Details:", e);
+            } finally {
+                // requests while generating must not queue another generation, modifications
+                // during the generation are picked up by the next request after it finished
+                scheduled.remove(normalized);
+            }
+        });
+    }
+
+    /**
+     * Number of images waiting for or in generation.
+     */
+    public int getPendingGenerations() {
+        return executor.getQueue().size() + executor.getActiveCount();
+    }
+
+    /**
+     * The pyramid of the image with the specified id (i.e. file name with or
+     * without extension) in the file storage. The pyramid itself may not have
+     * been generated yet.
+     */
+    public Optional<TilePyramid> getPyramid(String storage, String id) {
+        if (Strings.isNullOrEmpty(id) || !ID.matcher(id).matches()) {
+            return Optional.empty();
+        }
+        Optional<Path> folder = getStorageFolder(storage);
+        if (!folder.isPresent()) {
+            return Optional.empty();
+        }
+        return ImagePathIndex.forFolder(folder.get()).resolve(id, extensions).map(TilePyramid::new);
+    }
+
+    private Optional<Path> getStorageFolder(String storage) {
+        String location = config.getEnvironmentConfig().getFileUploadLocation(storage);
+        if (Strings.isNullOrEmpty(location)) {
+            return Optional.empty();
+        }
+        try {
+            URI uri = new URI(location);
+            if (!"file".equals(uri.getScheme())) {
+                return Optional.empty();
+            }
+            return Optional.of(Paths.get(uri));
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            logger.warn("Invalid location of file storage {}: {}", storage, location);
+            return Optional.empty();
+        }
+    }
+}
@@ -29,6 +29,8 @@
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
 import org.eclipse.rdf4j.query.MalformedQueryException;
 
 import static org.hamcrest.Matchers.containsInAnyOrder;
@@ -40,6 +42,8 @@
  * @author Johannes Trame <jt@metaphacts.com>
  */
 public class SparqlUtilTest {
+    private static final ValueFactory vf = SimpleValueFactory.getInstance();
+
     @Rule
     public ExpectedException exception= ExpectedException.none();
     
@@ -67,6 +71,16 @@ public void testUpdate() throws MalformedQueryException{
     }
     
     
+    @Test
+    public void testExtractResources() throws MalformedQueryException{
+        String operationString = "PREFIX : <http://www.test.com/>\n"
+                + "INSERT DATA { :a :p :b . :a :p \"literal\" } ;\n"
+                + "DELETE { :c :p ?o } INSERT { ?s :p :d } WHERE { ?s :p ?o . FILTER(?o != :e) }";
+        assertThat(SparqlUtil.extractResources(operationString), containsInAnyOrder(
+                vf.createIRI("http://www.test.com/a"), vf.createIRI("http://www.test.com/b"),
+                vf.createIRI("http://www.test.com/c"), vf.createIRI("http://www.test.com/d")));
+    }
+
     @Test
     public void testExtractPrefixes(){
         List<String> expected = Lists.newArrayList("","foaf", "dc", "xsd");
@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2015-2017, metaphacts GmbH
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, you can receive a copy
+ * of the GNU Lesser General Public License from http://www.gnu.org/
+ */
+
+package com.metaphacts.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.model.vocabulary.RDFS;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.inject.Inject;
+import com.metaphacts.cache.FieldDefinitionCache.FieldDefinition;
+import com.metaphacts.data.rdf.container.FieldDefinitionContainer;
+import com.metaphacts.data.rdf.container.LDPApi;
+import com.metaphacts.data.rdf.container.LDPResource;
+import com.metaphacts.data.rdf.container.RDFStream;
+import com.metaphacts.junit.AbstractRepositoryBackedIntegrationTest;
+import com.metaphacts.junit.TestUtils;
+
+/**
+ * Test cases for {@link FieldDefinitionCache}.
+ */
+public class FieldDefinitionCacheTest extends AbstractRepositoryBackedIntegrationTest {
+
+    private static final ValueFactory vf = SimpleValueFactory.getInstance();
+
+    private static final String INSTANCE_BASE = "http://www.metaphacts.com/field/testinstance/";
+
+    @Inject
+    private FieldDefinitionCache fieldDefinitionCache;
+
+    private LDPApi ldpApi;
+
+    @Before
+    public void before() {
+        fieldDefinitionCache.invalidate();
+        ldpApi = new LDPApi(repositoryRule.getAssetRepository());
+    }
+
+    private IRI createField(String slug, String definition) throws Exception {
+        LDPResource field = ldpApi.createLDPResource(
+            Optional.of(slug),
+            new RDFStream(TestUtils.readPlainTextTurtleInput(definition), RDFFormat.TURTLE),
+            FieldDefinitionContainer.IRI,
+            INSTANCE_BASE
+        );
+        return field.getResourceIRI();
+    }
+
+    @Test
+    public void testBulkLoadWithNegativeEntries() throws Exception {
+        IRI field1 = createField("fieldInstance1", "/com/metaphacts/templates/FieldDefinitionTest1.ttl");
+        IRI field2 = createField("fieldInstance2", "/com/metaphacts/templates/FieldDefinitionTest2.ttl");
+        IRI unknown = vf.createIRI(INSTANCE_BASE + "unknown");
+
+        Map<IRI, Optional<FieldDefinition>> definitions =
+            fieldDefinitionCache.getFieldDefinitions(Lists.newArrayList(field1, field2, unknown));
+        assertEquals(3, definitions.size());
+        assertEquals("Test Field 1", definitions.get(field1).get().getValue("label").get());
+        assertEquals("Test Field 2", definitions.get(field2).get().getValue("label").get());
+        assertEquals("[]", definitions.get(field1).get().getValue("defaultValues").get());
+        assertFalse(definitions.get(unknown).isPresent());
+
+        // served from the cache, i.e. the very same instance is returned
+        assertSame(definitions.get(field1).get(), fieldDefinitionCache.getFieldDefinition(field1).get());
+
+        assertEquals(2, fieldDefinitionCache.getAllFieldIris().size());
+        assertTrue(fieldDefinitionCache.getAllFieldIris().containsAll(Lists.newArrayList(field1, field2)));
+    }
+
+    @Test
+    public void testDerivedValuesAreComputedOnce() throws Exception {
+        IRI field1 = createField("fieldInstance1", "/com/metaphacts/templates/FieldDefinitionTest1.ttl");
+        AtomicInteger computed = new AtomicInteger();
+
+        for (int i = 0; i < 3; i++) {
+            String derived = fieldDefinitionCache.getFieldDefinition(field1).get()
+                .getDerived("test", def -> computed.incrementAndGet() + def.getValue("label").get());
+            assertEquals("1Test Field 1", derived);
+        }
+        assertEquals(1, computed.get());
+
+        fieldDefinitionCache.invalidate(Lists.newArrayList(field1));
+        fieldDefinitionCache.getFieldDefinition(field1).get().getDerived("test", def -> computed.incrementAndGet());
+        assertEquals(2, computed.get());
+    }
+
+    @Test
+    public void testInvalidationThroughFieldDefinitionContainer() throws Exception {
+        IRI field1 = vf.createIRI(INSTANCE_BASE + "fieldDefinitionContainer/fieldInstance1");
+
+        // unknown field is cached as negative entry ...
+        assertFalse(fieldDefinitionCache.getFieldDefinition(field1).isPresent());
+
+        // ... and purged when the field is added to the container
+        assertEquals(field1, createField("fieldInstance1", "/com/metaphacts/templates/FieldDefinitionTest1.ttl"));
+        assertEquals("Test Field 1", fieldDefinitionCache.getFieldDefinition(field1).get().getValue("label").get());
+
+        // updates are purged as well
+        FieldDefinitionContainer container = (FieldDefinitionContainer) ldpApi.getLDPResource(FieldDefinitionContainer.IRI);
+        container.rename(field1, "Renamed Field");
+        assertEquals("Renamed Field", fieldDefinitionCache.getFieldDefinition(field1).get().getValue("label").get());
+
+        // as well as deletions
+        ldpApi.getLDPResource(field1).delete();
+        assertFalse(fieldDefinitionCache.getFieldDefinition(field1).isPresent());
+    }
+
+    @Test
+    public void testDirectRepositoryChangesRequireInvalidation() throws Exception {
+        IRI field1 = createField("fieldInstance1", "/com/metaphacts/templates/FieldDefinitionTest1.ttl");
+        assertEquals("Test Field 1", fieldDefinitionCache.getFieldDefinition(field1).get().getValue("label").get());
+
+        addAssetStatements(vf.createStatement(field1, RDFS.COMMENT, vf.createLiteral("another comment")));
+        assertEquals("Test Field 1 comment",
+            fieldDefinitionCache.getFieldDefinition(field1).get().getValue("description").get());
+
+        fieldDefinitionCache.invalidate();
+        assertTrue(fieldDefinitionCache.getFieldDefinition(field1).get().getValue("description").isPresent());
+    }
+
+    @Test
+    public void testNegativeEntriesExpire() throws Exception {
+        // not registered with the cache manager used by the LDP API, i.e. never invalidated
+        FieldDefinitionCache cache = new FieldDefinitionCache(repositoryRule.getRepositoryManager(), new CacheManager(), 0);
+        IRI field1 = vf.createIRI(INSTANCE_BASE + "fieldDefinitionContainer/fieldInstance1");
+        assertFalse(cache.getFieldDefinition(field1).isPresent());
+
+        createField("fieldInstance1", "/com/metaphacts/templates/FieldDefinitionTest1.ttl");
+        FieldDefinition definition = cache.getFieldDefinition(field1).get();
+        assertEquals("Test Field 1", definition.getValue("label").get());
+        // positive entries are kept
+        assertSame(definition, cache.getFieldDefinition(field1).get());
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2015-2017, metaphacts GmbH
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, you can receive a copy
+ * of the GNU Lesser General Public License from http://www.gnu.org/
+ */
+package com.metaphacts.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.model.vocabulary.FOAF;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.metaphacts.templates.RenderDependencies;
+
+/**
+ * Tests for the dependency based invalidation of {@link RenderedTemplateCache}.
+ */
+public class RenderedTemplateCacheTest {
+
+    private static final ValueFactory vf = SimpleValueFactory.getInstance();
+
+    private final IRI joe = vf.createIRI("http://www.metaphacts.com/joe");
+    private final IRI alice = vf.createIRI("http://www.metaphacts.com/alice");
+    private final IRI user = vf.createIRI("http://www.metaphacts.com/resource/user/admin");
+
+    private CacheManager cacheManager;
+    private RenderedTemplateCache cache;
+
+    @Before
+    public void setup() {
+        cacheManager = new CacheManager();
+        cache = new RenderedTemplateCache(cacheManager, RenderedTemplateCache.DEFAULT_EXPIRE_AFTER_WRITE_SECONDS);
+    }
+
+    @Test
+    public void testKeyIncludesUserAndParams() {
+        put(key(joe), "joe", FOAF.PERSON, alice);
+        assertEquals("joe", cache.get(key(joe)).get());
+        assertFalse(cache.get(new RenderedTemplateCache.Key("html", "default", joe, joe, alice, "{}")).isPresent());
+        assertFalse(cache.get(new RenderedTemplateCache.Key("html", "default", joe, joe, user, "{a=[b]}")).isPresent());
+        assertFalse(cache.get(new RenderedTemplateCache.Key("html", "assets", joe, joe, user, "{}")).isPresent());
+    }
+
+    @Test
+    public void testInvalidateTemplate() {
+        put(key(joe), "joe", FOAF.PERSON, null);
+        put(key(alice), "alice", FOAF.AGENT, null);
+
+        cache.invalidateTemplate(FOAF.PERSON);
+        assertFalse(cache.get(key(joe)).isPresent());
+        assertTrue(cache.get(key(alice)).isPresent());
+    }
+
+    @Test
+    public void testInvalidateResources() {
+        // joe's page depends on alice through a helper query
+        put(key(joe), "joe", FOAF.PERSON, alice);
+        put(key(alice), "alice", FOAF.PERSON, null);
+        put(key(user), "user", FOAF.PERSON, null);
+
+        cacheManager.invalidateResources(Collections.singletonList(alice));
+        assertFalse(cache.get(key(joe)).isPresent());
+        assertFalse(cache.get(key(alice)).isPresent());
+        assertTrue(cache.get(key(user)).isPresent());
+
+        cacheManager.invalidateAll();
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testInvalidateQueryResults() {
+        // a new resource may match the query of joe's page
+        long generation = cache.getGeneration();
+        RenderDependencies deps = RenderDependencies.begin();
+        try {
+            RenderDependencies.recordTemplate(FOAF.PERSON);
+            RenderDependencies.recordQuery();
+        } finally {
+            deps.end();
+        }
+        cache.put(key(joe), "joe", deps, generation);
+        put(key(alice), "alice", FOAF.PERSON, null);
+
+        cacheManager.invalidateResources(Collections.singletonList(user));
+        assertFalse(cache.get(key(joe)).isPresent());
+        assertTrue(cache.get(key(alice)).isPresent());
+    }
+
+    @Test
+    public void testRenderingStartedBeforeInvalidationIsNotCached() {
+        long generation = cache.getGeneration();
+        RenderDependencies deps = RenderDependencies.begin();
+        deps.end();
+        cache.invalidateTemplate(FOAF.PERSON);
+        cache.put(key(joe), "stale", deps, generation);
+        assertFalse(cache.get(key(joe)).isPresent());
+    }
+
+    @Test
+    public void testEntityTags() {
+        long generation = cache.getGeneration();
+        RenderDependencies deps = RenderDependencies.begin();
+        deps.end();
+        String etag = cache.put(key(joe), "<div>joe</div>", deps, generation).getEntityTag();
+        assertEquals(etag, cache.getRendering(key(joe)).get().getEntityTag());
+        // derived from the content
+        assertEquals(etag, cache.put(key(alice), "<div>joe</div>", deps, generation).getEntityTag());
+
+        // entity tags of streamed renderings are stable until the cache is invalidated
+        String streamed = cache.newEntityTag(key(joe));
+        assertEquals(streamed, cache.newEntityTag(key(joe)));
+        assertNotEquals(streamed, cache.newEntityTag(key(alice)));
+        cache.invalidateTemplate(FOAF.PERSON);
+        assertNotEquals(streamed, cache.newEntityTag(key(joe)));
+    }
+
+    @Test
+    public void testBufferSpillsLargeRenderings() throws Exception {
+        StringWriter spilled = new StringWriter();
+        RenderedTemplateCache.Buffer buffer = new RenderedTemplateCache.Buffer(() -> spilled);
+        buffer.write("<div>");
+        buffer.write("joe</div>".toCharArray());
+        assertEquals("<div>joe</div>", buffer.toString());
+        assertFalse(buffer.isOverflown());
+
+        buffer = new RenderedTemplateCache.Buffer(() -> spilled);
+        char[] chunk = new char[RenderedTemplateCache.MAXIMUM_ENTRY_LENGTH / 2];
+        Arrays.fill(chunk, 'x');
+        buffer.write(chunk);
+        buffer.write(chunk);
+        assertFalse(buffer.isOverflown());
+        assertEquals(0, spilled.getBuffer().length());
+
+        buffer.write("y");
+        buffer.write("z");
+        assertTrue(buffer.isOverflown());
+        assertEquals(2 * chunk.length + 2, spilled.getBuffer().length());
+        assertTrue(spilled.toString().endsWith("xyz"));
+    }
+
+    private RenderedTemplateCache.Key key(IRI page) {
+        return new RenderedTemplateCache.Key("html", "default", page, page, user, "{}");
+    }
+
+    private void put(RenderedTemplateCache.Key key, String html, IRI template, IRI resource) {
+        long generation = cache.getGeneration();
+        RenderDependencies deps = RenderDependencies.begin();
+        try {
+            RenderDependencies.recordTemplate(template);
+            RenderDependencies.recordResource(resource);
+        } finally {
+            deps.end();
+        }
+        cache.put(key, html, deps, generation);
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2015-2017, metaphacts GmbH
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, you can receive a copy
+ * of the GNU Lesser General Public License from http://www.gnu.org/
+ */
+
+package com.metaphacts.data.json;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Tests for {@link JsonStringWriter}.
+ */
+public class JsonStringWriterTest {
+
+    @Test
+    public void testEscapedStringIsValidJson() throws Exception {
+        String html = "<div class=\"a\\b\">\n\tline\r\u0001 ä  </div>";
+        StringWriter out = new StringWriter();
+        out.write("{\"templateHtml\":\"");
+        try (JsonStringWriter writer = new JsonStringWriter(out)) {
+            writer.write(html.substring(0, 10));
+            writer.write(html.substring(10).toCharArray());
+            out.write("\"}");
+        }
+        JsonNode node = new ObjectMapper().readTree(out.toString());
+        assertEquals(html, node.get("templateHtml").asText());
+    }
+
+    @Test
+    public void testMatchesJacksonSerialization() throws Exception {
+        String html = "<p title=\"x\">a \\ b</p>\n";
+        StringWriter out = new StringWriter();
+        new JsonStringWriter(out).write(html);
+        assertEquals(new ObjectMapper().writeValueAsString(html), "\"" + out + "\"");
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2015-2017, metaphacts GmbH
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, you can receive a copy
+ * of the GNU Lesser General Public License from http://www.gnu.org/
+ */
+
+package com.metaphacts.data.rdf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.model.vocabulary.RDFS;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.metaphacts.junit.AbstractRepositoryBackedIntegrationTest;
+
+/**
+ * Tests for {@link ReadConnection}.
+ */
+public class ReadConnectionTest extends AbstractRepositoryBackedIntegrationTest {
+
+    private static final ValueFactory vf = SimpleValueFactory.getInstance();
+
+    @Test
+    public void testGetExistingResources() throws Exception {
+        IRI subject = vf.createIRI("http://www.test.com/subject");
+        IRI object = vf.createIRI("http://www.test.com/object");
+        IRI unknown = vf.createIRI("http://www.test.com/unknown");
+        addStatement(vf.createStatement(subject, RDFS.SEEALSO, object));
+
+        assertEquals(Sets.newHashSet(subject, object),
+                connection().getExistingResources(Lists.newArrayList(subject, object, unknown)));
+        assertTrue(connection().getExistingResources(Lists.newArrayList()).isEmpty());
+    }
+
+    @Test
+    public void testGetExistingResourcesExceedingBatchSize() throws Exception {
+        IRI subject = vf.createIRI("http://www.test.com/subject");
+        List<IRI> candidates = Lists.newArrayList();
+        for (int i = 0; i < ReadConnection.EXISTENCE_CHECK_BATCH_SIZE * 2 + 1; i++) {
+            candidates.add(vf.createIRI("http://www.test.com/candidate" + i));
+        }
+        candidates.add(subject);
+        addStatement(vf.createStatement(subject, RDFS.LABEL, vf.createLiteral("subject")));
+
+        assertEquals(Sets.newHashSet(subject), connection().getExistingResources(candidates));
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2015-2017, metaphacts GmbH
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, you can receive a copy
+ * of the GNU Lesser General Public License from http://www.gnu.org/
+ */
+package com.metaphacts.data.rdf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.stream.Stream;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.model.vocabulary.RDFS;
+import org.eclipse.rdf4j.repository.Repository;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.junit.Test;
+
+import com.metaphacts.junit.AbstractRepositoryBackedIntegrationTest;
+
+/**
+ * Tests for {@link UnitOfWork}.
+ */
+public class UnitOfWorkTest extends AbstractRepositoryBackedIntegrationTest {
+
+    private static final ValueFactory vf = SimpleValueFactory.getInstance();
+
+    private final IRI subject = vf.createIRI("http://www.test.com/subject");
+
+    @Test
+    public void testConnectionIsSharedWithinUnitOfWork() throws Exception {
+        addStatement(vf.createStatement(subject, RDFS.LABEL, vf.createLiteral("subject")));
+        Repository repository = repositoryRule.getRepository();
+        ReadConnection read = connection();
+
+        UnitOfWork.resetOpenedConnections();
+        read.getStatements(subject, null, null);
+        read.hasOutgoingStatements(subject);
+        assertEquals(2, UnitOfWork.getOpenedConnections());
+
+        UnitOfWork.resetOpenedConnections();
+        try (UnitOfWork uow = UnitOfWork.begin(repository)) {
+            assertTrue(UnitOfWork.isBound(repository));
+            read.getStatements(subject, null, null);
+            read.hasOutgoingStatements(subject);
+            try (UnitOfWork nested = UnitOfWork.begin(repository)) {
+                read.getStatements(subject, null, null);
+            }
+            assertTrue(UnitOfWork.isBound(repository));
+        }
+        assertFalse(UnitOfWork.isBound(repository));
+        assertEquals(1, UnitOfWork.getOpenedConnections());
+    }
+
+    @Test
+    public void testTransactionIsRolledBackWithoutCommit() throws Exception {
+        Repository repository = repositoryRule.getRepository();
+        try (UnitOfWork uow = UnitOfWork.beginTransaction(repository)) {
+            try (RepositoryConnection con = UnitOfWork.getConnection(repository)) {
+                con.begin();
+                con.add(subject, RDFS.LABEL, vf.createLiteral("subject"));
+                // joined the outer transaction, i.e. nothing is committed yet
+                con.commit();
+            }
+        }
+        assertFalse(connection().hasOutgoingStatements(subject));
+
+        try (UnitOfWork uow = UnitOfWork.beginTransaction(repository)) {
+            try (RepositoryConnection con = UnitOfWork.getConnection(repository)) {
+                con.add(subject, RDFS.LABEL, vf.createLiteral("subject"));
+            }
+            uow.commit();
+        }
+        assertTrue(connection().hasOutgoingStatements(subject));
+    }
+
+    @Test
+    public void testUncommittedTransactionIsRolledBackOnClose() throws Exception {
+        Repository repository = repositoryRule.getRepository();
+        IRI other = vf.createIRI("http://www.test.com/other");
+        try (UnitOfWork uow = UnitOfWork.begin(repository)) {
+            try (RepositoryConnection con = UnitOfWork.getConnection(repository)) {
+                con.begin();
+                con.add(subject, RDFS.LABEL, vf.createLiteral("subject"));
+                throw new IllegalStateException("failure before commit");
+            } catch (IllegalStateException e) {
+                // expected
+            }
+            try (RepositoryConnection con = UnitOfWork.getConnection(repository)) {
+                assertFalse(con.isActive());
+                con.begin();
+                con.add(other, RDFS.LABEL, vf.createLiteral("other"));
+                con.commit();
+            }
+        }
+        assertFalse(connection().hasOutgoingStatements(subject));
+        assertTrue(connection().hasOutgoingStatements(other));
+    }
+
+    @Test
+    public void testStreamStatements() throws Exception {
+        addStatement(vf.createStatement(subject, RDFS.LABEL, vf.createLiteral("subject")));
+        addStatement(vf.createStatement(subject, RDFS.COMMENT, vf.createLiteral("comment")));
+        try (Stream<Statement> stmts = connection().streamStatements(subject, null, null)) {
+            assertEquals(2, stmts.count());
+        }
+    }
+}
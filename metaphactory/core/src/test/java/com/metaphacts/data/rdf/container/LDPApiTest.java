@@ -26,6 +26,7 @@
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayInputStream;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.util.List;
@@ -50,6 +51,7 @@
 import org.eclipse.rdf4j.rio.RDFFormat;
 
 import com.github.sdorra.shiro.SubjectAware;
+import com.google.common.base.Charsets;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import com.metaphacts.data.rdf.PointedGraph;
@@ -284,6 +286,27 @@ public void containsLDPResourceTest()throws Exception{
         assertTrue(cnt.containsLDPResource(res.getResourceIRI()));
     }
 
+    @Test
+    @SubjectAware(
+            username="admin",
+            password="admin",
+            configuration = sparqlPermissionShiroFile //TODO
+    )
+    public void testDeleteContainerRecursive() throws Exception {
+        LDPContainer cnt = (LDPContainer) createNewContainer();
+        LDPResource res1 = api.createLDPResource(Optional.of("DummyResource1"), new RDFStream(TestUtils.readPlainTextTurtleInput(FILE_DUMMY_RESOURCE_TTL), RDFFormat.TURTLE), cnt.getResourceIRI(), "http://www.metaphacts.com/testinstances/");
+        LDPResource res2 = api.createLDPResource(Optional.of("DummyResource2"), new RDFStream(TestUtils.readPlainTextTurtleInput(FILE_DUMMY_RESOURCE_TTL), RDFFormat.TURTLE), cnt.getResourceIRI(), "http://www.metaphacts.com/testinstances/");
+        assertEquals(2, cnt.getContainedResources().size());
+
+        api.deleteLDPResource(cnt.getResourceIRI());
+
+        // all named graphs of the subtree must have been cleared
+        assertEquals(0, connection().size(cnt.getContextIRI(), res1.getContextIRI(), res2.getContextIRI()));
+        assertFalse(connection().hasStatement(RootContainer.IRI, LDP.contains, cnt.getResourceIRI()));
+        assertFalse(connection().hasStatement(res1.getResourceIRI(), null, null));
+        assertFalse(connection().hasStatement(res2.getResourceIRI(), null, null));
+    }
+
     final static String trigFile = "<http://www.testcontainer.com/context> {\n" +
         "        _:node1bapojdjix178 <http://www.w3.org/ns/ldp#contains> <http://www.testcontainer.com> .\n" +
         "        <http://www.testcontainer.com> a <http://www.w3.org/ns/ldp#Container> , <http://www.w3.org/ns/ldp#Resource> , <http://www.w3.org/ns/prov#Entity> ;\n" +
@@ -334,6 +357,56 @@ public void testExportResource() throws Exception {
         assertTrue(Models.isomorphic(exportedModel, compareModel));
     }
 
+    @Test
+    @SubjectAware(
+        username = "admin",
+        password = "admin",
+        configuration = sparqlPermissionShiroFile //TODO
+    )
+    public void testStreamingExportImportResource() throws Exception {
+        LDPResource res = api.createLDPResource(
+            Optional.of(LDPTestContainer.iriString),
+            new RDFStream(TestUtils.readPlainTextTurtleInput(FILE_DUMMY_CONTAINER_TTL), RDFFormat.TURTLE),
+            RootContainer.IRI,
+            "http://www.metaphacts.com/testinstances/");
+        IRI person123 = vf.createIRI("http://www.test.com/person123");
+        Literal personName = vf.createLiteral("Hans Peter");
+        ((LDPTestContainer) res).add(new PointedGraph(person123, new LinkedHashModel(
+            Lists.newArrayList(
+                vf.createStatement(person123, RDF.TYPE, FOAF.PERSON),
+                vf.createStatement(person123, FOAF.NAME, personName)
+            )
+        )));
+
+        StringWriter out = new StringWriter();
+        api.exportLDPResource(Lists.newArrayList(res.getResourceIRI()), Rio.createWriter(RDFFormat.NQUADS, out));
+
+        // streaming export must contain the same statements as the in-memory export
+        Model streamedModel = Rio.parse(new StringReader(out.toString()), "", RDFFormat.NQUADS);
+        Model compareModel = Rio.parse(new StringReader(trigFile), "", RDFFormat.TRIG);
+        streamedModel.remove(null, PROV.generatedAtTime, null);
+        compareModel.remove(null, PROV.generatedAtTime, null);
+        assertTrue(Models.isomorphic(streamedModel, compareModel));
+
+        api.deleteLDPResource(res.getResourceIRI());
+        assertFalse(connection().hasStatement(person123, null, null));
+
+        LDPStreamingImporter.Result result = api.importLDPResource(
+            new ByteArrayInputStream(out.toString().getBytes(Charsets.UTF_8)), RDFFormat.NQUADS, RootContainer.IRI, 1);
+        assertEquals(2, result.importedResources);
+        assertEquals(0, result.skippedResources);
+        assertEquals(2, result.committedChunks);
+        assertEquals(Lists.newArrayList(res.getResourceIRI()), result.roots);
+        assertTrue(connection().hasStatement(RootContainer.IRI, LDP.contains, res.getResourceIRI(), res.getContextIRI()));
+        assertEquals(personName, ((LDPTestResource) api.getLDPResource(person123)).getPersonName());
+
+        // re-submitting the same data skips all existing resources
+        result = api.importLDPResource(
+            new ByteArrayInputStream(out.toString().getBytes(Charsets.UTF_8)), RDFFormat.NQUADS, RootContainer.IRI, 10);
+        assertEquals(0, result.importedResources);
+        assertEquals(2, result.skippedResources);
+    }
+
     @Test
     @SubjectAware(
         username = "admin",
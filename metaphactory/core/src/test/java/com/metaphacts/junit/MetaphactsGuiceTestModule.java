@@ -36,7 +36,9 @@
 import com.google.inject.Provides;
 import com.google.inject.Singleton;
 import com.metaphacts.cache.CacheManager;
+import com.metaphacts.cache.FieldDefinitionCache;
 import com.metaphacts.cache.LabelCache;
+import com.metaphacts.cache.RenderedTemplateCache;
 import com.metaphacts.cache.TemplateIncludeCache;
 import com.metaphacts.config.Configuration;
 import com.metaphacts.config.NamespaceRegistry;
@@ -44,6 +46,7 @@
 import com.metaphacts.data.rdf.container.LDPImplManager;
 import com.metaphacts.repository.RepositoryManager;
 import com.metaphacts.servlet.SparqlServlet;
+import com.metaphacts.templates.RenderProfiler;
 import com.metaphacts.thumbnails.DefaultThumbnailService;
 import com.metaphacts.thumbnails.ThumbnailServiceRegistry;
 import com.metaphacts.ui.templates.MainTemplate;
@@ -114,7 +117,10 @@ public void run() {
         bind(RepositoryManager.class).in(Singleton.class);
         bind(CacheManager.class).in(Singleton.class);
         bind(LabelCache.class).in(Singleton.class);
+        bind(FieldDefinitionCache.class).in(Singleton.class);
         bind(TemplateIncludeCache.class).in(Singleton.class);
+        bind(RenderedTemplateCache.class).in(Singleton.class);
+        bind(RenderProfiler.class).in(Singleton.class);
         bind(SparqlServlet.class).in(Singleton.class);
         bind(ThumbnailServiceRegistry.class).in(Singleton.class);
         bind(DefaultThumbnailService.class).asEagerSingleton();
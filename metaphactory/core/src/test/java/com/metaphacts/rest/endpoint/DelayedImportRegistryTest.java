@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2015-2017, metaphacts GmbH
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, you can receive a copy
+ * of the GNU Lesser General Public License from http://www.gnu.org/
+ */
+package com.metaphacts.rest.endpoint;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.metaphacts.rest.endpoint.DelayedImportRegistry.DelayedImport;
+
+/**
+ * Tests for {@link DelayedImportRegistry}.
+ */
+public class DelayedImportRegistryTest {
+
+    private static final String PAYLOAD = "<http://www.test.com/s> <http://www.test.com/p> <http://www.test.com/o> .";
+
+    @Test
+    public void testSpoolRegisterAndComplete() throws Exception {
+        DelayedImportRegistry registry = new DelayedImportRegistry();
+        DelayedImport delayedImport = registry.spool(stream(PAYLOAD));
+        assertEquals(PAYLOAD, read(delayedImport));
+
+        registry.register(delayedImport);
+        registry.release(delayedImport);
+        assertEquals(1, registry.size());
+
+        DelayedImport claimed = registry.claim(delayedImport.getId()).get();
+        assertSame(delayedImport, claimed);
+        assertEquals(PAYLOAD, read(claimed));
+
+        registry.complete(claimed);
+        registry.release(claimed);
+        assertEquals(0, registry.size());
+        assertFalse(registry.claim(delayedImport.getId()).isPresent());
+        assertPayloadDeleted(claimed);
+    }
+
+    @Test
+    public void testUnregisteredPayloadIsDeletedOnRelease() throws Exception {
+        DelayedImportRegistry registry = new DelayedImportRegistry();
+        DelayedImport first = registry.spool(stream(PAYLOAD));
+        DelayedImport second = registry.spool(stream(PAYLOAD));
+        assertNotEquals(first.getId(), second.getId());
+
+        registry.release(first);
+        assertPayloadDeleted(first);
+        assertEquals(PAYLOAD, read(second));
+        registry.release(second);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testConcurrentClaimIsRejected() throws Exception {
+        DelayedImportRegistry registry = new DelayedImportRegistry();
+        DelayedImport delayedImport = registry.spool(stream(PAYLOAD));
+        registry.register(delayedImport);
+        registry.release(delayedImport);
+
+        registry.claim(delayedImport.getId());
+        registry.claim(delayedImport.getId());
+    }
+
+    @Test
+    public void testExpiredImportIsRemoved() throws Exception {
+        DelayedImportRegistry registry = new DelayedImportRegistry(50, TimeUnit.MILLISECONDS, 1024);
+        DelayedImport delayedImport = registry.spool(stream(PAYLOAD));
+        registry.register(delayedImport);
+        registry.release(delayedImport);
+
+        Thread.sleep(100);
+        assertFalse(registry.claim(delayedImport.getId()).isPresent());
+        assertEquals(0, registry.size());
+        assertPayloadDeleted(delayedImport);
+    }
+
+    @Test
+    public void testImportInUseIsDeletedOnRelease() throws Exception {
+        DelayedImportRegistry registry = new DelayedImportRegistry(50, TimeUnit.MILLISECONDS, 1024);
+        DelayedImport delayedImport = registry.spool(stream(PAYLOAD));
+        registry.register(delayedImport);
+
+        // expires while still being processed by the request which staged it
+        Thread.sleep(100);
+        assertFalse(registry.claim(delayedImport.getId()).isPresent());
+        assertEquals(0, registry.size());
+        assertEquals(PAYLOAD, read(delayedImport));
+
+        registry.release(delayedImport);
+        assertPayloadDeleted(delayedImport);
+    }
+
+    @Test
+    public void testStaleFilesAreDeleted() throws Exception {
+        File stale = File.createTempFile("ldp-import-", ".tmp");
+        File recent = File.createTempFile("ldp-import-", ".tmp");
+        try {
+            assertTrue(stale.setLastModified(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1)));
+            DelayedImportRegistry.deleteStaleFiles(TimeUnit.MINUTES.toMillis(15));
+            assertFalse(stale.exists());
+            assertTrue(recent.exists());
+        } finally {
+            stale.delete();
+            recent.delete();
+        }
+    }
+
+    @Test
+    public void testTotalSizeIsBounded() throws Exception {
+        // every payload weighs at least one kilobyte
+        DelayedImportRegistry registry = new DelayedImportRegistry(1, TimeUnit.MINUTES, 2);
+        for (int i = 0; i < 5; i++) {
+            DelayedImport delayedImport = registry.spool(stream(PAYLOAD));
+            registry.register(delayedImport);
+            registry.release(delayedImport);
+        }
+        assertTrue(registry.size() <= 2);
+    }
+
+    @Test
+    public void testOversizedPayloadIsRejected() throws Exception {
+        DelayedImportRegistry registry = new DelayedImportRegistry(1, TimeUnit.MINUTES, 2);
+        DelayedImport delayedImport = registry.spool(stream(StringUtils.repeat(PAYLOAD, 50)));
+        assertFalse(registry.register(delayedImport));
+        registry.release(delayedImport);
+        assertEquals(0, registry.size());
+        assertPayloadDeleted(delayedImport);
+
+        // payloads up to the maximum size are kept
+        delayedImport = registry.spool(stream(StringUtils.repeat(PAYLOAD, 10)));
+        assertTrue(registry.register(delayedImport));
+        registry.release(delayedImport);
+        assertEquals(1, registry.size());
+        assertTrue(registry.claim(delayedImport.getId()).isPresent());
+    }
+
+    private static InputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(Charsets.UTF_8));
+    }
+
+    private static String read(DelayedImport delayedImport) throws IOException {
+        try (InputStream in = delayedImport.openStream()) {
+            return IOUtils.toString(in, Charsets.UTF_8);
+        }
+    }
+
+    private static void assertPayloadDeleted(DelayedImport delayedImport) throws IOException {
+        try {
+            read(delayedImport);
+        } catch (FileNotFoundException e) {
+            return;
+        }
+        throw new AssertionError("Payload of " + delayedImport.getId() + " has not been deleted.");
+    }
+}
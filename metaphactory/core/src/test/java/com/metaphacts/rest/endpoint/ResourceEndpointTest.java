@@ -24,6 +24,7 @@
 import java.io.InputStream;
 import java.util.concurrent.ExecutionException;
 
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
@@ -170,6 +171,33 @@ public void testHtmlContentNegotiation() throws IOException, InterruptedExceptio
             );
         }
 
+        @Test
+        public void testHtmlEntityTag() throws IOException, InterruptedException, ExecutionException {
+            when(req.getHeaders(HttpHeaders.ACCEPT)).then(TestUtils.getMimetypeAnswer(Lists.newArrayList(MediaType.TEXT_HTML)));
+            Response response = target("/")
+                    .queryParam("uri", subject.stringValue())
+                    .request()
+                    .accept(MediaType.TEXT_HTML)
+                    .get();
+
+            Assert.assertEquals(Status.OK.getStatusCode(), response.getStatus());
+            EntityTag tag = response.getEntityTag();
+            Assert.assertNotNull(tag);
+            Assert.assertFalse(tag.isWeak());
+            Assert.assertEquals(mainTemplate.getRenderedMainTemplate().getEntityTag(), tag.getValue());
+
+            Response revalidated = target("/")
+                    .queryParam("uri", subject.stringValue())
+                    .request()
+                    .accept(MediaType.TEXT_HTML)
+                    .header(HttpHeaders.IF_NONE_MATCH, tag.toString())
+                    .get();
+            Assert.assertEquals(Status.NOT_MODIFIED.getStatusCode(), revalidated.getStatus());
+
+            // the rendered main template is cached until the platform caches are invalidated
+            Assert.assertSame(mainTemplate.getRenderedMainTemplate(), mainTemplate.getRenderedMainTemplate());
+        }
+
         @Test
         public void testUnkownAcceptHeader() throws IOException, InterruptedException, ExecutionException {
             when(req.getHeaders(HttpHeaders.ACCEPT)).then(TestUtils.getMimetypeAnswer(Lists.newArrayList("tx/turtle")));
@@ -0,0 +1,260 @@
+/*
+ * Copyright (C) 2015-2017, metaphacts GmbH
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, you can receive a copy
+ * of the GNU Lesser General Public License from http://www.gnu.org/
+ */
+
+package com.metaphacts.sail.keyword;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Literal;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.model.vocabulary.RDFS;
+import org.eclipse.rdf4j.model.vocabulary.SKOS;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.QueryResults;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.repository.sail.SailRepository;
+import org.eclipse.rdf4j.sail.memory.MemoryStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+/**
+ * End to end tests of the {@link KeywordSearchSail} stacked on a
+ * {@link MemoryStore}.
+ */
+public class KeywordSearchSailTest {
+
+    private static final ValueFactory vf = SimpleValueFactory.getInstance();
+
+    private static final String PREFIXES = "PREFIX rdfs: <" + RDFS.NAMESPACE + ">\n"
+            + "PREFIX skos: <" + SKOS.NAMESPACE + ">\n"
+            + "PREFIX bif: <bif:>\n";
+
+    private final IRI blackCat = vf.createIRI("http://www.test.com/blackCat");
+    private final IRI cat = vf.createIRI("http://www.test.com/cat");
+    private final IRI catalogue = vf.createIRI("http://www.test.com/catalogue");
+    private final IRI dog = vf.createIRI("http://www.test.com/dog");
+
+    @Rule
+    public TemporaryFolder testFolder = new TemporaryFolder();
+
+    private File indexDirectory;
+
+    private SailRepository repository;
+
+    @Before
+    public void setup() throws Exception {
+        indexDirectory = testFolder.newFolder();
+        repository = newRepository();
+        try (RepositoryConnection con = repository.getConnection()) {
+            con.add(blackCat, RDFS.LABEL, vf.createLiteral("Black cat"));
+            con.add(cat, RDFS.LABEL, vf.createLiteral("Cat"));
+            con.add(cat, RDFS.COMMENT, vf.createLiteral("A small domesticated carnivorous mammal, not a dog"));
+            con.add(catalogue, SKOS.PREF_LABEL, vf.createLiteral("Catalogue of café cats"));
+            con.add(dog, RDFS.LABEL, vf.createLiteral("Dog"));
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (repository.isInitialized()) {
+            repository.shutDown();
+        }
+    }
+
+    private SailRepository newRepository() throws InterruptedException {
+        KeywordSearchSail sail = new KeywordSearchSail(new MemoryStore(),
+                Sets.newHashSet(RDFS.LABEL, SKOS.PREF_LABEL), indexDirectory);
+        SailRepository repo = new SailRepository(sail);
+        repo.initialize();
+        // initial build
+        sail.awaitRebuild();
+        return repo;
+    }
+
+    private List<BindingSet> search(String pattern) {
+        String query = PREFIXES + "SELECT ?subject ?label ?score WHERE {\n"
+                + pattern
+                + "  ?label bif:score ?score .\n"
+                + "} ORDER BY DESC(?score)";
+        try (RepositoryConnection con = repository.getConnection()) {
+            return QueryResults.asList(con.prepareTupleQuery(query).evaluate());
+        }
+    }
+
+    private List<BindingSet> searchLabels(String token) {
+        return search("  ?subject rdfs:label ?label .\n  ?label bif:contains \"" + token + "\" .\n");
+    }
+
+    @Test
+    public void testRankedKeywordSearch() throws Exception {
+        List<BindingSet> result = searchLabels("cat");
+        assertEquals(2, result.size());
+        // the shorter label is the better match
+        assertEquals(cat, result.get(0).getValue("subject"));
+        assertEquals(blackCat, result.get(1).getValue("subject"));
+        assertEquals("Black cat", result.get(1).getValue("label").stringValue());
+        assertTrue(((Literal) result.get(0).getValue("score")).doubleValue()
+                > ((Literal) result.get(1).getValue("score")).doubleValue());
+
+        // all terms need to match, comments are not indexed
+        assertEquals(1, searchLabels("black CAT").size());
+        assertTrue(searchLabels("mammal").isEmpty());
+    }
+
+    @Test
+    public void testPrefixAndPredicateVariable() throws Exception {
+        assertEquals(Sets.newHashSet(cat, blackCat), subjects(searchLabels("ca*")));
+        assertEquals(Sets.newHashSet(cat, blackCat, catalogue),
+                subjects(search("  ?subject ?p ?label .\n  ?label bif:contains \"ca*\" .\n")));
+        // diacritics are ignored
+        assertEquals(Sets.newHashSet(catalogue),
+                subjects(search("  ?subject skos:prefLabel ?label .\n  ?label bif:contains \"cafe\" .\n")));
+    }
+
+    @Test
+    public void testJoinWithOtherPatterns() throws Exception {
+        List<BindingSet> result = search("  ?subject rdfs:label ?label .\n  ?label bif:contains \"cat\" .\n"
+                + "  ?subject rdfs:comment ?comment .\n");
+        assertEquals(Sets.newHashSet(cat), subjects(result));
+    }
+
+    @Test
+    public void testIncrementalUpdates() throws Exception {
+        try (RepositoryConnection con = repository.getConnection()) {
+            con.begin();
+            con.add(dog, RDFS.LABEL, vf.createLiteral("Cat-like dog"));
+            // uncommitted changes are not searchable
+            assertEquals(2, QueryResults.asList(con.prepareTupleQuery(PREFIXES
+                    + "SELECT * WHERE { ?s rdfs:label ?l . ?l bif:contains \"cat\" . }").evaluate()).size());
+            con.commit();
+
+            con.remove(blackCat, null, null);
+        }
+        assertEquals(Sets.newHashSet(cat, dog), subjects(searchLabels("cat")));
+
+        try (RepositoryConnection con = repository.getConnection()) {
+            con.begin();
+            con.remove(cat, null, null);
+            con.rollback();
+        }
+        assertEquals(Sets.newHashSet(cat, dog), subjects(searchLabels("cat")));
+    }
+
+    @Test
+    public void testPersistedIndex() throws Exception {
+        KeywordIndex index = ((KeywordSearchSail) repository.getSail()).getIndex();
+        assertEquals(4, index.size());
+        assertTrue(new File(indexDirectory, KeywordIndexLog.LOG_FILE).length() > 0);
+        repository.shutDown();
+        // the log is truncated when the snapshot is persisted on shutdown
+        assertTrue(new File(indexDirectory, KeywordIndex.DATA_FILE).exists());
+        assertEquals(0, new File(indexDirectory, KeywordIndexLog.LOG_FILE).length());
+
+        KeywordIndex loaded = new KeywordIndex(indexDirectory);
+        assertTrue(loaded.load());
+        assertEquals(4, loaded.size());
+        assertEquals(4, loaded.getSequence());
+        assertEquals(2, loaded.search(KeywordQuery.parse("cat"), Sets.newHashSet(), null, -1).size());
+        assertFalse(new KeywordIndex(testFolder.newFolder()).load());
+    }
+
+    @Test
+    public void testRecoveryFromLog() throws Exception {
+        // image of the index directory of the running repository, i.e. after
+        // an unclean shutdown
+        File crashed = testFolder.newFolder();
+        for (String name : new String[] { KeywordIndex.DATA_FILE, KeywordIndexLog.LOG_FILE }) {
+            Files.copy(new File(indexDirectory, name).toPath(), new File(crashed, name).toPath());
+        }
+        KeywordIndexLog log = new KeywordIndexLog(crashed);
+        assertEquals(4, log.open().getCommitted().size());
+        // transactions which died during the base commit, the base store of
+        // the recovered sail is empty, i.e. only the removal succeeded
+        log.prepare(Lists.newArrayList(new KeywordIndex.Change(false,
+                vf.createStatement(blackCat, RDFS.LABEL, vf.createLiteral("Black cat")))));
+        log.prepare(Lists.newArrayList(new KeywordIndex.Change(true,
+                vf.createStatement(dog, RDFS.LABEL, vf.createLiteral("Cat-like dog")))));
+        log.close();
+        // record torn by the crash
+        try (FileOutputStream out = new FileOutputStream(new File(crashed, KeywordIndexLog.LOG_FILE), true)) {
+            out.write(new byte[] { 0, 0, 0, 42, 1, 0 });
+        }
+
+        KeywordSearchSail sail = new KeywordSearchSail(new MemoryStore(),
+                Sets.newHashSet(RDFS.LABEL, SKOS.PREF_LABEL), crashed);
+        sail.initialize();
+        try {
+            assertTrue(sail.getStatus().isComplete());
+            assertNull(sail.getStatus().getRebuild());
+            assertEquals(3, sail.getIndex().size());
+            assertEquals(Sets.newHashSet(cat), sail.getIndex()
+                    .search(KeywordQuery.parse("cat"), Sets.newHashSet(), null, -1).stream()
+                    .map(KeywordIndex.Hit::getSubject).collect(Collectors.toSet()));
+            // checkpoint after recovery
+            assertEquals(0, sail.getStatus().getLogSize());
+        } finally {
+            sail.shutDown();
+        }
+    }
+
+    @Test
+    public void testBackgroundRebuild() throws Exception {
+        KeywordSearchSail sail = (KeywordSearchSail) repository.getSail();
+        KeywordIndex previous = sail.getIndex();
+        KeywordIndexRebuild rebuild = sail.startRebuild();
+        // transactions committed during the rebuild are not lost
+        try (RepositoryConnection con = repository.getConnection()) {
+            con.add(dog, RDFS.LABEL, vf.createLiteral("Cat-like dog"));
+        }
+        sail.awaitRebuild();
+
+        assertEquals(KeywordIndexRebuild.State.COMPLETED, rebuild.getState());
+        assertTrue(rebuild.getProcessedStatements() >= 4);
+        assertNotNull(rebuild.getFinishedAt());
+        assertNotSame(previous, sail.getIndex());
+        assertEquals(5, sail.getIndex().size());
+        assertEquals(Sets.newHashSet(cat, blackCat, dog), subjects(searchLabels("cat")));
+        assertEquals(0, sail.getStatus().getLogSize());
+    }
+
+    private static Set<IRI> subjects(List<BindingSet> result) {
+        Set<IRI> subjects = Sets.newHashSet();
+        result.forEach(bs -> subjects.add((IRI) bs.getValue("subject")));
+        return subjects;
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2015-2017, metaphacts GmbH
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, you can receive a copy
+ * of the GNU Lesser General Public License from http://www.gnu.org/
+ */
+
+package com.metaphacts.sail.keyword;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.model.vocabulary.FOAF;
+import org.eclipse.rdf4j.model.vocabulary.RDF;
+import org.eclipse.rdf4j.model.vocabulary.RDFS;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.QueryLanguage;
+import org.eclipse.rdf4j.query.QueryResults;
+import org.eclipse.rdf4j.query.algebra.TupleExpr;
+import org.eclipse.rdf4j.query.parser.QueryParserUtil;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.repository.sail.SailRepository;
+import org.eclipse.rdf4j.sail.memory.MemoryStore;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.metaphacts.sail.virtuoso.VirtuosoKeywordSearchSail;
+import com.metaphacts.sparql.keyword.algebra.KeywordSearchGroupExtractor;
+import com.metaphacts.sparql.keyword.algebra.KeywordSearchGroupTupleExpr;
+
+/**
+ * Tests the typeahead (completion) path of the {@link KeywordIndex} and the
+ * push-down of type restrictions and limits by the
+ * {@link KeywordSearchSailConnection}, including a replay of the recorded
+ * keystroke workload of the {@link TypeaheadBenchmark}.
+ */
+public class KeywordTypeaheadTest {
+
+    private static final Logger logger = LogManager.getLogger(KeywordTypeaheadTest.class);
+
+    private static final ValueFactory vf = SimpleValueFactory.getInstance();
+
+    private static final String PREFIXES = "PREFIX rdfs: <" + RDFS.NAMESPACE + ">\n"
+            + "PREFIX foaf: <" + FOAF.NAMESPACE + ">\n"
+            + "PREFIX bif: <bif:>\n";
+
+    private static final String TYPEAHEAD_QUERY = PREFIXES + "SELECT ?subject ?label WHERE {\n"
+            + "  ?subject a foaf:Person .\n"
+            + "  ?subject rdfs:label ?label .\n"
+            + "  ?label bif:contains \"%s\" .\n"
+            + "  ?label bif:score ?score .\n"
+            + "%s} ORDER BY DESC(?score) LIMIT %d";
+
+    private static Statement label(int i, String label) {
+        return vf.createStatement(vf.createIRI("http://www.test.com/" + i), RDFS.LABEL, vf.createLiteral(label));
+    }
+
+    private static List<String> complete(KeywordIndex index, String token, long limit) {
+        return index.search(KeywordQuery.parse(token), Collections.emptySet(), null, limit).stream()
+                .map(hit -> hit.getLiteral().getLabel()).collect(Collectors.toList());
+    }
+
+    @Test
+    public void testCompletionRanking() throws Exception {
+        KeywordIndex index = new KeywordIndex(null);
+        List<Statement> labels = Lists.newArrayList(label(0, "Black cat"), label(1, "Cat"),
+                label(2, "Catalogue of cats"), label(3, "Cathedral"), label(4, "Black dog"),
+                label(5, "Cat sitting on a black cat"));
+        // incremental updates, i.e. ranked postings are kept sorted one by one
+        for (Statement st : labels) {
+            index.apply(Collections.singletonList(new KeywordIndex.Change(true, st)));
+        }
+
+        // shorter labels first
+        assertEquals(Lists.newArrayList("Cat", "Cathedral", "Black cat", "Catalogue of cats",
+                "Cat sitting on a black cat"), complete(index, "ca*", -1));
+        assertEquals(Lists.newArrayList("Cat", "Cathedral"), complete(index, "ca*", 2));
+        assertEquals(Lists.newArrayList("Black cat", "Cat sitting on a black cat"), complete(index, "black ca*", -1));
+        assertEquals(Lists.newArrayList("Cathedral"), complete(index, "cathedr*", -1));
+        assertTrue(complete(index, "black x*", -1).isEmpty());
+
+        index.apply(Collections.singletonList(new KeywordIndex.Change(false, labels.get(1))));
+        assertEquals(Lists.newArrayList("Cathedral", "Black cat"), complete(index, "ca*", 2));
+
+        // bulk updates, i.e. ranked postings are sorted after all changes
+        KeywordIndex bulk = new KeywordIndex(null);
+        List<KeywordIndex.Change> changes = Lists.newArrayList();
+        for (int i = 0; i < 100; i++) {
+            changes.add(new KeywordIndex.Change(true, label(100 + i, "Catalogue number " + i)));
+        }
+        changes.addAll(labels.stream().map(st -> new KeywordIndex.Change(true, st)).collect(Collectors.toList()));
+        bulk.apply(changes);
+        assertEquals(Lists.newArrayList("Cat", "Cathedral", "Black cat"), complete(bulk, "ca*", 3));
+        assertEquals(105, bulk.search(KeywordQuery.parse("c*"), Collections.emptySet(), null, -1).size());
+    }
+
+    @Test
+    public void testTypeRestrictionAndLimitPushDown() throws Exception {
+        SailRepository repository = new SailRepository(
+                new KeywordSearchSail(new MemoryStore(), Sets.newHashSet(RDFS.LABEL), null));
+        repository.initialize();
+        ((KeywordSearchSail) repository.getSail()).awaitRebuild();
+        try (RepositoryConnection con = repository.getConnection()) {
+            for (int i = 0; i < 20; i++) {
+                IRI resource = vf.createIRI("http://www.test.com/" + i);
+                con.add(resource, RDFS.LABEL, vf.createLiteral("Alice " + (i % 2 == 0 ? "Person" : "Document") + i));
+                con.add(resource, RDF.TYPE, i % 2 == 0 ? FOAF.PERSON : FOAF.DOCUMENT);
+            }
+            con.remove(vf.createIRI("http://www.test.com/0"), RDF.TYPE, FOAF.PERSON);
+
+            List<BindingSet> result = QueryResults.asList(
+                    con.prepareTupleQuery(String.format(TYPEAHEAD_QUERY, "ali*", "", 5)).evaluate());
+            assertEquals(5, result.size());
+            for (BindingSet bs : result) {
+                assertTrue(bs.getValue("label").stringValue().startsWith("Alice Person"));
+            }
+            assertEquals(9, QueryResults.asList(
+                    con.prepareTupleQuery(String.format(TYPEAHEAD_QUERY, "ali*", "", 100)).evaluate()).size());
+        } finally {
+            repository.shutDown();
+        }
+
+        assertEquals(5, pushableLimit(String.format(TYPEAHEAD_QUERY, "ali*", "", 5), true));
+        // further patterns may drop hits
+        assertEquals(-1, pushableLimit(
+                String.format(TYPEAHEAD_QUERY, "ali*", "  ?subject rdfs:comment ?comment .\n", 5), true));
+        assertEquals(-1, pushableLimit(PREFIXES + "SELECT ?subject WHERE { ?subject rdfs:label ?label . "
+                + "?label bif:contains \"ali*\" . ?label bif:score ?score . } ORDER BY ?label LIMIT 5", false));
+        // alternative types are kept in the query
+        assertEquals(-1, pushableLimit(PREFIXES + "SELECT ?subject WHERE { ?subject a foaf:Person . "
+                + "?subject a foaf:Agent . ?subject rdfs:label ?label . ?label bif:contains \"ali*\" . } LIMIT 5",
+                false));
+    }
+
+    private static long pushableLimit(String query, boolean typeRestricted) {
+        TupleExpr expr = QueryParserUtil.parseTupleQuery(QueryLanguage.SPARQL, query, null).getTupleExpr();
+        KeywordSearchGroupTupleExpr group = KeywordSearchGroupExtractor.extract(expr,
+                VirtuosoKeywordSearchSail.BIF_CONTAINS, VirtuosoKeywordSearchSail.BIF_SCORE).get();
+        assertEquals(typeRestricted, KeywordSearchGroupExtractor.extractTypeRestriction(group));
+        return KeywordSearchSailConnection.getPushableLimit(group);
+    }
+
+    @Test
+    public void testReplayRecordedWorkload() throws Exception {
+        List<TypeaheadBenchmark.Keystroke> workload = TypeaheadBenchmark.readRecordedWorkload();
+        assertEquals(82, workload.size());
+        KeywordIndex index = TypeaheadBenchmark.syntheticIndex(50000, 42);
+        assertEquals(50000, index.size());
+        assertEquals(50000, index.getTypedResourceCount());
+
+        // latencies are only logged, the latency target is checked by the benchmark itself
+        TypeaheadBenchmark.Result once = TypeaheadBenchmark.replay(index, workload, 10, 1);
+        TypeaheadBenchmark.Result result = TypeaheadBenchmark.replay(index, workload, 10, 5);
+        logger.info("Replayed recorded typeahead workload on {} labels: {}", index.size(), result);
+        assertEquals(5 * workload.size(), result.getQueries());
+        assertTrue(once.getHits() > 0);
+        assertTrue(once.getHits() <= 10L * once.getQueries());
+        // every replay yields the same hits
+        assertEquals(5 * once.getHits(), result.getHits());
+
+        // typeahead hits of a type restricted keystroke
+        TypeaheadBenchmark.Keystroke keystroke = workload.stream().filter(k -> k.type != null).findFirst().get();
+        Set<IRI> types = keystroke.getTypes();
+        for (KeywordIndex.Hit hit : index.search(keystroke.toQuery(), Collections.emptySet(), types, null, 10)) {
+            int id = Integer.parseInt(hit.getSubject().stringValue().replaceAll(".*/", ""));
+            assertEquals(keystroke.type, TypeaheadBenchmark.type(id % TypeaheadBenchmark.TYPES));
+        }
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright (C) 2015-2017, metaphacts GmbH
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, you can receive a copy
+ * of the GNU Lesser General Public License from http://www.gnu.org/
+ */
+
+package com.metaphacts.sail.keyword;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.model.vocabulary.RDF;
+import org.eclipse.rdf4j.model.vocabulary.RDFS;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Benchmark harness for typeahead searches, which replays a recorded keystroke
+ * workload (see {@link #readWorkload(Reader)}) against a {@link KeywordIndex}
+ * and reports latency percentiles. Every keystroke is issued as typeahead
+ * query, i.e. the typed text with the last term as prefix. The benchmark fails
+ * if the 99th percentile exceeds {@link #TARGET_P99_MILLIS}.
+ *
+ * <p>
+ * Used by {@link KeywordTypeaheadTest} on a small index, which checks the hits
+ * only. Run the main method to replay the workload against a synthetic index
+ * of the specified size:
+ * <pre><code>
+ * TypeaheadBenchmark [labels (default 1000000)] [workload file] [rounds]
+ * </code></pre>
+ * </p>
+ */
+public class TypeaheadBenchmark {
+
+    static final String WORKLOAD_RESOURCE = "typeahead-workload.tsv";
+
+    static final String NAMESPACE = "http://www.example.com/";
+    static final int TYPES = 5;
+
+    /**
+     * Target for the 99th percentile of the typeahead latency.
+     */
+    static final double TARGET_P99_MILLIS = 30;
+
+    private static final ValueFactory vf = SimpleValueFactory.getInstance();
+
+    private static final String[] VOCABULARY = ("black cat cats catalogue cathedral catherine dog garden gardens "
+            + "paris street streets river rivers map maps old new portrait portraits of a the an and in at "
+            + "museum museums manuscript manuscripts painting paintings saint st stone station london berlin "
+            + "rome venice florence church chapel castle bridge tower harbour market square view views study "
+            + "head figure woman man child children landscape sea ship ships mountain mountains lake forest "
+            + "winter summer spring autumn night morning evening light letter letters book books drawing "
+            + "sketch sketches print prints photograph photographs album collection archive king queen prince "
+            + "duke bishop abbey monastery palace villa house houses road roads gate wall walls fountain "
+            + "statue bust relief coin medal vase bowl cup plate textile carpet chair table clock mirror "
+            + "window door garden-party dance music concert theatre opera poet painter sculptor architect "
+            + "scholar merchant soldier battle siege treaty council journey voyage island coast valley hill "
+            + "meadow field farm mill bridge-house red blue green white golden silver grey brown yellow")
+            .split(" ");
+
+    /**
+     * A single recorded keystroke.
+     */
+    static class Keystroke {
+        final long offset;
+        final String text;
+        final IRI type;
+
+        Keystroke(long offset, String text, IRI type) {
+            this.offset = offset;
+            this.text = text;
+            this.type = type;
+        }
+
+        /**
+         * The typed text with the last term as prefix, also if it has been
+         * completed by typing a space.
+         */
+        KeywordQuery toQuery() {
+            return KeywordQuery.parse(text.trim() + "*");
+        }
+
+        Set<IRI> getTypes() {
+            return type == null ? Collections.emptySet() : Collections.singleton(type);
+        }
+    }
+
+    /**
+     * Latencies of a replayed workload.
+     */
+    static class Result {
+        private final long[] latencies;
+        private final long hits;
+
+        Result(long[] latencies, long hits) {
+            this.latencies = latencies;
+            this.hits = hits;
+            Arrays.sort(this.latencies);
+        }
+
+        int getQueries() {
+            return latencies.length;
+        }
+
+        long getHits() {
+            return hits;
+        }
+
+        /**
+         * @param percentile e.g. 99 for the 99th percentile
+         */
+        double getPercentileMillis(double percentile) {
+            if (latencies.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(percentile / 100.0 * latencies.length) - 1;
+            return latencies[Math.max(0, Math.min(index, latencies.length - 1))] / 1e6;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d queries, %d hits, p50 %.2f ms, p90 %.2f ms, p99 %.2f ms, max %.2f ms",
+                    getQueries(), hits, getPercentileMillis(50), getPercentileMillis(90),
+                    getPercentileMillis(99), getPercentileMillis(100));
+        }
+    }
+
+    /**
+     * Reads a workload with one keystroke per line:
+     * <code>&lt;offset in ms&gt;\t&lt;typed text&gt;[\t&lt;type IRI&gt;]</code>.
+     * Empty lines and lines starting with <code>#</code> are ignored.
+     */
+    static List<Keystroke> readWorkload(Reader reader) throws IOException {
+        List<Keystroke> workload = Lists.newArrayList();
+        BufferedReader lines = new BufferedReader(reader);
+        String line;
+        while ((line = lines.readLine()) != null) {
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split("\t");
+            workload.add(new Keystroke(Long.parseLong(fields[0]), fields[1],
+                    fields.length > 2 ? vf.createIRI(fields[2]) : null));
+        }
+        return workload;
+    }
+
+    static List<Keystroke> readRecordedWorkload() throws IOException {
+        try (InputStream in = TypeaheadBenchmark.class.getResourceAsStream(WORKLOAD_RESOURCE)) {
+            return readWorkload(new InputStreamReader(in, StandardCharsets.UTF_8));
+        }
+    }
+
+    static IRI type(int i) {
+        return vf.createIRI(NAMESPACE + "types/Type" + i);
+    }
+
+    /**
+     * Builds an in-memory index of labels of one to four words, picked with a
+     * skewed distribution from a fixed vocabulary, for resources of
+     * {@link #TYPES} different types.
+     */
+    static KeywordIndex syntheticIndex(int labels, long seed) {
+        KeywordIndex index = new KeywordIndex(null);
+        Random random = new Random(seed);
+        List<KeywordIndex.Change> batch = Lists.newArrayList();
+        for (int i = 0; i < labels; i++) {
+            IRI resource = vf.createIRI(NAMESPACE + "resource/" + i);
+            StringBuilder label = new StringBuilder();
+            int words = 1 + random.nextInt(4);
+            for (int w = 0; w < words; w++) {
+                double skewed = Math.pow(random.nextDouble(), 2);
+                label.append(w == 0 ? "" : " ").append(VOCABULARY[(int) (skewed * VOCABULARY.length)]);
+            }
+            if (random.nextInt(10) == 0) {
+                label.append(' ').append(i);
+            }
+            batch.add(new KeywordIndex.Change(true, vf.createStatement(resource, RDFS.LABEL,
+                    vf.createLiteral(label.toString()))));
+            batch.add(new KeywordIndex.Change(true, vf.createStatement(resource, RDF.TYPE, type(i % TYPES))));
+            if (batch.size() >= 10000) {
+                index.apply(batch);
+                batch.clear();
+            }
+        }
+        index.apply(batch);
+        return index;
+    }
+
+    /**
+     * Replays the workload (ignoring the recorded think time between
+     * keystrokes) and measures the latency of every query.
+     */
+    static Result replay(KeywordIndex index, List<Keystroke> workload, int limit, int rounds) {
+        long[] latencies = new long[workload.size() * rounds];
+        long hits = 0;
+        int i = 0;
+        for (int round = 0; round < rounds; round++) {
+            for (Keystroke keystroke : workload) {
+                long start = System.nanoTime();
+                hits += index.search(keystroke.toQuery(), Collections.emptySet(), keystroke.getTypes(), null,
+                        limit).size();
+                latencies[i++] = System.nanoTime() - start;
+            }
+        }
+        return new Result(latencies, hits);
+    }
+
+    public static void main(String[] args) throws IOException {
+        int labels = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        List<Keystroke> workload;
+        if (args.length > 1) {
+            try (Reader reader = new InputStreamReader(new FileInputStream(args[1]), StandardCharsets.UTF_8)) {
+                workload = readWorkload(reader);
+            }
+        } else {
+            workload = readRecordedWorkload();
+        }
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+
+        long start = System.currentTimeMillis();
+        KeywordIndex index = syntheticIndex(labels, 42);
+        System.out.println(String.format("Indexed %d labels (%d terms) in %d ms.", index.size(),
+                index.getTermCount(), System.currentTimeMillis() - start));
+        // warm-up
+        replay(index, workload, 10, 3);
+        Result result = replay(index, workload, 10, rounds);
+        System.out.println("Replayed " + workload.size() + " keystrokes " + rounds + " times: " + result);
+        if (result.getPercentileMillis(99) >= TARGET_P99_MILLIS) {
+            System.out.println(String.format("p99 latency exceeds the target of %.0f ms.", TARGET_P99_MILLIS));
+            System.exit(1);
+        }
+    }
+}
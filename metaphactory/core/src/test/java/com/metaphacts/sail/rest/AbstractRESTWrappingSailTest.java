@@ -0,0 +1,360 @@
+/*
+ * Copyright (C) 2015-2017, metaphacts GmbH
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, you can receive a copy
+ * of the GNU Lesser General Public License from http://www.gnu.org/
+ */
+
+package com.metaphacts.sail.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.rdf4j.common.iteration.CloseableIteration;
+import org.eclipse.rdf4j.common.iteration.Iterations;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Literal;
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.LinkedHashModel;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.model.vocabulary.RDFS;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+import org.eclipse.rdf4j.query.QueryResults;
+import org.eclipse.rdf4j.query.algebra.StatementPattern;
+import org.eclipse.rdf4j.query.impl.MapBindingSet;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.repository.sail.SailRepository;
+import org.eclipse.rdf4j.sail.SailConnection;
+import org.eclipse.rdf4j.sail.SailException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.collect.Sets;
+import com.metaphacts.sail.rest.wikidata.WikidataSail;
+import com.metaphacts.sail.rest.wikidata.WikidataSailConfig;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests of the HTTP handling of {@link AbstractRESTWrappingSailConnection}
+ * against a local stub service, which answers <code>?q=token</code> with
+ * three results <code>token1</code> to <code>token3</code> (and
+ * <code>?q=a|b</code> with the results of both tokens).
+ */
+public class AbstractRESTWrappingSailTest {
+
+    private static final ValueFactory vf = SimpleValueFactory.getInstance();
+
+    private static final IRI SEARCH = vf.createIRI("http://www.test.com/search");
+
+    private HttpServer server;
+    private final AtomicInteger requests = new AtomicInteger();
+    private final Set<Integer> clientPorts = Sets.newConcurrentHashSet();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private volatile long responseDelay = 0;
+
+    private TestSail sail;
+    private SailRepository repository;
+
+    @Before
+    public void setup() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/search", this::handle);
+        server.start();
+        sail = new TestSail("http://localhost:" + server.getAddress().getPort() + "/search");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (repository != null) {
+            repository.shutDown();
+        }
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        clientPorts.add(exchange.getRemoteAddress().getPort());
+        maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+        try {
+            if (responseDelay > 0) {
+                Thread.sleep(responseDelay);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            inFlight.decrementAndGet();
+        }
+        String query = URLDecoder.decode(exchange.getRequestURI().getRawQuery().substring("q=".length()),
+                StandardCharsets.UTF_8.name());
+        byte[] body;
+        if (query.equals("fail")) {
+            body = "error".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(500, body.length);
+        } else {
+            StringBuilder json = new StringBuilder("{\"info\": {\"skipped\": [1, {\"results\": []}]}, \"results\": [");
+            String separator = "";
+            for (String token : query.split("\\|")) {
+                for (int i = 1; i <= 3; i++) {
+                    json.append(separator).append("{\"token\": \"").append(token)
+                            .append("\", \"id\": \"http://www.test.com/").append(token).append(i)
+                            .append("\", \"label\": \"").append(token).append(' ').append(i).append("\"}");
+                    separator = ",";
+                }
+            }
+            json.append("], \"continue\": 3}");
+            body = json.toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+        }
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private List<BindingSet> search(String token) throws Exception {
+        return evaluate("SELECT ?s ?label WHERE { ?s <" + SEARCH + "> \"" + token + "\" . ?s <" + RDFS.LABEL
+                + "> ?label . }");
+    }
+
+    /**
+     * Searches for all tokens at once passing them in a VALUES clause, i.e. in
+     * the same way as the federation evaluates bound joins.
+     */
+    private List<BindingSet> searchAll(String... tokens) throws Exception {
+        StringBuilder values = new StringBuilder();
+        for (int i = 0; i < tokens.length; i++) {
+            values.append("(").append(i).append(" \"").append(tokens[i]).append("\") ");
+        }
+        return evaluate("SELECT ?__index ?token ?s ?label WHERE { ?s <" + SEARCH + "> ?token . ?s <" + RDFS.LABEL
+                + "> ?label . } VALUES (?__index ?token) { " + values + "}");
+    }
+
+    private List<BindingSet> evaluate(String query) throws Exception {
+        if (repository == null) {
+            repository = new SailRepository(sail);
+            repository.initialize();
+        }
+        try (RepositoryConnection con = repository.getConnection()) {
+            return QueryResults.asList(con.prepareTupleQuery(query).evaluate());
+        }
+    }
+
+    /**
+     * Checks that every result belongs to the token of its input binding.
+     */
+    private static void assertJoinedWithInputs(List<BindingSet> result, String... tokens) {
+        for (BindingSet bs : result) {
+            String token = tokens[((Literal) bs.getValue("__index")).intValue()];
+            assertEquals(token, bs.getValue("token").stringValue());
+            assertTrue(bs.getValue("label").stringValue().startsWith(token + " "));
+        }
+    }
+
+    @Test
+    public void testStreamingConversion() throws Exception {
+        List<BindingSet> result = search("cat");
+        assertEquals(3, result.size());
+        assertEquals(vf.createIRI("http://www.test.com/cat1"), result.get(0).getValue("s"));
+        assertEquals(vf.createLiteral("cat 3"), result.get(2).getValue("label"));
+    }
+
+    @Test
+    public void testResponseCache() throws Exception {
+        assertEquals(3, search("cat").size());
+        assertEquals(3, search("cat").size());
+        assertEquals(1, requests.get());
+
+        assertEquals(3, search("dog").size());
+        assertEquals(2, requests.get());
+    }
+
+    @Test
+    public void testDisabledResponseCache() throws Exception {
+        sail.setCacheTTL(0);
+        search("cat");
+        search("cat");
+        assertEquals(2, requests.get());
+    }
+
+    @Test
+    public void testConnectionPooling() throws Exception {
+        sail.setCacheTTL(0);
+        for (int i = 0; i < 5; i++) {
+            assertEquals(3, search("cat" + i).size());
+        }
+        assertEquals(5, requests.get());
+        // all requests have been sent over the same pooled connection
+        assertEquals(1, clientPorts.size());
+    }
+
+    @Test
+    public void testFailedRequest() throws Exception {
+        sail.setMaxConnections(1);
+        try {
+            search("fail");
+            fail("Expected the failed request to be reported.");
+        } catch (QueryEvaluationException e) {
+            assertTrue(e.getMessage().contains("500"));
+        }
+        // failed responses do not leak the only pooled connection
+        for (int i = 0; i < 3; i++) {
+            assertEquals(3, search("cat" + i).size());
+        }
+    }
+
+    @Test
+    public void testBatchedInputBindings() throws Exception {
+        sail.batchParameter = "q";
+        sail.setMaxBatchSize(2);
+        String[] tokens = { "cat", "dog", "cow", "cat" };
+        List<BindingSet> result = searchAll(tokens);
+        // cat|dog and cow, the second cat input is answered by the first request
+        assertEquals(2, requests.get());
+        assertEquals(12, result.size());
+        assertJoinedWithInputs(result, tokens);
+    }
+
+    @Test
+    public void testParallelInputBindings() throws Exception {
+        sail.setCacheTTL(0);
+        sail.setMaxConcurrentRequests(2);
+        responseDelay = 50;
+        String[] tokens = { "a", "b", "c", "d", "e", "f", "a" };
+        List<BindingSet> result = searchAll(tokens);
+        // one request per distinct token, at most two of them in parallel
+        assertEquals(6, requests.get());
+        assertTrue(maxInFlight.get() <= 2);
+        assertEquals(21, result.size());
+        assertJoinedWithInputs(result, tokens);
+    }
+
+    @Test
+    public void testRateLimit() throws Exception {
+        sail.setCacheTTL(0);
+        sail.setRequestsPerSecond(10);
+        long start = System.currentTimeMillis();
+        assertEquals(15, searchAll("a", "b", "c", "d", "e").size());
+        // the first request is sent immediately, the remaining ones every 100ms
+        assertTrue(System.currentTimeMillis() - start >= 350);
+    }
+
+    @Test
+    public void testConfig() throws Exception {
+        WikidataSailConfig config = new WikidataSailConfig();
+        config.setMaxConnections(5);
+        config.setCacheTTL(0);
+        config.setRequestsPerSecond(2.5);
+        Model model = new LinkedHashModel();
+        Resource implNode = config.export(model);
+
+        WikidataSailConfig parsed = new WikidataSailConfig();
+        parsed.parse(model, implNode);
+        WikidataSail wikidataSail = new WikidataSail();
+        parsed.configure(wikidataSail);
+        assertEquals(5, wikidataSail.getMaxConnections());
+        assertEquals(0, wikidataSail.getCacheTTL());
+        assertEquals(2.5, wikidataSail.getRequestsPerSecond(), 0);
+        assertEquals(AbstractRESTWrappingSail.DEFAULT_CONNECTION_TIMEOUT, wikidataSail.getConnectionTimeout());
+    }
+
+    private static class TestSail extends AbstractRESTWrappingSail {
+
+        private String batchParameter = null;
+
+        TestSail(String url) {
+            super(url);
+        }
+
+        @Override
+        protected SailConnection getConnectionInternal() throws SailException {
+            return new TestSailConnection(this);
+        }
+    }
+
+    private static class TestSailConnection extends AbstractRESTWrappingSailConnection {
+
+        TestSailConnection(AbstractRESTWrappingSail sail) {
+            super(sail);
+        }
+
+        @Override
+        protected RESTParametersHolder extractInputsAndOutputs(List<StatementPattern> stmtPatterns)
+                throws SailException {
+            RESTParametersHolder holder = new RESTParametersHolder();
+            for (StatementPattern pattern : stmtPatterns) {
+                if (SEARCH.equals(pattern.getPredicateVar().getValue())) {
+                    holder.setSubjVarName(pattern.getSubjectVar().getName());
+                    holder.getInputParameters().put("q", pattern.getObjectVar().getValue().stringValue());
+                    if (!pattern.getObjectVar().isAnonymous()) {
+                        holder.getOutputVariables().put(SEARCH, pattern.getObjectVar().getName());
+                    }
+                } else if (RDFS.LABEL.equals(pattern.getPredicateVar().getValue())) {
+                    holder.getOutputVariables().put(RDFS.LABEL, pattern.getObjectVar().getName());
+                }
+            }
+            return holder;
+        }
+
+        @Override
+        protected CloseableIteration<BindingSet, QueryEvaluationException> convertStream2BindingSetIteration(
+                InputStream inputStream, RESTParametersHolder parametersHolder) throws SailException {
+            return new JsonStreamingBindingSetIteration(inputStream, "results") {
+                @Override
+                protected BindingSet convert(JsonParser parser, int index) throws IOException {
+                    JsonNode element = parser.readValueAsTree();
+                    MapBindingSet bs = new MapBindingSet();
+                    bs.addBinding(parametersHolder.getSubjVarName(), vf.createIRI(element.get("id").asText()));
+                    bs.addBinding(parametersHolder.getOutputVariables().get(RDFS.LABEL),
+                            vf.createLiteral(element.get("label").asText()));
+                    if (parametersHolder.getOutputVariables().containsKey(SEARCH)) {
+                        bs.addBinding(parametersHolder.getOutputVariables().get(SEARCH),
+                                vf.createLiteral(element.get("token").asText()));
+                    }
+                    return bs;
+                }
+            };
+        }
+
+        @Override
+        protected String getBatchParameter() {
+            return ((TestSail) getSail()).batchParameter;
+        }
+
+        @Override
+        protected Collection<BindingSet> convertStream2BindingSets(InputStream inputStream,
+                RESTParametersHolder parametersHolder) throws SailException {
+            return Iterations.asList(convertStream2BindingSetIteration(inputStream, parametersHolder));
+        }
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2015-2017, metaphacts GmbH
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, you can receive a copy
+ * of the GNU Lesser General Public License from http://www.gnu.org/
+ */
+
+package com.metaphacts.sail.rest.wikidata;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.rdf4j.common.iteration.Iterations;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.model.vocabulary.RDFS;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.impl.MapBindingSet;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Lists;
+import com.metaphacts.sail.rest.AbstractRESTWrappingSailConnection.RESTParametersHolder;
+
+/**
+ * Microbenchmark of the conversion of recorded Wikidata search responses (see
+ * the <code>wbsearchentities-*.json</code> fixtures) into binding sets,
+ * comparing the streaming conversion of {@link WikidataSailConnection} (with
+ * and without a result limit) to materializing the response as Jackson
+ * tree/{@link HashMap} first. Reports the time and the heap allocated per
+ * response.
+ *
+ * <p>
+ * Used by {@link WikidataSailConnectionTest}. Run the main method for the
+ * full benchmark:
+ * <pre><code>
+ * WikidataResponseBenchmark [iterations (default 20000)] [limit (default 10)]
+ * </code></pre>
+ * </p>
+ */
+public class WikidataResponseBenchmark {
+
+    static final String[] FIXTURES = { "wbsearchentities-berlin.json", "wbsearchentities-large.json" };
+
+    private static final ValueFactory vf = SimpleValueFactory.getInstance();
+
+    /**
+     * A conversion of a response into binding sets.
+     */
+    interface Conversion {
+        List<BindingSet> convert(byte[] response) throws Exception;
+    }
+
+    /**
+     * Average time and heap allocation per converted response.
+     */
+    static class Result {
+        private final long iterations;
+        private final long nanos;
+        private final long allocatedBytes;
+        private final int results;
+
+        Result(long iterations, long nanos, long allocatedBytes, int results) {
+            this.iterations = iterations;
+            this.nanos = nanos;
+            this.allocatedBytes = allocatedBytes;
+            this.results = results;
+        }
+
+        double getMicrosPerResponse() {
+            return nanos / 1000.0 / iterations;
+        }
+
+        /**
+         * @return the allocated bytes per response or -1 if the JVM does not
+         *         support measuring allocations
+         */
+        long getAllocatedBytesPerResponse() {
+            return allocatedBytes < 0 ? -1 : allocatedBytes / iterations;
+        }
+
+        int getResults() {
+            return results;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d results, %.1f us/response, %d bytes allocated/response", results,
+                    getMicrosPerResponse(), getAllocatedBytesPerResponse());
+        }
+    }
+
+    static byte[] readFixture(String name) throws IOException {
+        try (InputStream in = WikidataResponseBenchmark.class.getResourceAsStream(name)) {
+            if (in == null) {
+                throw new IOException("Fixture not found: " + name);
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    /**
+     * Parameters of a search binding all outputs (?item, ?label, ?description
+     * and ?orderNr).
+     */
+    static RESTParametersHolder searchParameters(long limit) {
+        RESTParametersHolder parameters = new RESTParametersHolder();
+        parameters.getOutputVariables().put(WikidataSailConnection.HAS_WIKIDATA_SEARCH_TOKEN, "item");
+        parameters.getOutputVariables().put(RDFS.LABEL, "label");
+        parameters.getOutputVariables().put(WikidataSailConnection.SCHEMA_ORG_DESCRIPTION, "description");
+        parameters.getOutputVariables().put(WikidataSailConnection.ORDER_NR, "orderNr");
+        parameters.setLimit(limit);
+        return parameters;
+    }
+
+    static Conversion streaming(long limit) {
+        WikidataSailConnection connection = new WikidataSailConnection(new WikidataSail());
+        RESTParametersHolder parameters = searchParameters(limit);
+        return response -> Iterations.asList(
+                connection.convertStream2BindingSetIteration(new ByteArrayInputStream(response), parameters));
+    }
+
+    /**
+     * The conversion materializing the entire response before producing the
+     * first binding set.
+     */
+    @SuppressWarnings("unchecked")
+    static Conversion materializing() {
+        ObjectMapper mapper = new ObjectMapper();
+        Map<IRI, String> outputs = searchParameters(-1).getOutputVariables();
+        return response -> {
+            Map<String, Object> map = mapper.readValue(new ByteArrayInputStream(response), HashMap.class);
+            List<BindingSet> result = Lists.newArrayList();
+            int idx = 0;
+            for (Object entity : (List<Object>) map.get("search")) {
+                Map<String, Object> entityMap = (Map<String, Object>) entity;
+                MapBindingSet bs = new MapBindingSet();
+                bs.addBinding(outputs.get(WikidataSailConnection.HAS_WIKIDATA_SEARCH_TOKEN),
+                        vf.createIRI((String) entityMap.get("concepturi")));
+                bs.addBinding(outputs.get(RDFS.LABEL), vf.createLiteral((String) entityMap.get("label")));
+                if (entityMap.get("description") != null) {
+                    bs.addBinding(outputs.get(WikidataSailConnection.SCHEMA_ORG_DESCRIPTION),
+                            vf.createLiteral((String) entityMap.get("description")));
+                }
+                bs.addBinding(outputs.get(WikidataSailConnection.ORDER_NR), vf.createLiteral(++idx));
+                result.add(bs);
+            }
+            return result;
+        };
+    }
+
+    static Result run(Conversion conversion, byte[] response, int iterations) throws Exception {
+        int results = 0;
+        long allocatedBefore = getAllocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            results = conversion.convert(response).size();
+        }
+        long nanos = System.nanoTime() - start;
+        long allocatedAfter = getAllocatedBytes();
+        long allocated = allocatedBefore < 0 ? -1 : allocatedAfter - allocatedBefore;
+        return new Result(iterations, nanos, allocated, results);
+    }
+
+    private static long getAllocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int limit = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        for (String fixture : FIXTURES) {
+            byte[] response = readFixture(fixture);
+            Conversion[] conversions = { materializing(), streaming(-1), streaming(limit) };
+            String[] names = { "materializing", "streaming", "streaming, limit " + limit };
+            for (int i = 0; i < conversions.length; i++) {
+                // warm-up
+                run(conversions[i], response, iterations / 10);
+                System.out.println(String.format("%s (%d bytes), %s: %s", fixture, response.length, names[i],
+                        run(conversions[i], response, iterations)));
+            }
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2015-2017, metaphacts GmbH
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, you can receive a copy
+ * of the GNU Lesser General Public License from http://www.gnu.org/
+ */
+
+package com.metaphacts.sail.rest.wikidata;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.rdf4j.common.iteration.Iterations;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.junit.Test;
+
+/**
+ * Tests of the streaming conversion of Wikidata search responses, using the
+ * recorded responses of the {@link WikidataResponseBenchmark}.
+ */
+public class WikidataSailConnectionTest {
+
+    private static final Logger logger = LogManager.getLogger(WikidataSailConnectionTest.class);
+
+    private static final ValueFactory vf = SimpleValueFactory.getInstance();
+
+    private final WikidataSailConnection connection = new WikidataSailConnection(new WikidataSail());
+
+    private List<BindingSet> convert(InputStream in, long limit) throws Exception {
+        return Iterations.asList(connection.convertStream2BindingSetIteration(in,
+                WikidataResponseBenchmark.searchParameters(limit)));
+    }
+
+    @Test
+    public void testStreamingConversion() throws Exception {
+        List<BindingSet> result = convert(
+                new ByteArrayInputStream(WikidataResponseBenchmark.readFixture("wbsearchentities-berlin.json")), -1);
+        assertEquals(7, result.size());
+        BindingSet first = result.get(0);
+        assertEquals(vf.createIRI("http://www.wikidata.org/entity/Q64"), first.getValue("item"));
+        assertEquals(vf.createLiteral("Berlin"), first.getValue("label"));
+        assertEquals(vf.createLiteral("capital and largest city of Germany"), first.getValue("description"));
+        assertEquals(vf.createLiteral(1), first.getValue("orderNr"));
+
+        // entities without description
+        BindingSet last = result.get(6);
+        assertEquals(vf.createLiteral(7), last.getValue("orderNr"));
+        assertFalse(last.hasBinding("description"));
+    }
+
+    @Test
+    public void testStreamingMatchesMaterializingConversion() throws Exception {
+        for (String fixture : WikidataResponseBenchmark.FIXTURES) {
+            byte[] response = WikidataResponseBenchmark.readFixture(fixture);
+            assertEquals(WikidataResponseBenchmark.materializing().convert(response),
+                    WikidataResponseBenchmark.streaming(-1).convert(response));
+        }
+    }
+
+    @Test
+    public void testLimitStopsReading() throws Exception {
+        byte[] response = WikidataResponseBenchmark.readFixture("wbsearchentities-large.json");
+        AtomicLong read = new AtomicLong();
+        InputStream in = new ByteArrayInputStream(response) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                int n = super.read(b, off, len);
+                read.addAndGet(Math.max(n, 0));
+                return n;
+            }
+        };
+        List<BindingSet> result = convert(in, 5);
+        assertEquals(5, result.size());
+        assertEquals(vf.createLiteral(5), result.get(4).getValue("orderNr"));
+        assertTrue("Expected the response to be read partially, but read " + read.get() + " of "
+                + response.length + " bytes", read.get() < response.length);
+    }
+
+    @Test
+    public void testBenchmark() throws Exception {
+        byte[] response = WikidataResponseBenchmark.readFixture("wbsearchentities-large.json");
+        WikidataResponseBenchmark.Result materializing = WikidataResponseBenchmark
+                .run(WikidataResponseBenchmark.materializing(), response, 200);
+        WikidataResponseBenchmark.Result limited = WikidataResponseBenchmark
+                .run(WikidataResponseBenchmark.streaming(10), response, 200);
+        logger.info("Converted Wikidata response, materializing: {}, streaming with limit: {}", materializing,
+                limited);
+        assertEquals(50, materializing.getResults());
+        assertEquals(10, limited.getResults());
+        if (materializing.getAllocatedBytesPerResponse() >= 0) {
+            assertTrue(limited.getAllocatedBytesPerResponse() < materializing.getAllocatedBytesPerResponse());
+        }
+    }
+}
@@ -28,6 +28,7 @@
 import javax.ws.rs.HttpMethod;
 import javax.ws.rs.core.Application;
 
+import com.metaphacts.cache.FieldDefinitionCache;
 import com.metaphacts.cache.LabelCache;
 import com.metaphacts.data.rdf.container.*;
 import org.apache.commons.io.IOUtils;
@@ -89,6 +90,9 @@ public class MetaphactsHandlebarsTest  extends JerseyTest {
     @Inject
     private LabelCache labelCache;
 
+    @Inject
+    private FieldDefinitionCache fieldDefinitionCache;
+
     private MetaphactsHandlebars handlebars;
 
     private final ValueFactory vf = SimpleValueFactory.getInstance();
@@ -107,7 +111,7 @@ public void setup() throws Exception {
         ns.set("helperTest", nsForNamespaceTest);
         Assert.assertTrue(ns.getNamespace("helperTest").isPresent());
 
-        handlebars = new MetaphactsHandlebars(null, new HandlebarsHelperRegistry(labelCache, ns, repositoryRule.getRepositoryManager()));
+        handlebars = new MetaphactsHandlebars(null, new HandlebarsHelperRegistry(labelCache, ns, repositoryRule.getRepositoryManager(), fieldDefinitionCache));
         try(RepositoryConnection con = repositoryRule.getRepository().getConnection()){
             con.add(vf.createStatement(vf.createIRI("http://a"),vf.createIRI("http://b"),vf.createIRI("http://c")));
         }
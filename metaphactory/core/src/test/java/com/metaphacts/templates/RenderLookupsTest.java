@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2015-2017, metaphacts GmbH
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, you can receive a copy
+ * of the GNU Lesser General Public License from http://www.gnu.org/
+ */
+package com.metaphacts.templates;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.model.vocabulary.FOAF;
+import org.eclipse.rdf4j.model.vocabulary.RDFS;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.inject.Inject;
+import com.metaphacts.cache.LabelCache;
+import com.metaphacts.junit.AbstractRepositoryBackedIntegrationTest;
+import com.metaphacts.junit.NamespaceRule;
+
+/**
+ * Tests for {@link RenderLookups}.
+ */
+public class RenderLookupsTest extends AbstractRepositoryBackedIntegrationTest {
+
+    private static final ValueFactory vf = SimpleValueFactory.getInstance();
+
+    private static final IRI PAGE = vf.createIRI("http://www.metaphacts.com/lookups/page");
+    private static final IRI RESOURCE1 = vf.createIRI("http://www.metaphacts.com/lookups/r1");
+    private static final IRI RESOURCE2 = vf.createIRI("http://www.metaphacts.com/lookups/r2");
+
+    @Inject
+    @Rule
+    public NamespaceRule namespaceRule;
+
+    @Inject
+    private LabelCache labelCache;
+
+    @Before
+    public void setup() throws Exception {
+        namespaceRule.getNamespaceRegistry().set("rdfs", RDFS.NAMESPACE);
+        namespaceRule.getNamespaceRegistry().set("foaf", FOAF.NAMESPACE);
+        config.getUiConfig().setParameter("preferredLabels", "rdfs:label");
+        addStatement(vf.createStatement(PAGE, RDFS.LABEL, vf.createLiteral("page")));
+        addStatement(vf.createStatement(RESOURCE1, RDFS.LABEL, vf.createLiteral("resource 1")));
+    }
+
+    @Test
+    public void testLabelCandidatesAreFetchedInBulk() throws Exception {
+        TemplateContext tc = new TemplateContext(PAGE, repositoryRule.getRepository(), null);
+        tc.setLabelCache(labelCache);
+        tc.setNamespaceRegistry(namespaceRule.getNamespaceRegistry());
+        RenderLookups lookups = tc.getLookups();
+        lookups.addLabelCandidates(Lists.newArrayList(RESOURCE1, RESOURCE2, vf.createLiteral("no IRI")));
+
+        assertEquals("page", tc.getLabel());
+        assertEquals("resource 1", lookups.getLabelWithFallback(RESOURCE1));
+        assertFalse(lookups.getLabel(RESOURCE2).isPresent());
+        assertEquals("page", tc.getLabel());
+
+        assertEquals(4, lookups.getLabelLookups());
+        assertEquals(3, lookups.getLabelMemoHits());
+        assertEquals(1, lookups.getBulkLabelFetches());
+        assertEquals(3, lookups.getFetchedLabels());
+    }
+
+    @Test
+    public void testNamespaceResolutionIsMemoized() throws Exception {
+        TemplateContext tc = new TemplateContext(PAGE, repositoryRule.getRepository(), null);
+        tc.setNamespaceRegistry(namespaceRule.getNamespaceRegistry());
+        RenderLookups lookups = tc.getLookups();
+
+        assertEquals(FOAF.PERSON, lookups.resolveToIRI("foaf:Person").get());
+        assertEquals(FOAF.PERSON, lookups.resolveToIRI("foaf:Person").get());
+        assertSame(lookups.getPrefixMap(), lookups.getPrefixMap());
+        assertEquals(4, lookups.getNamespaceLookups());
+        assertEquals(2, lookups.getNamespaceMemoHits());
+    }
+}
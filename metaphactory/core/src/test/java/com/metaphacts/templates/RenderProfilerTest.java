@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2015-2017, metaphacts GmbH
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, you can receive a copy
+ * of the GNU Lesser General Public License from http://www.gnu.org/
+ */
+
+package com.metaphacts.templates;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URL;
+import java.util.LinkedHashSet;
+import java.util.Optional;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.collect.Sets;
+import com.google.inject.Inject;
+import com.metaphacts.cache.FieldDefinitionCache;
+import com.metaphacts.cache.LabelCache;
+import com.metaphacts.config.NamespaceRegistry;
+import com.metaphacts.junit.AbstractRepositoryBackedIntegrationTest;
+import com.metaphacts.junit.NamespaceRule;
+import com.metaphacts.templates.RenderProfile.Phase;
+import com.metaphacts.templates.RenderProfiler.HelperStatistics;
+import com.metaphacts.templates.RenderProfiler.Report;
+import com.metaphacts.templates.RenderProfiler.TemplateStatistics;
+
+/**
+ * Tests the recording and aggregation of template rendering profiles by
+ * {@link RenderProfiler}.
+ */
+public class RenderProfilerTest extends AbstractRepositoryBackedIntegrationTest {
+
+    @Inject
+    @Rule
+    public NamespaceRule namespaceRule;
+
+    @Rule
+    public TemporaryFolder testFolder = new TemporaryFolder();
+
+    @Inject
+    private LabelCache labelCache;
+
+    @Inject
+    private FieldDefinitionCache fieldDefinitionCache;
+
+    private MetaphactsHandlebars handlebars;
+
+    private TemplateStorage<Long, URL> templateStorage;
+
+    private final ValueFactory vf = SimpleValueFactory.getInstance();
+
+    private final IRI page = vf.createIRI("http://www.metaphacts.com/profiledPage");
+
+    @Before
+    public void setup() throws Exception {
+        this.templateStorage = new SimpleFileTemplateStorage(testFolder.newFolder());
+        NamespaceRegistry ns = namespaceRule.getNamespaceRegistry();
+        this.handlebars = new MetaphactsHandlebars(new FileTemplateLoader(templateStorage, ns),
+                new HandlebarsHelperRegistry(labelCache, ns, repositoryRule.getRepositoryManager(), fieldDefinitionCache));
+    }
+
+    @Test
+    public void testDisabledProfilerDoesNotRecord() throws Exception {
+        RenderProfiler profiler = new RenderProfiler(() -> false);
+        assertFalse(profiler.begin(page.stringValue()).isPresent());
+        assertNull(RenderProfile.current());
+        assertEquals(0, profiler.getReport(15, 10).getRenderings());
+    }
+
+    @Test
+    public void testProfileHelperQueries() throws Exception {
+        String select = "[[singleValueFromSelect \"SELECT ?o WHERE { BIND(?? AS ?o) }\"]]";
+        String ask = "[[#if (ask \"ASK { FILTER(?? = ??) }\")]]yes[[/if]]";
+        templateStorage.storeNewRevision(page, select + " " + select + " " + ask);
+
+        RenderProfiler profiler = new RenderProfiler(() -> true);
+        for (int i = 0; i < 2; i++) {
+            Optional<RenderProfile> profile = profiler.begin(page.stringValue());
+            assertTrue(profile.isPresent());
+            try {
+                render();
+            } finally {
+                profiler.complete(profile.get());
+            }
+            assertNull(RenderProfile.current());
+            assertTrue(profile.get().getPhaseNanos(Phase.COMPILE) > 0);
+            assertTrue(profile.get().getPhaseNanos(Phase.APPLY) > 0);
+            // identical queries are evaluated once per rendering
+            assertEquals(2, profile.get().getHelperInvocations().size());
+        }
+
+        Report report = profiler.getReport(15, 10);
+        assertEquals(2, report.getRenderings());
+        assertEquals(1, report.getTemplates().size());
+        TemplateStatistics template = report.getTemplates().get(0);
+        assertEquals(page.stringValue(), template.getTemplate());
+        assertEquals(2, template.getCount());
+        assertEquals(4, template.getHelperQueries());
+
+        assertEquals(2, report.getHelpers().size());
+        for (HelperStatistics helper : report.getHelpers()) {
+            assertEquals(2, helper.getCount());
+            assertEquals(1, helper.getMaxRows());
+            assertEquals(page.stringValue(), helper.getSlowestTemplate());
+        }
+
+        profiler.clear();
+        assertEquals(0, profiler.getReport(15, 10).getRenderings());
+    }
+
+    @Test
+    public void testRingBufferKeepsMostRecentProfiles() throws Exception {
+        RenderProfiler profiler = new RenderProfiler(() -> true);
+        for (int i = 0; i < RenderProfiler.CAPACITY + 10; i++) {
+            profiler.complete(profiler.begin("http://www.metaphacts.com/page" + i).get());
+        }
+        assertEquals(RenderProfiler.CAPACITY, profiler.getReport(15, 10).getRenderings());
+        assertEquals(10, profiler.getReport(15, 10).getTemplates().size());
+        assertTrue(profiler.getProfiles(15).stream()
+                .noneMatch(p -> p.getResource().equals("http://www.metaphacts.com/page0")));
+    }
+
+    private String render() throws Exception {
+        TemplateContext tc = new TemplateContext(page, repositoryRule.getRepository(), null);
+        tc.setNamespaceRegistry(namespaceRule.getNamespaceRegistry());
+        LinkedHashSet<String> set = Sets.newLinkedHashSet();
+        set.add(page.stringValue());
+        return TemplateUtil.compileAndReturnFirstExistingTemplate(tc, set, handlebars).get();
+    }
+}
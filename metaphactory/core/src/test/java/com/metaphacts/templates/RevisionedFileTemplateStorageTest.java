@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2015-2017, metaphacts GmbH
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, you can receive a copy
+ * of the GNU Lesser General Public License from http://www.gnu.org/
+ */
+package com.metaphacts.templates;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.SortedMap;
+import java.util.concurrent.Callable;
+
+import org.eclipse.rdf4j.model.vocabulary.FOAF;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.collect.Sets;
+
+/**
+ * Tests for {@link RevisionedFileTemplateStorage}.
+ */
+public class RevisionedFileTemplateStorageTest {
+
+    private static final long WATCHER_TIMEOUT_MS = 10000;
+
+    @Rule
+    public TemporaryFolder testFolder = new TemporaryFolder();
+
+    private File templateFolder;
+
+    @Before
+    public void setup() throws Exception {
+        templateFolder = testFolder.newFolder();
+    }
+
+    @Test
+    public void testStoreAndRollback() throws Exception {
+        RevisionedFileTemplateStorage storage = new RevisionedFileTemplateStorage(templateFolder);
+        Long first = storage.storeNewRevision(FOAF.PERSON, "first");
+        Long second = storage.storeNewRevision(FOAF.PERSON, "second");
+        assertTrue(second > first);
+        assertEquals("second", storage.getTemplateContent(FOAF.PERSON).get());
+        assertEquals("first", storage.getTemplateContent(FOAF.PERSON, first).get());
+
+        // storing identical content does not create a new revision
+        assertEquals(second, storage.storeNewRevision(FOAF.PERSON, "second"));
+
+        Long third = storage.rollback(FOAF.PERSON, first);
+        assertTrue(third > second);
+        assertEquals("first", storage.getTemplateContent(FOAF.PERSON).get());
+        SortedMap<Long, URL> revisions = storage.getRevisions(FOAF.PERSON);
+        assertEquals(Sets.newHashSet(first, second, third), revisions.keySet());
+        // content addressed, i.e. the rolled back revision shares the blob
+        assertEquals(revisions.get(first), revisions.get(third));
+    }
+
+    @Test
+    public void testDelete() throws Exception {
+        RevisionedFileTemplateStorage storage = new RevisionedFileTemplateStorage(templateFolder);
+        Long first = storage.storeNewRevision(FOAF.PERSON, "person");
+        storage.storeNewRevision(FOAF.AGENT, "agent");
+        assertEquals(Sets.newHashSet(FOAF.PERSON, FOAF.AGENT), storage.getAllStoredTemplates());
+
+        storage.deleteTemplate(FOAF.PERSON);
+        assertFalse(storage.getTemplateLocation(FOAF.PERSON).isPresent());
+        assertEquals(Sets.newHashSet(FOAF.AGENT), storage.getAllStoredTemplates());
+        // previous revisions remain available
+        assertEquals("person", storage.getTemplateContent(FOAF.PERSON, first).get());
+        storage.rollback(FOAF.PERSON, first);
+        assertEquals("person", storage.getTemplateContent(FOAF.PERSON).get());
+    }
+
+    @Test
+    public void testRestoreFromRevisionLog() throws Exception {
+        RevisionedFileTemplateStorage storage = new RevisionedFileTemplateStorage(templateFolder);
+        Long first = storage.storeNewRevision(FOAF.PERSON, "first");
+        storage.storeNewRevision(FOAF.PERSON, "second");
+        storage.storeNewRevision(FOAF.AGENT, "agent");
+        storage.deleteTemplate(FOAF.AGENT);
+        close(storage);
+
+        // simulate a crash while appending to the log
+        Files.write(new File(templateFolder, RevisionedFileTemplateStorage.REVISIONS_FOLDER + "/revisions.log").toPath(),
+                "123\tabc".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        RevisionedFileTemplateStorage restored = new RevisionedFileTemplateStorage(templateFolder);
+        assertEquals(Sets.newHashSet(FOAF.PERSON), restored.getAllStoredTemplates());
+        assertEquals("second", restored.getTemplateContent(FOAF.PERSON).get());
+        assertEquals(storage.getRevisions(FOAF.PERSON), restored.getRevisions(FOAF.PERSON));
+        assertTrue(restored.storeNewRevision(FOAF.PERSON, "third") > first);
+    }
+
+    @Test
+    public void testMigratePlainTemplateFiles() throws Exception {
+        SimpleFileTemplateStorage simple = new SimpleFileTemplateStorage(templateFolder);
+        simple.storeNewRevision(FOAF.PERSON, "person");
+        simple.storeNewRevision(FOAF.AGENT, "agent");
+
+        RevisionedFileTemplateStorage storage = new RevisionedFileTemplateStorage(templateFolder);
+        assertEquals(Sets.newHashSet(FOAF.PERSON, FOAF.AGENT), storage.getAllStoredTemplates());
+        assertEquals("person", storage.getTemplateContent(FOAF.PERSON).get());
+        assertEquals("agent", storage.getTemplateContent(FOAF.AGENT).get());
+
+        // unchanged plain files are not imported again
+        storage.storeNewRevision(FOAF.PERSON, "modified person");
+        close(storage);
+        RevisionedFileTemplateStorage restarted = new RevisionedFileTemplateStorage(templateFolder);
+        assertEquals("modified person", restarted.getTemplateContent(FOAF.PERSON).get());
+        assertEquals(2, restarted.getRevisions(FOAF.PERSON).size());
+    }
+
+    @Test
+    public void testPlainTemplateFilesAreKeptInSync() throws Exception {
+        RevisionedFileTemplateStorage storage = new RevisionedFileTemplateStorage(templateFolder);
+        Long first = storage.storeNewRevision(FOAF.PERSON, "first");
+        storage.storeNewRevision(FOAF.PERSON, "second");
+        storage.storeNewRevision(FOAF.AGENT, "agent");
+        storage.deleteTemplate(FOAF.AGENT);
+        storage.rollback(FOAF.PERSON, first);
+        close(storage);
+
+        // switching back to the simple storage keeps the templates
+        SimpleFileTemplateStorage simple = new SimpleFileTemplateStorage(templateFolder);
+        assertEquals(Sets.newHashSet(FOAF.PERSON), simple.getAllStoredTemplates());
+        assertEquals("first", simple.getTemplateContent(FOAF.PERSON).get());
+
+        // changes made with the simple storage are imported on the next start
+        simple.storeNewRevision(FOAF.PERSON, "simple");
+        simple.storeNewRevision(FOAF.AGENT, "simple agent");
+        simple.storeNewRevision(FOAF.GROUP, "group");
+        simple.deleteTemplate(FOAF.GROUP);
+        RevisionedFileTemplateStorage restarted = new RevisionedFileTemplateStorage(templateFolder);
+        assertEquals(Sets.newHashSet(FOAF.PERSON, FOAF.AGENT), restarted.getAllStoredTemplates());
+        assertEquals("simple", restarted.getTemplateContent(FOAF.PERSON).get());
+        assertEquals(4, restarted.getRevisions(FOAF.PERSON).size());
+
+        close(restarted);
+        simple.deleteTemplate(FOAF.AGENT);
+        restarted = new RevisionedFileTemplateStorage(templateFolder);
+        assertEquals(Sets.newHashSet(FOAF.PERSON), restarted.getAllStoredTemplates());
+    }
+
+    @Test
+    public void testPlainTemplateFilesAreSyncedWhileRunning() throws Exception {
+        RevisionedFileTemplateStorage storage = new RevisionedFileTemplateStorage(templateFolder);
+        storage.storeNewRevision(FOAF.PERSON, "person");
+        assertFalse(storage.getTemplateLocation(FOAF.AGENT).isPresent());
+
+        // e.g. installed by an app
+        SimpleFileTemplateStorage simple = new SimpleFileTemplateStorage(templateFolder);
+        simple.storeNewRevision(FOAF.AGENT, "agent");
+        simple.storeNewRevision(FOAF.PERSON, "app person");
+        awaitTrue(() -> storage.getAllStoredTemplates().contains(FOAF.AGENT));
+        assertEquals("agent", storage.getTemplateContent(FOAF.AGENT).get());
+        awaitTrue(() -> storage.getTemplateContent(FOAF.PERSON).get().equals("app person"));
+        assertEquals(2, storage.getRevisions(FOAF.PERSON).size());
+
+        simple.deleteTemplate(FOAF.AGENT);
+        awaitTrue(() -> !storage.getAllStoredTemplates().contains(FOAF.AGENT));
+        assertFalse(storage.getTemplateLocation(FOAF.AGENT).isPresent());
+    }
+
+    /**
+     * Stops watching the storage folder, such that changes made by a
+     * subsequently created storage are not imported.
+     */
+    private static void close(TemplateStorage<Long, URL> storage) {
+        storage.getResolutionIndex().get().close();
+    }
+
+    private static void awaitTrue(Callable<Boolean> condition) throws Exception {
+        long deadline = System.currentTimeMillis() + WATCHER_TIMEOUT_MS;
+        while (!condition.call()) {
+            assertTrue("Change has not been picked up by the watcher", System.currentTimeMillis() < deadline);
+            Thread.sleep(50);
+        }
+    }
+}
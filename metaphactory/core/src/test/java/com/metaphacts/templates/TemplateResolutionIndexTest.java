@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2015-2017, metaphacts GmbH
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, you can receive a copy
+ * of the GNU Lesser General Public License from http://www.gnu.org/
+ */
+package com.metaphacts.templates;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.vocabulary.FOAF;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.metaphacts.templates.TemplateResolutionIndex.ResolvedTemplate;
+
+/**
+ * Tests for {@link TemplateResolutionIndex} as used by the
+ * {@link SimpleFileTemplateStorage}.
+ */
+public class TemplateResolutionIndexTest {
+
+    private static final long WATCHER_TIMEOUT_MS = 10000;
+
+    @Rule
+    public TemporaryFolder testFolder = new TemporaryFolder();
+
+    private File templateFolder;
+
+    private SimpleFileTemplateStorage storage;
+
+    private TemplateResolutionIndex index;
+
+    @Before
+    public void setup() throws Exception {
+        templateFolder = testFolder.newFolder();
+        storage = new SimpleFileTemplateStorage(templateFolder);
+        index = storage.getResolutionIndex().get();
+        assertTrue(index.isActive());
+    }
+
+    @Test
+    public void testNegativeEntryIsInvalidatedOnStore() throws Exception {
+        assertFalse(index.resolve(FOAF.PERSON).isPresent());
+        assertEquals(1, index.size());
+
+        storage.storeNewRevision(FOAF.PERSON, "person template");
+        Optional<ResolvedTemplate> resolved = index.resolve(FOAF.PERSON);
+        assertTrue(resolved.isPresent());
+        assertEquals("person template", resolved.get().getContent());
+        assertTrue(storage.getTemplateLocation(FOAF.PERSON).isPresent());
+
+        storage.deleteTemplate(FOAF.PERSON);
+        assertFalse(index.resolve(FOAF.PERSON).isPresent());
+    }
+
+    @Test
+    public void testModificationChangesVersion() throws Exception {
+        storage.storeNewRevision(FOAF.PERSON, "first");
+        ResolvedTemplate first = index.resolve(FOAF.PERSON).get();
+        assertEquals(first.getVersion(), index.resolve(FOAF.PERSON).get().getVersion());
+
+        storage.storeNewRevision(FOAF.PERSON, "second");
+        ResolvedTemplate second = index.resolve(FOAF.PERSON).get();
+        assertNotEquals(first.getVersion(), second.getVersion());
+        assertEquals("second", second.getContent());
+    }
+
+    @Test
+    public void testExternalChangesArePickedUpByWatcher() throws Exception {
+        IRI iri = FOAF.AGENT;
+        File file = new File(templateFolder, AbstractFileTemplateStorage.normalize(iri) + ".html");
+        assertFalse(index.resolve(iri).isPresent());
+
+        Files.write(file.toPath(), "agent template".getBytes(StandardCharsets.UTF_8));
+        awaitTrue(() -> index.resolve(iri).isPresent());
+        long version = index.resolve(iri).get().getVersion();
+
+        Files.write(file.toPath(), "modified agent template".getBytes(StandardCharsets.UTF_8));
+        awaitTrue(() -> index.resolve(iri).get().getVersion() != version);
+        assertEquals("modified agent template", index.resolve(iri).get().getContent());
+
+        Files.delete(file.toPath());
+        awaitTrue(() -> !index.resolve(iri).isPresent());
+    }
+
+    @Test
+    public void testFallbackWithoutWatcher() throws Exception {
+        index.close();
+        assertFalse(index.isActive());
+        assertFalse(index.resolve(FOAF.PERSON).isPresent());
+        storage.storeNewRevision(FOAF.PERSON, "person template");
+        assertTrue(index.resolve(FOAF.PERSON).isPresent());
+        assertEquals(0, index.size());
+
+        // unchanged templates keep their version, i.e. are not recompiled
+        ResolvedTemplate first = index.resolve(FOAF.PERSON).get();
+        assertEquals(first.getVersion(), index.resolve(FOAF.PERSON).get().getVersion());
+
+        File file = new File(templateFolder, AbstractFileTemplateStorage.normalize(FOAF.PERSON) + ".html");
+        Files.write(file.toPath(), "modified person template".getBytes(StandardCharsets.UTF_8));
+        assertTrue(file.setLastModified(file.lastModified() + 2000));
+        ResolvedTemplate second = index.resolve(FOAF.PERSON).get();
+        assertNotEquals(first.getVersion(), second.getVersion());
+        assertEquals("modified person template", second.getContent());
+        assertEquals(second.getVersion(), index.resolve(FOAF.PERSON).get().getVersion());
+
+        Files.delete(file.toPath());
+        assertFalse(index.resolve(FOAF.PERSON).isPresent());
+    }
+
+    private static void awaitTrue(Supplier<Boolean> condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + WATCHER_TIMEOUT_MS;
+        while (!condition.get()) {
+            assertTrue("Change has not been picked up by the watcher", System.currentTimeMillis() < deadline);
+            Thread.sleep(50);
+        }
+    }
+}
@@ -27,6 +27,7 @@
 
 import com.google.common.collect.Lists;
 
+import com.metaphacts.cache.FieldDefinitionCache;
 import com.metaphacts.cache.LabelCache;
 import com.metaphacts.config.NamespaceRegistry;
 import org.eclipse.rdf4j.model.IRI;
@@ -79,6 +80,9 @@ public class TemplateUtilIntegrationTest extends AbstractRepositoryBackedIntegra
     @Inject
     private LabelCache labelCache;
 
+    @Inject
+    private FieldDefinitionCache fieldDefinitionCache;
+
     private MetaphactsHandlebars handlebars;
 
     private TemplateStorage<Long, URL> templateStorage;
@@ -90,7 +94,7 @@ public void setup() throws Exception {
         this.templateStorage = new SimpleFileTemplateStorage(testFolder.newFolder());
         NamespaceRegistry ns = namespaceRule.getNamespaceRegistry();
         TemplateLoader loader = new FileTemplateLoader(templateStorage, ns);
-        this.handlebars = new MetaphactsHandlebars(loader, new HandlebarsHelperRegistry(labelCache, ns, repositoryRule.getRepositoryManager()));
+        this.handlebars = new MetaphactsHandlebars(loader, new HandlebarsHelperRegistry(labelCache, ns, repositoryRule.getRepositoryManager(), fieldDefinitionCache));
     }
 
 
@@ -208,6 +212,31 @@ public void getPageDifferentFromContextValue() throws Exception{
         );
     }
 
+    @Test
+    public void recordRenderDependenciesTest() throws Exception{
+        IRI page = vf.createIRI("http://www.metaphacts.com/testpage123");
+        templateStorage.storeNewRevision(page, "Page [[> \"" + FOAF.PERSON.stringValue() + "\"]] of [[singleValueFromSelect \"SELECT ?o WHERE { BIND(?? AS ?o) }\"]]");
+        templateStorage.storeNewRevision(FOAF.PERSON, "including person template");
+
+        LinkedHashSet<String> set = Sets.newLinkedHashSet();
+        set.add(FOAF.AGENT.stringValue());
+        set.add(page.stringValue());
+
+        RenderDependencies deps = RenderDependencies.begin();
+        try {
+            assertEquals(
+                "Page including person template of " + page.stringValue(),
+                TemplateUtil.compileAndReturnFirstExistingTemplate(context(page), set, this.handlebars).get()
+            );
+        } finally {
+            deps.end();
+        }
+        // non-existing templates which have been probed are dependencies as well
+        Assert.assertThat(deps.getTemplates(), IsIterableContainingInAnyOrder.containsInAnyOrder(FOAF.AGENT, page, FOAF.PERSON));
+        Assert.assertTrue(deps.getResources().contains(page));
+        Assert.assertNull(RenderDependencies.current());
+    }
+
     private TemplateContext context(IRI iri){
         TemplateContext context = new TemplateContext(iri, this.repositoryRule.getRepository(), null);
         context.setNamespaceRegistry(namespaceRule.getNamespaceRegistry());
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2015-2017, metaphacts GmbH
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, you can receive a copy
+ * of the GNU Lesser General Public License from http://www.gnu.org/
+ */
+package com.metaphacts.templates;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URL;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.eclipse.rdf4j.model.vocabulary.FOAF;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.collect.Sets;
+import com.google.inject.Inject;
+import com.metaphacts.cache.FieldDefinitionCache;
+import com.metaphacts.cache.LabelCache;
+import com.metaphacts.config.NamespaceRegistry;
+import com.metaphacts.junit.AbstractRepositoryBackedIntegrationTest;
+import com.metaphacts.junit.NamespaceRule;
+import com.metaphacts.templates.TemplateWarmup.Report;
+import com.metaphacts.templates.TemplateWarmup.TemplateStatus;
+
+/**
+ * Tests for {@link TemplateWarmup}.
+ */
+public class TemplateWarmupTest extends AbstractRepositoryBackedIntegrationTest {
+
+    @Inject
+    @Rule
+    public NamespaceRule namespaceRule;
+
+    @Rule
+    public TemporaryFolder testFolder = new TemporaryFolder();
+
+    @Inject
+    private LabelCache labelCache;
+
+    @Inject
+    private FieldDefinitionCache fieldDefinitionCache;
+
+    private MetaphactsHandlebars handlebars;
+
+    private TemplateStorage<Long, URL> templateStorage;
+
+    @Before
+    public void setup() throws Exception {
+        this.templateStorage = new SimpleFileTemplateStorage(testFolder.newFolder());
+        NamespaceRegistry ns = namespaceRule.getNamespaceRegistry();
+        this.handlebars = new MetaphactsHandlebars(new FileTemplateLoader(templateStorage, ns),
+                new HandlebarsHelperRegistry(labelCache, ns, repositoryRule.getRepositoryManager(), fieldDefinitionCache));
+    }
+
+    @Test
+    public void testWarmAll() throws Exception {
+        templateStorage.storeNewRevision(FOAF.PERSON, "Person [[> \"" + FOAF.AGENT.stringValue() + "\"]]");
+        templateStorage.storeNewRevision(FOAF.AGENT, "Agent [[> \"" + FOAF.NAME.stringValue() + "\"]]");
+        templateStorage.storeNewRevision(FOAF.GROUP, "[[#if true]]not closed");
+
+        Report report = new TemplateWarmup(templateStorage, handlebars, true).warmAll();
+        Map<String, TemplateStatus> status = report.getTemplates().stream()
+                .collect(Collectors.toMap(TemplateStatus::getTemplate, Function.identity()));
+        assertEquals(3, status.size());
+        assertEquals(1, report.getErrors().size());
+        assertNotNull(status.get(FOAF.GROUP.stringValue()).getError());
+        assertNull(status.get(FOAF.PERSON.stringValue()).getError());
+        assertEquals(Sets.newHashSet(FOAF.NAME.stringValue()),
+                status.get(FOAF.PERSON.stringValue()).getMissingPartials());
+    }
+
+    @Test
+    public void testWarmAllAsync() throws Exception {
+        templateStorage.storeNewRevision(FOAF.PERSON, "Person");
+        TemplateWarmup warmup = new TemplateWarmup(templateStorage, handlebars, true);
+        Report report = warmup.warmAllAsync().get();
+        assertEquals(1, report.getTemplates().size());
+        assertTrue(report.getErrors().isEmpty());
+        assertSame(report, warmup.getLastReport().get());
+    }
+}
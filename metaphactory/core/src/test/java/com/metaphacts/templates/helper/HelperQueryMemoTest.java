@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2015-2017, metaphacts GmbH
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, you can receive a copy
+ * of the GNU Lesser General Public License from http://www.gnu.org/
+ */
+package com.metaphacts.templates.helper;
+
+import static org.junit.Assert.assertEquals;
+
+import java.net.URL;
+import java.util.LinkedHashSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.query.BooleanQuery;
+import org.eclipse.rdf4j.query.MalformedQueryException;
+import org.eclipse.rdf4j.query.QueryLanguage;
+import org.eclipse.rdf4j.query.TupleQuery;
+import org.eclipse.rdf4j.repository.Repository;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.repository.RepositoryException;
+import org.eclipse.rdf4j.repository.base.RepositoryConnectionWrapper;
+import org.eclipse.rdf4j.repository.base.RepositoryWrapper;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.collect.Sets;
+import com.google.inject.Inject;
+import com.metaphacts.cache.FieldDefinitionCache;
+import com.metaphacts.cache.LabelCache;
+import com.metaphacts.config.NamespaceRegistry;
+import com.metaphacts.junit.AbstractRepositoryBackedIntegrationTest;
+import com.metaphacts.junit.NamespaceRule;
+import com.metaphacts.templates.FileTemplateLoader;
+import com.metaphacts.templates.HandlebarsHelperRegistry;
+import com.metaphacts.templates.MetaphactsHandlebars;
+import com.metaphacts.templates.SimpleFileTemplateStorage;
+import com.metaphacts.templates.TemplateContext;
+import com.metaphacts.templates.TemplateStorage;
+import com.metaphacts.templates.TemplateUtil;
+
+/**
+ * Tests the deduplication and prefetching of helper queries by
+ * {@link HelperQueryMemo} against a repository with artificial latency. The
+ * timings of sequential and concurrent evaluation are logged, but not
+ * asserted.
+ */
+public class HelperQueryMemoTest extends AbstractRepositoryBackedIntegrationTest {
+
+    private static final Logger logger = LogManager.getLogger(HelperQueryMemoTest.class);
+
+    private static final long LATENCY_MS = 100;
+
+    @Inject
+    @Rule
+    public NamespaceRule namespaceRule;
+
+    @Rule
+    public TemporaryFolder testFolder = new TemporaryFolder();
+
+    @Inject
+    private LabelCache labelCache;
+
+    @Inject
+    private FieldDefinitionCache fieldDefinitionCache;
+
+    private MetaphactsHandlebars handlebars;
+
+    private TemplateStorage<Long, URL> templateStorage;
+
+    private LatencyInjectingRepository repository;
+
+    private final ValueFactory vf = SimpleValueFactory.getInstance();
+
+    private final IRI page = vf.createIRI("http://www.metaphacts.com/helperQueryPage");
+
+    /**
+     * Delays the preparation of every query to simulate the round-trip to a
+     * remote SPARQL endpoint.
+     */
+    private static class LatencyInjectingRepository extends RepositoryWrapper {
+        final AtomicInteger preparedQueries = new AtomicInteger();
+        final long latency;
+        volatile Thread lastPreparingThread;
+
+        LatencyInjectingRepository(Repository delegate, long latency) {
+            super(delegate);
+            this.latency = latency;
+        }
+
+        @Override
+        public RepositoryConnection getConnection() throws RepositoryException {
+            return new RepositoryConnectionWrapper(this, super.getConnection()) {
+                @Override
+                public TupleQuery prepareTupleQuery(QueryLanguage ql, String query, String baseURI)
+                        throws MalformedQueryException, RepositoryException {
+                    delay();
+                    return super.prepareTupleQuery(ql, query, baseURI);
+                }
+
+                @Override
+                public BooleanQuery prepareBooleanQuery(QueryLanguage ql, String query, String baseURI)
+                        throws MalformedQueryException, RepositoryException {
+                    delay();
+                    return super.prepareBooleanQuery(ql, query, baseURI);
+                }
+            };
+        }
+
+        private void delay() {
+            preparedQueries.incrementAndGet();
+            lastPreparingThread = Thread.currentThread();
+            try {
+                Thread.sleep(latency);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Before
+    public void setup() throws Exception {
+        this.templateStorage = new SimpleFileTemplateStorage(testFolder.newFolder());
+        NamespaceRegistry ns = namespaceRule.getNamespaceRegistry();
+        this.handlebars = new MetaphactsHandlebars(new FileTemplateLoader(templateStorage, ns),
+                new HandlebarsHelperRegistry(labelCache, ns, repositoryRule.getRepositoryManager(), fieldDefinitionCache));
+        this.repository = new LatencyInjectingRepository(repositoryRule.getRepository(), LATENCY_MS);
+    }
+
+    @Test
+    public void testIdenticalQueriesAreEvaluatedOnce() throws Exception {
+        String select = "[[singleValueFromSelect \"SELECT ?o WHERE { BIND(?? AS ?o) }\"]]";
+        String ask = "[[#if (ask \"ASK { FILTER(?? = ??) }\")]]yes[[/if]]";
+        templateStorage.storeNewRevision(page, select + " " + select + " " + ask + " " + ask);
+
+        TemplateContext tc = context();
+        assertEquals(
+            page.stringValue() + " " + page.stringValue() + " yes yes",
+            render(tc)
+        );
+        assertEquals(2, repository.preparedQueries.get());
+        assertEquals(2, tc.getHelperQueryMemo().getEvaluatedQueries());
+        assertEquals(2, tc.getHelperQueryMemo().getPrefetchedQueries());
+        assertEquals(4, tc.getHelperQueryMemo().getMemoHits());
+    }
+
+    @Test
+    public void testQueuedQueryIsEvaluatedByRenderingThread() throws Exception {
+        // another rendering occupies all threads of the executor and its queue
+        LatencyInjectingRepository slowRepository = new LatencyInjectingRepository(repositoryRule.getRepository(), 10 * LATENCY_MS);
+        StringBuilder otherTemplate = new StringBuilder();
+        for (int i = 0; i < HelperQueryMemo.MAX_CONCURRENT_QUERIES + 1; i++) {
+            otherTemplate.append("[[singleValueFromSelect \"SELECT ?o WHERE { BIND(<http://www.metaphacts.com/other")
+                .append(i).append("> AS ?o) }\"]]\n");
+        }
+        TemplateContext otherContext = new TemplateContext(page, slowRepository, null);
+        otherContext.setNamespaceRegistry(namespaceRule.getNamespaceRegistry());
+        otherContext.getHelperQueryMemo().prefetch(otherContext, otherTemplate.toString());
+
+        templateStorage.storeNewRevision(page, "[[singleValueFromSelect \"SELECT ?o WHERE { BIND(?? AS ?o) }\"]]");
+        TemplateContext tc = context();
+        assertEquals(page.stringValue(), render(tc));
+        assertEquals(1, tc.getHelperQueryMemo().getPrefetchedQueries());
+        assertEquals(1, repository.preparedQueries.get());
+        // did not wait for the queries of the other rendering
+        assertEquals(Thread.currentThread(), repository.lastPreparingThread);
+    }
+
+    @Test
+    public void testPrefetchQueries() throws Exception {
+        final int queries = 12;
+        StringBuilder template = new StringBuilder();
+        for (int i = 0; i < queries; i++) {
+            template.append("[[singleValueFromSelect \"SELECT ?o WHERE { BIND(<http://www.metaphacts.com/")
+                .append(i).append("> AS ?o) }\"]]\n");
+        }
+        templateStorage.storeNewRevision(page, template.toString());
+
+        // baseline: applying the template directly evaluates the queries one after the other
+        long start = System.currentTimeMillis();
+        String sequentialHtml = handlebars.compileInline(template.toString()).apply(context());
+        long sequential = System.currentTimeMillis() - start;
+
+        start = System.currentTimeMillis();
+        TemplateContext tc = context();
+        String prefetchedHtml = render(tc);
+        long prefetched = System.currentTimeMillis() - start;
+
+        logger.info("Rendering {} helper queries with {} ms latency: sequential {} ms, prefetched {} ms.",
+                queries, LATENCY_MS, sequential, prefetched);
+        assertEquals(sequentialHtml, prefetchedHtml);
+        assertEquals(2 * queries, repository.preparedQueries.get());
+        assertEquals(queries, tc.getHelperQueryMemo().getEvaluatedQueries());
+        assertEquals(queries, tc.getHelperQueryMemo().getPrefetchedQueries());
+        assertEquals(queries, tc.getHelperQueryMemo().getMemoHits());
+    }
+
+    private String render(TemplateContext tc) throws Exception {
+        LinkedHashSet<String> set = Sets.newLinkedHashSet();
+        set.add(page.stringValue());
+        return TemplateUtil.compileAndReturnFirstExistingTemplate(tc, set, handlebars).get();
+    }
+
+    private TemplateContext context() {
+        TemplateContext context = new TemplateContext(page, repository, null);
+        context.setNamespaceRegistry(namespaceRule.getNamespaceRegistry());
+        return context;
+    }
+}
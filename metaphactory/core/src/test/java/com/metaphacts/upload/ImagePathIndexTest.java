@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2015-2017, metaphacts GmbH
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, you can receive a copy
+ * of the GNU Lesser General Public License from http://www.gnu.org/
+ */
+
+package com.metaphacts.upload;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.BooleanSupplier;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Tests for {@link ImagePathIndex}.
+ */
+public class ImagePathIndexTest {
+
+    private static final List<String> extensions = ImmutableList.of("jpg", "tif", "png");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testScanAndResolve() throws Exception {
+        Path root = folder.getRoot().toPath();
+        Files.createFile(root.resolve("a.png"));
+        Files.createFile(root.resolve("a.jpg"));
+        Files.createFile(root.resolve("b.tif"));
+
+        ImagePathIndex index = ImagePathIndex.forFolder(root);
+        try {
+            waitFor(index::isScanned);
+            assertTrue(index.contains("a.png"));
+            // extension order decides
+            assertEquals(Optional.of(root.resolve("a.jpg")), index.resolve("a", extensions));
+            assertEquals(Optional.of(root.resolve("a.png")), index.resolve("a.png", extensions));
+            assertEquals(Optional.of(root.resolve("b.tif")), index.resolve("b", extensions));
+            assertFalse(index.resolve("c", extensions).isPresent());
+        } finally {
+            index.close();
+        }
+    }
+
+    @Test
+    public void testWatchFolder() throws Exception {
+        Path root = folder.getRoot().toPath();
+        ImagePathIndex index = ImagePathIndex.forFolder(root);
+        try {
+            waitFor(index::isScanned);
+            Files.createFile(root.resolve("new.jpg"));
+            waitFor(() -> index.contains("new.jpg"));
+            Files.delete(root.resolve("new.jpg"));
+            waitFor(() -> !index.contains("new.jpg"));
+        } finally {
+            index.close();
+        }
+    }
+
+    @Test
+    public void testHooksAndFallback() throws Exception {
+        Path root = folder.getRoot().toPath();
+        // neither scanned nor watched
+        ImagePathIndex index = new ImagePathIndex(root);
+
+        Path uploaded = Files.createFile(root.resolve("uploaded.jpg"));
+        index.add(uploaded);
+        assertEquals(Optional.of(uploaded), index.resolve("uploaded", extensions));
+        Files.delete(uploaded);
+        index.remove(uploaded);
+        assertFalse(index.resolve("uploaded", extensions).isPresent());
+
+        Files.createFile(root.resolve("external.png"));
+        assertFalse(index.contains("external.png"));
+        assertEquals(Optional.of(root.resolve("external.png")), index.resolve("external", extensions));
+        assertTrue(index.contains("external.png"));
+    }
+
+    @Test
+    public void testDeletedFilesAreNotResolved() throws Exception {
+        Path root = folder.getRoot().toPath();
+        ImagePathIndex index = new ImagePathIndex(root);
+        Files.createFile(root.resolve("a.png"));
+        Files.createFile(root.resolve("b.jpg"));
+        index.scan();
+        assertTrue(index.contains("b.jpg"));
+
+        // deleted without notice, e.g. on a network file system
+        index.add(root.resolve("a.jpg"));
+        assertEquals(Optional.of(root.resolve("a.png")), index.resolve("a", extensions));
+        assertFalse(index.contains("a.jpg"));
+
+        // re-indexing drops deleted files
+        Files.delete(root.resolve("b.jpg"));
+        index.scan();
+        assertFalse(index.contains("b.jpg"));
+        assertTrue(index.contains("a.png"));
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        // the watch service may poll the file system (e.g. on macOS)
+        long deadline = System.currentTimeMillis() + 30000;
+        while (!condition.getAsBoolean()) {
+            assertTrue("Timed out", System.currentTimeMillis() < deadline);
+            Thread.sleep(50);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2015-2017, metaphacts GmbH
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, you can receive a copy
+ * of the GNU Lesser General Public License from http://www.gnu.org/
+ */
+
+package com.metaphacts.upload.tiles;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for {@link TilePyramid}.
+ */
+public class TilePyramidTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testLevels() {
+        assertEquals(0, TilePyramid.getMaxLevel(1, 1));
+        assertEquals(1, TilePyramid.getMaxLevel(2, 1));
+        assertEquals(10, TilePyramid.getMaxLevel(1000, 700));
+        assertEquals(10, TilePyramid.getMaxLevel(1024, 700));
+        assertEquals(11, TilePyramid.getMaxLevel(1025, 700));
+
+        assertEquals(1000, TilePyramid.getLevelSize(1000, 10, 10));
+        assertEquals(500, TilePyramid.getLevelSize(1000, 10, 9));
+        assertEquals(4, TilePyramid.getLevelSize(1000, 10, 2));
+        assertEquals(1, TilePyramid.getLevelSize(700, 10, 0));
+    }
+
+    @Test
+    public void testStripHeight() {
+        // images of up to 32M pixels are read at once
+        assertEquals(4096, TilePyramid.getStripHeight(8192, 4000));
+        assertEquals(512, TilePyramid.getStripHeight(65536, 1000));
+        // the number of strips is bounded for tall images
+        assertEquals(256, TilePyramid.getStripHeight(200000, 4096));
+        assertEquals(512, TilePyramid.getStripHeight(200000, 4097));
+        assertEquals(TilePyramid.MAX_STRIPS * 256, TilePyramid.getStripHeight(1000000, 65536));
+    }
+
+    @Test
+    public void testGenerate() throws Exception {
+        Path image = createImage("test.png", 1000, 700);
+        TilePyramid pyramid = new TilePyramid(image);
+        assertFalse(pyramid.getCurrentVersion().isPresent());
+
+        String version = pyramid.generate();
+        assertEquals(version, pyramid.getCurrentVersion().get());
+        assertTrue(pyramid.isUpToDate());
+        assertTrue(new String(Files.readAllBytes(pyramid.getDescriptor(version)), "UTF-8")
+                .contains("<Size Width=\"1000\" Height=\"700\"/>"));
+
+        // full resolution: 4x3 tiles, cropped at the right and bottom
+        assertSize(256, 256, pyramid.getTile(version, 10, 0, 0));
+        assertSize(1000 - 3 * 256, 700 - 2 * 256, pyramid.getTile(version, 10, 3, 2));
+        assertFalse(Files.exists(pyramid.getTile(version, 10, 4, 0)));
+        // 500x350 -> 2x2 tiles
+        assertSize(500 - 256, 350 - 256, pyramid.getTile(version, 9, 1, 1));
+        assertSize(250, 175, pyramid.getTile(version, 8, 0, 0));
+        assertSize(1, 1, pyramid.getTile(version, 0, 0, 0));
+        assertSize(256, 179, pyramid.getThumbnail(version));
+
+        // the left half of the image is red, the right half blue
+        BufferedImage tile = ImageIO.read(pyramid.getTile(version, 8, 0, 0).toFile());
+        assertColor(Color.RED, tile.getRGB(10, 10));
+        assertColor(Color.BLUE, tile.getRGB(240, 170));
+    }
+
+    @Test
+    public void testRegenerateModifiedImage() throws Exception {
+        Path image = createImage("test.jpg", 300, 200);
+        TilePyramid pyramid = new TilePyramid(image);
+        String version = pyramid.generate();
+        assertEquals(version, pyramid.generate());
+
+        Files.setLastModifiedTime(image, FileTime.fromMillis(Files.getLastModifiedTime(image).toMillis() + 1000));
+        assertFalse(pyramid.isUpToDate());
+        String newVersion = pyramid.generate();
+        assertFalse(version.equals(newVersion));
+        assertTrue(pyramid.isUpToDate());
+        // outdated versions are deleted
+        assertFalse(Files.exists(pyramid.getDescriptor(version)));
+    }
+
+    @Test
+    public void testKeepNewerVersionsAndGenerationsInProgress() throws Exception {
+        Path image = createImage("test.jpg", 300, 200);
+        TilePyramid pyramid = new TilePyramid(image);
+        Path pyramidFolder = pyramid.getDescriptor(pyramid.getExpectedVersion()).getParent().getParent();
+        Path older = Files.createDirectories(pyramidFolder.resolve(
+                Long.toHexString(Files.getLastModifiedTime(image).toMillis() - 1000)));
+        Path newer = Files.createDirectories(pyramidFolder.resolve(
+                Long.toHexString(Files.getLastModifiedTime(image).toMillis() + 1000)));
+        Path inProgress = Files.createDirectories(pyramidFolder.resolve("tmp-123"));
+
+        pyramid.generate();
+        assertFalse(Files.exists(older));
+        assertTrue(Files.exists(newer));
+        assertTrue(Files.exists(inProgress));
+    }
+
+    private Path createImage(String name, int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(Color.RED);
+        g.fillRect(0, 0, width / 2, height);
+        g.setColor(Color.BLUE);
+        g.fillRect(width / 2, 0, width - width / 2, height);
+        g.dispose();
+        Path file = folder.getRoot().toPath().resolve(name);
+        ImageIO.write(image, name.substring(name.lastIndexOf('.') + 1), file.toFile());
+        return file;
+    }
+
+    private static void assertSize(int width, int height, Path file) throws IOException {
+        assertTrue("Missing " + file, Files.exists(file));
+        BufferedImage image = ImageIO.read(file.toFile());
+        assertEquals(width, image.getWidth());
+        assertEquals(height, image.getHeight());
+    }
+
+    private static void assertColor(Color expected, int rgb) {
+        Color actual = new Color(rgb);
+        // JPEG compression
+        assertTrue("Expected " + expected + " but was " + actual,
+                Math.abs(expected.getRed() - actual.getRed()) < 16
+                        && Math.abs(expected.getGreen() - actual.getGreen()) < 16
+                        && Math.abs(expected.getBlue() - actual.getBlue()) < 16);
+    }
+}
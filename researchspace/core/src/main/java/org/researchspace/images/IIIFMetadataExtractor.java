@@ -18,13 +18,27 @@
 
 package org.researchspace.images;
 
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import org.apache.http.HttpResponse;
-import org.apache.http.client.HttpClient;
+import org.apache.http.HttpHeaders;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.eclipse.rdf4j.model.IRI;
 import org.eclipse.rdf4j.model.Model;
 import org.eclipse.rdf4j.model.ValueFactory;
@@ -33,43 +47,115 @@
 import org.eclipse.rdf4j.model.vocabulary.DCTERMS;
 import org.researchspace.vocabulary.CRMdig;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import com.metaphacts.config.Configuration;
 import com.metaphacts.upload.MetadataExtractor;
 
 /**
+ * Extracts the pixel size of uploaded images from the info.json of the IIIF
+ * image server.
+ *
+ * <p>
+ * Requests are sent through a shared pooled HTTP client and are retried with
+ * exponential backoff, since the image server may not have picked up a newly
+ * uploaded image yet. Successful responses are cached by URL. Asynchronous
+ * extraction runs on a small bounded executor, extraction fails if too many
+ * requests are waiting.
+ * </p>
+ *
  * @author Yury Emelyanov
  */
 @Singleton
 public class IIIFMetadataExtractor implements MetadataExtractor {
 
-    @Inject
-    Configuration config;
-    
+    private static final Logger logger = LogManager.getLogger(IIIFMetadataExtractor.class);
+
+    static final int MAX_ATTEMPTS = 4;
+    static final long INITIAL_BACKOFF_MILLIS = 500;
+
+    private static final int THREADS = 4;
+    private static final int MAX_QUEUED_REQUESTS = 100;
+    private static final int MAX_CONNECTIONS = 10;
+    private static final int TIMEOUT_MILLIS = 30000;
+    private static final long CACHE_TTL_MINUTES = 60;
+    private static final long CACHE_SIZE = 1000;
+
     private static Pattern idRegex = Pattern.compile("(^.*)\\/(.*)$");
 
+    private final Supplier<String> iiifUrl;
+    private final int maxAttempts;
+    private final long initialBackoffMillis;
+    private final CloseableHttpClient httpClient;
+    private final ThreadPoolExecutor executor;
+    private final Cache<String, JsonNode> infoCache = CacheBuilder.newBuilder()
+            .expireAfterWrite(CACHE_TTL_MINUTES, TimeUnit.MINUTES).maximumSize(CACHE_SIZE).build();
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Inject
+    public IIIFMetadataExtractor(Configuration config) {
+        this(() -> config.getEnvironmentConfig().getString("iiif.url"), MAX_ATTEMPTS, INITIAL_BACKOFF_MILLIS);
+    }
+
+    IIIFMetadataExtractor(Supplier<String> iiifUrl, int maxAttempts, long initialBackoffMillis) {
+        this.iiifUrl = iiifUrl;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffMillis = initialBackoffMillis;
+
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(MAX_CONNECTIONS);
+        connectionManager.setDefaultMaxPerRoute(MAX_CONNECTIONS);
+        RequestConfig requestConfig = RequestConfig.custom().setConnectTimeout(TIMEOUT_MILLIS)
+                .setConnectionRequestTimeout(TIMEOUT_MILLIS).setSocketTimeout(TIMEOUT_MILLIS).build();
+        this.httpClient = HttpClientBuilder.create().setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig).build();
+
+        this.executor = new ThreadPoolExecutor(THREADS, THREADS, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(MAX_QUEUED_REQUESTS),
+                new ThreadFactoryBuilder().setNameFormat("iiif-metadata-%d").setDaemon(true).build());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
 
     @Override
     public Model extractMetadata(IRI newId, Model graph) throws Exception {
-        String assetId = assetIdFromUri(newId);
-        //call info.json endpoint
-
-        String iiifUrl = config.getEnvironmentConfig().getString("iiif.url");
+        return toModel(newId, getInfo(getInfoUrl(newId)));
+    }
 
-        HttpClient httpClient = HttpClientBuilder.create().build();
-        HttpGet get = new HttpGet(iiifUrl + "/" + assetId + "/info.json");
-        HttpResponse httpResponse = httpClient.execute(get);
+    @Override
+    public CompletableFuture<Model> extractMetadataAsync(IRI newId, Model graph) {
+        CompletableFuture<Model> result = new CompletableFuture<>();
+        try {
+            String url = getInfoUrl(newId);
+            executor.execute(() -> {
+                try {
+                    result.complete(toModel(newId, getInfo(url)));
+                } catch (Exception e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (IllegalArgumentException | RejectedExecutionException e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
 
-        //responce should be actually json-ld and you can parse it to Model
-        ObjectMapper mapper = new ObjectMapper();
-        JsonNode jsonResponse = mapper.readTree(httpResponse.getEntity().getContent());
+    private String getInfoUrl(IRI newId) {
+        //call info.json endpoint
+        return iiifUrl.get() + "/" + assetIdFromUri(newId) + "/info.json";
+    }
 
-        long width = jsonResponse.path("width").asLong();
-        long height = jsonResponse.path("height").asLong();
+    private Model toModel(IRI newId, JsonNode info) {
+        long width = info.path("width").asLong();
+        long height = info.path("height").asLong();
 
         ValueFactory vf = SimpleValueFactory.getInstance();
 
@@ -81,6 +167,77 @@ public Model extractMetadata(IRI newId, Model graph) throws Exception {
         return model;
     }
 
+    /**
+     * The (cached) info.json, concurrent requests for the same URL wait for
+     * a single request to the image server.
+     */
+    JsonNode getInfo(String url) throws IOException {
+        try {
+            return infoCache.get(url, () -> fetchWithRetry(url));
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    private JsonNode fetchWithRetry(String url) throws IOException, InterruptedException {
+        long backoff = initialBackoffMillis;
+        for (int attempt = 1;; attempt++) {
+            try {
+                return fetch(url);
+            } catch (IOException e) {
+                if (attempt >= maxAttempts || !isRetryable(e)) {
+                    throw e;
+                }
+                logger.debug("Request {} of {} to {} failed, retrying in {} ms: {}", attempt, maxAttempts, url,
+                        backoff, e.getMessage());
+                Thread.sleep(backoff);
+                backoff *= 2;
+            }
+        }
+    }
+
+    private JsonNode fetch(String url) throws IOException {
+        HttpGet get = new HttpGet(url);
+        get.setHeader(HttpHeaders.ACCEPT, "application/ld+json, application/json");
+        try (CloseableHttpResponse response = httpClient.execute(get)) {
+            int status = response.getStatusLine().getStatusCode();
+            if (status != 200) {
+                EntityUtils.consumeQuietly(response.getEntity());
+                throw new ImageServerException(url, status);
+            }
+            //responce should be actually json-ld and you can parse it to Model
+            return mapper.readTree(response.getEntity().getContent());
+        }
+    }
+
+    /**
+     * Connection failures, server errors and missing images (which the image
+     * server may not have picked up yet) are retried, malformed responses and
+     * other client errors are not.
+     */
+    private static boolean isRetryable(IOException e) {
+        if (e instanceof ImageServerException) {
+            int status = ((ImageServerException) e).status;
+            return status == 404 || status == 429 || status >= 500;
+        }
+        return !(e instanceof JsonProcessingException);
+    }
+
+    /**
+     * Request to the image server answered with an unexpected status code.
+     */
+    static class ImageServerException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        final int status;
+
+        ImageServerException(String url, int status) {
+            super("Request to " + url + " failed with HTTP status code " + status);
+            this.status = status;
+        }
+    }
+
     public static String assetIdFromUri(IRI newId) {
         Matcher matcher = idRegex.matcher(newId.toString());
         if (matcher.matches()) {
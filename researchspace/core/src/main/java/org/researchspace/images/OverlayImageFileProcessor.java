@@ -19,18 +19,14 @@
 package org.researchspace.images;
 
 import org.eclipse.rdf4j.model.IRI;
-import org.eclipse.rdf4j.model.Value;
 import org.eclipse.rdf4j.repository.RepositoryException;
 import org.researchspace.ldp.OverlayImageContainer;
 
-import javax.imageio.IIOImage;
 import javax.imageio.ImageIO;
 import javax.imageio.ImageWriteParam;
 import javax.imageio.ImageWriter;
 import javax.imageio.plugins.jpeg.JPEGImageWriteParam;
 import javax.imageio.stream.FileImageOutputStream;
-import java.awt.*;
-import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
@@ -38,11 +34,22 @@
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import javax.annotation.Nullable;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.metaphacts.upload.ImagePathIndex;
+import com.metaphacts.upload.tiles.TilePyramidService;
 
 /**
  * Data and image manipulation for {@link OverlayImageContainer}
  * Will take overlay request from graph, create overlayed image and provide metadata.
  * Will auto-guess original file format but will always save in jpg.
+ * Images are composited strip by strip, so that arbitrarily large images can be
+ * overlayed with bounded memory.
  *
  * @author Yury Emelyanov
  */
@@ -52,48 +59,65 @@ public class OverlayImageFileProcessor {
      * OverlayImageFileProcessor will mimick IIIF server trying to auto-guess file format to open it.
      * First found file will be used with respect to order of extensions.
      */
-    private static String[] extensions = new String[] {"jpg", "JPG", "tiff", "TIFF", "tif", "TIF", "png", "PNG"};
+    private static final List<String> extensions = ImmutableList.of("jpg", "JPG", "tiff", "TIFF", "tif", "TIF", "png", "PNG");
     private final java.net.URI iiifFolder;
 
+    private final int stripPixels;
+    private final TilePyramidService tilePyramids;
+
     public OverlayImageFileProcessor(java.net.URI iiifFolder) {
+        this(iiifFolder, TiledImageOverlay.DEFAULT_STRIP_PIXELS, null);
+    }
+
+    /**
+     * @param stripPixels  maximum number of pixels of the overlay rendered at
+     *                     once, bounds the memory required for an overlay
+     * @param tilePyramids if present, the tile pyramid of every overlayed
+     *                     image is generated in the background
+     */
+    public OverlayImageFileProcessor(java.net.URI iiifFolder, int stripPixels, @Nullable TilePyramidService tilePyramids) {
         this.iiifFolder = iiifFolder;
+        this.stripPixels = stripPixels;
+        this.tilePyramids = tilePyramids;
+    }
+
+    /**
+     * Index of the files in the IIIF folder, shared by all processors.
+     */
+    ImagePathIndex getImagePathIndex() {
+        return ImagePathIndex.forFolder(Paths.get(iiifFolder));
     }
 
     String findPathToImage(IRI imageURI) throws URISyntaxException, FileNotFoundException {
-        //we will check for different extensions in order
-        String basePath = Paths.get(new java.net.URI(iiifFolder + "/" + IIIFMetadataExtractor.assetIdFromUri(imageURI))).toString();
-        for (String extension : extensions) {
-            String testPath = basePath.endsWith(extension) ? basePath : basePath + "." + extension;
-            if (Paths.get(testPath).toFile().exists()) return testPath;
-        }
-        throw new FileNotFoundException("No image found for " + basePath + " with registered extensions");
+        //we will check for different extensions in order, resolved from the in-memory index
+        String assetId = IIIFMetadataExtractor.assetIdFromUri(imageURI);
+        Optional<Path> path = getImagePathIndex().resolve(assetId, extensions);
+        if (path.isPresent()) return path.get().toString();
+        throw new FileNotFoundException("No image found for " + createPathToImage(imageURI) + " with registered extensions");
     }
 
     String createPathToImage(IRI imageURI) throws URISyntaxException {
         return Paths.get(new java.net.URI(iiifFolder + "/" + IIIFMetadataExtractor.assetIdFromUri(imageURI))).toString();
     }
 
+    /**
+     * Overlays all images of the blending parameters in the order of the list,
+     * i.e. the first image is the bottom layer, and saves the result as JPG.
+     */
     public void applyOverlay(IRI overlayedImageUri, final List<OverlayImageProcessor.BlendingParam> params) throws RepositoryException {
-
-        Value topImage, bottomImage;
-        double topOpacity, bottomOpacity;
-
-        topImage = params.get(1).image;
-        topOpacity = params.get(1).opacity;
-
-        bottomImage = params.get(0).image;
-        bottomOpacity = params.get(0).opacity;
-
+        List<TiledImageOverlay.Layer> layers = Lists.newArrayList();
         try {
             // finding out image filename with respect to OverlayImageFileProcessor.extensions
-            String topFilename = findPathToImage((IRI) topImage);
-            String bottomFilename = findPathToImage((IRI) bottomImage);
+            for (OverlayImageProcessor.BlendingParam param : params) {
+                layers.add(new TiledImageOverlay.Layer(new File(findPathToImage((IRI) param.image)), param.opacity));
+            }
             String resultfile = createPathToImage(overlayedImageUri);
 
             try {
-                overlayImages(topFilename, topOpacity, bottomFilename, bottomOpacity, resultfile);
+                overlayImages(layers, resultfile);
             } catch (IOException e) {
-                throw new RuntimeException(String.format("Could not blend images %s %s", topFilename, bottomFilename), e);
+                throw new RuntimeException(String.format("Could not blend images %s",
+                        layers.stream().map(l -> l.file.getPath()).collect(Collectors.joining(" "))), e);
             }
 
         } catch (URISyntaxException e) {
@@ -104,46 +128,29 @@ public void applyOverlay(IRI overlayedImageUri, final List<OverlayImageProcessor
 
     }
 
-    void overlayImages(String topFile, double topOpacity, String bottomFile, double bottomOpacity, String resultingPath) throws IOException {
-        BufferedImage topImage = ImageIO.read(new File(topFile));
-        BufferedImage bottomImage = ImageIO.read(new File(bottomFile));
-
-        // create the new image, canvas size is the max. of both image sizes
-        int w = Math.max(topImage.getWidth(), bottomImage.getWidth());
-        int h = Math.max(topImage.getHeight(), bottomImage.getHeight());
-        BufferedImage combined = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
-
-        //passing zeros provides bad results, fixing it
-        bottomOpacity = bottomOpacity < 0.01 ? 0.01 : bottomOpacity;
-        topOpacity = topOpacity < 0.01 ? 0.01 : topOpacity;
-
-        // paint both images, preserving the alpha channels
-        // scale both images to the size of the biggest image
-        Graphics2D g = combined.createGraphics();
-        g.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC, (float) bottomOpacity));
-        g.drawImage(bottomImage, 0, 0, w, h, 0, 0, bottomImage.getWidth(), bottomImage.getHeight(), null);
-        g.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, (float) topOpacity));
-        g.drawImage(topImage, 0, 0, w, h, 0, 0, topImage.getWidth(), topImage.getHeight(), null);
-
-        //converting to no alpha channel
-        BufferedImage newImage = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
-        int[] rgb = combined.getRGB(0, 0, w, h, null, 0, w);
-        newImage.setRGB(0, 0, w, h, rgb, 0, w);
+    /**
+     * Overlays the layers (bottom to top) strip by strip, see
+     * {@link TiledImageOverlay}. Canvas size is the max. of all image sizes.
+     */
+    void overlayImages(List<TiledImageOverlay.Layer> layers, String resultingPath) throws IOException {
+        TiledImageOverlay overlay = new TiledImageOverlay(layers, stripPixels);
 
         // Save as new image
         JPEGImageWriteParam jpegParams = new JPEGImageWriteParam(null);
         jpegParams.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
         jpegParams.setCompressionQuality(0.9f);
 
-        try (FileImageOutputStream fios = new FileImageOutputStream(new File(resultingPath + ".jpg"))) {
-            final ImageWriter writer = ImageIO.getImageWritersByFormatName("jpg").next();
-            writer.setOutput(fios);
-            writer.write(null, new IIOImage(newImage, null, null), jpegParams);
-
+        final ImageWriter writer = ImageIO.getImageWritersByFormatName("jpg").next();
+        File result = new File(resultingPath + ".jpg");
+        try (FileImageOutputStream fios = new FileImageOutputStream(result)) {
+            overlay.write(writer, jpegParams, fios);
+        } finally {
             writer.dispose();
-            g.dispose();
+        }
+        getImagePathIndex().add(result.toPath());
+        if (tilePyramids != null) {
+            tilePyramids.generateAsync(result.toPath());
         }
     }
 
-
 }
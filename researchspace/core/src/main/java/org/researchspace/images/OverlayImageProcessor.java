@@ -47,6 +47,7 @@
 import com.google.common.primitives.Ints;
 import com.metaphacts.data.rdf.ModelUtils;
 import com.metaphacts.data.rdf.PointedGraph;
+import com.metaphacts.upload.tiles.TilePyramidService;
 
 /**
  * @author Yury Emelyanov
@@ -54,13 +55,23 @@
 public class OverlayImageProcessor {
     private final URI iiifFolder;
     private final IRI creatorIRI;
+    private final TilePyramidService tilePyramids;
     private ValueFactory vf = SimpleValueFactory.getInstance();
 
     OverlayImageFileProcessor overlayImageFileProcessor;
 
     public OverlayImageProcessor(URI iiifFolder, IRI userIRI) {
+        this(iiifFolder, userIRI, null);
+    }
+
+    /**
+     * @param tilePyramids if present, tile pyramids of overlayed images are
+     *                     generated in the background
+     */
+    public OverlayImageProcessor(URI iiifFolder, IRI userIRI, @Nullable TilePyramidService tilePyramids) {
         this.iiifFolder = iiifFolder;
         this.creatorIRI = userIRI;
+        this.tilePyramids = tilePyramids;
     }
 
     /**
@@ -73,7 +84,8 @@ public OverlayImageProcessor(URI iiifFolder, IRI userIRI) {
     OverlayImageFileProcessor getOverlayImageFileProcessor() throws RepositoryException {
 
         if (overlayImageFileProcessor == null) {
-            overlayImageFileProcessor = new OverlayImageFileProcessor(iiifFolder);
+            overlayImageFileProcessor = new OverlayImageFileProcessor(iiifFolder,
+                    TiledImageOverlay.DEFAULT_STRIP_PIXELS, tilePyramids);
         }
         return overlayImageFileProcessor;
     }
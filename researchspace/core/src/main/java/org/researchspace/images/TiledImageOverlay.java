@@ -0,0 +1,379 @@
+/*
+ * Copyright (C) 2015-2017, © Trustees of the British Museum
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, you can receive a copy
+ * of the GNU Lesser General Public License from http://www.gnu.org/
+ */
+
+package org.researchspace.images;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Composites an arbitrary number of image layers into a single RGB image
+ * without ever decoding a layer or the result in full.
+ *
+ * <p>
+ * The canvas has the maximum width and height of all layers, every layer is
+ * scaled to the canvas and painted with its own opacity, the first layer
+ * replacing the (transparent) canvas, all further layers on top of it. The
+ * canvas is split into horizontal strips of at most {@code stripPixels}
+ * pixels. For every strip only the rows of each layer which are actually
+ * covered are read (see {@link ImageReadParam#setSourceRegion(Rectangle)}), so
+ * the memory required is bounded by the strip size rather than the image size.
+ * </p>
+ *
+ * <p>
+ * Every layer is read by a single {@link ImageReader}, which is kept open
+ * while the overlay is written, and the strips are rendered one after the
+ * other in increasing order. Readers of random access formats (e.g. tiled
+ * TIFF) hence read only the rows of every strip. Readers of sequential formats
+ * (e.g. JPEG or PNG) still decode a layer from its first row for every region
+ * read, so the decoding work grows with the square of the number of strips.
+ * The number of strips is therefore bounded by {@link #MAX_STRIPS}, i.e. such
+ * layers are decoded at most <code>(MAX_STRIPS + 1) / 2</code> times on
+ * average, and strips of canvases larger than
+ * <code>MAX_STRIPS * stripPixels</code> pixels exceed the strip size.
+ * </p>
+ *
+ * <p>
+ * The composited image is handed to the {@link ImageWriter} as a read-only
+ * raster which renders its strips on demand. Image writers (in particular the
+ * JPEG writer) consume the raster row by row, so the output is written
+ * incrementally while the next strip is already rendered in the background.
+ * </p>
+ */
+class TiledImageOverlay {
+
+    /**
+     * Default maximum number of canvas pixels rendered at once per strip (128MB
+     * for the ARGB buffer of the strip).
+     */
+    static final int DEFAULT_STRIP_PIXELS = 32 * 1024 * 1024;
+
+    /**
+     * Maximum number of strips, which bounds how often layers of sequential
+     * formats are decoded.
+     */
+    static final int MAX_STRIPS = 16;
+
+    /**
+     * Number of strips rendered ahead of the writer, i.e. at most
+     * <code>RENDER_AHEAD + 1</code> strips are held in memory per overlay.
+     */
+    private static final int RENDER_AHEAD = 1;
+
+    /**
+     * Number of overlays rendered concurrently, the strips of one overlay are
+     * rendered sequentially.
+     */
+    private static final int PARALLELISM = Math.max(1, Math.min(2, Runtime.getRuntime().availableProcessors()));
+
+    private static final ExecutorService executor = Executors.newFixedThreadPool(PARALLELISM,
+            new ThreadFactoryBuilder().setNameFormat("image-overlay-%d").setDaemon(true).build());
+
+    /**
+     * A single image layer of the overlay.
+     */
+    static class Layer {
+        final File file;
+        final float opacity;
+        int width;
+        int height;
+
+        /**
+         * @param file    image file in any format supported by {@link ImageIO}
+         * @param opacity opacity of the layer, values below 0.01 are treated as
+         *                0.01
+         */
+        Layer(File file, double opacity) {
+            this.file = file;
+            //passing zeros provides bad results, fixing it
+            this.opacity = (float) (opacity < 0.01 ? 0.01 : opacity);
+        }
+    }
+
+    private final List<Layer> layers;
+    private final int width;
+    private final int height;
+    private final int stripHeight;
+    private final int strips;
+
+    /**
+     * @param layers      layers from bottom to top
+     * @param stripPixels maximum number of canvas pixels rendered at once
+     */
+    TiledImageOverlay(List<Layer> layers, int stripPixels) throws IOException {
+        if (layers.isEmpty()) {
+            throw new IllegalArgumentException("At least one image is required for an overlay.");
+        }
+        this.layers = ImmutableList.copyOf(layers);
+        int w = 0, h = 0;
+        for (Layer layer : this.layers) {
+            // reads the image header only
+            ImageReader reader = openReader(layer.file);
+            try {
+                layer.width = reader.getWidth(0);
+                layer.height = reader.getHeight(0);
+            } finally {
+                close(reader);
+            }
+            w = Math.max(w, layer.width);
+            h = Math.max(h, layer.height);
+        }
+        if ((long) w * h > Integer.MAX_VALUE) {
+            throw new IOException(String.format("Overlay of %dx%d pixels exceeds the maximum image size.", w, h));
+        }
+        this.width = w;
+        this.height = h;
+        int minStripHeight = (h + MAX_STRIPS - 1) / MAX_STRIPS;
+        this.stripHeight = Math.max(1, Math.min(h, Math.max(stripPixels / w, minStripHeight)));
+        this.strips = (h + stripHeight - 1) / stripHeight;
+    }
+
+    int getWidth() {
+        return width;
+    }
+
+    int getHeight() {
+        return height;
+    }
+
+    /**
+     * Writes the composited image to the output stream.
+     */
+    void write(ImageWriter writer, ImageWriteParam param, ImageOutputStream output) throws IOException {
+        StripDataBuffer buffer = new StripDataBuffer();
+        SinglePixelPackedSampleModel sampleModel = new SinglePixelPackedSampleModel(DataBuffer.TYPE_INT, width, height,
+                new int[] { 0xff0000, 0xff00, 0xff });
+        WritableRaster raster = Raster.createWritableRaster(sampleModel, buffer, null);
+        BufferedImage image = new BufferedImage(new DirectColorModel(24, 0xff0000, 0xff00, 0xff), raster, false, null);
+        try {
+            writer.setOutput(output);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            buffer.cancel();
+        }
+    }
+
+    /**
+     * Renders the specified strip of the canvas. The returned array holds the
+     * ARGB pixels of the strip row by row.
+     *
+     * @param readers readers of the layers, opened on first use and kept open
+     *                for the following strips
+     */
+    int[] renderStrip(int strip, ImageReader[] readers) throws IOException {
+        int y0 = strip * stripHeight;
+        int h = Math.min(stripHeight, height - y0);
+        BufferedImage canvas = new BufferedImage(width, h, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = canvas.createGraphics();
+        try {
+            for (int i = 0; i < layers.size(); i++) {
+                Layer layer = layers.get(i);
+                double scaleX = (double) width / layer.width;
+                double scaleY = (double) height / layer.height;
+
+                // rows of the layer covered by the strip, one additional row
+                // on each side compensates for rounding
+                int sy0 = Math.max(0, (int) Math.floor(y0 / scaleY) - 1);
+                int sy1 = Math.min(layer.height, (int) Math.ceil((y0 + h) / scaleY) + 1);
+                if (readers[i] == null) {
+                    readers[i] = openReader(layer.file);
+                }
+                BufferedImage region = readRegion(readers[i], new Rectangle(0, sy0, layer.width, sy1 - sy0));
+
+                // same transformation as scaling the entire layer to the
+                // canvas, shifted to the strip
+                AffineTransform transform = AffineTransform.getTranslateInstance(0, -y0);
+                transform.scale(scaleX, scaleY);
+                transform.translate(0, sy0);
+                g.setComposite(AlphaComposite.getInstance(i == 0 ? AlphaComposite.SRC : AlphaComposite.SRC_OVER,
+                        layer.opacity));
+                g.drawImage(region, transform, null);
+            }
+        } finally {
+            g.dispose();
+        }
+        return ((DataBufferInt) canvas.getRaster().getDataBuffer()).getData();
+    }
+
+    private static BufferedImage readRegion(ImageReader reader, Rectangle region) throws IOException {
+        ImageReadParam param = reader.getDefaultReadParam();
+        param.setSourceRegion(region);
+        return reader.read(0, param);
+    }
+
+    private static ImageReader openReader(File file) throws IOException {
+        ImageInputStream input = ImageIO.createImageInputStream(file);
+        if (input == null) {
+            throw new IOException("Can not open image " + file);
+        }
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+        if (!readers.hasNext()) {
+            input.close();
+            throw new IOException("No image reader available for " + file);
+        }
+        ImageReader reader = readers.next();
+        reader.setInput(input, true, true);
+        return reader;
+    }
+
+    private static void close(ImageReader reader) throws IOException {
+        Object input = reader.getInput();
+        reader.dispose();
+        if (input instanceof ImageInputStream) {
+            ((ImageInputStream) input).close();
+        }
+    }
+
+    /**
+     * Read-only pixel storage of the composited image. Only the strip
+     * currently accessed and the strips rendered ahead are held in memory.
+     * Strips are rendered one after the other in the order they are first
+     * accessed, such that the layer readers are not accessed concurrently.
+     * Accessing the pixels in any other than top to bottom order works, but
+     * reads the layers backwards and may render strips more than once.
+     *
+     * Not thread-safe, image writers access the raster from a single thread.
+     */
+    private class StripDataBuffer extends DataBuffer {
+
+        private final int stripSize = width * stripHeight;
+        private final Map<Integer, Future<int[]>> pending = Maps.newHashMap();
+        private final ImageReader[] readers = new ImageReader[layers.size()];
+        private volatile boolean cancelled = false;
+        /**
+         * The last strip submitted for rendering, the next strip is rendered
+         * once it has completed.
+         */
+        private CompletableFuture<?> last = CompletableFuture.completedFuture(null);
+        private int currentStrip = -1;
+        private int[] current;
+
+        StripDataBuffer() {
+            super(DataBuffer.TYPE_INT, width * height);
+        }
+
+        @Override
+        public int getElem(int bank, int i) {
+            int strip = i / stripSize;
+            if (strip != currentStrip) {
+                load(strip);
+            }
+            return current[i - strip * stripSize];
+        }
+
+        @Override
+        public void setElem(int bank, int i, int val) {
+            throw new UnsupportedOperationException("Composited image is read-only.");
+        }
+
+        private void load(int strip) {
+            // strips we have passed already are rendered anyway, since the following ones wait for them
+            pending.keySet().removeIf(s -> s < strip);
+            for (int s = strip; s < Math.min(strips, strip + RENDER_AHEAD + 1); s++) {
+                pending.computeIfAbsent(s, this::submit);
+            }
+            current = null;
+            try {
+                current = pending.remove(strip).get();
+                currentStrip = strip;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new UncheckedIOException(new IOException("Interrupted while rendering overlay.", e));
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause() instanceof UncheckedIOException ? e.getCause().getCause() : e.getCause();
+                if (cause instanceof IOException) {
+                    throw new UncheckedIOException((IOException) cause);
+                }
+                throw new UncheckedIOException(new IOException("Failed to render overlay.", cause));
+            }
+        }
+
+        private Future<int[]> submit(int strip) {
+            // rendered also if the previous strip failed, which fails the overlay anyway
+            CompletableFuture<int[]> rendered = last.handleAsync((result, e) -> {
+                if (cancelled) {
+                    throw new CancellationException();
+                }
+                try {
+                    return renderStrip(strip, readers);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }, executor);
+            last = rendered;
+            return rendered;
+        }
+
+        /**
+         * Skips the strips which have not been rendered yet and closes the
+         * readers once the strip being rendered has completed.
+         */
+        void cancel() {
+            cancelled = true;
+            pending.clear();
+            current = null;
+            last.whenComplete((result, e) -> {
+                for (ImageReader reader : readers) {
+                    if (reader != null) {
+                        try {
+                            close(reader);
+                        } catch (IOException ex) {
+                            // nothing to recover
+                        }
+                    }
+                }
+            });
+        }
+    }
+}
@@ -19,6 +19,7 @@
 package org.researchspace.ldp;
 
 import java.nio.file.Paths;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.inject.Inject;
 
@@ -42,6 +43,8 @@
 import com.metaphacts.data.rdf.container.DefaultLDPContainer;
 import com.metaphacts.data.rdf.container.LDPR;
 import com.metaphacts.data.rdf.container.RootContainer;
+import com.metaphacts.upload.ImagePathIndex;
+import com.metaphacts.upload.tiles.TilePyramidService;
 import com.metaphacts.vocabulary.LDP;
 
 /**
@@ -69,7 +72,6 @@
 @LDPR(iri= OverlayImageContainer.IRI_STRING)
 public class OverlayImageContainer extends DefaultLDPContainer {
     
-    @SuppressWarnings("unused")
     private static final Logger logger = LogManager.getLogger(OverlayImageContainer.class);
 
     public static final String IRI_STRING = "http://www.researchspace.org/ontology/OverlayImage.Container";
@@ -77,6 +79,8 @@ public class OverlayImageContainer extends DefaultLDPContainer {
 
     public static final String IIIF_PATH_PARAM = "iiifFolder";
 
+    private static final AtomicBoolean imageIndexStarted = new AtomicBoolean(false);
+
     private OverlayImageProcessor overlayImageProcessor;
 
     @Inject
@@ -85,6 +89,9 @@ public class OverlayImageContainer extends DefaultLDPContainer {
     @Inject
     Configuration systemConfig;
 
+    @Inject
+    private TilePyramidService tilePyramids;
+
     public OverlayImageContainer(IRI iri, Repository repository) {
         super(iri, repository);
     }
@@ -104,6 +111,15 @@ public void initialize() {
                 throw Throwables.propagate(e);
             }
         }
+        // start indexing the image folder (in the background) once the container is used for the first time,
+        // such that overlays do not need to probe for images
+        if (imageIndexStarted.compareAndSet(false, true)) {
+            try {
+                ImagePathIndex.forFolder(Paths.get(getIIIFFolder()));
+            } catch (RepositoryException e) {
+                logger.debug("Image folder is not available, skipping the image index: {}", e.getMessage());
+            }
+        }
     }
 
     private java.net.URI getIIIFFolder() throws RepositoryException {
@@ -136,7 +152,7 @@ private PointedGraph convertToCRMDig(PointedGraph pointedGraph) throws Repositor
     }
 
     public OverlayImageProcessor getOverlayImageProcessor() throws RepositoryException {
-        if (overlayImageProcessor == null) overlayImageProcessor = new OverlayImageProcessor(getIIIFFolder(), ns.getUserIRI());
+        if (overlayImageProcessor == null) overlayImageProcessor = new OverlayImageProcessor(getIIIFFolder(), ns.getUserIRI(), tilePyramids);
         return overlayImageProcessor;
     }
 
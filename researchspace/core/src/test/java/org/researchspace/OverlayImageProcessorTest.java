@@ -26,6 +26,7 @@
 import java.math.BigInteger;
 import java.nio.file.Files;
 import java.security.SecureRandom;
+import java.util.Arrays;
 import java.util.List;
 
 import javax.imageio.ImageIO;
@@ -150,6 +151,26 @@ public void testImageOverlayJPG() throws Exception {
         assertTrue("Image should be equal", compareImages("testJPG.jpg", "testJPG.jpg"));
     }
 
+    @Test
+    public void testImageOverlayStrips() throws Exception {
+        // 200x200 canvas rendered in strips of 5 rows
+        new OverlayImageFileProcessor(tempWorkingDir.toURI(), 1000, null).applyOverlay(vf.createIRI("http://researchspace.org/images/strips5050"), getParams("circlePNG", 0.5, "squarePNG", 0.5));
+        assertTrue("Image should be equal", compareImages("5050.jpg", "strips5050.jpg"));
+    }
+
+    @Test
+    public void testImageOverlayMultipleLayers() throws Exception {
+        List<OverlayImageProcessor.BlendingParam> params = Lists.newArrayList(
+            new OverlayImageProcessor.BlendingParam(vf.createIRI("http://researchspace.org/test/Overlay1/circlePNG"), 1, 0.5),
+            new OverlayImageProcessor.BlendingParam(vf.createIRI("http://researchspace.org/test/Overlay1/squareJPG"), 2, 0.3),
+            new OverlayImageProcessor.BlendingParam(vf.createIRI("http://researchspace.org/test/Overlay1/squareTIFF"), 3, 0.6)
+        );
+        getOverlayImageFileProcessor().applyOverlay(vf.createIRI("http://researchspace.org/images/layers"), params);
+        new OverlayImageFileProcessor(tempWorkingDir.toURI(), 1000, null).applyOverlay(vf.createIRI("http://researchspace.org/images/layersStrips"), params);
+        assertTrue("Image should exist", new File(tempWorkingDir, "layers.jpg").exists());
+        assertTrue("Image should be equal", compareFiles("layers.jpg", "layersStrips.jpg"));
+    }
+
     @Test
     public void testGraphParse() throws Exception {
         PointedGraph graph = getOverlayImageProcessor().convertToCRMDig(getSimpleOperation("circlePNG", 0.1, "squarePNG", 0.9, "parseTest"));
@@ -172,6 +193,11 @@ private boolean compareImages(String referenceInClasspath, String testInTempFold
       return true;
     }
 
+    private boolean compareFiles(String first, String second) throws Exception {
+        return Arrays.equals(Files.readAllBytes(new File(tempWorkingDir, first).toPath()),
+                Files.readAllBytes(new File(tempWorkingDir, second).toPath()));
+    }
+
     OverlayImageFileProcessor getOverlayImageFileProcessor() {
         return new OverlayImageFileProcessor(tempWorkingDir.toURI());
     }
@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2015-2017, © Trustees of the British Museum
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, you can receive a copy
+ * of the GNU Lesser General Public License from http://www.gnu.org/
+ */
+
+package org.researchspace.images;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.LinkedHashModel;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.researchspace.vocabulary.CRMdig;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests {@link IIIFMetadataExtractor} against a local stub of the image
+ * server.
+ */
+public class IIIFMetadataExtractorTest {
+
+    private static final ValueFactory vf = SimpleValueFactory.getInstance();
+
+    private HttpServer server;
+    private IIIFMetadataExtractor extractor;
+
+    /**
+     * Number of requests the stub answers with {@link #failureStatus} before
+     * returning the info.json.
+     */
+    private volatile int failures = 0;
+    private volatile int failureStatus = 503;
+    private final AtomicInteger requests = new AtomicInteger();
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/iiif", this::handle);
+        server.start();
+        String url = "http://localhost:" + server.getAddress().getPort() + "/iiif";
+        extractor = new IIIFMetadataExtractor(() -> url, 3, 10);
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        int request = requests.incrementAndGet();
+        if (request <= failures) {
+            exchange.sendResponseHeaders(failureStatus, -1);
+            exchange.close();
+            return;
+        }
+        byte[] body = "{\"@id\": \"image\", \"width\": 640, \"height\": 480}".getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    @Test
+    public void testExtractMetadata() throws Exception {
+        IRI image = vf.createIRI("http://researchspace.org/test/image.jpg");
+        assertDimensions(image, extractor.extractMetadata(image, new LinkedHashModel()));
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void testInfoIsCached() throws Exception {
+        IRI image = vf.createIRI("http://researchspace.org/test/image.jpg");
+        extractor.extractMetadata(image, new LinkedHashModel());
+        assertDimensions(image, extractor.extractMetadata(image, new LinkedHashModel()));
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void testRetryUnavailableImage() throws Exception {
+        failures = 2;
+        failureStatus = 404;
+        IRI image = vf.createIRI("http://researchspace.org/test/image.jpg");
+        assertDimensions(image, extractor.extractMetadata(image, new LinkedHashModel()));
+        assertEquals(3, requests.get());
+    }
+
+    @Test
+    public void testGiveUpAfterMaxAttempts() throws Exception {
+        failures = 3;
+        IRI image = vf.createIRI("http://researchspace.org/test/image.jpg");
+        try {
+            extractor.extractMetadata(image, new LinkedHashModel());
+            fail("Extraction is expected to fail.");
+        } catch (IIIFMetadataExtractor.ImageServerException e) {
+            assertEquals(503, e.status);
+        }
+        assertEquals(3, requests.get());
+
+        // failures are not cached
+        assertDimensions(image, extractor.extractMetadata(image, new LinkedHashModel()));
+        assertEquals(4, requests.get());
+    }
+
+    @Test
+    public void testClientErrorIsNotRetried() throws Exception {
+        failures = 1;
+        failureStatus = 400;
+        IRI image = vf.createIRI("http://researchspace.org/test/image.jpg");
+        CompletableFuture<Model> metadata = extractor.extractMetadataAsync(image, new LinkedHashModel());
+        try {
+            metadata.get(10, TimeUnit.SECONDS);
+            fail("Extraction is expected to fail.");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IIIFMetadataExtractor.ImageServerException);
+        }
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void testExtractMetadataAsync() throws Exception {
+        failures = 1;
+        IRI first = vf.createIRI("http://researchspace.org/test/first.jpg");
+        IRI second = vf.createIRI("http://researchspace.org/test/second.jpg");
+        CompletableFuture<Model> firstMetadata = extractor.extractMetadataAsync(first, new LinkedHashModel());
+        CompletableFuture<Model> secondMetadata = extractor.extractMetadataAsync(second, new LinkedHashModel());
+        assertDimensions(first, firstMetadata.get(10, TimeUnit.SECONDS));
+        assertDimensions(second, secondMetadata.get(10, TimeUnit.SECONDS));
+        assertEquals(3, requests.get());
+    }
+
+    private static void assertDimensions(IRI image, Model metadata) {
+        assertEquals(3, metadata.size());
+        assertTrue(metadata.contains(image, CRMdig.L56_HAS_PIXEL_WIDTH, vf.createLiteral(640L)));
+        assertTrue(metadata.contains(image, CRMdig.L57_HAS_PIXEL_HEIGHT, vf.createLiteral(480L)));
+    }
+}